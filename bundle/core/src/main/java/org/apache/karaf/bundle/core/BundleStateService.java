@@ -20,7 +20,10 @@ import org.osgi.framework.Bundle;
 
 /**
  * SPI to track an extended bundle state for injection frameworks like blueprint that
- * also reports on  dependencies and status on the injection container level
+ * also reports on  dependencies and status on the injection container level.
+ * <p>
+ * Implementations should call the {@link BundleStateListener} services whenever the state
+ * of a bundle changes, so that the information cached about the bundle is refreshed.
  */
 public interface BundleStateService {
     public final static String NAME_BLUEPRINT = "Blueprint";
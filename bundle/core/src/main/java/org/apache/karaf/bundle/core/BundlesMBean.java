@@ -26,6 +26,16 @@ public interface BundlesMBean {
 
     TabularData getBundles() throws MBeanException;
 
+    /**
+     * List a page of the bundles.
+     *
+     * @param filter the bundles to list, as accepted by the bundle commands (id, id range,
+     *               name or name/version regex), or <code>null</code> for all bundles
+     * @param offset the index of the first bundle to list
+     * @param limit  the maximum number of bundles to list, or -1 for all
+     */
+    TabularData getBundles(String filter, int offset, int limit) throws MBeanException;
+
     int getStartLevel(String bundleId) throws MBeanException;
     void setStartLevel(String bundleId, int bundleStartLevel) throws MBeanException;
 
@@ -42,11 +42,16 @@ public class BlueprintListener implements org.osgi.service.blueprint.container.B
     private static final Logger LOG = LoggerFactory.getLogger(BlueprintListener.class);
 
     private final Map<Long, BlueprintEvent> states;
+    private BundleInfoCache bundleInfoCache;
 
     public BlueprintListener() {
         states = new ConcurrentHashMap<Long, BlueprintEvent>();
     }
 
+    public void setBundleInfoCache(BundleInfoCache bundleInfoCache) {
+        this.bundleInfoCache = bundleInfoCache;
+    }
+
     @Override
     public String getName() {
         return BundleStateService.NAME_BLUEPRINT;
@@ -104,6 +109,9 @@ public class BlueprintListener implements org.osgi.service.blueprint.container.B
                       + blueprintEvent.getBundle().getBundleId());
         }
         states.put(blueprintEvent.getBundle().getBundleId(), blueprintEvent);
+        if (bundleInfoCache != null) {
+            bundleInfoCache.invalidate(blueprintEvent.getBundle().getBundleId());
+        }
     }
 
     @Override
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.bundle.core.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.karaf.bundle.core.BundleInfo;
+import org.apache.karaf.bundle.core.BundleState;
+import org.apache.karaf.bundle.core.BundleStateListener;
+import org.apache.karaf.bundle.core.BundleStateService;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.startlevel.BundleStartLevel;
+
+/**
+ * Keeps the {@link BundleInfo} and the names of the installed bundles so that
+ * listing all the bundles does not query the headers, the wiring and the state
+ * services of every bundle each time.
+ * <p>
+ * Entries are invalidated by bundle events and by the extended state services,
+ * which notify this cache as a {@link BundleStateListener}. Resolution events and
+ * state services coming or going invalidate all the entries, as they change the
+ * fragments and hosts of other bundles or the extended states of all bundles.
+ * A cached info is also dropped when the state, the start level or the extended
+ * state of its bundle no longer match, as start level changes are not notified and
+ * not all the state services notify their changes.
+ */
+public class BundleInfoCache implements SynchronousBundleListener, BundleStateListener {
+
+    private static class CachedInfo {
+        final BundleInfo info;
+        final BundleState extState;
+        final int state;
+        final long lastModified;
+
+        CachedInfo(BundleInfo info, BundleState extState, int state, long lastModified) {
+            this.info = info;
+            this.extState = extState;
+            this.state = state;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final BundleContext bundleContext;
+
+    private final Map<Long, CachedInfo> infos = new HashMap<Long, CachedInfo>();
+    private final Map<Long, String[]> names = new HashMap<Long, String[]>();
+    private long generation;
+    private boolean started;
+
+    public BundleInfoCache(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
+    public void start() {
+        bundleContext.addBundleListener(this);
+        synchronized (this) {
+            started = true;
+        }
+    }
+
+    public void stop() {
+        bundleContext.removeBundleListener(this);
+        synchronized (this) {
+            started = false;
+            invalidateAll();
+            names.clear();
+        }
+    }
+
+    /**
+     * Returns the current generation, to be given back to {@link #put(Bundle, BundleState, BundleInfo, long)}
+     * once the info has been computed.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the cached info of the bundle or <code>null</code> if it needs to be computed.
+     *
+     * @param extState the current extended state of the bundle, as reported by the state services
+     */
+    public BundleInfo get(Bundle bundle, BundleState extState) {
+        CachedInfo cached;
+        synchronized (this) {
+            cached = infos.get(bundle.getBundleId());
+        }
+        if (cached == null || cached.extState != extState
+                || cached.state != bundle.getState() || cached.lastModified != bundle.getLastModified()) {
+            return null;
+        }
+        BundleStartLevel bsl = bundle.adapt(BundleStartLevel.class);
+        if (bsl == null || bsl.getStartLevel() != cached.info.getStartLevel()) {
+            return null;
+        }
+        return cached.info;
+    }
+
+    /**
+     * Caches the info of a bundle, unless an event invalidated the cache since the given
+     * generation, in which case the info may already be stale.
+     *
+     * @param extState the extended state the info has been computed with
+     */
+    public void put(Bundle bundle, BundleState extState, BundleInfo info, long generation) {
+        int state = bundle.getState();
+        long lastModified = bundle.getLastModified();
+        synchronized (this) {
+            if (started && generation == this.generation) {
+                infos.put(bundle.getBundleId(), new CachedInfo(info, extState, state, lastModified));
+            }
+        }
+    }
+
+    /**
+     * Returns the symbolic name, the name and the version of the bundle.
+     */
+    public String[] getNames(Bundle bundle) {
+        long id = bundle.getBundleId();
+        synchronized (this) {
+            String[] cached = names.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String[] bundleNames = new String[] {
+                bundle.getSymbolicName(),
+                (String) bundle.getHeaders().get(Constants.BUNDLE_NAME),
+                (String) bundle.getHeaders().get(Constants.BUNDLE_VERSION)
+        };
+        synchronized (this) {
+            if (started && bundle.getState() != Bundle.UNINSTALLED) {
+                names.put(id, bundleNames);
+            }
+        }
+        return bundleNames;
+    }
+
+    public synchronized void invalidate(long bundleId) {
+        generation++;
+        infos.remove(bundleId);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        infos.clear();
+    }
+
+    @Override
+    public void stateChanged(Bundle bundle) {
+        invalidate(bundle.getBundleId());
+    }
+
+    /**
+     * Reference listener of the state services.
+     */
+    public void bindStateService(BundleStateService service, Map<String, ?> properties) {
+        invalidateAll();
+    }
+
+    /**
+     * Reference listener of the state services.
+     */
+    public void unbindStateService(BundleStateService service, Map<String, ?> properties) {
+        invalidateAll();
+    }
+
+    public synchronized int size() {
+        return infos.size();
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        long id = event.getBundle().getBundleId();
+        switch (event.getType()) {
+        case BundleEvent.UPDATED:
+        case BundleEvent.UNINSTALLED:
+            synchronized (this) {
+                names.remove(id);
+                invalidateAll();
+            }
+            break;
+        case BundleEvent.RESOLVED:
+        case BundleEvent.UNRESOLVED:
+            invalidateAll();
+            break;
+        default:
+            invalidate(id);
+            break;
+        }
+    }
+
+}
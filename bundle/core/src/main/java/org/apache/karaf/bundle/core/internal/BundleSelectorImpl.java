@@ -19,7 +19,6 @@ package org.apache.karaf.bundle.core.internal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.osgi.framework.Bundle;
@@ -28,10 +27,25 @@ import org.osgi.framework.Constants;
 
 public class BundleSelectorImpl {
 
+    private static final Pattern ID_PATTERN = Pattern.compile("^\\d+$");
+    private static final Pattern RANGE_PATTERN = Pattern.compile("^(\\d+)-(\\d+)$");
+
+    /**
+     * Characters which make a name pattern a regular expression rather than a plain
+     * substring.
+     */
+    private static final String REGEX_CHARS = "\\^$.|?*+()[]{}";
+
     private final BundleContext bundleContext;
+    private final BundleInfoCache cache;
     
     public BundleSelectorImpl(BundleContext bundleContext) {
+        this(bundleContext, null);
+    }
+
+    public BundleSelectorImpl(BundleContext bundleContext, BundleInfoCache cache) {
         this.bundleContext = bundleContext;
+        this.cache = cache;
     }
     
     public List<Bundle> selectBundles(List<String> ids, boolean defaultAllBundles) {
@@ -48,19 +62,14 @@ public class BundleSelectorImpl {
     
     public void addMatchingBundles(String id, List<Bundle> bundles) {
         // id is a number
-        Pattern pattern = Pattern.compile("^\\d+$");
-        Matcher matcher = pattern.matcher(id);
-        
-        if (matcher.find()) {
+        if (ID_PATTERN.matcher(id).find()) {
             Bundle bundle = this.getBundleById(id);
             addBundle(bundle, id, bundles);
             return;
         }
 
         // id as a number range
-        pattern = Pattern.compile("^(\\d+)-(\\d+)$");
-        matcher = pattern.matcher(id);
-        if (matcher.find()) {
+        if (RANGE_PATTERN.matcher(id).find()) {
             int index = id.indexOf('-');
             long startId = Long.parseLong(id.substring(0, index));
             long endId = Long.parseLong(id.substring(index + 1));
@@ -135,45 +144,71 @@ public class BundleSelectorImpl {
 
         ArrayList<Bundle> result = new ArrayList<Bundle>();
 
-        Pattern namePattern = Pattern.compile(name);
+        NameMatcher nameMatcher = new NameMatcher(name);
+        NameMatcher versionMatcher = version != null ? new NameMatcher(version) : null;
 
         for (int i = 0; i < bundles.length; i++) {
 
-            String bundleSymbolicName = bundles[i].getSymbolicName();
+            String[] names = getNames(bundles[i]);
+            String bundleSymbolicName = names[0];
             // skip bundles without Bundle-SymbolicName header
             if (bundleSymbolicName == null) {
                 continue;
             }
-            
-            Matcher symbolicNameMatcher = namePattern.matcher(bundleSymbolicName);
-            
-            Matcher nameMatcher = null;
-            String bundleName = (String) bundles[i].getHeaders().get(Constants.BUNDLE_NAME);
-            if (bundleName != null) {
-                nameMatcher = namePattern.matcher(bundleName);
+
+            String bundleName = names[1];
+            boolean nameMatch = (bundleName != null && nameMatcher.find(bundleName)) || nameMatcher.find(bundleSymbolicName);
+            if (!nameMatch) {
+                continue;
             }
 
-            if (version != null) {
-                String bundleVersion = (String) bundles[i].getHeaders().get(Constants.BUNDLE_VERSION);
-                if (bundleVersion != null) {
-                    boolean nameMatch = (nameMatcher != null && nameMatcher.find()) || symbolicNameMatcher.find();
-                    if (nameMatch) {
-                        Pattern versionPattern = Pattern.compile(version);
-                        Matcher versionMatcher = versionPattern.matcher(bundleVersion);                    
-                        if (versionMatcher.find()) {
-                            result.add(bundles[i]);
-                        }
-                    }
-                }
-            } else {
-                boolean nameMatch = (nameMatcher != null && nameMatcher.find()) || symbolicNameMatcher.find();
-                if (nameMatch) {
+            if (versionMatcher != null) {
+                String bundleVersion = names[2];
+                if (bundleVersion != null && versionMatcher.find(bundleVersion)) {
                     result.add(bundles[i]);
                 }
+            } else {
+                result.add(bundles[i]);
             }
         }
         return result;
     }
+
+    /**
+     * Returns the symbolic name, the name and the version of the bundle.
+     */
+    private String[] getNames(Bundle bundle) {
+        if (cache != null) {
+            return cache.getNames(bundle);
+        }
+        return new String[] {
+                bundle.getSymbolicName(),
+                (String) bundle.getHeaders().get(Constants.BUNDLE_NAME),
+                (String) bundle.getHeaders().get(Constants.BUNDLE_VERSION)
+        };
+    }
+
+    /**
+     * Looks for a pattern in bundle names, using a plain substring search when the
+     * pattern does not contain any regular expression character.
+     */
+    private static class NameMatcher {
+        private final String literal;
+        private final Pattern pattern;
+
+        NameMatcher(String name) {
+            boolean regex = false;
+            for (int i = 0; i < name.length() && !regex; i++) {
+                regex = REGEX_CHARS.indexOf(name.charAt(i)) >= 0;
+            }
+            this.literal = regex ? null : name;
+            this.pattern = regex ? Pattern.compile(name) : null;
+        }
+
+        boolean find(String text) {
+            return literal != null ? text.contains(literal) : pattern.matcher(text).find();
+        }
+    }
     
     public List<Bundle> getBundlesByURL(String url) {
         List<Bundle> bundleList = new ArrayList<Bundle>();
@@ -184,8 +219,7 @@ public class BundleSelectorImpl {
                 bundleList.add(bundle);
             }
         } catch (NumberFormatException e) {
-            for (int i = 0; i < bundleContext.getBundles().length; i++) {
-                Bundle bundle = bundleContext.getBundles()[i];
+            for (Bundle bundle : bundleContext.getBundles()) {
                 if (isMavenSnapshotUrl(bundle.getLocation()) && wildCardMatch(bundle.getLocation(), url)) {
                     bundleList.add(bundle);
                 }
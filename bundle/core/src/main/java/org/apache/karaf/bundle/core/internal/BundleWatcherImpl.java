@@ -21,10 +21,14 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
@@ -49,6 +53,12 @@ import org.slf4j.LoggerFactory;
 /**
  * A Runnable singleton which watches at the defined location for bundle
  * updates.
+ * <p>
+ * When the file system watch service is available, the directories of the watched
+ * artifacts in the local repository are watched for changes, otherwise they are
+ * checked every <code>interval</code> milliseconds. Changes are batched: once an
+ * artifact changed, the watcher waits until no file changed for <code>debounce</code>
+ * milliseconds, then updates all the changed bundles and refreshes them at once.
  */
 public class BundleWatcherImpl implements Runnable, BundleListener, BundleWatcher {
 
@@ -60,6 +70,7 @@ public class BundleWatcherImpl implements Runnable, BundleListener, BundleWatche
 
     private AtomicBoolean running = new AtomicBoolean(false);
     private long interval = 1000L;
+    private long debounce = 500L;
     private List<String> watchURLs = new CopyOnWriteArrayList<String>();
     private AtomicInteger counter = new AtomicInteger(0);
 
@@ -85,47 +96,71 @@ public class BundleWatcherImpl implements Runnable, BundleListener, BundleWatche
 
     public void run() {
         logger.debug("Bundle watcher thread started");
+        PathWatcher pathWatcher = PathWatcher.create();
+        if (pathWatcher == null) {
+            logger.debug("File system watch service not available, checking bundles every {} ms", interval);
+        }
         int oldCounter = -1;
-        Set<Bundle> watchedBundles = new HashSet<Bundle>();
-        while (running.get() && watchURLs.size() > 0) {
-            if (oldCounter != counter.get()) {
-                oldCounter = counter.get();
-                watchedBundles.clear();
-                for (String bundleURL : watchURLs) {
-                    for (Bundle bundle : bundleService.getBundlesByURL(bundleURL)) {
-                        watchedBundles.add(bundle);
-                    }
-                }
-            }
-            if (watchedBundles.size() > 0) {
-                File localRepository = this.localRepoDetector.getLocalRepository();
-                List<Bundle> updated = new ArrayList<Bundle>();
-                for (Bundle bundle : watchedBundles) {
-                    try {
-                        updateBundleIfNecessary(localRepository, updated, bundle);
-                    } catch (IOException ex) {
-                        logger.error("Error watching bundle.", ex);
-                    } catch (BundleException ex) {
-                        logger.error("Error updating bundle.", ex);
-                    }
-                }
+        File oldLocalRepository = null;
+        Map<Bundle, File> watchedBundles = new HashMap<Bundle, File>();
+        Set<File> directories = new HashSet<File>();
+        // directories in which files changed, null if all the bundles have to be checked
+        Set<File> changed = null;
+        try {
+            while (running.get() && watchURLs.size() > 0) {
                 try {
-                    final CountDownLatch latch = new CountDownLatch(1);
-                    FrameworkWiring wiring = bundleContext.getBundle(0).adapt(FrameworkWiring.class);
-                    wiring.refreshBundles(updated, new FrameworkListener() {
-                        public void frameworkEvent(FrameworkEvent event) {
-                            latch.countDown();
+                    File localRepository = this.localRepoDetector.getLocalRepository();
+                    boolean rescan = oldCounter != counter.get() || !localRepository.equals(oldLocalRepository);
+                    if (rescan) {
+                        oldCounter = counter.get();
+                        oldLocalRepository = localRepository;
+                        watchedBundles.clear();
+                        directories.clear();
+                        for (String bundleURL : watchURLs) {
+                            for (Bundle bundle : bundleService.getBundlesByURL(bundleURL)) {
+                                File location = getBundleExternalLocation(localRepository, bundle);
+                                if (location != null) {
+                                    watchedBundles.put(bundle, location);
+                                    directories.add(location.getParentFile());
+                                }
+                            }
                         }
-                    });
-                    latch.await();
-                } catch (InterruptedException e) {
-                    running.set(false);
+                        changed = null;
+                    }
+                    if (pathWatcher != null && (rescan || !pathWatcher.isWatching(directories))) {
+                        // directories which did not exist yet may have been created meanwhile
+                        pathWatcher.watch(directories);
+                    }
+                    Map<Bundle, File> modified = new LinkedHashMap<Bundle, File>();
+                    addModifiedBundles(watchedBundles, changed, modified);
+                    if (!modified.isEmpty()) {
+                        waitForQuietPeriod(pathWatcher, watchedBundles, modified);
+                        updateBundles(modified);
+                    }
+                    if (pathWatcher != null && pathWatcher.isWatching(directories)) {
+                        changed = pathWatcher.poll(interval);
+                    } else {
+                        // some artifacts do not exist yet, check them all
+                        Thread.sleep(interval);
+                        changed = null;
+                    }
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    pathWatcher = fallback(pathWatcher, e);
+                    changed = null;
+                } catch (RuntimeException e) {
+                    pathWatcher = fallback(pathWatcher, e);
+                    changed = null;
                 }
             }
-            try {
-                Thread.sleep(interval);
-            } catch (InterruptedException ex) {
-                running.set(false);
+        } catch (InterruptedException e) {
+            running.set(false);
+        } catch (InterruptedIOException e) {
+            running.set(false);
+        } finally {
+            if (pathWatcher != null) {
+                pathWatcher.close();
             }
         }
 
@@ -134,19 +169,108 @@ public class BundleWatcherImpl implements Runnable, BundleListener, BundleWatche
         }
     }
 
-    private void updateBundleIfNecessary(File localRepository, List<Bundle> updated, Bundle bundle)
-        throws FileNotFoundException, BundleException, IOException {
-        File location = getBundleExternalLocation(localRepository, bundle);
-        if (location != null && location.exists() && location.lastModified() > bundle.getLastModified()) {
-            InputStream is = new FileInputStream(location);
+    /**
+     * Stop using the watch service after an error and go on checking the bundles every <code>interval</code> ms.
+     *
+     * @return <code>null</code>, the new path watcher
+     */
+    private PathWatcher fallback(PathWatcher pathWatcher, Exception e) throws InterruptedException {
+        if (pathWatcher != null) {
+            logger.warn("Error watching the local repository, checking bundles every " + interval + " ms", e);
+            pathWatcher.close();
+        } else {
+            logger.error("Error watching bundles.", e);
+        }
+        Thread.sleep(interval);
+        return null;
+    }
+
+    /**
+     * Add to <code>modified</code> the watched bundles whose artifact is more recent than the bundle.
+     *
+     * @param directories only check the artifacts in these directories, or all of them if <code>null</code>
+     */
+    private void addModifiedBundles(Map<Bundle, File> watchedBundles, Set<File> directories, Map<Bundle, File> modified) {
+        if (directories != null && directories.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Bundle, File> entry : watchedBundles.entrySet()) {
+            File location = entry.getValue();
+            if (directories == null || directories.contains(location.getParentFile())) {
+                if (location.exists() && location.lastModified() > entry.getKey().getLastModified()) {
+                    modified.put(entry.getKey(), location);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until the modified artifacts did not change during the debounce period, so that
+     * they are not read while being written, and collect the other bundles modified meanwhile.
+     */
+    private void waitForQuietPeriod(PathWatcher pathWatcher, Map<Bundle, File> watchedBundles,
+                                    Map<Bundle, File> modified) throws IOException, InterruptedException {
+        Map<File, String> state = getState(modified.values());
+        while (running.get()) {
+            if (pathWatcher != null) {
+                addModifiedBundles(watchedBundles, pathWatcher.poll(debounce), modified);
+            } else {
+                Thread.sleep(debounce);
+                addModifiedBundles(watchedBundles, null, modified);
+            }
+            Map<File, String> current = getState(modified.values());
+            if (current.equals(state)) {
+                break;
+            }
+            state = current;
+        }
+    }
+
+    private Map<File, String> getState(Iterable<File> files) {
+        Map<File, String> state = new HashMap<File, String>();
+        for (File file : files) {
+            state.put(file, file.length() + ":" + file.lastModified());
+        }
+        return state;
+    }
+
+    /**
+     * Update the given bundles and refresh them at once.
+     */
+    private void updateBundles(Map<Bundle, File> modified) throws InterruptedException {
+        List<Bundle> updated = new ArrayList<Bundle>();
+        for (Map.Entry<Bundle, File> entry : modified.entrySet()) {
             try {
-                logger.info("[Watch] Updating watched bundle: " + bundle.getSymbolicName() + " ("
-                            + bundle.getVersion() + ")");
-                bundle.update(is);
-                updated.add(bundle);
-            } finally {
-                is.close();
+                updateBundle(entry.getKey(), entry.getValue());
+                updated.add(entry.getKey());
+            } catch (IOException ex) {
+                logger.error("Error watching bundle.", ex);
+            } catch (BundleException ex) {
+                logger.error("Error updating bundle.", ex);
+            }
+        }
+        if (updated.isEmpty()) {
+            return;
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        FrameworkWiring wiring = bundleContext.getBundle(0).adapt(FrameworkWiring.class);
+        wiring.refreshBundles(updated, new FrameworkListener() {
+            public void frameworkEvent(FrameworkEvent event) {
+                latch.countDown();
             }
+        });
+        latch.await();
+    }
+
+    private void updateBundle(Bundle bundle, File location)
+        throws FileNotFoundException, BundleException, IOException {
+        InputStream is = new FileInputStream(location);
+        try {
+            logger.info("[Watch] Updating watched bundle: " + bundle.getSymbolicName() + " ("
+                        + bundle.getVersion() + ")");
+            bundle.update(is);
+        } finally {
+            is.close();
         }
     }
 
@@ -234,6 +358,14 @@ public class BundleWatcherImpl implements Runnable, BundleListener, BundleWatche
         this.interval = interval;
     }
 
+    public long getDebounce() {
+        return debounce;
+    }
+
+    public void setDebounce(long debounce) {
+        this.debounce = debounce;
+    }
+
     public boolean isRunning() {
         return running.get();
     }
@@ -18,6 +18,7 @@ package org.apache.karaf.bundle.core.internal;
 
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -27,6 +28,7 @@ import javax.management.StandardMBean;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.OpenType;
 import javax.management.openmbean.SimpleType;
 import javax.management.openmbean.TabularData;
@@ -49,6 +51,10 @@ import org.slf4j.LoggerFactory;
 public class BundlesMBeanImpl extends StandardMBean implements BundlesMBean {
     private Logger LOG = LoggerFactory.getLogger(BundlesMBeanImpl.class);
 
+    private static final String[] BUNDLE_ITEMS = new String[]{"ID", "Name", "Version", "Start Level", "State"};
+    private static final CompositeType BUNDLE = createBundleType();
+    private static final TabularType BUNDLES_TABLE = createBundlesTableType();
+
     private BundleContext bundleContext;
     private final BundleService bundleService;
 
@@ -58,29 +64,52 @@ public class BundlesMBeanImpl extends StandardMBean implements BundlesMBean {
         this.bundleService = bundleService;
     }
 
+    private static CompositeType createBundleType() {
+        try {
+            return new CompositeType("Bundle", "OSGi Bundle",
+                    BUNDLE_ITEMS,
+                    new String[]{"ID of the Bundle", "Name of the Bundle", "Version of the Bundle", "Start Level of the Bundle", "Current State of the Bundle"},
+                    new OpenType[]{SimpleType.LONG, SimpleType.STRING, SimpleType.STRING, SimpleType.INTEGER, SimpleType.STRING});
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build bundle type", e);
+        }
+    }
+
+    private static TabularType createBundlesTableType() {
+        try {
+            return new TabularType("BundlesMBeanImpl", "Tables of all BundlesMBeanImpl", BUNDLE, new String[]{"ID"});
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build bundles table type", e);
+        }
+    }
+
     private List<Bundle> selectBundles(String id) throws Exception {
         List<String> ids = Collections.singletonList(id);
         return this.bundleService.selectBundles(ids, false);
     }
 
     public TabularData getBundles() throws MBeanException {
-        try {
-            CompositeType bundleType = new CompositeType("Bundle", "OSGi Bundle",
-                    new String[]{"ID", "Name", "Version", "Start Level", "State"},
-                    new String[]{"ID of the Bundle", "Name of the Bundle", "Version of the Bundle", "Start Level of the Bundle", "Current State of the Bundle"},
-                    new OpenType[]{SimpleType.LONG, SimpleType.STRING, SimpleType.STRING, SimpleType.INTEGER, SimpleType.STRING});
-            TabularType tableType = new TabularType("BundlesMBeanImpl", "Tables of all BundlesMBeanImpl", bundleType, new String[]{"ID"});
-            TabularData table = new TabularDataSupport(tableType);
+        return getBundles(null, 0, -1);
+    }
 
-            Bundle[] bundles = bundleContext.getBundles();
+    public TabularData getBundles(String filter, int offset, int limit) throws MBeanException {
+        try {
+            List<Bundle> bundles;
+            if (filter == null || filter.trim().length() == 0) {
+                bundles = Arrays.asList(bundleContext.getBundles());
+            } else {
+                bundles = selectBundles(filter.trim());
+            }
+            int from = Math.min(Math.max(offset, 0), bundles.size());
+            int to = limit < 0 ? bundles.size() : (int) Math.min(bundles.size(), (long) from + limit);
 
-            for (int i = 0; i < bundles.length; i++) {
+            TabularData table = new TabularDataSupport(BUNDLES_TABLE);
+            for (Bundle bundle : bundles.subList(from, to)) {
                 try {
-                    Bundle bundle = bundles[i];
                     BundleInfo info = bundleService.getInfo(bundle);
                     String bundleStateString = info.getState().toString();
-                    CompositeData data = new CompositeDataSupport(bundleType,
-                            new String[]{"ID", "Name", "Version", "Start Level", "State"},
+                    CompositeData data = new CompositeDataSupport(BUNDLE,
+                            BUNDLE_ITEMS,
                             new Object[]{info.getBundleId(), info.getSymbolicName(), info.getVersion(), info.getStartLevel(), bundleStateString});
                     table.put(data);
                 } catch (Exception e) {
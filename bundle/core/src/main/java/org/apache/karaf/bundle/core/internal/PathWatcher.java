@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.bundle.core.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches directories for created or modified files using the java 7
+ * <code>java.nio.file.WatchService</code>, through reflection so that
+ * it can be used when it is available only.
+ */
+class PathWatcher {
+
+    private static final Method GET_DEFAULT;
+    private static final Method NEW_WATCH_SERVICE;
+    private static final Method TO_PATH;
+    private static final Method TO_FILE;
+    private static final Method REGISTER;
+    private static final Method POLL;
+    private static final Method CLOSE;
+    private static final Method POLL_EVENTS;
+    private static final Method RESET;
+    private static final Method CANCEL;
+    private static final Method WATCHABLE;
+    private static final Object KINDS;
+
+    static {
+        Method getDefault = null;
+        Method newWatchService = null;
+        Method toPath = null;
+        Method toFile = null;
+        Method register = null;
+        Method poll = null;
+        Method close = null;
+        Method pollEvents = null;
+        Method reset = null;
+        Method cancel = null;
+        Method watchable = null;
+        Object kinds = null;
+        try {
+            Class<?> fileSystems = Class.forName("java.nio.file.FileSystems");
+            Class<?> fileSystem = Class.forName("java.nio.file.FileSystem");
+            Class<?> path = Class.forName("java.nio.file.Path");
+            Class<?> watchService = Class.forName("java.nio.file.WatchService");
+            Class<?> watchKey = Class.forName("java.nio.file.WatchKey");
+            Class<?> kind = Class.forName("java.nio.file.WatchEvent$Kind");
+            Class<?> standardKinds = Class.forName("java.nio.file.StandardWatchEventKinds");
+            getDefault = fileSystems.getMethod("getDefault");
+            newWatchService = fileSystem.getMethod("newWatchService");
+            toPath = File.class.getMethod("toPath");
+            toFile = path.getMethod("toFile");
+            kinds = Array.newInstance(kind, 2);
+            Array.set(kinds, 0, standardKinds.getField("ENTRY_CREATE").get(null));
+            Array.set(kinds, 1, standardKinds.getField("ENTRY_MODIFY").get(null));
+            register = path.getMethod("register", watchService, kinds.getClass());
+            poll = watchService.getMethod("poll", long.class, TimeUnit.class);
+            close = watchService.getMethod("close");
+            pollEvents = watchKey.getMethod("pollEvents");
+            reset = watchKey.getMethod("reset");
+            cancel = watchKey.getMethod("cancel");
+            watchable = watchKey.getMethod("watchable");
+        } catch (Exception e) {
+            // the watch service is not available before java 7
+            getDefault = null;
+        }
+        GET_DEFAULT = getDefault;
+        NEW_WATCH_SERVICE = newWatchService;
+        TO_PATH = toPath;
+        TO_FILE = toFile;
+        REGISTER = register;
+        POLL = poll;
+        CLOSE = close;
+        POLL_EVENTS = pollEvents;
+        RESET = reset;
+        CANCEL = cancel;
+        WATCHABLE = watchable;
+        KINDS = kinds;
+    }
+
+    private final Object watchService;
+    private final Map<File, Object> keys = new HashMap<File, Object>();
+
+    private PathWatcher(Object watchService) {
+        this.watchService = watchService;
+    }
+
+    static boolean isSupported() {
+        return GET_DEFAULT != null;
+    }
+
+    /**
+     * @return a new watcher, or <code>null</code> if the watch service is not available
+     */
+    static PathWatcher create() {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            return new PathWatcher(NEW_WATCH_SERVICE.invoke(GET_DEFAULT.invoke(null)));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Watch exactly the given directories, registering the new ones and cancelling the others.
+     */
+    void watch(Set<File> directories) throws IOException {
+        for (Iterator<Map.Entry<File, Object>> it = keys.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<File, Object> entry = it.next();
+            if (!directories.contains(entry.getKey())) {
+                invoke(CANCEL, entry.getValue());
+                it.remove();
+            }
+        }
+        for (File directory : directories) {
+            if (!keys.containsKey(directory) && directory.isDirectory()) {
+                keys.put(directory, invoke(REGISTER, invoke(TO_PATH, directory), watchService, KINDS));
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if all the given directories are watched
+     */
+    boolean isWatching(Set<File> directories) {
+        return keys.keySet().containsAll(directories);
+    }
+
+    /**
+     * Wait for files to be created or modified.
+     *
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return the directories containing changed files, empty if none changed before the timeout
+     */
+    Set<File> poll(long timeout) throws IOException {
+        Set<File> changed = new HashSet<File>();
+        Object key = invoke(POLL, watchService, timeout, TimeUnit.MILLISECONDS);
+        while (key != null) {
+            invoke(POLL_EVENTS, key);
+            changed.add((File) invoke(TO_FILE, invoke(WATCHABLE, key)));
+            if (!(Boolean) invoke(RESET, key)) {
+                // the directory has been deleted
+                keys.values().remove(key);
+            }
+            key = invoke(POLL, watchService, 0L, TimeUnit.MILLISECONDS);
+        }
+        return changed;
+    }
+
+    void close() {
+        try {
+            invoke(CLOSE, watchService);
+        } catch (Exception e) {
+            // ignore
+        }
+        keys.clear();
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) throws IOException {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw (IOException) new IOException(e.getMessage()).initCause(e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw (IOException) new InterruptedIOException().initCause(cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (IOException) new IOException(cause.getMessage()).initCause(cause);
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.bundle.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.karaf.bundle.core.BundleInfo;
+import org.apache.karaf.bundle.core.BundleState;
+import org.apache.karaf.bundle.core.BundleStateService;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
+import org.osgi.framework.startlevel.BundleStartLevel;
+
+public class BundleInfoCacheTest {
+
+    private BundleInfoCache cache;
+
+    @Before
+    public void setUp() {
+        BundleContext bundleContext = createMock(BundleContext.class);
+        bundleContext.addBundleListener(EasyMock.<BundleListener>anyObject());
+        expect(bundleContext.getBundles()).andReturn(new Bundle[0]).anyTimes();
+        bundleContext.removeBundleListener(EasyMock.<BundleListener>anyObject());
+        expectLastCall().anyTimes();
+        replay(bundleContext);
+        cache = new BundleInfoCache(bundleContext);
+        cache.start();
+    }
+
+    @After
+    public void tearDown() {
+        cache.stop();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        Bundle bundle = createBundle(1, "a", Bundle.ACTIVE, 80);
+        BundleInfo info = createInfo(80);
+        cache.put(bundle, BundleState.Unknown, info, cache.getGeneration());
+        assertSame(info, cache.get(bundle, BundleState.Unknown));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testStartLevelChange() {
+        Bundle bundle = createBundle(1, "a", Bundle.ACTIVE, 60);
+        cache.put(bundle, BundleState.Unknown, createInfo(80), cache.getGeneration());
+        assertNull(cache.get(bundle, BundleState.Unknown));
+    }
+
+    @Test
+    public void testExtendedStateChange() {
+        // state services which do not notify their changes must not leave a stale state
+        Bundle bundle = createBundle(1, "a", Bundle.ACTIVE, 80);
+        BundleInfo info = createInfo(80);
+        cache.put(bundle, BundleState.Active, info, cache.getGeneration());
+        assertSame(info, cache.get(bundle, BundleState.Active));
+        assertNull(cache.get(bundle, BundleState.Failure));
+    }
+
+    @Test
+    public void testStaleGeneration() {
+        Bundle bundle = createBundle(1, "a", Bundle.ACTIVE, 80);
+        long generation = cache.getGeneration();
+        cache.invalidate(2);
+        cache.put(bundle, BundleState.Unknown, createInfo(80), generation);
+        assertNull(cache.get(bundle, BundleState.Unknown));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testStateChanged() {
+        Bundle bundle1 = createBundle(1, "a", Bundle.ACTIVE, 80);
+        Bundle bundle2 = createBundle(2, "b", Bundle.ACTIVE, 80);
+        BundleInfo info2 = createInfo(80);
+        cache.put(bundle1, BundleState.Unknown, createInfo(80), cache.getGeneration());
+        cache.put(bundle2, BundleState.Unknown, info2, cache.getGeneration());
+
+        cache.stateChanged(bundle1);
+
+        assertNull(cache.get(bundle1, BundleState.Unknown));
+        assertSame(info2, cache.get(bundle2, BundleState.Unknown));
+    }
+
+    @Test
+    public void testStateServicesChanged() {
+        Bundle bundle = createBundle(1, "a", Bundle.ACTIVE, 80);
+        BundleStateService service = createMock(BundleStateService.class);
+        replay(service);
+        cache.put(bundle, BundleState.Unknown, createInfo(80), cache.getGeneration());
+
+        cache.bindStateService(service, Collections.<String, Object>emptyMap());
+        assertNull(cache.get(bundle, BundleState.Unknown));
+
+        cache.put(bundle, BundleState.Unknown, createInfo(80), cache.getGeneration());
+        cache.unbindStateService(service, Collections.<String, Object>emptyMap());
+        assertNull(cache.get(bundle, BundleState.Unknown));
+    }
+
+    @Test
+    public void testBundleEvents() {
+        Bundle bundle1 = createBundle(1, "a", Bundle.ACTIVE, 80);
+        Bundle bundle2 = createBundle(2, "b", Bundle.ACTIVE, 80);
+        BundleInfo info2 = createInfo(80);
+        cache.put(bundle1, BundleState.Unknown, createInfo(80), cache.getGeneration());
+        cache.put(bundle2, BundleState.Unknown, info2, cache.getGeneration());
+
+        cache.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundle1));
+        assertNull(cache.get(bundle1, BundleState.Unknown));
+        assertSame(info2, cache.get(bundle2, BundleState.Unknown));
+
+        cache.bundleChanged(new BundleEvent(BundleEvent.UNRESOLVED, bundle1));
+        assertNull(cache.get(bundle2, BundleState.Unknown));
+    }
+
+    @Test
+    public void testNames() {
+        Bundle bundle = createBundle(1, "a", Bundle.ACTIVE, 80);
+        String[] names = cache.getNames(bundle);
+        assertEquals("a", names[0]);
+        assertEquals("Bundle a", names[1]);
+        assertEquals("1.0.0", names[2]);
+        assertSame(names, cache.getNames(bundle));
+
+        cache.bundleChanged(new BundleEvent(BundleEvent.UPDATED, bundle));
+        String[] updated = cache.getNames(bundle);
+        assertEquals("a", updated[0]);
+        assertEquals(false, names == updated);
+    }
+
+    @Test
+    public void testStopped() {
+        Bundle bundle = createBundle(1, "a", Bundle.ACTIVE, 80);
+        cache.stop();
+        cache.put(bundle, BundleState.Unknown, createInfo(80), cache.getGeneration());
+        assertNull(cache.get(bundle, BundleState.Unknown));
+    }
+
+    static Bundle createBundle(long id, String symbolicName, int state, int startLevel) {
+        Bundle bundle = createMock(Bundle.class);
+        expect(bundle.getBundleId()).andReturn(id).anyTimes();
+        expect(bundle.getSymbolicName()).andReturn(symbolicName).anyTimes();
+        expect(bundle.getState()).andReturn(state).anyTimes();
+        expect(bundle.getLastModified()).andReturn(1000L).anyTimes();
+        Dictionary<String, String> headers = new Hashtable<String, String>();
+        headers.put(Constants.BUNDLE_NAME, "Bundle " + symbolicName);
+        headers.put(Constants.BUNDLE_VERSION, "1.0.0");
+        expect(bundle.getHeaders()).andReturn(headers).anyTimes();
+        BundleStartLevel bsl = createMock(BundleStartLevel.class);
+        expect(bsl.getStartLevel()).andReturn(startLevel).anyTimes();
+        expect(bundle.adapt(BundleStartLevel.class)).andReturn(bsl).anyTimes();
+        replay(bundle, bsl);
+        return bundle;
+    }
+
+    private static BundleInfo createInfo(int startLevel) {
+        BundleInfo info = createMock(BundleInfo.class);
+        expect(info.getStartLevel()).andReturn(startLevel).anyTimes();
+        replay(info);
+        return info;
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.bundle.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
+public class BundleSelectorImplTest {
+
+    private Bundle[] bundles;
+    private BundleContext bundleContext;
+
+    @Before
+    public void setUp() {
+        bundles = new Bundle[] {
+                BundleInfoCacheTest.createBundle(0, "org.apache.felix.framework", Bundle.ACTIVE, 0),
+                BundleInfoCacheTest.createBundle(1, "org.apache.karaf.shell.console", Bundle.ACTIVE, 30),
+                BundleInfoCacheTest.createBundle(2, "org.apache.karaf.bundle.core", Bundle.ACTIVE, 30),
+                BundleInfoCacheTest.createBundle(3, "org.ops4j.pax.url.mvn", Bundle.ACTIVE, 5)
+        };
+        bundleContext = createMock(BundleContext.class);
+        expect(bundleContext.getBundles()).andReturn(bundles).anyTimes();
+        for (Bundle bundle : bundles) {
+            expect(bundleContext.getBundle(bundle.getBundleId())).andReturn(bundle).anyTimes();
+        }
+        expect(bundleContext.getBundle(4)).andReturn(null).anyTimes();
+        replay(bundleContext);
+    }
+
+    @Test
+    public void testAllBundles() {
+        BundleSelectorImpl selector = new BundleSelectorImpl(bundleContext);
+        assertEquals(Arrays.asList(bundles), selector.selectBundles(Collections.<String>emptyList(), true));
+    }
+
+    @Test
+    public void testIds() {
+        BundleSelectorImpl selector = new BundleSelectorImpl(bundleContext);
+        assertEquals(Arrays.asList(bundles[2], bundles[0]), selector.selectBundles(Arrays.asList("2", "0", "4"), false));
+    }
+
+    @Test
+    public void testRange() {
+        BundleSelectorImpl selector = new BundleSelectorImpl(bundleContext);
+        assertEquals(Arrays.asList(bundles[1], bundles[2], bundles[3]), selector.selectBundles(Arrays.asList("1-4"), false));
+        assertEquals(0, selector.selectBundles(Arrays.asList("3-1"), false).size());
+    }
+
+    @Test
+    public void testNames() {
+        BundleSelectorImpl selector = new BundleSelectorImpl(bundleContext);
+        assertEquals(Arrays.asList(bundles[1], bundles[2]), selector.selectBundles(Arrays.asList("karaf"), false));
+        assertEquals(Arrays.asList(bundles[3]), selector.selectBundles(Arrays.asList("pax.*mvn"), false));
+        assertEquals(Arrays.asList(bundles[0]), selector.selectBundles(Arrays.asList("Bundle org.apache.felix"), false));
+        assertEquals(0, selector.selectBundles(Arrays.asList("pax.+url$"), false).size());
+    }
+
+    @Test
+    public void testNameAndVersion() {
+        BundleSelectorImpl selector = new BundleSelectorImpl(bundleContext);
+        assertEquals(Arrays.asList(bundles[2]), selector.selectBundles(Arrays.asList("bundle.core/1.0"), false));
+        assertEquals(0, selector.selectBundles(Arrays.asList("bundle.core/2.0"), false).size());
+    }
+
+    @Test
+    public void testCachedNames() {
+        BundleContext cacheContext = createNiceMock(BundleContext.class);
+        replay(cacheContext);
+        BundleInfoCache cache = new BundleInfoCache(cacheContext);
+        cache.start();
+        BundleSelectorImpl selector = new BundleSelectorImpl(bundleContext, cache);
+        List<Bundle> expected = new ArrayList<Bundle>(Arrays.asList(bundles[1], bundles[2]));
+        assertEquals(expected, selector.selectBundles(Arrays.asList("org.apache.karaf"), false));
+        assertSame(cache.getNames(bundles[1]), cache.getNames(bundles[1]));
+        assertEquals(expected, selector.selectBundles(Arrays.asList("org.apache.karaf"), false));
+        cache.stop();
+    }
+
+}
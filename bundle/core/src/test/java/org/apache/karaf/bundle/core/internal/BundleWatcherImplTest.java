@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.bundle.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.karaf.bundle.core.BundleService;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+public class BundleWatcherImplTest {
+
+    private static final String URL = "mvn:org.foo/*";
+
+    private File repository;
+    private BundleWatcherImpl watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        repository = File.createTempFile("repository", null);
+        repository.delete();
+        repository.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        if (watcher != null) {
+            watcher.stop();
+        }
+        delete(repository);
+    }
+
+    @Test
+    public void testUpdatesAreBatched() throws Exception {
+        File a = write("org/foo/a/1.0/a-1.0.jar", 0);
+        File b = write("org/foo/b/1.0/b-1.0.jar", 0);
+        Bundle bundleA = createBundle("mvn:org.foo/a/1.0", a);
+        Bundle bundleB = createBundle("mvn:org.foo/b/1.0", b);
+
+        final List<Collection<Bundle>> refreshes = new CopyOnWriteArrayList<Collection<Bundle>>();
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        FrameworkWiring wiring = createMock(FrameworkWiring.class);
+        wiring.refreshBundles(EasyMock.<Collection<Bundle>>anyObject(), EasyMock.<FrameworkListener>anyObject());
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            @SuppressWarnings("unchecked")
+            public Object answer() throws Throwable {
+                Object[] arguments = EasyMock.getCurrentArguments();
+                refreshes.add(new ArrayList<Bundle>((Collection<Bundle>) arguments[0]));
+                // the listeners varargs are given as separate arguments
+                for (int i = 1; i < arguments.length; i++) {
+                    ((FrameworkListener) arguments[i]).frameworkEvent(null);
+                }
+                refreshed.countDown();
+                return null;
+            }
+        }).anyTimes();
+        Bundle system = createMock(Bundle.class);
+        expect(system.adapt(FrameworkWiring.class)).andReturn(wiring).anyTimes();
+        BundleContext bundleContext = createMock(BundleContext.class);
+        expect(bundleContext.getBundle(0)).andReturn(system).anyTimes();
+        bundleContext.addBundleListener(EasyMock.<BundleListener>anyObject());
+        bundleContext.removeBundleListener(EasyMock.<BundleListener>anyObject());
+        expectLastCall().anyTimes();
+        BundleService bundleService = createMock(BundleService.class);
+        expect(bundleService.getBundlesByURL(URL)).andReturn(Arrays.asList(bundleA, bundleB)).anyTimes();
+        replay(wiring, system, bundleContext, bundleService);
+
+        watcher = new BundleWatcherImpl(bundleContext, new MavenConfigService(null) {
+            @Override
+            public File getLocalRepository() {
+                return repository;
+            }
+        }, bundleService);
+        watcher.setInterval(100);
+        watcher.setDebounce(1000);
+        watcher.add(URL);
+        watcher.start();
+        // let the watcher register the directories
+        Thread.sleep(300);
+
+        // both artifacts are written within the debounce period
+        write("org/foo/a/1.0/a-1.0.jar", 10000);
+        Thread.sleep(100);
+        write("org/foo/b/1.0/b-1.0.jar", 10000);
+
+        assertTrue(refreshed.await(10, TimeUnit.SECONDS));
+        // no other refresh follows
+        Thread.sleep(1000);
+        watcher.stop();
+        assertEquals(1, refreshes.size());
+        assertEquals(new HashSet<Bundle>(Arrays.asList(bundleA, bundleB)), new HashSet<Bundle>(refreshes.get(0)));
+        verify(bundleA, bundleB);
+    }
+
+    private Bundle createBundle(String location, final File artifact) throws Exception {
+        Bundle bundle = createNiceMock(Bundle.class);
+        expect(bundle.getLocation()).andReturn(location).anyTimes();
+        // the bundle has been installed from the current artifact
+        final AtomicLong lastModified = new AtomicLong(artifact.lastModified());
+        expect(bundle.getLastModified()).andAnswer(new IAnswer<Long>() {
+            public Long answer() {
+                return lastModified.get();
+            }
+        }).anyTimes();
+        // and is up to date once updated, so that later events on the artifact do not update it again
+        bundle.update(EasyMock.<InputStream>anyObject());
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() {
+                lastModified.set(artifact.lastModified());
+                return null;
+            }
+        }).once();
+        replay(bundle);
+        return bundle;
+    }
+
+    /**
+     * Write an artifact of the repository, with a modification time in the future by the given offset.
+     */
+    private File write(String path, long offset) throws IOException {
+        File file = new File(repository, path);
+        file.getParentFile().mkdirs();
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(new byte[(int) (1 + offset / 1000)]);
+        } finally {
+            os.close();
+        }
+        if (offset > 0) {
+            file.setLastModified(System.currentTimeMillis() + offset);
+        }
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.bundle.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PathWatcherTest {
+
+    private File dir;
+    private PathWatcher watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(PathWatcher.isSupported());
+        dir = File.createTempFile("watcher", null);
+        dir.delete();
+        dir.mkdirs();
+        watcher = PathWatcher.create();
+        assertNotNull(watcher);
+    }
+
+    @After
+    public void tearDown() {
+        if (watcher != null) {
+            watcher.close();
+        }
+        if (dir != null) {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testRegisterAndPoll() throws Exception {
+        File a = new File(dir, "a");
+        a.mkdirs();
+        Set<File> directories = Collections.singleton(a);
+        watcher.watch(directories);
+        assertTrue(watcher.isWatching(directories));
+        assertTrue(watcher.poll(10).isEmpty());
+
+        write(new File(a, "artifact.jar"));
+        assertEquals(directories, poll(directories));
+        // the key has been reset, so that the next changes are reported as well
+        write(new File(a, "artifact.jar"));
+        assertEquals(directories, poll(directories));
+    }
+
+    @Test
+    public void testWatchOnlyGivenDirectories() throws Exception {
+        File a = new File(dir, "a");
+        File b = new File(dir, "b");
+        a.mkdirs();
+        b.mkdirs();
+        watcher.watch(new HashSet<File>(Arrays.asList(a, b)));
+        watcher.watch(Collections.singleton(a));
+        assertTrue(watcher.isWatching(Collections.singleton(a)));
+        assertFalse(watcher.isWatching(Collections.singleton(b)));
+
+        // the cancelled directory is not reported
+        write(new File(b, "artifact.jar"));
+        write(new File(a, "artifact.jar"));
+        assertEquals(Collections.singleton(a), poll(Collections.singleton(a)));
+    }
+
+    @Test
+    public void testMissingDirectory() throws Exception {
+        File missing = new File(dir, "missing");
+        Set<File> directories = Collections.singleton(missing);
+        watcher.watch(directories);
+        assertFalse(watcher.isWatching(directories));
+
+        // registered once it has been created
+        missing.mkdirs();
+        watcher.watch(directories);
+        assertTrue(watcher.isWatching(directories));
+    }
+
+    @Test
+    public void testResetOnDeletion() throws Exception {
+        File a = new File(dir, "a");
+        a.mkdirs();
+        Set<File> directories = Collections.singleton(a);
+        watcher.watch(directories);
+        write(new File(a, "artifact.jar"));
+        delete(a);
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (watcher.isWatching(directories) && System.currentTimeMillis() < timeout) {
+            watcher.poll(100);
+        }
+        // the key of the deleted directory is dropped, so that it is registered again once created
+        assertFalse(watcher.isWatching(directories));
+        a.mkdirs();
+        watcher.watch(directories);
+        assertTrue(watcher.isWatching(directories));
+        write(new File(a, "artifact.jar"));
+        assertEquals(directories, poll(directories));
+    }
+
+    /**
+     * Poll until the given directories are reported, as some watch services are polling themselves.
+     */
+    private Set<File> poll(Set<File> expected) throws IOException {
+        Set<File> changed = new HashSet<File>();
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!changed.containsAll(expected) && System.currentTimeMillis() < timeout) {
+            changed.addAll(watcher.poll(100));
+        }
+        return changed;
+    }
+
+    private static void write(File file) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(1);
+        } finally {
+            os.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
@@ -26,12 +26,15 @@ import org.springframework.osgi.context.event.OsgiBundleApplicationContextListen
 
 public class Activator implements BundleActivator {
 
+    private SpringStateService springStateService;
+
     public void start(BundleContext bundleContext) {
 	    registerSpringBundleStateService(bundleContext);
     }
 
 	private void registerSpringBundleStateService(BundleContext bundleContext) {
-		SpringStateService springStateService = new SpringStateService(bundleContext);
+		springStateService = new SpringStateService(bundleContext);
+		springStateService.start();
 	    Dictionary<String, ?> properties = new Hashtable<String, String>();
 	    String[] classes2 = new String[] {
 				OsgiBundleApplicationContextListener.class.getName(),
@@ -41,6 +44,10 @@ public class Activator implements BundleActivator {
 	}
 
     public void stop(BundleContext context) {
+        if (springStateService != null) {
+            springStateService.stop();
+            springStateService = null;
+        }
     }
 
 }
\ No newline at end of file
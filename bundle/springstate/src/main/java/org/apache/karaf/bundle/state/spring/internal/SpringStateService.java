@@ -24,11 +24,13 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.karaf.bundle.core.BundleState;
+import org.apache.karaf.bundle.core.BundleStateListener;
 import org.apache.karaf.bundle.core.BundleStateService;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleListener;
+import org.osgi.util.tracker.ServiceTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.osgi.context.event.OsgiBundleApplicationContextEvent;
@@ -43,9 +45,19 @@ public class SpringStateService implements OsgiBundleApplicationContextListener,
     private static final Logger LOG = LoggerFactory.getLogger(SpringStateService.class);
 
     private final Map<Long, OsgiBundleApplicationContextEvent> states;
+    private final ServiceTracker listeners;
 
     public SpringStateService(BundleContext bundleContext) {
         this.states = new ConcurrentHashMap<Long, OsgiBundleApplicationContextEvent>();
+        this.listeners = new ServiceTracker(bundleContext, BundleStateListener.class.getName(), null);
+    }
+
+    public void start() {
+        listeners.open();
+    }
+
+    public void stop() {
+        listeners.close();
     }
 
     public String getName() {
@@ -101,6 +113,21 @@ public class SpringStateService implements OsgiBundleApplicationContextListener,
             LOG.debug("Spring app state changed to " + state + " for bundle " + event.getBundle().getBundleId());
         }
         states.put(event.getBundle().getBundleId(), event);
+        fireStateChanged(event.getBundle());
+    }
+
+    private void fireStateChanged(Bundle bundle) {
+        Object[] services = listeners.getServices();
+        if (services == null) {
+            return;
+        }
+        for (Object service : services) {
+            try {
+                ((BundleStateListener) service).stateChanged(bundle);
+            } catch (RuntimeException e) {
+                LOG.warn("Error notifying the state change of bundle " + bundle.getBundleId(), e);
+            }
+        }
     }
 
     private BundleState mapEventToState(OsgiBundleApplicationContextEvent event) {
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.config.command;
+
+import java.util.Dictionary;
+import java.util.Map;
+
+import org.apache.karaf.shell.commands.Command;
+
+@Command(scope = "config", name = "apply", description = "Saves and propagates at once the configurations staged with config:update --batch.")
+public class ApplyCommand extends ConfigCommandSupport {
+
+    @SuppressWarnings("rawtypes")
+    protected Object doExecute() throws Exception {
+        Map<String, Dictionary> batch = getBatch(false);
+        if (batch == null || batch.isEmpty()) {
+            System.err.println("No configuration is staged--run the update command with --batch first");
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        int updated = this.configRepository.update(batch);
+        long time = System.currentTimeMillis() - start;
+        this.session.put(PROPERTY_CONFIG_BATCH, null);
+        System.out.println("Applied " + updated + " of " + batch.size() + " configurations in " + time + " ms");
+        return null;
+    }
+
+}
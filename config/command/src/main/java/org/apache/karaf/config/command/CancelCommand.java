@@ -17,13 +17,20 @@
 package org.apache.karaf.config.command;
 
 import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
 
 @Command(scope = "config", name = "cancel", description = "Cancels the changes to the configuration being edited.")
 public class CancelCommand extends ConfigCommandSupport {
 
+    @Option(name = "-b", aliases = "--batch", description = "Also discards the configurations staged with config:update --batch", required = false, multiValued = false)
+    boolean batch;
+
     protected Object doExecute() throws Exception {
         session.put(PROPERTY_CONFIG_PID, null);
         session.put(PROPERTY_CONFIG_PROPS, null);
+        if (batch) {
+            session.put(PROPERTY_CONFIG_BATCH, null);
+        }
         return null;
     }
 
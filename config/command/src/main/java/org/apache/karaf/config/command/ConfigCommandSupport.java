@@ -17,6 +17,8 @@
 package org.apache.karaf.config.command;
 
 import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.karaf.config.core.ConfigRepository;
 import org.apache.karaf.shell.console.OsgiCommandSupport;
@@ -30,6 +32,7 @@ import org.apache.karaf.shell.console.OsgiCommandSupport;
 public abstract class ConfigCommandSupport extends OsgiCommandSupport {
     public static final String PROPERTY_CONFIG_PID = "ConfigCommand.PID";
     public static final String PROPERTY_CONFIG_PROPS = "ConfigCommand.Props";
+    public static final String PROPERTY_CONFIG_BATCH = "ConfigCommand.Batch";
     protected ConfigRepository configRepository;
 
     @SuppressWarnings("rawtypes")
@@ -37,6 +40,19 @@ public abstract class ConfigCommandSupport extends OsgiCommandSupport {
         return (Dictionary) this.session.get(PROPERTY_CONFIG_PROPS);
     }
     
+    /**
+     * Returns the configurations staged in the session to be applied at once.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected Map<String, Dictionary> getBatch(boolean create) {
+        Map<String, Dictionary> batch = (Map<String, Dictionary>) this.session.get(PROPERTY_CONFIG_BATCH);
+        if (batch == null && create) {
+            batch = new LinkedHashMap<String, Dictionary>();
+            this.session.put(PROPERTY_CONFIG_BATCH, batch);
+        }
+        return batch;
+    }
+
     public void setConfigRepository(ConfigRepository configRepository) {
         this.configRepository = configRepository;
     }
@@ -17,6 +17,7 @@
 package org.apache.karaf.config.command;
 
 import java.util.Dictionary;
+import java.util.Map;
 
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
@@ -39,7 +40,9 @@ public class EditCommand extends ConfigCommandSupport {
             return null;
         }
 
-        Dictionary props = this.configRepository.getConfigProperties(pid);
+        Map<String, Dictionary> batch = getBatch(false);
+        Dictionary props = batch != null && batch.get(pid) != null
+                ? batch.get(pid) : this.configRepository.getConfigProperties(pid);
         this.session.put(PROPERTY_CONFIG_PID, pid);
         this.session.put(PROPERTY_CONFIG_PROPS, props);
         return null;
@@ -19,10 +19,14 @@ package org.apache.karaf.config.command;
 import java.util.Dictionary;
 
 import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
 
 @Command(scope = "config", name = "update", description = "Saves and propagates changes from the configuration being edited.")
 public class UpdateCommand extends ConfigCommandSupport {
 
+    @Option(name = "-b", aliases = "--batch", description = "Stages the changes to be applied with other configurations by config:apply", required = false, multiValued = false)
+    boolean batch;
+
     @SuppressWarnings("rawtypes")
     protected Object doExecute() throws Exception {
         Dictionary props = getEditedProps();
@@ -32,7 +36,12 @@ public class UpdateCommand extends ConfigCommandSupport {
         }
 
         String pid = (String) this.session.get(PROPERTY_CONFIG_PID);
-        this.configRepository.update(pid, props);
+        if (batch) {
+            // a configuration staged several times is only applied once
+            getBatch(true).put(pid, props);
+        } else {
+            this.configRepository.update(pid, props);
+        }
         this.session.put(PROPERTY_CONFIG_PID, null);
         this.session.put(PROPERTY_CONFIG_PROPS, null);
         return null;
@@ -20,8 +20,10 @@ package org.apache.karaf.config.command;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 
 import java.util.Dictionary;
+import java.util.Hashtable;
 import java.util.Properties;
 
 import junit.framework.TestCase;
@@ -84,4 +86,45 @@ public class UpdateCommandTest extends TestCase {
 
     }
 
+    public void testBatchUpdateSkipsUnchangedConfigurations() throws Exception {
+        Dictionary<String, Object> unchanged = new Hashtable<String, Object>();
+        unchanged.put("key", "value");
+        Dictionary<String, Object> current = new Hashtable<String, Object>();
+        current.put("key", "value");
+        current.put("service.pid", "unchanged.pid");
+        Dictionary<String, Object> changed = new Hashtable<String, Object>();
+        changed.put("key", "new value");
+
+        ApplyCommand apply = new ApplyCommand();
+        apply.setBundleContext(context);
+        apply.setConfigRepository(new ConfigRepositoryImpl(admin));
+
+        command.batch = true;
+        session.put(ConfigCommandSupport.PROPERTY_CONFIG_PID, "unchanged.pid");
+        session.put(ConfigCommandSupport.PROPERTY_CONFIG_PROPS, unchanged);
+        command.execute(session);
+        session.put(ConfigCommandSupport.PROPERTY_CONFIG_PID, "changed.pid");
+        session.put(ConfigCommandSupport.PROPERTY_CONFIG_PROPS, changed);
+        command.execute(session);
+
+        Configuration configUnchanged = createMock(Configuration.class);
+        expect(admin.getConfiguration("unchanged.pid", null)).andReturn(configUnchanged);
+        expect(configUnchanged.getProperties()).andReturn(current).anyTimes();
+
+        Configuration configChanged = createMock(Configuration.class);
+        expect(admin.getConfiguration("changed.pid", null)).andReturn(configChanged);
+        expect(configChanged.getProperties()).andReturn(new Hashtable<String, Object>()).anyTimes();
+        expect(configChanged.getBundleLocation()).andReturn(null);
+        configChanged.update(changed);
+        replay(admin);
+        replay(configUnchanged);
+        replay(configChanged);
+
+        apply.execute(session);
+
+        verify(configUnchanged);
+        verify(configChanged);
+        assertNull(session.get(ConfigCommandSupport.PROPERTY_CONFIG_BATCH));
+    }
+
 }
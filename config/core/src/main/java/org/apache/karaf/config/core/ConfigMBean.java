@@ -94,4 +94,14 @@ public interface ConfigMBean {
      */
     void update(String pid, Map<String, String> properties) throws MBeanException;
 
+    /**
+     * Update several configurations at once. Unchanged configurations are not updated
+     * again, and the changes already applied are reverted if one of them fails.
+     *
+     * @param configurations the new properties by configuration PID, null to delete the configuration.
+     * @return the time taken to apply the changes, in milliseconds.
+     * @throws MBeanException
+     */
+    long update(Map<String, Map<String, String>> configurations) throws MBeanException;
+
 }
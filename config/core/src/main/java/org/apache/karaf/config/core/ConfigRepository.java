@@ -18,6 +18,7 @@ package org.apache.karaf.config.core;
 
 import java.io.IOException;
 import java.util.Dictionary;
+import java.util.Map;
 
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.service.cm.ConfigurationAdmin;
@@ -33,6 +34,20 @@ public interface ConfigRepository {
     @SuppressWarnings("rawtypes")
     void update(String pid, Dictionary props) throws IOException;
 
+    /**
+     * Applies the changes of several configurations at once.
+     * Configurations whose properties do not change are left untouched, so they are
+     * neither dispatched again to their managed services nor written again to storage.
+     * The other ones are updated in the order of the map, then the configurations
+     * mapped to null are deleted. If a change fails, the changes already applied
+     * are reverted.
+     * @param configs new properties by pid, null to delete the configuration
+     * @return the number of configurations updated or deleted
+     * @throws Exception
+     */
+    @SuppressWarnings("rawtypes")
+    int update(Map<String, Dictionary> configs) throws Exception;
+
     void delete(String pid) throws Exception;
 
     @SuppressWarnings("rawtypes")
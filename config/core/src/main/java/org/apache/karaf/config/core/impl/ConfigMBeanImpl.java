@@ -19,6 +19,7 @@ import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -155,16 +156,35 @@ public class ConfigMBeanImpl extends StandardMBean implements ConfigMBean {
             if (properties == null) {
                 properties = new HashMap<String, String>();
             }
-            Dictionary<String, String> dictionary = new Hashtable<String, String>();
-            for (String key : properties.keySet()) {
-                dictionary.put(key, properties.get(key));
+            configRepo.update(pid, toDictionary(properties));
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    public long update(Map<String, Map<String, String>> configurations) throws MBeanException {
+        try {
+            long start = System.currentTimeMillis();
+            Map<String, Dictionary> configs = new LinkedHashMap<String, Dictionary>();
+            for (Map.Entry<String, Map<String, String>> entry : configurations.entrySet()) {
+                configs.put(entry.getKey(), entry.getValue() != null ? toDictionary(entry.getValue()) : null);
             }
-            configRepo.update(pid, dictionary);
+            configRepo.update(configs);
+            return System.currentTimeMillis() - start;
         } catch (Exception e) {
             throw new MBeanException(null, e.getMessage());
         }
     }
 
+    private Dictionary<String, String> toDictionary(Map<String, String> properties) {
+        Dictionary<String, String> dictionary = new Hashtable<String, String>();
+        for (String key : properties.keySet()) {
+            dictionary.put(key, properties.get(key));
+        }
+        return dictionary;
+    }
+
 
     public void setConfigRepo(ConfigRepository configRepo) {
         this.configRepo = configRepo;
@@ -16,17 +16,41 @@
  */
 package org.apache.karaf.config.core.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Dictionary;
+import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.karaf.config.core.ConfigRepository;
+import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ConfigRepositoryImpl implements ConfigRepository {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigRepositoryImpl.class);
+
+    /**
+     * Properties set by ConfigurationAdmin or fileinstall, ignored when comparing configurations.
+     */
+    private static final List<String> GENERATED_PROPERTIES = Arrays.asList(
+            Constants.SERVICE_PID,
+            ConfigurationAdmin.SERVICE_FACTORYPID,
+            ConfigurationAdmin.SERVICE_BUNDLELOCATION,
+            "felix.fileinstall.filename");
+
     private ConfigurationAdmin configAdmin;
     
     private File storage;
@@ -35,12 +59,27 @@ public class ConfigRepositoryImpl implements ConfigRepository {
         this.configAdmin = configAdmin;
     }
 
+    /**
+     * @param storage the directory of the .cfg files to delete along with their configurations
+     */
+    public void setStorage(File storage) {
+        this.storage = storage;
+    }
+
     /* (non-Javadoc)
      * @see org.apache.karaf.shell.config.impl.ConfigRepository#update(java.lang.String, java.util.Dictionary, boolean)
      */
     @Override
     @SuppressWarnings("rawtypes")
     public void update(String pid, Dictionary props) throws IOException {
+        Configuration cfg = getConfigurationForUpdate(pid);
+        if (cfg.getBundleLocation() != null) {
+            cfg.setBundleLocation(null);
+        }
+        cfg.update(props);
+    }
+
+    private Configuration getConfigurationForUpdate(String pid) throws IOException {
         Configuration cfg = this.configAdmin.getConfiguration(pid, null);
         if (cfg.getProperties() == null) {
             PidParts pidParts = parsePid(pid);
@@ -48,10 +87,139 @@ public class ConfigRepositoryImpl implements ConfigRepository {
                 cfg = this.configAdmin.createFactoryConfiguration(pidParts.pid, null);
             }
         }
-        if (cfg.getBundleLocation() != null) {
-            cfg.setBundleLocation(null);
+        return cfg;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public int update(Map<String, Dictionary> configs) throws Exception {
+        // look up all the configurations before changing any of them
+        List<Change> updates = new ArrayList<Change>();
+        List<Change> deletes = new ArrayList<Change>();
+        for (Map.Entry<String, Dictionary> entry : configs.entrySet()) {
+            String pid = entry.getKey();
+            if (entry.getValue() == null) {
+                Configuration cfg = this.configAdmin.getConfiguration(pid, null);
+                if (cfg.getProperties() != null) {
+                    Change change = new Change(pid, cfg, cfg.getProperties(), null);
+                    // kept to restore the file if the deletion has to be reverted
+                    change.storageContent = readStorage(pid);
+                    deletes.add(change);
+                }
+            } else {
+                Configuration cfg = getConfigurationForUpdate(pid);
+                Dictionary previous = cfg.getProperties();
+                if (previous == null || !sameProperties(previous, entry.getValue())) {
+                    updates.add(new Change(pid, cfg, previous, entry.getValue()));
+                }
+            }
+        }
+
+        List<Change> applied = new ArrayList<Change>();
+        try {
+            for (Change change : updates) {
+                if (change.cfg.getBundleLocation() != null) {
+                    change.cfg.setBundleLocation(null);
+                }
+                change.cfg.update(change.props);
+                applied.add(change);
+            }
+            for (Change change : deletes) {
+                change.cfg.delete();
+                deleteStorage(change.pid);
+                applied.add(change);
+            }
+        } catch (Exception e) {
+            revert(applied);
+            throw e;
+        }
+        return applied.size();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void revert(List<Change> applied) {
+        for (int i = applied.size() - 1; i >= 0; i--) {
+            Change change = applied.get(i);
+            try {
+                if (change.props == null) {
+                    recreate(change);
+                } else if (change.previous == null) {
+                    change.cfg.delete();
+                } else {
+                    change.cfg.update(change.previous);
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Unable to revert the configuration " + change.pid, e);
+            }
+        }
+    }
+
+    /**
+     * Recreates a deleted configuration, then its file: fileinstall only writes configurations back
+     * to files which exist, and finds the recreated configuration from the file name property.
+     */
+    private void recreate(Change change) throws Exception {
+        Object factoryPid = change.previous.get(ConfigurationAdmin.SERVICE_FACTORYPID);
+        Configuration cfg = factoryPid != null
+                ? this.configAdmin.createFactoryConfiguration(factoryPid.toString(), null)
+                : this.configAdmin.getConfiguration(change.cfg.getPid(), null);
+        cfg.update(change.previous);
+        if (change.storageContent != null) {
+            File cfgFile = new File(storage, change.pid + ".cfg");
+            OutputStream os = new FileOutputStream(cfgFile);
+            try {
+                os.write(change.storageContent);
+            } finally {
+                os.close();
+            }
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static boolean sameProperties(Dictionary previous, Dictionary props) {
+        return countProperties(previous) == countProperties(props) && containsProperties(previous, props);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static int countProperties(Dictionary props) {
+        int count = 0;
+        for (Enumeration e = props.keys(); e.hasMoreElements(); ) {
+            if (!GENERATED_PROPERTIES.contains(e.nextElement())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static boolean containsProperties(Dictionary previous, Dictionary props) {
+        for (Enumeration e = props.keys(); e.hasMoreElements(); ) {
+            Object key = e.nextElement();
+            if (!GENERATED_PROPERTIES.contains(key)
+                    && !Arrays.deepEquals(new Object[] {previous.get(key)}, new Object[] {props.get(key)})) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A configuration changed by a bulk update.
+     */
+    @SuppressWarnings("rawtypes")
+    private static class Change {
+        final String pid;
+        final Configuration cfg;
+        final Dictionary previous;
+        final Dictionary props;
+        byte[] storageContent;
+
+        Change(String pid, Configuration cfg, Dictionary previous, Dictionary props) {
+            this.pid = pid;
+            this.cfg = cfg;
+            this.previous = previous;
+            this.props = props;
         }
-        cfg.update(props);
     }
 
     private PidParts parsePid(String sourcePid) {
@@ -81,6 +249,25 @@ public class ConfigRepositoryImpl implements ConfigRepository {
         deleteStorage(pid);
     }
     
+    private byte[] readStorage(String pid) throws IOException {
+        File cfgFile = storage != null ? new File(storage, pid + ".cfg") : null;
+        if (cfgFile == null || !cfgFile.isFile()) {
+            return null;
+        }
+        InputStream is = new FileInputStream(cfgFile);
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                content.write(buffer, 0, n);
+            }
+            return content.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
     protected void deleteStorage(String pid) throws Exception {
         if (storage != null) {
             File cfgFile = new File(storage, pid + ".cfg");
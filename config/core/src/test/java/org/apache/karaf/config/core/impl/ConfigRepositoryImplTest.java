@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.config.core.impl;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+/**
+ * Test cases for the bulk update of {@link ConfigRepositoryImpl}
+ */
+@SuppressWarnings("rawtypes")
+public class ConfigRepositoryImplTest extends TestCase {
+
+    private static final String CFG_CONTENT = "# comment\nkey = value\n";
+
+    private ConfigurationAdmin admin;
+    private ConfigRepositoryImpl repository;
+    private File storage;
+
+    @Override
+    protected void setUp() throws Exception {
+        admin = createMock(ConfigurationAdmin.class);
+        repository = new ConfigRepositoryImpl(admin);
+        storage = File.createTempFile("storage", "");
+        storage.delete();
+        storage.mkdirs();
+        repository.setStorage(storage);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : storage.listFiles()) {
+            file.delete();
+        }
+        storage.delete();
+    }
+
+    public void testDelete() throws Exception {
+        write("deleted.pid", CFG_CONTENT);
+        Configuration deleted = configuration("deleted.pid", properties("key", "value"));
+        deleted.delete();
+        replay(admin, deleted);
+
+        Map<String, Dictionary> configs = new LinkedHashMap<String, Dictionary>();
+        configs.put("deleted.pid", null);
+        assertEquals(1, repository.update(configs));
+
+        verify(admin, deleted);
+        assertFalse(new File(storage, "deleted.pid.cfg").exists());
+    }
+
+    public void testRevertRecreatesDeletedConfigurationAndFile() throws Exception {
+        write("deleted.pid", CFG_CONTENT);
+        Dictionary previous = properties("key", "value", "felix.fileinstall.filename",
+                new File(storage, "deleted.pid.cfg").toURI().toString());
+        Configuration deleted = configuration("deleted.pid", previous);
+        deleted.delete();
+        // recreated with its former properties
+        deleted.update(previous);
+        Configuration failing = configuration("failing.pid", properties("key", "value"));
+        failing.delete();
+        expectLastCall().andThrow(new IOException("failure"));
+        replay(admin, deleted, failing);
+
+        Map<String, Dictionary> configs = new LinkedHashMap<String, Dictionary>();
+        configs.put("deleted.pid", null);
+        configs.put("failing.pid", null);
+        try {
+            repository.update(configs);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("failure", e.getMessage());
+        }
+
+        verify(admin, deleted, failing);
+        assertEquals(CFG_CONTENT, read("deleted.pid"));
+    }
+
+    public void testRevertRecreatesDeletedFactoryConfiguration() throws Exception {
+        Dictionary previous = properties("key", "value",
+                ConfigurationAdmin.SERVICE_FACTORYPID, "my.factory",
+                "service.pid", "my.factory.1234");
+        Configuration deleted = configuration("my.factory-1", previous);
+        deleted.delete();
+        Configuration recreated = createMock(Configuration.class);
+        expect(admin.createFactoryConfiguration("my.factory", null)).andReturn(recreated);
+        recreated.update(previous);
+        Configuration failing = configuration("failing.pid", properties("key", "value"));
+        failing.delete();
+        expectLastCall().andThrow(new IOException("failure"));
+        replay(admin, deleted, recreated, failing);
+
+        Map<String, Dictionary> configs = new LinkedHashMap<String, Dictionary>();
+        configs.put("my.factory-1", null);
+        configs.put("failing.pid", null);
+        try {
+            repository.update(configs);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+
+        verify(admin, deleted, recreated, failing);
+        assertFalse(new File(storage, "my.factory-1.cfg").exists());
+    }
+
+    public void testRevertUpdates() throws Exception {
+        Dictionary previous = properties("key", "old value");
+        Dictionary props = properties("key", "new value");
+        Configuration updated = configuration("updated.pid", previous);
+        expect(updated.getBundleLocation()).andReturn(null);
+        updated.update(props);
+        updated.update(previous);
+        Configuration failing = configuration("failing.pid", properties("key", "value"));
+        failing.delete();
+        expectLastCall().andThrow(new IOException("failure"));
+        replay(admin, updated, failing);
+
+        Map<String, Dictionary> configs = new LinkedHashMap<String, Dictionary>();
+        configs.put("updated.pid", props);
+        configs.put("failing.pid", null);
+        try {
+            repository.update(configs);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+
+        verify(admin, updated, failing);
+    }
+
+    private Configuration configuration(String pid, Dictionary props) throws IOException {
+        Configuration cfg = createMock(Configuration.class);
+        expect(admin.getConfiguration(pid, null)).andReturn(cfg).anyTimes();
+        expect(cfg.getPid()).andReturn(pid).anyTimes();
+        expect(cfg.getProperties()).andReturn(props).anyTimes();
+        return cfg;
+    }
+
+    private static Dictionary properties(Object... keyValues) {
+        Properties props = new Properties();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            props.put(keyValues[i], keyValues[i + 1]);
+        }
+        return props;
+    }
+
+    private void write(String pid, String content) throws IOException {
+        OutputStream os = new FileOutputStream(new File(storage, pid + ".cfg"));
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    private String read(String pid) throws IOException {
+        InputStream is = new FileInputStream(new File(storage, pid + ".cfg"));
+        try {
+            StringBuilder content = new StringBuilder();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                content.append(new String(buffer, 0, n, "UTF-8"));
+            }
+            return content.toString();
+        } finally {
+            is.close();
+        }
+    }
+
+}
@@ -24,45 +24,125 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 
+import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.karaf.util.DeployerUtils;
 
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import org.osgi.framework.Constants;
 
+/**
+ * Transforms a blueprint xml file into a bundle.
+ * <p>
+ * The xml is processed in a single StAX pass which computes the imported packages,
+ * extracts the <code>manifest</code> elements and copies the rest of the descriptor.
+ * Generated bundles are cached by url and checksum of the xml, so that an unchanged
+ * file is transformed only once.
+ */
 public class BlueprintTransformer {
 
-    static Transformer transformer;
-    static DocumentBuilderFactory dbf;
-    static TransformerFactory tf;
+    static final String BLUEPRINT_NAMESPACE = "http://www.osgi.org/xmlns/blueprint/v1.0.0";
+
+    private static final int CACHE_SIZE = 32;
+
+    private static DocumentBuilderFactory dbf;
+    private static Templates templates;
+    private static XMLInputFactory xif;
+    private static XMLOutputFactory xof;
+    private static XMLEventFactory xef;
 
+    /**
+     * Generated bundles, keyed by url and checksum of the xml.
+     * Guarded by itself.
+     */
+    private static final Map<String, byte[]> BUNDLES = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Result of the processing of a blueprint xml.
+     */
+    private static class Descriptor {
+        final Set<String> packages = new TreeSet<String>();
+        final List<Properties> headers = new ArrayList<Properties>();
+        byte[] xml;
+    }
 
     public static void transform(URL url, OutputStream os) throws Exception {
-        // Build dom document
-        Document doc = parse(url);
+        os.write(transform(url));
+    }
+
+    /**
+     * Transform the blueprint xml at the given url into a bundle.
+     *
+     * @param url the url of the blueprint xml
+     * @return the content of the bundle, which must not be modified
+     */
+    public static byte[] transform(URL url) throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        InputStream is = url.openStream();
+        try {
+            copyInputStream(is, bout);
+        } finally {
+            is.close();
+        }
+        byte[] data = bout.toByteArray();
+        String key = url.toExternalForm() + "#" + checksum(data);
+        byte[] bundle;
+        synchronized (BUNDLES) {
+            bundle = BUNDLES.get(key);
+        }
+        if (bundle == null) {
+            bout = new ByteArrayOutputStream();
+            transform(url, data, bout);
+            bundle = bout.toByteArray();
+            synchronized (BUNDLES) {
+                BUNDLES.put(key, bundle);
+            }
+        }
+        return bundle;
+    }
+
+    private static void transform(URL url, byte[] data, OutputStream os) throws Exception {
+        Descriptor descriptor = process(url, data);
         // Heuristicly retrieve name and version
         String name = getPath(url);
         int idx = name.lastIndexOf('/');
@@ -76,26 +156,18 @@ public class BlueprintTransformer {
         m.getMainAttributes().putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
         m.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, str[0]);
         m.getMainAttributes().putValue(Constants.BUNDLE_VERSION, str[1]);
-        String importPkgs = getImportPackages(analyze(new DOMSource(doc)));
+        String importPkgs = getImportPackages(descriptor.packages);
         if (importPkgs != null && importPkgs.length() > 0) {
             m.getMainAttributes().putValue(Constants.IMPORT_PACKAGE, importPkgs);
         }
         m.getMainAttributes().putValue(Constants.DYNAMICIMPORT_PACKAGE, "*");
-        // Extract manifest entries from the DOM
-        NodeList l = doc.getElementsByTagName("manifest");
-        if (l != null) {
-            for (int i = 0; i < l.getLength(); i++) {
-                Element e = (Element) l.item(i);
-                String text = e.getTextContent();
-                Properties props = new Properties();
-                props.load(new ByteArrayInputStream(text.trim().getBytes()));
-                Enumeration en = props.propertyNames();
-                while (en.hasMoreElements()) {
-                    String k = (String) en.nextElement();
-                    String v = props.getProperty(k);
-                    m.getMainAttributes().putValue(k, v);
-                }
-                e.getParentNode().removeChild(e);
+        // Add the manifest entries extracted from the xml
+        for (Properties props : descriptor.headers) {
+            Enumeration en = props.propertyNames();
+            while (en.hasMoreElements()) {
+                String k = (String) en.nextElement();
+                String v = props.getProperty(k);
+                m.getMainAttributes().putValue(k, v);
             }
         }
 
@@ -115,29 +187,138 @@ public class BlueprintTransformer {
         }
         e = new ZipEntry("OSGI-INF/blueprint/" + name);
         out.putNextEntry(e);
-        // Copy the new DOM
-        if (tf == null) {
-            tf = TransformerFactory.newInstance();
-        }
-        tf.newTransformer().transform(new DOMSource(doc), new StreamResult(out));
+        out.write(descriptor.xml);
         out.closeEntry();
         out.close();
     }
 
-    public static Set<String> analyze(Source source) throws Exception {
-        if (transformer == null) {
-            if (tf == null) {
-                tf = TransformerFactory.newInstance();
+    /**
+     * Parse the blueprint xml, collecting the referenced packages and the manifest
+     * entries, and copy it without the <code>manifest</code> elements.
+     * The packages are the ones the <code>extract.xsl</code> stylesheet would find.
+     */
+    private static Descriptor process(URL url, byte[] data) throws Exception {
+        Descriptor descriptor = new Descriptor();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(data.length);
+        XMLEventReader reader = createEventReader(url, data);
+        XMLEventWriter writer = createEventWriter(bout);
+        try {
+            LinkedList<StartElement> path = new LinkedList<StartElement>();
+            StringBuilder text = null;
+            int manifest = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (manifest > 0) {
+                    // skip the manifest element, only keeping its text
+                    if (event.isStartElement()) {
+                        manifest++;
+                    } else if (event.isEndElement() && --manifest == 0) {
+                        Properties props = new Properties();
+                        props.load(new ByteArrayInputStream(text.toString().trim().getBytes()));
+                        descriptor.headers.add(props);
+                        text = null;
+                    } else if (event.isCharacters()) {
+                        text.append(event.asCharacters().getData());
+                    }
+                    continue;
+                }
+                if (event.isStartDocument()) {
+                    // the copy is always encoded in UTF-8
+                    event = getEventFactory().createStartDocument("UTF-8", ((StartDocument) event).getVersion());
+                } else if (event.isStartElement()) {
+                    StartElement element = event.asStartElement();
+                    QName qname = element.getName();
+                    if ("manifest".equals(qname.getLocalPart()) && qname.getPrefix().length() == 0) {
+                        manifest = 1;
+                        text = new StringBuilder();
+                        continue;
+                    }
+                    StartElement parent = path.peek();
+                    collect(element, parent, descriptor.packages);
+                    if (isBlueprint(element, "value") && isBlueprint(parent, "interfaces")
+                            && path.size() > 1 && isBlueprint(path.get(1), "service")) {
+                        text = new StringBuilder();
+                    }
+                    path.push(element);
+                } else if (event.isCharacters()) {
+                    if (text != null) {
+                        text.append(event.asCharacters().getData());
+                    }
+                } else if (event.isEndElement()) {
+                    path.pop();
+                    if (text != null) {
+                        addPackages(descriptor.packages, text.toString(), false);
+                        text = null;
+                    }
+                }
+                writer.add(event);
+            }
+            writer.flush();
+        } finally {
+            reader.close();
+            writer.close();
+        }
+        descriptor.xml = bout.toByteArray();
+        return descriptor;
+    }
+
+    private static void collect(StartElement element, StartElement parent, Set<String> packages) {
+        if (!BLUEPRINT_NAMESPACE.equals(element.getName().getNamespaceURI())) {
+            return;
+        }
+        String name = element.getName().getLocalPart();
+        if ("bean".equals(name)) {
+            addPackages(packages, getAttribute(element, "class"), false);
+        } else if ("service".equals(name) || "reference".equals(name) || "reference-list".equals(name)) {
+            addPackages(packages, getAttribute(element, "interface"), false);
+        } else if ("argument".equals(name) && isBlueprint(parent, "bean")) {
+            addPackages(packages, getAttribute(element, "type"), true);
+        } else if ("list".equals(name) || "set".equals(name) || "array".equals(name)) {
+            addPackages(packages, getAttribute(element, "value-type"), true);
+        } else if ("map".equals(name)) {
+            addPackages(packages, getAttribute(element, "key-type"), true);
+            addPackages(packages, getAttribute(element, "value-type"), true);
+        }
+    }
+
+    private static boolean isBlueprint(StartElement element, String name) {
+        return element != null
+                && BLUEPRINT_NAMESPACE.equals(element.getName().getNamespaceURI())
+                && name.equals(element.getName().getLocalPart());
+    }
+
+    private static String getAttribute(StartElement element, String name) {
+        Attribute attribute = element.getAttributeByName(new QName(name));
+        return attribute != null ? attribute.getValue() : null;
+    }
+
+    /**
+     * Add the packages of a comma delimited list of classes.
+     */
+    private static void addPackages(Set<String> packages, String classes, boolean array) {
+        if (classes == null) {
+            return;
+        }
+        if (array && classes.indexOf('[') >= 0) {
+            classes = classes.substring(0, classes.indexOf('['));
+        }
+        for (String cl : classes.split("[\\s,]+")) {
+            int n = cl.lastIndexOf('.');
+            if (n > 0) {
+                String pkg = cl.substring(0, n);
+                if (!pkg.startsWith("java.")) {
+                    packages.add(pkg);
+                }
             }
-            Source s = new StreamSource(BlueprintTransformer.class.getResourceAsStream("extract.xsl"));
-            transformer = tf.newTransformer(s);
         }
+    }
 
+    public static Set<String> analyze(Source source) throws Exception {
         Set<String> refers = new TreeSet<String>();
 
         ByteArrayOutputStream bout = new ByteArrayOutputStream();
         Result r = new StreamResult(bout);
-        transformer.transform(source, r);
+        getTemplates().newTransformer().transform(source, r);
 
         ByteArrayInputStream bin = new ByteArrayInputStream(bout.toByteArray());
         bout.close();
@@ -177,12 +358,56 @@ public class BlueprintTransformer {
     }
 
     protected static Document parse(URL url) throws Exception {
+        return getDocumentBuilder().parse(url.toString());
+    }
+
+    private static synchronized DocumentBuilder getDocumentBuilder() throws Exception {
         if (dbf == null) {
             dbf = DocumentBuilderFactory.newInstance();
             dbf.setNamespaceAware(true);
         }
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        return db.parse(url.toString());
+        return dbf.newDocumentBuilder();
+    }
+
+    /**
+     * The compiled stylesheet is thread safe, contrary to the transformers it creates.
+     */
+    private static synchronized Templates getTemplates() throws TransformerConfigurationException {
+        if (templates == null) {
+            Source s = new StreamSource(BlueprintTransformer.class.getResourceAsStream("extract.xsl"));
+            templates = TransformerFactory.newInstance().newTemplates(s);
+        }
+        return templates;
+    }
+
+    private static synchronized XMLEventReader createEventReader(URL url, byte[] data) throws XMLStreamException {
+        if (xif == null) {
+            xif = XMLInputFactory.newInstance();
+        }
+        return xif.createXMLEventReader(url.toExternalForm(), new ByteArrayInputStream(data));
+    }
+
+    private static synchronized XMLEventWriter createEventWriter(OutputStream os) throws XMLStreamException {
+        if (xof == null) {
+            xof = XMLOutputFactory.newInstance();
+        }
+        return xof.createXMLEventWriter(os, "UTF-8");
+    }
+
+    private static synchronized XMLEventFactory getEventFactory() {
+        if (xef == null) {
+            xef = XMLEventFactory.newInstance();
+        }
+        return xef;
+    }
+
+    private static String checksum(byte[] data) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest(data)) {
+            sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        }
+        return sb.toString();
     }
 
     protected static String getPath(URL url) {
@@ -18,7 +18,6 @@
 package org.apache.karaf.deployer.blueprint;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -59,7 +58,7 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
 		blueprintXmlURL = new URL(url.getPath());
 
 		logger.debug("Blueprint xml URL is: [" + blueprintXmlURL + "]");
-		return new Connection(url);
+		return new Connection(url, blueprintXmlURL);
 	}
 	
 	public URL getBlueprintXmlURL() {
@@ -68,8 +67,11 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
 
     public class Connection extends URLConnection {
 
-        public Connection(URL url) {
+        private final URL blueprintXmlURL;
+
+        public Connection(URL url, URL blueprintXmlURL) {
             super(url);
+            this.blueprintXmlURL = blueprintXmlURL;
         }
 
         @Override
@@ -79,10 +81,7 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
         @Override
         public InputStream getInputStream() throws IOException {
             try {
-                ByteArrayOutputStream os = new ByteArrayOutputStream();
-                BlueprintTransformer.transform(blueprintXmlURL, os);
-                os.close();
-                return new ByteArrayInputStream(os.toByteArray());
+                return new ByteArrayInputStream(BlueprintTransformer.transform(blueprintXmlURL));
             } catch (Exception e) {
                 logger.error("Error opening blueprint xml url", e);
                 throw (IOException) new IOException("Error opening blueprint xml url").initCause(e);
@@ -17,11 +17,13 @@
  */
 package org.apache.karaf.deployer.blueprint;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.jar.JarInputStream;
@@ -116,4 +118,16 @@ public class BlueprintDeploymentListenerTest extends TestCase {
         }
         
     }
+
+    public void testTransformMatchesStylesheet() throws Exception {
+        URL url = getClass().getClassLoader().getResource("test.xml");
+        String expected = BlueprintTransformer.getImportPackages(BlueprintTransformer.analyze(new DOMSource(BlueprintTransformer.parse(url))));
+        byte[] bundle = BlueprintTransformer.transform(url);
+        JarInputStream jar = new JarInputStream(new ByteArrayInputStream(bundle));
+        assertEquals(expected, jar.getManifest().getMainAttributes().getValue("Import-Package"));
+        jar.close();
+        // the bundle of an unchanged file is cached
+        assertSame(bundle, BlueprintTransformer.transform(url));
+    }
+
 }
@@ -18,17 +18,12 @@
 package org.apache.karaf.deployer.spring;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.net.URL;
 
 import javax.xml.namespace.QName;
-import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
 
 import org.apache.felix.fileinstall.ArtifactUrlTransformer;
+import org.apache.karaf.util.DeployerUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,15 +35,11 @@ public class SpringDeploymentListener implements ArtifactUrlTransformer {
 	private static final QName SPRING_DM_ROOT = new QName("http://www.springframework.org/schema/beans", "beans");
 
     private final Logger logger = LoggerFactory.getLogger(SpringDeploymentListener.class);
-	private XMLInputFactory factory;
-	
+
     public boolean canHandle(File artifact) {
         try {
             if (artifact.isFile() && artifact.getName().endsWith(".xml")) {
-                StartElement element = getRootElement(artifact);
-                if (element != null && SPRING_DM_ROOT.equals(element.getName())) {
-                    return true;
-                }
+                return SPRING_DM_ROOT.equals(DeployerUtils.getRootElement(artifact));
             }
         } catch (Exception e) {
             logger.error("Unable to parse deployed file " + artifact.getAbsolutePath(), e);
@@ -65,30 +56,4 @@ public class SpringDeploymentListener implements ArtifactUrlTransformer {
         }
     }
 
-	protected StartElement getRootElement(File artifact) throws Exception {
-    	XMLEventReader parser = null;
-    	InputStream in = null;
-    	try {
-			if (factory == null) {
-				factory = XMLInputFactory.newInstance();
-			}
-			in = new FileInputStream(artifact);
-			parser = factory.createXMLEventReader(in);
-			while (parser.hasNext()) {
-				XMLEvent event = parser.nextEvent();
-				if (event.isStartElement()) {
-					return event.asStartElement();
-				}
-			}
-			return null;
-		} finally {
-			if (parser != null) {
-				parser.close();
-			}
-			if (in != null) {
-				in.close();
-			}
-		}
-    }
-
 }
@@ -18,7 +18,6 @@
 package org.apache.karaf.deployer.spring;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -59,7 +58,7 @@ public class SpringURLHandler extends AbstractURLStreamHandlerService {
 		springXmlURL = new URL(url.getPath());
 
 		logger.debug("Spring xml URL is: [" + springXmlURL + "]");
-		return new Connection(url);
+		return new Connection(url, springXmlURL);
 	}
 	
 	public URL getSpringXmlURL() {
@@ -68,8 +67,11 @@ public class SpringURLHandler extends AbstractURLStreamHandlerService {
 
     public class Connection extends URLConnection {
 
-        public Connection(URL url) {
+        private final URL springXmlURL;
+
+        public Connection(URL url, URL springXmlURL) {
             super(url);
+            this.springXmlURL = springXmlURL;
         }
 
         @Override
@@ -79,10 +81,7 @@ public class SpringURLHandler extends AbstractURLStreamHandlerService {
         @Override
         public InputStream getInputStream() throws IOException {
             try {
-                ByteArrayOutputStream os = new ByteArrayOutputStream();
-                SpringTransformer.transform(springXmlURL, os);
-                os.close();
-                return new ByteArrayInputStream(os.toByteArray());
+                return new ByteArrayInputStream(SpringTransformer.transform(springXmlURL));
             } catch (Exception e) {
                 logger.error("Error opening Spring xml url", e);
                 throw (IOException) new IOException("Error opening Spring xml url").initCause(e);
@@ -17,11 +17,13 @@
  */
 package org.apache.karaf.deployer.spring;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.jar.JarInputStream;
@@ -57,4 +59,15 @@ public class SpringDeploymentListenerTest extends TestCase {
         }
     }
 
+    public void testTransformMatchesStylesheet() throws Exception {
+        URL url = getClass().getClassLoader().getResource("test.xml");
+        String expected = SpringTransformer.getImportPackages(SpringTransformer.analyze(new DOMSource(SpringTransformer.parse(url))));
+        byte[] bundle = SpringTransformer.transform(url);
+        JarInputStream jar = new JarInputStream(new ByteArrayInputStream(bundle));
+        assertEquals(expected, jar.getManifest().getMainAttributes().getValue("Import-Package"));
+        jar.close();
+        // the bundle of an unchanged file is cached
+        assertSame(bundle, SpringTransformer.transform(url));
+    }
+
 }
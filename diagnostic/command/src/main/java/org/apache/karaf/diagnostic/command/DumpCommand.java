@@ -21,6 +21,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
@@ -28,6 +29,7 @@ import org.apache.karaf.shell.commands.Option;
 import org.apache.karaf.diagnostic.core.DumpDestination;
 import org.apache.karaf.diagnostic.core.DumpProvider;
 import org.apache.karaf.diagnostic.core.common.DirectoryDumpDestination;
+import org.apache.karaf.diagnostic.core.common.DumpCreator;
 import org.apache.karaf.diagnostic.core.common.ZipDumpDestination;
 import org.apache.karaf.shell.console.OsgiCommandSupport;
 
@@ -53,6 +55,12 @@ public class DumpCommand extends OsgiCommandSupport {
     @Option(name = "-d", aliases = "--directory", description = "Creates dump in a directory in place of a ZIP archive")
     boolean directory;
 
+    /**
+     * Timings switch.
+     */
+    @Option(name = "-t", aliases = "--timings", description = "Displays the time taken by each dump provider")
+    boolean timings;
+
     /**
      * Name of created directory or archive.
      */
@@ -84,11 +92,13 @@ public class DumpCommand extends OsgiCommandSupport {
             destination = new ZipDumpDestination(target);
         }
 
-        for (DumpProvider provider : providers) {
-            provider.createDump(destination);
-        }
-        destination.save();
+        Map<String, Long> dumpTimings = new DumpCreator().createDump(providers, destination);
         session.getConsole().println("Diagnostic dump created.");
+        if (timings) {
+            for (Map.Entry<String, Long> timing : dumpTimings.entrySet()) {
+                session.getConsole().println(timing.getKey() + ": " + timing.getValue() + " ms");
+            }
+        }
 
         return null;
     }
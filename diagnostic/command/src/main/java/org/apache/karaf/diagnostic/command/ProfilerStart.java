@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.command;
+
+import org.apache.karaf.diagnostic.core.Profiler;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.shell.console.OsgiCommandSupport;
+
+/**
+ * Command which starts the sampling profiler.
+ */
+@Command(scope = "dev", name = "profiler-start", description = "Starts sampling the stacks of the running threads.")
+public class ProfilerStart extends OsgiCommandSupport {
+
+    /**
+     * Sampling interval.
+     */
+    @Option(name = "-i", aliases = "--interval", description = "Time between two samples in milliseconds")
+    long interval;
+
+    /**
+     * Reset switch.
+     */
+    @Option(name = "-r", aliases = "--reset", description = "Discards the samples collected previously")
+    boolean reset;
+
+    private Profiler profiler;
+
+    @Override
+    protected Object doExecute() throws Exception {
+        if (reset) {
+            profiler.reset();
+        }
+        if (profiler.isRunning()) {
+            session.getConsole().println("Profiler is already running.");
+            return null;
+        }
+        profiler.start(interval);
+        session.getConsole().println("Profiler started, samples are added to diagnostic dumps.");
+        return null;
+    }
+
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.command;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.karaf.diagnostic.core.Profiler;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.shell.console.OsgiCommandSupport;
+
+/**
+ * Command which stops the sampling profiler.
+ */
+@Command(scope = "dev", name = "profiler-stop", description = "Stops sampling the stacks of the running threads.")
+public class ProfilerStop extends OsgiCommandSupport {
+
+    /**
+     * Export file.
+     */
+    @Option(name = "-o", aliases = "--output", description = "Writes the samples to the given file, in the collapsed stacks format of flame graph tools")
+    String output;
+
+    private Profiler profiler;
+
+    @Override
+    protected Object doExecute() throws Exception {
+        profiler.stop();
+        session.getConsole().println("Profiler stopped, " + profiler.getSampleCount() + " samples collected.");
+        if (output != null) {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(new File(output)), "UTF-8");
+            try {
+                profiler.writeCollapsedStacks(writer);
+            } finally {
+                writer.close();
+            }
+        }
+        return null;
+    }
+
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+}
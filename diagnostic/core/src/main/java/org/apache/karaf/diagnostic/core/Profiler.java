@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Sampling profiler which periodically records the stack of the running
+ * threads to show where the time goes.
+ */
+public interface Profiler {
+
+    /**
+     * Starts sampling, keeping the samples already collected.
+     * 
+     * @param interval Time between two samples in milliseconds, 0 for the default.
+     */
+    void start(long interval);
+
+    /**
+     * Stops sampling.
+     */
+    void stop();
+
+    boolean isRunning();
+
+    /**
+     * Discards the collected samples.
+     */
+    void reset();
+
+    /**
+     * @return Number of thread stacks recorded.
+     */
+    long getSampleCount();
+
+    /**
+     * Writes the collected samples in the collapsed stacks format used by
+     * flame graph tools: one line per distinct stack, frames separated by
+     * semicolons from the thread pool down to the leaf, then the number of
+     * samples.
+     * 
+     * @param writer Destination.
+     * @throws IOException When writing fails.
+     */
+    void writeCollapsedStacks(Writer writer) throws IOException;
+
+}
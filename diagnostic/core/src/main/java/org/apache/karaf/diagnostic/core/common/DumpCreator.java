@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.common;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.apache.karaf.diagnostic.core.DumpProvider;
+
+/**
+ * Creates a dump by running the dump providers in parallel into a destination.
+ * 
+ * The time taken by each provider is recorded under the name of the first
+ * entry it added to the destination.
+ */
+public class DumpCreator {
+
+    /**
+     * Maximum number of providers running at the same time.
+     */
+    private int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Runs the providers and saves the destination.
+     * 
+     * A failing provider does not prevent the other ones from completing, its
+     * exception is thrown once the destination has been saved.
+     * 
+     * @param providers Dump providers.
+     * @param destination Dump destination.
+     * @return The time taken by each provider, in milliseconds.
+     * @throws Exception The exception of the first failing provider.
+     */
+    public Map<String, Long> createDump(List<DumpProvider> providers, DumpDestination destination) throws Exception {
+        // providers may be a dynamic service list
+        List<DumpProvider> snapshot = new ArrayList<DumpProvider>(providers);
+        // kept per dump, as several dumps may be created at the same time
+        Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+        Exception failure = null;
+        if (threads == 1 || snapshot.size() <= 1) {
+            for (DumpProvider provider : snapshot) {
+                try {
+                    run(provider, destination, timings);
+                } catch (Exception e) {
+                    failure = failure != null ? failure : e;
+                }
+            }
+        } else {
+            failure = runInParallel(snapshot, destination, timings);
+        }
+
+        destination.save();
+        if (failure != null) {
+            throw failure;
+        }
+        return timings;
+    }
+
+    private Exception runInParallel(List<DumpProvider> providers, final DumpDestination destination,
+                                    final Map<String, Long> timings) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, providers.size()), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Karaf dump provider " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final DumpProvider provider : providers) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        run(provider, destination, timings);
+                        return null;
+                    }
+                }));
+            }
+            Exception failure = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+            return failure;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void run(DumpProvider provider, DumpDestination destination, Map<String, Long> timings) throws Exception {
+        NamingDumpDestination naming = new NamingDumpDestination(destination);
+        long start = System.currentTimeMillis();
+        try {
+            provider.createDump(naming);
+        } finally {
+            String name = naming.name != null ? naming.name : String.valueOf(provider);
+            timings.put(name, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Remembers the first entry added by a provider.
+     */
+    private static class NamingDumpDestination implements DumpDestination {
+
+        private final DumpDestination destination;
+        private String name;
+
+        NamingDumpDestination(DumpDestination destination) {
+            this.destination = destination;
+        }
+
+        public OutputStream add(String name) throws Exception {
+            if (this.name == null) {
+                this.name = name;
+            }
+            return destination.add(name);
+        }
+
+        public void save() throws Exception {
+            // saved once all providers are done
+        }
+    }
+
+}
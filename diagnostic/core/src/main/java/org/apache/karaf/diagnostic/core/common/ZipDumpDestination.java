@@ -15,10 +15,22 @@
  */
 package org.apache.karaf.diagnostic.core.common;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -26,14 +38,40 @@ import org.apache.karaf.diagnostic.core.DumpDestination;
 
 /**
  * Class which packages dumps to ZIP archive.
+ * 
+ * Entries can be added concurrently. A ZIP archive can only be written one
+ * entry at a time, so the first entry streams directly into the archive while
+ * the entries added in the meantime are spooled, in memory up to a small size
+ * and then in a temporary file, until the archive is available.
  */
 public class ZipDumpDestination implements DumpDestination {
 
+    /**
+     * Size of spooled entries kept in memory before switching to a temporary file.
+     */
+    private static final int SPOOL_THRESHOLD = 64 * 1024;
+
     /**
      * Destination streem.
      */
     private ZipOutputStream outputStream;
 
+    /**
+     * Held while an entry is being written to the archive.
+     */
+    private final Semaphore lock = new Semaphore(1);
+
+    /**
+     * Spooled entries waiting for the archive.
+     */
+    private final Queue<SpoolingOutputStream> pending = new ConcurrentLinkedQueue<SpoolingOutputStream>();
+
+    /**
+     * Spooled entries which have not been closed yet.
+     */
+    private final Set<SpoolingOutputStream> spooling =
+            Collections.newSetFromMap(new ConcurrentHashMap<SpoolingOutputStream, Boolean>());
+
     /**
      * Creates new dump in given directory.
      * 
@@ -51,8 +89,8 @@ public class ZipDumpDestination implements DumpDestination {
      */
     public ZipDumpDestination(File file) {
         try {
-            outputStream = new ZipOutputStream(new FileOutputStream(
-                file));
+            outputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(
+                file)));
         } catch (FileNotFoundException e) {
             // sometimes this can occur, but we simply re throw and let 
             // caller handle exception
@@ -64,16 +102,149 @@ public class ZipDumpDestination implements DumpDestination {
      * {@inheritDoc}
      */
     public OutputStream add(String name) throws Exception {
-        ZipEntry zipEntry = new ZipEntry(name);
-        outputStream.putNextEntry(zipEntry);
-        return new ClosingEntryOutputStreamWrapper(outputStream);
+        if (!lock.tryAcquire()) {
+            SpoolingOutputStream spool = new SpoolingOutputStream(name);
+            spooling.add(spool);
+            return spool;
+        }
+        try {
+            ZipEntry zipEntry = new ZipEntry(name);
+            outputStream.putNextEntry(zipEntry);
+        } catch (IOException e) {
+            lock.release();
+            throw e;
+        }
+        return new ClosingEntryOutputStreamWrapper(outputStream) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    try {
+                        super.close();
+                    } finally {
+                        release();
+                    }
+                }
+            }
+        };
     }
 
     /**
      * Closes archive handle.
      */
     public void save() throws Exception {
+        // all providers are done, so entries still open are simply closed
+        for (SpoolingOutputStream spool : new ArrayList<SpoolingOutputStream>(spooling)) {
+            spool.close();
+        }
+        writePending();
         outputStream.close();
     }
 
+    /**
+     * Writes the spooled entries and releases the archive.
+     */
+    private void release() throws IOException {
+        try {
+            writePending();
+        } finally {
+            lock.release();
+        }
+        // an entry may have been spooled just before the release
+        if (!pending.isEmpty() && lock.tryAcquire()) {
+            release();
+        }
+    }
+
+    private void writePending() throws IOException {
+        SpoolingOutputStream entry;
+        while ((entry = pending.poll()) != null) {
+            try {
+                outputStream.putNextEntry(new ZipEntry(entry.name));
+                entry.writeTo(outputStream);
+                outputStream.closeEntry();
+            } finally {
+                entry.delete();
+            }
+        }
+    }
+
+    /**
+     * Output stream which keeps an entry until the archive is available.
+     */
+    private class SpoolingOutputStream extends OutputStream {
+
+        private final String name;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private File file;
+        private OutputStream fileStream;
+        private boolean closed;
+
+        SpoolingOutputStream(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (fileStream == null && memory.size() + len > SPOOL_THRESHOLD) {
+                file = File.createTempFile("dump", ".tmp");
+                fileStream = new BufferedOutputStream(new FileOutputStream(file));
+                memory.writeTo(fileStream);
+                memory = null;
+            }
+            if (fileStream != null) {
+                fileStream.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            spooling.remove(this);
+            if (fileStream != null) {
+                fileStream.close();
+            }
+            pending.add(this);
+            if (lock.tryAcquire()) {
+                release();
+            }
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            if (file == null) {
+                memory.writeTo(out);
+                return;
+            }
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        void delete() {
+            memory = null;
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
 }
@@ -24,6 +24,7 @@ import org.apache.karaf.diagnostic.core.DiagnosticDumpMBean;
 import org.apache.karaf.diagnostic.core.DumpDestination;
 import org.apache.karaf.diagnostic.core.DumpProvider;
 import org.apache.karaf.diagnostic.core.common.DirectoryDumpDestination;
+import org.apache.karaf.diagnostic.core.common.DumpCreator;
 import org.apache.karaf.diagnostic.core.common.ZipDumpDestination;
 
 /**
@@ -68,11 +69,7 @@ public class DiagnosticDumpMBeanImpl extends StandardMBean implements Diagnostic
                 destination = new ZipDumpDestination(target);
             }
 
-            for (DumpProvider provider : providers) {
-                provider.createDump(destination);
-            }
-
-            destination.save();
+            new DumpCreator().createDump(providers, destination);
         } catch (Exception e) {
             throw new MBeanException(null, e.getMessage());
         }
@@ -15,13 +15,16 @@
  */
 package org.apache.karaf.diagnostic.core.internal;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.List;
 
 import org.apache.karaf.diagnostic.core.DumpDestination;
 import org.apache.karaf.diagnostic.core.DumpProvider;
@@ -33,15 +36,38 @@ import org.osgi.service.cm.ConfigurationAdmin;
 /**
  * Dump provider which copies log files from data/log directory to
  * destination.
+ * 
+ * When <code>maxAge</code> is set, the rolled over files of the appenders
+ * modified during the last <code>maxAge</code> minutes are copied as well. When
+ * <code>maxSize</code> is set, only the last <code>maxSize</code> bytes of each
+ * file are copied.
  */
 public class LogDumpProvider implements DumpProvider {
 
     private BundleContext bundleContext;
 
+    /**
+     * Maximum number of bytes copied from each file, 0 for no limit.
+     */
+    private long maxSize;
+
+    /**
+     * Age in minutes of the oldest file copied, 0 to only copy current files.
+     */
+    private long maxAge;
+
     public void setBundleContext(BundleContext bundleContext) {
         this.bundleContext = bundleContext;
     }
 
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
     /**
      * Attach log entries from directory.
      */
@@ -64,21 +90,86 @@ public class LogDumpProvider implements DumpProvider {
                 if (property.endsWith(".file")) {
                     // it's a file appender, get the file location
                     String location = (String) dictionary.get(property);
-                    File file = new File(location);
-                    if (file.exists()) {
-                        FileInputStream inputStream = new FileInputStream(file);
-                        OutputStream outputStream = destination.add("log/" + file.getName());
-                        copy(inputStream, outputStream);
+                    for (File file : getLogFiles(new File(location))) {
+                        copy(file, destination);
                     }
                 }
             }
-        } catch (Exception e) {
-            throw e;
         } finally {
             bundleContext.ungetService(ref);
         }
     }
 
+    /**
+     * Returns the file of an appender and, within the time window, its rolled
+     * over files.
+     */
+    private List<File> getLogFiles(File file) {
+        List<File> files = new ArrayList<File>();
+        if (file.exists()) {
+            files.add(file);
+        }
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (maxAge <= 0 || directory == null) {
+            return files;
+        }
+        long since = System.currentTimeMillis() - maxAge * 60 * 1000;
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.getName().startsWith(file.getName() + ".") && child.isFile()
+                        && child.lastModified() >= since) {
+                    files.add(child);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Copies a log file, or its last <code>maxSize</code> bytes starting at
+     * a line boundary.
+     */
+    private void copy(File file, DumpDestination destination) throws Exception {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+        try {
+            long skip = maxSize > 0 ? file.length() - maxSize : 0;
+            if (skip > 0) {
+                // stop one byte early, so that a line starting at the limit is kept
+                skipFully(inputStream, skip - 1);
+                skipLine(inputStream);
+            }
+            OutputStream outputStream = destination.add("log/" + file.getName());
+            try {
+                copy(inputStream, outputStream);
+            } finally {
+                outputStream.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void skipFully(InputStream inputStream, long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = inputStream.skip(bytes);
+            if (skipped <= 0) {
+                return;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    private void skipLine(InputStream inputStream) throws IOException {
+        // drop the partial line, within a reasonable line length
+        for (int i = 0, c = 0; i < 4096 && c != '\n'; i++) {
+            c = inputStream.read();
+            if (c == -1) {
+                return;
+            }
+        }
+    }
+
     /**
      * Rewrites data from input stream to output stream. This code is very common
      * but we would avoid additional dependencies in diagnostic stuff.
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.apache.karaf.diagnostic.core.DumpProvider;
+import org.apache.karaf.diagnostic.core.Profiler;
+
+/**
+ * Profiler which samples the stacks of the runnable threads at a fixed rate
+ * and aggregates them into a call tree per thread pool.
+ * 
+ * Threads are grouped by their name without the trailing number, so that the
+ * threads of a pool share the same tree. Stacks are limited to
+ * <code>maxDepth</code> frames and the trees to <code>maxNodes</code> nodes
+ * overall; once the limit is reached, new call paths are accounted to their
+ * deepest known frame. The collected samples are added to diagnostic dumps.
+ */
+public class SamplingProfiler implements Profiler, DumpProvider {
+
+    /**
+     * Frame added on top of the stacks cut by the maximum depth.
+     */
+    private static final String TRUNCATED = "[truncated]";
+
+    /**
+     * Call tree node.
+     */
+    private static class Node {
+        final String className;
+        final String methodName;
+        List<Node> children;
+        long samples;
+
+        Node(String className, String methodName) {
+            this.className = className;
+            this.methodName = methodName;
+        }
+
+        Node getChild(String className, String methodName) {
+            if (children != null) {
+                for (Node child : children) {
+                    if (child.methodName.equals(methodName) && child.className.equals(className)) {
+                        return child;
+                    }
+                }
+            }
+            return null;
+        }
+
+        Node addChild(String className, String methodName) {
+            if (children == null) {
+                children = new ArrayList<Node>(2);
+            }
+            Node child = new Node(className, methodName);
+            children.add(child);
+            return child;
+        }
+    }
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private long interval = 20;
+    private int maxDepth = 64;
+    private int maxNodes = 50000;
+
+    private ScheduledExecutorService executor;
+    private volatile long samplerThreadId = -1;
+
+    /**
+     * Call trees by thread pool name, guarded by this.
+     */
+    private final Map<String, Node> pools = new TreeMap<String, Node>();
+    private int nodes;
+    private long sampleCount;
+    private long truncatedCount;
+
+    /**
+     * Sets the default time between two samples in milliseconds.
+     */
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = Math.max(1, maxDepth);
+    }
+
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    public synchronized void start(long interval) {
+        if (executor != null) {
+            return;
+        }
+        long period = Math.max(1, interval > 0 ? interval : this.interval);
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Karaf sampling profiler");
+                thread.setDaemon(true);
+                samplerThreadId = thread.getId();
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                sample();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    public synchronized void reset() {
+        pools.clear();
+        nodes = 0;
+        sampleCount = 0;
+        truncatedCount = 0;
+    }
+
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return Number of samples accounted to a shorter stack because the maximum
+     * number of nodes was reached.
+     */
+    public synchronized long getTruncatedCount() {
+        return truncatedCount;
+    }
+
+    public synchronized int getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Takes one sample of all the runnable threads.
+     */
+    void sample() {
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), maxDepth);
+        synchronized (this) {
+            for (ThreadInfo info : infos) {
+                if (info != null && info.getThreadState() == Thread.State.RUNNABLE
+                        && info.getThreadId() != samplerThreadId && info.getStackTrace().length > 0) {
+                    record(getPoolName(info.getThreadName()), info.getStackTrace());
+                }
+            }
+        }
+    }
+
+    /**
+     * Accounts one sample of a thread of the given pool, guarded by this.
+     */
+    void record(String pool, StackTraceElement[] stack) {
+        Node node = pools.get(pool);
+        if (node == null) {
+            if (nodes >= maxNodes) {
+                truncatedCount++;
+                return;
+            }
+            node = new Node(pool, "");
+            pools.put(pool, node);
+            nodes++;
+        }
+        sampleCount++;
+        if (stack.length >= maxDepth) {
+            Node truncated = getOrAdd(node, TRUNCATED, "");
+            node = truncated != null ? truncated : node;
+        }
+        // stacks are ordered from the leaf to the root
+        for (int i = stack.length - 1; i >= 0; i--) {
+            Node child = getOrAdd(node, stack[i].getClassName(), stack[i].getMethodName());
+            if (child == null) {
+                truncatedCount++;
+                break;
+            }
+            node = child;
+        }
+        node.samples++;
+    }
+
+    private Node getOrAdd(Node node, String className, String methodName) {
+        Node child = node.getChild(className, methodName);
+        if (child == null) {
+            if (nodes >= maxNodes) {
+                return null;
+            }
+            child = node.addChild(className, methodName);
+            nodes++;
+        }
+        return child;
+    }
+
+    public synchronized void writeCollapsedStacks(Writer writer) throws IOException {
+        StringBuilder path = new StringBuilder();
+        for (Map.Entry<String, Node> pool : pools.entrySet()) {
+            path.setLength(0);
+            path.append(pool.getKey().replace(';', '_').replace(' ', '_'));
+            write(writer, path, pool.getValue());
+        }
+        writer.flush();
+    }
+
+    private void write(Writer writer, StringBuilder path, Node node) throws IOException {
+        if (node.samples > 0) {
+            writer.append(path).append(' ').append(String.valueOf(node.samples)).append('\n');
+        }
+        if (node.children != null) {
+            int length = path.length();
+            for (Node child : node.children) {
+                path.append(';').append(child.className);
+                if (child.methodName.length() > 0) {
+                    path.append('.').append(child.methodName);
+                }
+                write(writer, path, child);
+                path.setLength(length);
+            }
+        }
+    }
+
+    /**
+     * Adds the collected samples to the dump, if any.
+     */
+    public void createDump(DumpDestination destination) throws Exception {
+        if (getSampleCount() == 0) {
+            return;
+        }
+        OutputStream outputStream = destination.add("profiler/stacks.txt");
+        Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+        try {
+            writeCollapsedStacks(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns the name of a thread without its trailing number.
+     */
+    static String getPoolName(String threadName) {
+        int end = threadName.length();
+        while (end > 0 && Character.isDigit(threadName.charAt(end - 1))) {
+            end--;
+        }
+        if (end == threadName.length() || end == 0) {
+            return threadName;
+        }
+        while (end > 0 && (threadName.charAt(end - 1) == '-' || threadName.charAt(end - 1) == '#'
+                || threadName.charAt(end - 1) == ' ' || threadName.charAt(end - 1) == '_')) {
+            end--;
+        }
+        return end > 0 ? threadName.substring(0, end) : threadName;
+    }
+
+}
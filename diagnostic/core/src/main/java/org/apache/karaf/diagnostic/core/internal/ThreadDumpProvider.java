@@ -15,7 +15,10 @@
  */
 package org.apache.karaf.diagnostic.core.internal;
 
+import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.management.LockInfo;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MonitorInfo;
@@ -42,77 +45,102 @@ public class ThreadDumpProvider extends TextDumpProvider {
 
         outputStream.write("Number of threads: " + threadMXBean.getThreadCount() + "\n");
 
+        // take a single consistent snapshot of all the threads, only the formatting is streamed
         for (ThreadInfo threadInfo : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), Integer.MAX_VALUE)) {
-            outputStream.write(getDumpThreadString(threadInfo) + "\n\n");
+            if (threadInfo != null) {
+                writeThread(outputStream, threadInfo);
+                outputStream.write("\n\n");
+            }
         }
 
     }
 
     protected String getDumpThreadString(ThreadInfo threadInfo) {
-        StringBuilder sb = new StringBuilder("\"" + threadInfo.getThreadName() + "\"" + " Id=" + threadInfo.getThreadId() + " "
-                                             + threadInfo.getThreadState());
+        StringWriter writer = new StringWriter();
+        try {
+            writeThread(writer, threadInfo);
+        } catch (IOException e) {
+            // can not happen with a string writer
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    protected void writeThread(Writer writer, ThreadInfo threadInfo) throws IOException {
+        writer.write("\"");
+        writer.write(threadInfo.getThreadName());
+        writer.write("\" Id=");
+        writer.write(String.valueOf(threadInfo.getThreadId()));
+        writer.write(" ");
+        writer.write(String.valueOf(threadInfo.getThreadState()));
         if (threadInfo.getLockName() != null) {
-            sb.append(" on " + threadInfo.getLockName());
+            writer.write(" on ");
+            writer.write(threadInfo.getLockName());
         }
         if (threadInfo.getLockOwnerName() != null) {
-            sb.append(" owned by \"" + threadInfo.getLockOwnerName() + "\" Id=" + threadInfo.getLockOwnerId());
+            writer.write(" owned by \"");
+            writer.write(threadInfo.getLockOwnerName());
+            writer.write("\" Id=");
+            writer.write(String.valueOf(threadInfo.getLockOwnerId()));
         }
         if (threadInfo.isSuspended()) {
-            sb.append(" (suspended)");
+            writer.write(" (suspended)");
         }
         if (threadInfo.isInNative()) {
-            sb.append(" (in native)");
+            writer.write(" (in native)");
         }
-        sb.append('\n');
+        writer.write('\n');
         int i = 0;
         StackTraceElement[] stackTrace = threadInfo.getStackTrace();
+        MonitorInfo[] monitors = threadInfo.getLockedMonitors();
         for (; i < stackTrace.length; i++) {
             StackTraceElement ste = stackTrace[i];
-            sb.append("\tat " + ste.toString());
-            sb.append('\n');
+            writer.write("\tat ");
+            writer.write(ste.toString());
+            writer.write('\n');
             if (i == 0 && threadInfo.getLockInfo() != null) {
                 Thread.State ts = threadInfo.getThreadState();
                 switch (ts) {
                 case BLOCKED:
-                    sb.append("\t-  blocked on " + threadInfo.getLockInfo());
-                    sb.append('\n');
+                    writer.write("\t-  blocked on ");
+                    writer.write(String.valueOf(threadInfo.getLockInfo()));
+                    writer.write('\n');
                     break;
                 case WAITING:
-                    sb.append("\t-  waiting on " + threadInfo.getLockInfo());
-                    sb.append('\n');
+                    writer.write("\t-  waiting on ");
+                    writer.write(String.valueOf(threadInfo.getLockInfo()));
+                    writer.write('\n');
                     break;
                 case TIMED_WAITING:
-                    sb.append("\t-  waiting on " + threadInfo.getLockInfo());
-                    sb.append('\n');
+                    writer.write("\t-  waiting on ");
+                    writer.write(String.valueOf(threadInfo.getLockInfo()));
+                    writer.write('\n');
                     break;
                 default:
                 }
             }
 
-            for (MonitorInfo mi : threadInfo.getLockedMonitors()) {
+            for (MonitorInfo mi : monitors) {
                 if (mi.getLockedStackDepth() == i) {
-                    sb.append("\t-  locked " + mi);
-                    sb.append('\n');
+                    writer.write("\t-  locked ");
+                    writer.write(String.valueOf(mi));
+                    writer.write('\n');
                 }
             }
         }
-        if (i < stackTrace.length) {
-            sb.append("\t...");
-            sb.append('\n');
-        }
 
         LockInfo[] locks = threadInfo.getLockedSynchronizers();
         if (locks.length > 0) {
-            sb.append("\n\tNumber of locked synchronizers = " + locks.length);
-            sb.append('\n');
+            writer.write("\n\tNumber of locked synchronizers = ");
+            writer.write(String.valueOf(locks.length));
+            writer.write('\n');
             for (LockInfo li : locks) {
-                sb.append("\t- " + li);
-                sb.append('\n');
+                writer.write("\t- ");
+                writer.write(String.valueOf(li));
+                writer.write('\n');
             }
         }
-        sb.append('\n');
-        return sb.toString();
+        writer.write('\n');
     }
 
-
 }
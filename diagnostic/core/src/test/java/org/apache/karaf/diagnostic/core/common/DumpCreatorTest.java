@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.apache.karaf.diagnostic.core.DumpProvider;
+import org.junit.Test;
+
+public class DumpCreatorTest {
+
+    @Test
+    public void testSequentialTimings() throws Exception {
+        final DumpProvider empty = new DumpProvider() {
+            public void createDump(DumpDestination destination) {
+            }
+        };
+        MemoryDumpDestination destination = new MemoryDumpDestination();
+        DumpCreator creator = new DumpCreator();
+        creator.setThreads(1);
+        Map<String, Long> timings = creator.createDump(
+                Arrays.asList(entry("a.txt", "a"), entry("b.txt", "b"), empty), destination);
+
+        assertEquals(Arrays.asList("a.txt", "b.txt", String.valueOf(empty)), Arrays.asList(timings.keySet().toArray()));
+        assertEquals("a", destination.get("a.txt"));
+        assertEquals("b", destination.get("b.txt"));
+        assertTrue(destination.saved);
+    }
+
+    @Test
+    public void testParallelFailure() throws Exception {
+        final Exception first = new Exception("first");
+        final CountDownLatch failed = new CountDownLatch(1);
+        DumpProvider failing = new DumpProvider() {
+            public void createDump(DumpDestination destination) throws Exception {
+                destination.add("failing.txt").close();
+                failed.countDown();
+                throw first;
+            }
+        };
+        DumpProvider slow = new DumpProvider() {
+            public void createDump(DumpDestination destination) throws Exception {
+                // completes after the failure
+                assertTrue(failed.await(10, TimeUnit.SECONDS));
+                Thread.sleep(100);
+                write(destination.add("slow.txt"), "slow");
+            }
+        };
+        DumpProvider second = new DumpProvider() {
+            public void createDump(DumpDestination destination) throws Exception {
+                destination.add("second.txt").close();
+                throw new Exception("second");
+            }
+        };
+        MemoryDumpDestination destination = new MemoryDumpDestination();
+        DumpCreator creator = new DumpCreator();
+        creator.setThreads(3);
+        try {
+            creator.createDump(Arrays.asList(failing, slow, second), destination);
+            fail("Expected the exception of the first failing provider");
+        } catch (Exception e) {
+            assertSame(first, e);
+        }
+        // the other providers completed before the destination was saved
+        assertEquals("slow", destination.get("slow.txt"));
+        assertTrue(destination.saved);
+    }
+
+    @Test
+    public void testConcurrentDumps() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final DumpProvider waiting = new DumpProvider() {
+            public void createDump(DumpDestination destination) throws Exception {
+                write(destination.add("first.txt"), "first");
+                // the second dump is created meanwhile
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+            }
+        };
+        final DumpCreator creator = new DumpCreator();
+        final AtomicReference<Map<String, Long>> timings = new AtomicReference<Map<String, Long>>();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final MemoryDumpDestination destination = new MemoryDumpDestination();
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    timings.set(creator.createDump(Collections.singletonList(waiting), destination));
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            }
+        };
+        thread.start();
+        while (destination.get("first.txt") == null) {
+            Thread.sleep(10);
+        }
+
+        Map<String, Long> second = creator.createDump(Collections.singletonList(entry("second.txt", "second")),
+                new MemoryDumpDestination());
+        done.countDown();
+        thread.join(10000);
+
+        assertNull(failure.get());
+        assertEquals(Collections.singleton("second.txt"), second.keySet());
+        assertEquals(Collections.singleton("first.txt"), timings.get().keySet());
+    }
+
+    private static DumpProvider entry(final String name, final String content) {
+        return new DumpProvider() {
+            public void createDump(DumpDestination destination) throws Exception {
+                write(destination.add(name), content);
+            }
+        };
+    }
+
+    private static void write(OutputStream out, String content) throws Exception {
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    /**
+     * Keeps the entries in memory.
+     */
+    private static class MemoryDumpDestination implements DumpDestination {
+
+        private final Map<String, ByteArrayOutputStream> entries =
+                Collections.synchronizedMap(new LinkedHashMap<String, ByteArrayOutputStream>());
+        private volatile boolean saved;
+
+        public OutputStream add(String name) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entries.put(name, out);
+            return out;
+        }
+
+        public void save() {
+            saved = true;
+        }
+
+        String get(String name) throws Exception {
+            ByteArrayOutputStream out = entries.get(name);
+            return out != null ? out.toString("UTF-8") : null;
+        }
+    }
+
+}
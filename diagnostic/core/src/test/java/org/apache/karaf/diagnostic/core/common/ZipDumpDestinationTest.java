@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZipDumpDestinationTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("dump", ".zip");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testSequentialEntries() throws Exception {
+        ZipDumpDestination destination = new ZipDumpDestination(file);
+        write(destination.add("a.txt"), "first".getBytes());
+        write(destination.add("b.txt"), "second".getBytes());
+        destination.save();
+
+        Map<String, byte[]> entries = read(file);
+        assertEquals(2, entries.size());
+        assertArrayEquals("first".getBytes(), entries.get("a.txt"));
+        assertArrayEquals("second".getBytes(), entries.get("b.txt"));
+    }
+
+    @Test
+    public void testEntriesSpooledWhileArchiveBusy() throws Exception {
+        byte[] small = "small".getBytes();
+        // larger than the in memory spool, goes through a temporary file
+        byte[] large = new byte[200 * 1024];
+        new Random(1).nextBytes(large);
+
+        ZipDumpDestination destination = new ZipDumpDestination(file);
+        OutputStream direct = destination.add("direct.txt");
+        direct.write("direct".getBytes());
+        write(destination.add("small.txt"), small);
+        write(destination.add("large.bin"), large);
+        direct.close();
+        destination.save();
+
+        Map<String, byte[]> entries = read(file);
+        assertEquals(3, entries.size());
+        assertArrayEquals("direct".getBytes(), entries.get("direct.txt"));
+        assertArrayEquals(small, entries.get("small.txt"));
+        assertArrayEquals(large, entries.get("large.bin"));
+    }
+
+    @Test
+    public void testSaveClosesOpenEntries() throws Exception {
+        ZipDumpDestination destination = new ZipDumpDestination(file);
+        OutputStream direct = destination.add("direct.txt");
+        OutputStream spooled = destination.add("spooled.txt");
+        spooled.write("unfinished".getBytes());
+        write(direct, "direct".getBytes());
+        destination.save();
+
+        Map<String, byte[]> entries = read(file);
+        assertArrayEquals("direct".getBytes(), entries.get("direct.txt"));
+        assertArrayEquals("unfinished".getBytes(), entries.get("spooled.txt"));
+    }
+
+    @Test
+    public void testConcurrentEntries() throws Exception {
+        final ZipDumpDestination destination = new ZipDumpDestination(file);
+        final int threads = 8;
+        final int entriesPerThread = 20;
+        final Map<String, byte[]> expected = new LinkedHashMap<String, byte[]>();
+        Random random = new Random(42);
+        for (int t = 0; t < threads; t++) {
+            for (int e = 0; e < entriesPerThread; e++) {
+                byte[] data = new byte[random.nextInt(150 * 1024)];
+                random.nextBytes(data);
+                expected.put("thread" + t + "/entry" + e, data);
+            }
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int e = 0; e < entriesPerThread; e++) {
+                            String name = "thread" + id + "/entry" + e;
+                            byte[] data = expected.get(name);
+                            OutputStream out = destination.add(name);
+                            // write in chunks so that entries overlap
+                            for (int off = 0; off < data.length; off += 4096) {
+                                out.write(data, off, Math.min(4096, data.length - off));
+                            }
+                            out.close();
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertNull(failure.get());
+        destination.save();
+
+        Map<String, byte[]> entries = read(file);
+        assertEquals(expected.size(), entries.size());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), entries.get(entry.getKey()));
+        }
+    }
+
+    private static void write(OutputStream out, byte[] data) throws IOException {
+        out.write(data);
+        out.close();
+    }
+
+    private static Map<String, byte[]> read(File file) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        ZipFile zip = new ZipFile(file);
+        try {
+            Enumeration<? extends ZipEntry> e = zip.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry entry = e.nextElement();
+                InputStream in = zip.getInputStream(entry);
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, n);
+                    }
+                    entries.put(entry.getName(), out.toByteArray());
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+public class LogDumpProviderTest {
+
+    private static final String LOG = "first line\nsecond line\nthird line\n";
+
+    private File directory;
+    private File log;
+    private LogDumpProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("log", null);
+        directory.delete();
+        directory.mkdirs();
+        log = new File(directory, "karaf.log");
+        write(log, LOG);
+
+        Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put("log4j.appender.out.file", log.getPath());
+        properties.put("log4j.appender.out.layout", "org.apache.log4j.PatternLayout");
+        Configuration configuration = createMock(Configuration.class);
+        expect(configuration.getProperties()).andReturn(properties).anyTimes();
+        ConfigurationAdmin configurationAdmin = createMock(ConfigurationAdmin.class);
+        expect(configurationAdmin.getConfiguration("org.ops4j.pax.logging")).andReturn(configuration).anyTimes();
+        ServiceReference reference = createMock(ServiceReference.class);
+        BundleContext bundleContext = createMock(BundleContext.class);
+        expect(bundleContext.getServiceReference(ConfigurationAdmin.class.getName())).andReturn(reference).anyTimes();
+        expect(bundleContext.getService(reference)).andReturn(configurationAdmin).anyTimes();
+        expect(bundleContext.ungetService(reference)).andReturn(true).anyTimes();
+        replay(configuration, configurationAdmin, reference, bundleContext);
+
+        provider = new LogDumpProvider();
+        provider.setBundleContext(bundleContext);
+    }
+
+    @After
+    public void tearDown() {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testCopyCurrentFile() throws Exception {
+        write(new File(directory, "karaf.log.1"), "rolled\n");
+        Map<String, String> entries = dump();
+        assertEquals(1, entries.size());
+        assertEquals(LOG, entries.get("log/karaf.log"));
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        // the limit falls within the second line, which is dropped
+        provider.setMaxSize(15);
+        assertEquals("third line\n", dump().get("log/karaf.log"));
+
+        // the limit falls at the start of the second line, which is kept
+        provider.setMaxSize(23);
+        assertEquals("second line\nthird line\n", dump().get("log/karaf.log"));
+
+        provider.setMaxSize(LOG.length() + 1);
+        assertEquals(LOG, dump().get("log/karaf.log"));
+    }
+
+    @Test
+    public void testMaxAge() throws Exception {
+        long now = System.currentTimeMillis();
+        write(new File(directory, "karaf.log.1"), "recent\n");
+        assertTrue(new File(directory, "karaf.log.1").setLastModified(now - 10 * 60 * 1000));
+        write(new File(directory, "karaf.log.2"), "old\n");
+        assertTrue(new File(directory, "karaf.log.2").setLastModified(now - 2 * 60 * 60 * 1000));
+        // not a rolled over file of the appender
+        write(new File(directory, "other.log"), "other\n");
+
+        provider.setMaxAge(60);
+        Map<String, String> entries = dump();
+        assertEquals(2, entries.size());
+        assertEquals(LOG, entries.get("log/karaf.log"));
+        assertEquals("recent\n", entries.get("log/karaf.log.1"));
+
+        // the rolled over files are copied even when the current one is missing
+        log.delete();
+        entries = dump();
+        assertEquals(1, entries.size());
+        assertEquals("recent\n", entries.get("log/karaf.log.1"));
+    }
+
+    private Map<String, String> dump() throws Exception {
+        final Map<String, ByteArrayOutputStream> entries = new LinkedHashMap<String, ByteArrayOutputStream>();
+        provider.createDump(new DumpDestination() {
+            public OutputStream add(String name) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                entries.put(name, out);
+                return out;
+            }
+
+            public void save() {
+            }
+        });
+        Map<String, String> contents = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, ByteArrayOutputStream> entry : entries.entrySet()) {
+            contents.put(entry.getKey(), entry.getValue().toString("UTF-8"));
+        }
+        return contents;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.junit.Test;
+
+public class SamplingProfilerTest {
+
+    @Test
+    public void testPoolName() {
+        assertEquals("pool-1-thread", SamplingProfiler.getPoolName("pool-1-thread-3"));
+        assertEquals("Karaf scheduler worker", SamplingProfiler.getPoolName("Karaf scheduler worker 12"));
+        assertEquals("qtp123", SamplingProfiler.getPoolName("qtp123-45"));
+        assertEquals("worker", SamplingProfiler.getPoolName("worker#7"));
+        assertEquals("worker", SamplingProfiler.getPoolName("worker_7"));
+        assertEquals("main", SamplingProfiler.getPoolName("main"));
+        // nothing left without the number
+        assertEquals("12345", SamplingProfiler.getPoolName("12345"));
+        assertEquals("--5", SamplingProfiler.getPoolName("--5"));
+        assertEquals("", SamplingProfiler.getPoolName(""));
+    }
+
+    @Test
+    public void testThreadsOfAPoolShareTheirTree() throws IOException {
+        SamplingProfiler profiler = new SamplingProfiler();
+        profiler.record(SamplingProfiler.getPoolName("pool-1-thread-1"), stack("B.b", "A.a"));
+        profiler.record(SamplingProfiler.getPoolName("pool-1-thread-2"), stack("B.b", "A.a"));
+        profiler.record(SamplingProfiler.getPoolName("pool-1-thread-2"), stack("C.c", "A.a"));
+        profiler.record(SamplingProfiler.getPoolName("main"), stack("A.a"));
+
+        assertEquals(4, profiler.getSampleCount());
+        // two pools, A.a, B.b and C.c in the first one, A.a in the second one
+        assertEquals(6, profiler.getNodeCount());
+        assertEquals(0, profiler.getTruncatedCount());
+        assertEquals("main;A.a 1\n"
+                + "pool-1-thread;A.a;B.b 2\n"
+                + "pool-1-thread;A.a;C.c 1\n", collapsed(profiler));
+    }
+
+    @Test
+    public void testPoolNamesAreEscaped() throws IOException {
+        SamplingProfiler profiler = new SamplingProfiler();
+        profiler.record("Karaf scheduler;worker", stack("A.a"));
+        assertEquals("Karaf_scheduler_worker;A.a 1\n", collapsed(profiler));
+    }
+
+    @Test
+    public void testDepthTruncation() throws IOException {
+        SamplingProfiler profiler = new SamplingProfiler();
+        profiler.setMaxDepth(2);
+        // stacks are taken with the maximum depth, a full stack may have been cut
+        profiler.record("pool", stack("B.b", "A.a"));
+        profiler.record("pool", stack("A.a"));
+        assertEquals("pool;[truncated];A.a;B.b 1\n"
+                + "pool;A.a 1\n", collapsed(profiler));
+    }
+
+    @Test
+    public void testNodeCap() throws IOException {
+        SamplingProfiler profiler = new SamplingProfiler();
+        profiler.setMaxNodes(3);
+        profiler.record("pool", stack("C.c", "B.b", "A.a"));
+        assertEquals(3, profiler.getNodeCount());
+        assertEquals(1, profiler.getSampleCount());
+        assertEquals(1, profiler.getTruncatedCount());
+
+        // known paths are still recorded
+        profiler.record("pool", stack("B.b", "A.a"));
+        // no room left for a new pool, the sample is dropped
+        profiler.record("other", stack("A.a"));
+        assertEquals(3, profiler.getNodeCount());
+        assertEquals(2, profiler.getSampleCount());
+        assertEquals(2, profiler.getTruncatedCount());
+        // the sample of the cut path is accounted to its deepest known frame
+        assertEquals("pool;A.a;B.b 2\n", collapsed(profiler));
+    }
+
+    @Test
+    public void testReset() throws IOException {
+        SamplingProfiler profiler = new SamplingProfiler();
+        profiler.setMaxNodes(2);
+        profiler.record("pool", stack("B.b", "A.a"));
+        profiler.reset();
+        assertEquals(0, profiler.getSampleCount());
+        assertEquals(0, profiler.getNodeCount());
+        assertEquals(0, profiler.getTruncatedCount());
+        assertEquals("", collapsed(profiler));
+    }
+
+    @Test
+    public void testDump() throws Exception {
+        SamplingProfiler profiler = new SamplingProfiler();
+        MemoryDestination destination = new MemoryDestination();
+        profiler.createDump(destination);
+        assertTrue(destination.entries.isEmpty());
+
+        profiler.record("pool", stack("A.a"));
+        profiler.createDump(destination);
+        assertEquals("pool;A.a 1\n", destination.entries.get("profiler/stacks.txt").toString("UTF-8"));
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        SamplingProfiler profiler = new SamplingProfiler();
+        profiler.start(1);
+        try {
+            long timeout = System.currentTimeMillis() + 5000;
+            // keep this thread runnable so that it is sampled
+            while (profiler.getSampleCount() == 0 && System.currentTimeMillis() < timeout) {
+                Math.sqrt(System.nanoTime());
+            }
+            assertTrue(profiler.isRunning());
+        } finally {
+            profiler.stop();
+        }
+        assertTrue(profiler.getSampleCount() > 0);
+        assertTrue(!profiler.isRunning());
+    }
+
+    /**
+     * @return a stack from the leaf to the root, with frames given as class.method
+     */
+    private static StackTraceElement[] stack(String... frames) {
+        StackTraceElement[] stack = new StackTraceElement[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            int dot = frames[i].lastIndexOf('.');
+            stack[i] = new StackTraceElement(frames[i].substring(0, dot), frames[i].substring(dot + 1), null, -1);
+        }
+        return stack;
+    }
+
+    private static String collapsed(SamplingProfiler profiler) throws IOException {
+        StringWriter writer = new StringWriter();
+        profiler.writeCollapsedStacks(writer);
+        return writer.toString();
+    }
+
+    private static class MemoryDestination implements DumpDestination {
+        final Map<String, ByteArrayOutputStream> entries = new LinkedHashMap<String, ByteArrayOutputStream>();
+
+        public OutputStream add(String name) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entries.put(name, out);
+            return out;
+        }
+
+        public void save() {
+        }
+    }
+
+}
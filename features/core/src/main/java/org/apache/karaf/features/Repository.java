@@ -33,4 +33,10 @@ public interface Repository {
     
     boolean isValid();
 
+    /**
+     * @return the time taken to download and parse the repository, in milliseconds,
+     *         or -1 if it has not been loaded yet
+     */
+    long getLoadTime();
+
 }
@@ -60,9 +60,13 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -87,9 +91,11 @@ public class FeaturesServiceImpl implements FeaturesService {
     private boolean respectStartLvlDuringFeatureStartup;
     private boolean respectStartLvlDuringFeatureUninstall;
     private long resolverTimeout = 5000;
+    private int repositoryLoaderThreads = 4;
     private Set<URI> uris;
     private Map<URI, Repository> repositories = new HashMap<URI, Repository>();
     private Map<String, Map<String, Feature>> features;
+    private volatile FeatureVersions featureVersions;
     private Map<Feature, Set<Long>> installed = new HashMap<Feature, Set<Long>>();
     private List<FeaturesListener> listeners = new CopyOnWriteArrayIdentityList<FeaturesListener>();
     private ThreadLocal<Repository> repo = new ThreadLocal<Repository>();
@@ -112,6 +118,14 @@ public class FeaturesServiceImpl implements FeaturesService {
         this.resolverTimeout = resolverTimeout;
     }
 
+    public int getRepositoryLoaderThreads() {
+        return repositoryLoaderThreads;
+    }
+
+    public void setRepositoryLoaderThreads(int repositoryLoaderThreads) {
+        this.repositoryLoaderThreads = repositoryLoaderThreads;
+    }
+
     public void setRespectStartLvlDuringFeatureStartup(boolean respectStartLvlDuringFeatureStartup) {
         this.respectStartLvlDuringFeatureStartup = respectStartLvlDuringFeatureStartup;
     }
@@ -219,10 +233,9 @@ public class FeaturesServiceImpl implements FeaturesService {
      * @throws Exception in case of adding failure.
      */
     protected Repository internalAddRepository(URI uri) throws Exception {
-        validateRepository(uri);
         RepositoryImpl repo = new RepositoryImpl(uri);
+        repo.load(true);
         repositories.put(uri, repo);
-        repo.load();
         callListeners(new RepositoryEvent(repo, RepositoryEvent.EventType.RepositoryAdded, false));
         features = null;
         return repo;
@@ -721,24 +734,17 @@ public class FeaturesServiceImpl implements FeaturesService {
         } else {
             Feature feature = versions.get(version);
             if (feature == null) {
+                NavigableMap<Version, Feature> sorted = getFeatureVersions(name);
                 if (org.apache.karaf.features.internal.model.Feature.DEFAULT_VERSION.equals(version)) {
-                    Version latest = new Version(cleanupVersion(version));
-                    for (String available : versions.keySet()) {
-                        Version availableVersion = new Version(cleanupVersion(available));
-                        if (availableVersion.compareTo(latest) > 0) {
-                            feature = versions.get(available);
-                            latest = availableVersion;
-                        }
+                    Map.Entry<Version, Feature> latest = sorted.lastEntry();
+                    if (latest != null && latest.getKey().compareTo(Version.emptyVersion) > 0) {
+                        feature = latest.getValue();
                     }
                 } else {
-                    Version latest = new Version(cleanupVersion(org.apache.karaf.features.internal.model.Feature.DEFAULT_VERSION));
                     VersionRange versionRange = new VersionRange(version, true, true);
-                    for (String available : versions.keySet()) {
-                        Version availableVersion = new Version(cleanupVersion(available));
-                        if (availableVersion.compareTo(latest) > 0 && versionRange.contains(availableVersion)) {
-                            feature = versions.get(available);
-                            latest = availableVersion;
-                        }
+                    Map.Entry<Version, Feature> latest = getLatest(sorted, versionRange);
+                    if (latest != null && latest.getKey().compareTo(Version.emptyVersion) > 0) {
+                        feature = latest.getValue();
                     }
                 }
             }
@@ -746,6 +752,67 @@ public class FeaturesServiceImpl implements FeaturesService {
         }
     }
 
+    /**
+     * Features by name, sorted by version, built lazily from the features map they are indexed from.
+     * A new index is published whenever the features map changes, so that concurrent lookups
+     * never see a partially cleared index.
+     */
+    private static class FeatureVersions {
+        final Map<String, Map<String, Feature>> features;
+        final ConcurrentMap<String, NavigableMap<Version, Feature>> versions = new ConcurrentHashMap<String, NavigableMap<Version, Feature>>();
+
+        FeatureVersions(Map<String, Map<String, Feature>> features) {
+            this.features = features;
+        }
+    }
+
+    /**
+     * Returns the available versions of the given feature, sorted by version.
+     */
+    private NavigableMap<Version, Feature> getFeatureVersions(String name) throws Exception {
+        Map<String, Map<String, Feature>> features = getFeatures();
+        FeatureVersions index = featureVersions;
+        if (index == null || index.features != features) {
+            index = new FeatureVersions(features);
+            featureVersions = index;
+        }
+        NavigableMap<Version, Feature> sorted = index.versions.get(name);
+        if (sorted == null) {
+            sorted = new TreeMap<Version, Feature>();
+            Map<String, Feature> versions = features.get(name);
+            if (versions != null) {
+                for (Map.Entry<String, Feature> entry : versions.entrySet()) {
+                    Version v = new Version(cleanupVersion(entry.getKey()));
+                    if (!sorted.containsKey(v)) {
+                        sorted.put(v, entry.getValue());
+                    }
+                }
+            }
+            NavigableMap<Version, Feature> previous = index.versions.putIfAbsent(name, sorted);
+            if (previous != null) {
+                sorted = previous;
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the entry with the highest version contained in the given range.
+     */
+    private static Map.Entry<Version, Feature> getLatest(NavigableMap<Version, Feature> sorted, VersionRange range) {
+        NavigableMap<Version, Feature> candidates = range.getCeiling() != null
+                ? sorted.headMap(range.getCeiling(), !range.isOpenCeiling()) : sorted;
+        for (Map.Entry<Version, Feature> entry : candidates.descendingMap().entrySet()) {
+            if (range.contains(entry.getKey())) {
+                return entry;
+            }
+            if (entry.getKey().compareTo(range.getFloor()) < 0) {
+                break;
+            }
+        }
+        return null;
+    }
+
     protected Map<String, Map<String, Feature>> getFeatures() throws Exception {
         if (features == null) {
         	//the outer map's key is feature name, the inner map's key is feature version       
@@ -786,18 +853,33 @@ public class FeaturesServiceImpl implements FeaturesService {
 	private void initState() {
         if (!loadState()) {
             if (uris != null) {
-                for (URI uri : uris) {
-                    try {
-                    	internalAddRepository(uri);
-                    } catch (Exception e) {
-                        LOGGER.warn(format("Unable to add features repository %s at startup", uri), e);    
-                    }
-                }
+                loadRepositories(uris);
             }
             saveState();
         }
 	}
     
+    /**
+     * Load the given repositories, and the ones they reference, concurrently.
+     * Repositories are then added one at a time from the calling thread.
+     */
+    private void loadRepositories(Collection<URI> uris) {
+        RepositoryLoader loader = new RepositoryLoader(repositoryLoaderThreads, repositories.keySet());
+        try {
+            loader.load(uris);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Map.Entry<URI, Exception> failure : loader.getFailures().entrySet()) {
+            LOGGER.warn(format("Unable to add features repository %s at startup", failure.getKey()), failure.getValue());
+        }
+        for (RepositoryImpl repo : loader.getRepositories().values()) {
+            repositories.put(repo.getURI(), repo);
+            callListeners(new RepositoryEvent(repo, RepositoryEvent.EventType.RepositoryAdded, false));
+            features = null;
+        }
+    }
+
     public void start() throws Exception {
         this.eventAdminListener = bundleManager.createAndRegisterEventAdminListener();
         initState();
@@ -840,13 +922,7 @@ public class FeaturesServiceImpl implements FeaturesService {
                 close(is);
             }
             Set<URI> repositories = loadSet(props, "repositories.");
-            for (URI repo : repositories) {
-            	try {
-            		internalAddRepository(repo);
-            	} catch (Exception e) {
-            		LOGGER.warn(format("Unable to add features repository %s at startup", repo), e);
-            	}
-            }
+            loadRepositories(repositories);
             installed = loadMap(props, "features.");
             for (Feature f : installed.keySet()) {
                 callListeners(new FeatureEvent(f, FeatureEvent.EventType.FeatureInstalled, true));
@@ -1060,16 +1136,9 @@ public class FeaturesServiceImpl implements FeaturesService {
             }
         }
         if (fi == null) {
-            Map<String, Feature> avail = getFeatures().get(dependency.getName());
-            if (avail != null) {
-                for (Feature f : avail.values()) {
-                    Version v = VersionTable.getVersion(f.getVersion());
-                    if (range.contains(v)) {
-                        if (fi == null || VersionTable.getVersion(fi.getVersion()).compareTo(v) < 0) {
-                            fi = f;
-                        }
-                    }
-                }
+            Map.Entry<Version, Feature> latest = getLatest(getFeatureVersions(dependency.getName()), range);
+            if (latest != null) {
+                fi = latest.getValue();
             }
         }
         return fi;
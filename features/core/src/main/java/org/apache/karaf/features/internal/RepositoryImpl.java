@@ -34,6 +34,7 @@ public class RepositoryImpl implements Repository {
     private URI uri;
     private boolean valid;
     private Features features;
+    private long loadTime = -1;
 
     public RepositoryImpl(URI uri) {
         this.uri = uri;
@@ -65,7 +66,19 @@ public class RepositoryImpl implements Repository {
 
 
     public void load() throws IOException {
+        load(false);
+    }
+
+    /**
+     * Load the repository, optionally validating it against the features schema
+     * in the same pass.
+     *
+     * @param validate whether to validate the repository.
+     * @throws IOException if the repository can not be loaded or is not valid.
+     */
+    public void load(boolean validate) throws IOException {
         if (features == null) {
+            long start = System.currentTimeMillis();
             try {
                 InputStream inputStream = uri.toURL().openStream();
                 inputStream = new FilterInputStream(inputStream) {
@@ -78,11 +91,12 @@ public class RepositoryImpl implements Repository {
     				}
     			};
                 try {
-                    features = JaxbUtil.unmarshal(inputStream, false);
+                    features = JaxbUtil.unmarshal(uri.toString(), inputStream, validate);
                 } finally {
                     inputStream.close();
                 }
                 valid = true;
+                loadTime = System.currentTimeMillis() - start;
             } catch (IllegalArgumentException e) {
                 throw (IOException) new IOException(e.getMessage() + " : " + uri).initCause(e);
             } catch (Exception e) {
@@ -91,6 +105,10 @@ public class RepositoryImpl implements Repository {
         }
     }
 
+    public long getLoadTime() {
+        return loadTime;
+    }
+
     public boolean isValid() {
         return this.valid;
     }
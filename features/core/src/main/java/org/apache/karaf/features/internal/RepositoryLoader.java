@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads several features repositories concurrently on a bounded pool.
+ * Repositories referenced by a loaded repository are scheduled as soon as
+ * it has been parsed, unless they are already known.
+ */
+public class RepositoryLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryLoader.class);
+
+    private static class Result {
+        final URI uri;
+        RepositoryImpl repository;
+        URI[] references;
+        Exception exception;
+
+        Result(URI uri) {
+            this.uri = uri;
+        }
+    }
+
+    private final int threads;
+    private final Set<URI> seen = new HashSet<URI>();
+    private final Map<URI, RepositoryImpl> repositories = new LinkedHashMap<URI, RepositoryImpl>();
+    private final Map<URI, Exception> failures = new LinkedHashMap<URI, Exception>();
+
+    /**
+     * @param threads the maximum number of repositories loaded at the same time
+     * @param known   the repositories which must not be loaded again
+     */
+    public RepositoryLoader(int threads, Collection<URI> known) {
+        this.threads = Math.max(1, threads);
+        this.seen.addAll(known);
+    }
+
+    /**
+     * Load the given repositories and the ones they reference.
+     */
+    public void load(Collection<URI> uris) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Features repository loader " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            CompletionService<Result> completion = new ExecutorCompletionService<Result>(executor);
+            int pending = 0;
+            for (URI uri : uris) {
+                if (seen.add(uri)) {
+                    completion.submit(newTask(uri));
+                    pending++;
+                }
+            }
+            while (pending > 0) {
+                Result result;
+                try {
+                    result = completion.take().get();
+                } catch (ExecutionException e) {
+                    // tasks report their own failures
+                    throw new IllegalStateException(e.getCause());
+                }
+                pending--;
+                if (result.exception != null) {
+                    failures.put(result.uri, result.exception);
+                    continue;
+                }
+                repositories.put(result.uri, result.repository);
+                for (URI reference : result.references) {
+                    if (seen.add(reference)) {
+                        completion.submit(newTask(reference));
+                        pending++;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the loaded repositories, in the order they have been loaded
+     */
+    public Map<URI, RepositoryImpl> getRepositories() {
+        return Collections.unmodifiableMap(repositories);
+    }
+
+    /**
+     * @return the repositories which could not be loaded
+     */
+    public Map<URI, Exception> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    private Callable<Result> newTask(final URI uri) {
+        return new Callable<Result>() {
+            public Result call() {
+                Result result = new Result(uri);
+                try {
+                    RepositoryImpl repository = new RepositoryImpl(uri);
+                    repository.load(true);
+                    result.references = repository.getRepositories();
+                    result.repository = repository;
+                    LOGGER.debug("Loaded features repository {} in {} ms", uri, repository.getLoadTime());
+                } catch (Exception e) {
+                    result.exception = e;
+                }
+                return result;
+            }
+        };
+    }
+
+}
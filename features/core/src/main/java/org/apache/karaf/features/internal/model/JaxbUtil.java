@@ -23,6 +23,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
@@ -32,20 +42,33 @@ import javax.xml.bind.ValidationEventHandler;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.namespace.QName;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.ValidatorHandler;
 
 import org.apache.karaf.features.FeaturesNamespaces;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLFilter;
 import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLFilterImpl;
 
 public class JaxbUtil {
 
     public static final XMLInputFactory XMLINPUT_FACTORY = XMLInputFactory.newInstance();
+    private static final Logger LOGGER = LoggerFactory.getLogger(JaxbUtil.class);
     private static final JAXBContext FEATURES_CONTEXT;
     static {
         try {
@@ -55,6 +78,47 @@ public class JaxbUtil {
         }
     }
 
+    private static final Map<String, String> SCHEMA_LOCATIONS = new HashMap<String, String>();
+    static {
+        SCHEMA_LOCATIONS.put(FeaturesNamespaces.URI_1_0_0, "/org/apache/karaf/features/karaf-features-1.0.0.xsd");
+        SCHEMA_LOCATIONS.put(FeaturesNamespaces.URI_1_1_0, "/org/apache/karaf/features/karaf-features-1.1.0.xsd");
+        SCHEMA_LOCATIONS.put(FeaturesNamespaces.URI_1_2_0, "/org/apache/karaf/features/karaf-features-1.2.0.xsd");
+    }
+    private static final ConcurrentMap<String, Schema> SCHEMAS = new ConcurrentHashMap<String, Schema>();
+
+    /**
+     * Parsers and unmarshallers are not thread safe but can be reused,
+     * so a few of them are kept around between two reads.
+     */
+    private static final int POOL_SIZE = 8;
+    private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+    static {
+        PARSER_FACTORY.setNamespaceAware(true);
+    }
+    private static final Pool<SAXParser> PARSERS = new Pool<SAXParser>();
+    private static final Pool<Unmarshaller> UNMARSHALLERS = new Pool<Unmarshaller>();
+
+    private static class Pool<T> {
+        private final Queue<T> queue = new ConcurrentLinkedQueue<T>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        T poll() {
+            T t = queue.poll();
+            if (t != null) {
+                size.decrementAndGet();
+            }
+            return t;
+        }
+
+        void offer(T t) {
+            if (size.incrementAndGet() <= POOL_SIZE) {
+                queue.offer(t);
+            } else {
+                size.decrementAndGet();
+            }
+        }
+    }
+
     public static void marshal(Features features, OutputStream out) throws JAXBException {
         Marshaller marshaller = FEATURES_CONTEXT.createMarshaller();
 
@@ -83,37 +147,290 @@ public class JaxbUtil {
      * @throws JAXBException                if the xml cannot be marshalled into a T.
      */
     public static Features unmarshal(InputStream in, boolean validate) {
+        return unmarshal(null, in, validate, false);
+    }
+
+    /**
+     * Read in a Features from the input stream.
+     * When validating, the input is checked against the schema of the features namespace
+     * while being unmarshalled, so the document is only parsed once.
+     *
+     * @param uri      the uri of the document, used for error reporting
+     * @param in       input stream to read
+     * @param validate whether to validate the input.
+     * @return a Features read from the input stream
+     * @throws IllegalArgumentException if the input is not valid
+     */
+    public static Features unmarshal(String uri, InputStream in, boolean validate) {
+        return unmarshal(uri, in, false, validate);
+    }
+
+    private static Features unmarshal(String uri, InputStream in, boolean dtdValidate, boolean schemaValidate) {
         InputSource inputSource = new InputSource(in);
+        inputSource.setSystemId(uri);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(validate);
-        SAXParser parser;
+        SAXParser parser = null;
+        Unmarshaller unmarshaller = null;
+        SchemaValidationFilter validationFilter = null;
         try {
-            parser = factory.newSAXParser();
-        
-
-        Unmarshaller unmarshaller = FEATURES_CONTEXT.createUnmarshaller();
-        unmarshaller.setEventHandler(new ValidationEventHandler() {
-            public boolean handleEvent(ValidationEvent validationEvent) {
-                System.out.println(validationEvent);
-                return false;
+            if (dtdValidate) {
+                // validating parsers are not pooled
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setNamespaceAware(true);
+                factory.setValidating(true);
+                parser = factory.newSAXParser();
+            } else {
+                parser = borrowParser();
             }
-        });
+            unmarshaller = borrowUnmarshaller();
 
-        XMLFilter xmlFilter = new NoSourceAndNamespaceFilter(parser.getXMLReader());
-        xmlFilter.setContentHandler(unmarshaller.getUnmarshallerHandler());
+            XMLReader reader = parser.getXMLReader();
+            if (schemaValidate) {
+                reader = validationFilter = new SchemaValidationFilter(reader, uri);
+            }
+            XMLFilter xmlFilter = new NoSourceAndNamespaceFilter(reader);
+            xmlFilter.setContentHandler(unmarshaller.getUnmarshallerHandler());
 
-        SAXSource source = new SAXSource(xmlFilter, inputSource);
+            SAXSource source = new SAXSource(xmlFilter, inputSource);
 
-        return (Features)unmarshaller.unmarshal(source);
-        
+            Features features = (Features) unmarshaller.unmarshal(source);
+            UNMARSHALLERS.offer(unmarshaller);
+            return features;
         } catch (ParserConfigurationException e) {
             throw new RuntimeException(e);
         } catch (JAXBException e) {
+            if (validationFilter != null && validationFilter.getFailure() != null) {
+                throw validationFilter.getFailure();
+            }
             throw new RuntimeException(e);
         } catch (SAXException e) {
+            if (validationFilter != null && validationFilter.getFailure() != null) {
+                throw validationFilter.getFailure();
+            }
             throw new RuntimeException(e);
+        } finally {
+            if (!dtdValidate) {
+                releaseParser(parser);
+            }
+        }
+    }
+
+    /**
+     * Validate a features document against the schema of its namespace,
+     * without unmarshalling it.
+     *
+     * @param uri the uri of the document, used for error reporting
+     * @param in  input stream to read
+     * @throws IllegalArgumentException if the document is not valid
+     */
+    public static void validate(String uri, InputStream in) throws IOException {
+        InputSource inputSource = new InputSource(in);
+        inputSource.setSystemId(uri);
+        SAXParser parser = null;
+        SchemaValidationFilter reader = null;
+        try {
+            parser = borrowParser();
+            reader = new SchemaValidationFilter(parser.getXMLReader(), uri);
+            reader.setContentHandler(new DefaultHandler());
+            reader.parse(inputSource);
+        } catch (ParserConfigurationException e) {
+            throw new RuntimeException(e);
+        } catch (SAXException e) {
+            if (reader != null && reader.getFailure() != null) {
+                throw reader.getFailure();
+            }
+            throw new IllegalArgumentException("Unable to validate " + uri, e);
+        } finally {
+            releaseParser(parser);
+        }
+    }
+
+    /**
+     * Returns the compiled schema for the given features namespace.
+     * Schemas are compiled once and shared, as they are immutable and thread safe.
+     *
+     * @param namespace the features namespace
+     * @return the schema or <code>null</code> if the namespace is unknown
+     */
+    public static Schema getSchema(String namespace) throws SAXException {
+        Schema schema = SCHEMAS.get(namespace);
+        if (schema == null) {
+            String location = SCHEMA_LOCATIONS.get(namespace);
+            if (location == null) {
+                return null;
+            }
+            // SchemaFactory is not thread safe
+            synchronized (SCHEMAS) {
+                schema = SCHEMAS.get(namespace);
+                if (schema == null) {
+                    SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+                    schema = factory.newSchema(new StreamSource(JaxbUtil.class.getResourceAsStream(location)));
+                    SCHEMAS.put(namespace, schema);
+                }
+            }
+        }
+        return schema;
+    }
+
+    private static SAXParser borrowParser() throws ParserConfigurationException, SAXException {
+        SAXParser parser = PARSERS.poll();
+        if (parser == null) {
+            synchronized (PARSER_FACTORY) {
+                parser = PARSER_FACTORY.newSAXParser();
+            }
+        }
+        return parser;
+    }
+
+    private static void releaseParser(SAXParser parser) {
+        if (parser != null) {
+            try {
+                parser.reset();
+                PARSERS.offer(parser);
+            } catch (UnsupportedOperationException e) {
+                // can not be reused
+            }
+        }
+    }
+
+    private static Unmarshaller borrowUnmarshaller() throws JAXBException {
+        Unmarshaller unmarshaller = UNMARSHALLERS.poll();
+        if (unmarshaller == null) {
+            unmarshaller = FEATURES_CONTEXT.createUnmarshaller();
+            unmarshaller.setEventHandler(new ValidationEventHandler() {
+                public boolean handleEvent(ValidationEvent validationEvent) {
+                    System.out.println(validationEvent);
+                    return false;
+                }
+            });
+        }
+        return unmarshaller;
+    }
+
+    /**
+     * Validates the document against the schema of the namespace of its root element
+     * while passing the events through. Documents without namespace are not validated.
+     * When the document is not valid, the parsing stops and {@link #getFailure()} tells why.
+     */
+    public static class SchemaValidationFilter extends XMLFilterImpl {
+        private final String uri;
+        private final List<String[]> prefixes = new ArrayList<String[]>();
+        private Locator locator;
+        private ContentHandler target;
+        private IllegalArgumentException failure;
+
+        public SchemaValidationFilter(XMLReader xmlReader, String uri) {
+            super(xmlReader);
+            this.uri = uri;
+        }
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+            super.setDocumentLocator(locator);
+        }
+
+        @Override
+        public void startDocument() throws SAXException {
+            // delayed until the root element is known
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) throws SAXException {
+            if (target == null) {
+                prefixes.add(new String[] { prefix, uri });
+            } else {
+                target.startPrefixMapping(prefix, uri);
+            }
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+            if (target == null) {
+                target = createTarget(new QName(uri, localName));
+                target.startDocument();
+                for (String[] prefix : prefixes) {
+                    target.startPrefixMapping(prefix[0], prefix[1]);
+                }
+                prefixes.clear();
+            }
+            target.startElement(uri, localName, qName, atts);
+        }
+
+        private ContentHandler createTarget(QName name) throws SAXException {
+            if (FeaturesNamespaces.FEATURES_0_0_0.equals(name)) {
+                LOGGER.warn("Old style feature file without namespace found (URI: {}). This format is deprecated and support for it will soon be removed", uri);
+                return getContentHandler();
+            }
+            Schema schema = FeaturesNamespaces.FEATURES_0_0_0.getLocalPart().equals(name.getLocalPart())
+                    ? getSchema(name.getNamespaceURI()) : null;
+            if (schema == null) {
+                failure = new IllegalArgumentException("Unrecognized root element: " + name);
+                throw new SAXException(failure.getMessage());
+            }
+            ValidatorHandler handler = schema.newValidatorHandler();
+            handler.setErrorHandler(new ErrorHandler() {
+                public void warning(SAXParseException exception) {
+                }
+                public void error(SAXParseException exception) throws SAXException {
+                    fatalError(exception);
+                }
+                public void fatalError(SAXParseException exception) throws SAXException {
+                    failure = new IllegalArgumentException("Unable to validate " + uri, exception);
+                    throw exception;
+                }
+            });
+            handler.setContentHandler(getContentHandler());
+            if (locator != null) {
+                handler.setDocumentLocator(locator);
+            }
+            return handler;
+        }
+
+        /**
+         * @return the reason why the document is not valid, or <code>null</code> if it is valid so far
+         */
+        public IllegalArgumentException getFailure() {
+            return failure;
+        }
+
+        private ContentHandler target() {
+            return target != null ? target : getContentHandler();
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            target().endElement(uri, localName, qName);
+        }
+
+        @Override
+        public void endPrefixMapping(String prefix) throws SAXException {
+            target().endPrefixMapping(prefix);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            target().characters(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            target().ignorableWhitespace(ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) throws SAXException {
+            target().processingInstruction(target, data);
+        }
+
+        @Override
+        public void skippedEntity(String name) throws SAXException {
+            target().skippedEntity(name);
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            target().endDocument();
         }
     }
 
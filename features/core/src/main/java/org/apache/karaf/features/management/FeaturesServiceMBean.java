@@ -105,6 +105,8 @@ public interface FeaturesServiceMBean {
 
     String REPOSITORY_FEATURES = "Features";
 
+    String REPOSITORY_LOAD_TIME = "LoadTime";
+
     /**
      * The type of the event which is emitted for repositories events
      */
@@ -119,7 +121,7 @@ public interface FeaturesServiceMBean {
     /**
      * The item names in the CompositeData representing a feature
      */
-    String[] REPOSITORY = { REPOSITORY_NAME, REPOSITORY_URI,  REPOSITORY_REPOSITORIES, REPOSITORY_FEATURES };
+    String[] REPOSITORY = { REPOSITORY_NAME, REPOSITORY_URI,  REPOSITORY_REPOSITORIES, REPOSITORY_FEATURES, REPOSITORY_LOAD_TIME };
 
     /**
      * The item names in the CompositeData representing the event raised for
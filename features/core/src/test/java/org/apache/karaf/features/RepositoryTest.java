@@ -108,6 +108,13 @@ public class RepositoryTest extends TestCase {
         assertEquals("cfloc", features[2].getConfigurationFiles().get(0).getLocation());
     }
     
+    public void testLoadTime() throws Exception {
+        Repository r = new RepositoryImpl(getClass().getResource("repo1.xml").toURI());
+        assertEquals(-1, r.getLoadTime());
+        r.getFeatures();
+        assertTrue(r.getLoadTime() >= 0);
+    }
+
     public void testShowWrongUriInException() throws Exception {
         String uri = "src/test/resources/org/apache/karaf/shell/features/repo1.xml";
         RepositoryImpl r = new RepositoryImpl(new URI(uri));
@@ -32,6 +32,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.felix.utils.manifest.Clause;
 import org.apache.karaf.features.Feature;
@@ -102,6 +104,71 @@ public class FeaturesServiceImplTest extends TestBase {
         assertSame("2.0.0", impl.getFeature("transaction", org.apache.karaf.features.internal.model.Feature.DEFAULT_VERSION).getVersion());
     }
 
+    @Test
+    public void testGetFeatureVersionRange() throws Exception {
+        final Map<String, Map<String, Feature>> features = features(
+                feature("transaction", "1.0.0"),
+                feature("transaction", "1.5.0"),
+                feature("transaction", "2.0.0"),
+                feature("transaction", "3.0.0.SNAPSHOT")
+        );
+        final FeaturesServiceImpl impl = new FeaturesServiceImpl(null, null) {
+            protected Map<String,Map<String,Feature>> getFeatures() throws Exception {
+                return features;
+            };
+        };
+        assertEquals("1.5.0", impl.getFeature("transaction", "[1.0,2.0)").getVersion());
+        assertEquals("2.0.0", impl.getFeature("transaction", "[1.0,2.0]").getVersion());
+        assertEquals("1.0.0", impl.getFeature("transaction", "[1.0,1.5)").getVersion());
+        assertEquals("1.5.0", impl.getFeature("transaction", "(1.0,1.5]").getVersion());
+        assertEquals("3.0.0.SNAPSHOT", impl.getFeature("transaction", "[2.5,4)").getVersion());
+        // a plain version is an exact range
+        assertNull(impl.getFeature("transaction", "2.5"));
+        assertNull(impl.getFeature("transaction", "(1.0,1.5)"));
+        assertNull(impl.getFeature("transaction", "[4.0,5.0)"));
+    }
+
+    @Test
+    public void testGetFeatureConcurrently() throws Exception {
+        final Map<String, Map<String, Feature>> features1 = features(
+                feature("transaction", "1.0.0"),
+                feature("transaction", "2.0.0")
+        );
+        final Map<String, Map<String, Feature>> features2 = features(
+                feature("transaction", "1.0.0"),
+                feature("transaction", "1.1.0")
+        );
+        final AtomicInteger calls = new AtomicInteger();
+        final FeaturesServiceImpl impl = new FeaturesServiceImpl(null, null) {
+            protected Map<String,Map<String,Feature>> getFeatures() throws Exception {
+                return (calls.incrementAndGet() / 100) % 2 == 0 ? features1 : features2;
+            };
+        };
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 2000; j++) {
+                            Feature feature = impl.getFeature("transaction", "[1.0,3.0)");
+                            if (feature == null || feature.getVersion().equals("1.0.0")) {
+                                throw new AssertionError("Unexpected feature " + feature);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(error.get());
+    }
+
     @Test
     public void testStartDoesNotFailWithOneInvalidUri()  {
         BundleManager bundleManager = EasyMock.createMock(BundleManager.class);
@@ -57,4 +57,15 @@ public class FeaturesValidationTest {
         }
     }
 
+    @Test
+    public void testLoadValidated() throws Exception {
+        new RepositoryImpl(getClass().getResource("f06.xml").toURI()).load(true);
+        try {
+            new RepositoryImpl(getClass().getResource("f05.xml").toURI()).load(true);
+            fail("Validation should have failed");
+        } catch (Exception e) {
+            // ok
+        }
+    }
+
 }
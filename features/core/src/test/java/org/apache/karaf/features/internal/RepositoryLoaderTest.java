@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepositoryLoaderTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("repositories", null);
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testLoadReferencedRepositories() throws Exception {
+        URI a = uri("a");
+        URI b = uri("b");
+        URI c = uri("c");
+        URI d = uri("d");
+        createRepo("a", b, c);
+        createRepo("b", d);
+        // references back to an already loaded repository are not loaded again
+        createRepo("c", d, a);
+        createRepo("d");
+
+        RepositoryLoader loader = new RepositoryLoader(3, Collections.<URI>emptyList());
+        loader.load(Arrays.asList(a));
+
+        Map<URI, RepositoryImpl> repositories = loader.getRepositories();
+        assertEquals(new HashSet<URI>(Arrays.asList(a, b, c, d)), repositories.keySet());
+        assertEquals(a, repositories.keySet().iterator().next());
+        for (Map.Entry<URI, RepositoryImpl> entry : repositories.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue().getURI());
+            assertTrue(entry.getValue().isValid());
+            assertTrue(entry.getValue().getLoadTime() >= 0);
+        }
+        assertEquals("a", repositories.get(a).getName());
+        assertEquals(1, repositories.get(a).getFeatures().length);
+        assertTrue(loader.getFailures().isEmpty());
+    }
+
+    @Test
+    public void testLoadManyRepositories() throws Exception {
+        List<URI> uris = new ArrayList<URI>();
+        for (int i = 0; i < 20; i++) {
+            createRepo("r" + i);
+            uris.add(uri("r" + i));
+        }
+        // duplicates are loaded once
+        List<URI> requested = new ArrayList<URI>(uris);
+        requested.addAll(uris);
+
+        RepositoryLoader loader = new RepositoryLoader(4, Collections.<URI>emptyList());
+        loader.load(requested);
+
+        assertEquals(new HashSet<URI>(uris), loader.getRepositories().keySet());
+        assertTrue(loader.getFailures().isEmpty());
+    }
+
+    @Test
+    public void testKnownRepositoriesAreNotLoaded() throws Exception {
+        URI a = uri("a");
+        URI b = uri("b");
+        createRepo("a", b);
+        createRepo("b", uri("c"));
+        createRepo("c");
+
+        RepositoryLoader loader = new RepositoryLoader(2, Arrays.asList(b));
+        loader.load(Arrays.asList(a, b));
+
+        assertEquals(Collections.singleton(a), loader.getRepositories().keySet());
+        assertTrue(loader.getFailures().isEmpty());
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        URI a = uri("a");
+        URI missing = uri("missing");
+        URI invalid = uri("invalid");
+        createRepo("a", missing, invalid);
+        PrintWriter pw = new PrintWriter(new FileWriter(new File(dir, "invalid.xml")));
+        pw.print("<features name='invalid' xmlns='http://karaf.apache.org/xmlns/features/v1.0.0'><unknown/></features>");
+        pw.close();
+
+        RepositoryLoader loader = new RepositoryLoader(2, Collections.<URI>emptyList());
+        loader.load(Arrays.asList(a));
+
+        assertEquals(Collections.singleton(a), loader.getRepositories().keySet());
+        Map<URI, Exception> failures = loader.getFailures();
+        assertEquals(new HashSet<URI>(Arrays.asList(missing, invalid)), failures.keySet());
+        assertTrue(failures.get(missing) instanceof IOException);
+        assertTrue(failures.get(invalid) instanceof IOException);
+    }
+
+    private URI uri(String name) {
+        return new File(dir, name + ".xml").toURI();
+    }
+
+    private void createRepo(String name, URI... repositories) throws IOException {
+        PrintWriter pw = new PrintWriter(new FileWriter(new File(dir, name + ".xml")));
+        pw.println("<features name='" + name + "' xmlns='http://karaf.apache.org/xmlns/features/v1.0.0'>");
+        for (URI repository : repositories) {
+            pw.println("  <repository>" + repository + "</repository>");
+        }
+        pw.println("  <feature name='" + name + "-feature'><bundle>mvn:org.apache.karaf/" + name + "/1.0</bundle></feature>");
+        pw.println("</features>");
+        pw.close();
+    }
+
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.karaf.features.obr.internal;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
@@ -35,14 +36,23 @@ import org.apache.felix.bundlerepository.Resource;
 import org.apache.karaf.features.BundleInfo;
 import org.apache.karaf.features.Feature;
 import org.apache.karaf.features.Resolver;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ObrResolver implements Resolver {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObrResolver.class);
+
     private RepositoryAdmin repositoryAdmin;
+    private BundleContext bundleContext;
     private boolean resolveOptionalImports;
     private boolean startByDefault;
     private int startLevel;
+    private boolean cacheResources = true;
+
+    private ResourceCache resourceCache;
 
     public RepositoryAdmin getRepositoryAdmin() {
         return repositoryAdmin;
@@ -52,6 +62,10 @@ public class ObrResolver implements Resolver {
         this.repositoryAdmin = repositoryAdmin;
     }
 
+    public void setBundleContext(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
     public boolean isResolveOptionalImports() {
         return resolveOptionalImports;
     }
@@ -74,7 +88,20 @@ public class ObrResolver implements Resolver {
         this.startLevel = startLevel;
     }
 
+    /**
+     * When set to <code>true</code>, the descriptors of the feature bundles are cached by url and
+     * manifest checksum, and persisted in the bundle data area.
+     * Defaults to <code>true</code>
+     *
+     * @param cacheResources
+     */
+    public void setCacheResources(boolean cacheResources) {
+        this.cacheResources = cacheResources;
+    }
+
     public List<BundleInfo> resolve(Feature feature) throws Exception {
+        long start = System.currentTimeMillis();
+        ResourceCache cache = getResourceCache();
         List<Requirement> reqs = new ArrayList<Requirement>();
         List<Resource> ress = new ArrayList<Resource>();
         List<Resource> featureDeploy = new ArrayList<Resource>();
@@ -89,12 +116,19 @@ public class ObrResolver implements Resolver {
                 infos.put(req, bundleInfo);
             }
             if (url != null) {
-            	Resource res = repositoryAdmin.getHelper().createResource(url);
+            	Resource res = cache != null
+            	        ? cache.getResource(repositoryAdmin.getHelper(), url)
+            	        : repositoryAdmin.getHelper().createResource(url);
             	ress.add(res);
             	infos.put(res, bundleInfo);
             }
         }
 
+        if (cache != null) {
+            cache.save();
+        }
+        long resources = System.currentTimeMillis();
+
         Repository repository = repositoryAdmin.getHelper().repository(ress.toArray(new Resource[ress.size()]));
         List<Repository> repos = new ArrayList<Repository>();
         repos.add(repositoryAdmin.getSystemRepository());
@@ -112,7 +146,11 @@ public class ObrResolver implements Resolver {
             resolver.add(req);
         }
 
-        if (!doResolve(resolver)) {
+        boolean resolved = doResolve(resolver);
+        long end = System.currentTimeMillis();
+        LOGGER.debug("Resolved feature {} in {} ms (bundles analysis: {} ms, resolution: {} ms)",
+                new Object[] { feature.getId(), end - start, resources - start, end - resources });
+        if (!resolved) {
             StringWriter w = new StringWriter();
             PrintWriter out = new PrintWriter(w);
             Reason[] failedReqs = resolver.getUnsatisfiedRequirements();
@@ -159,6 +197,14 @@ public class ObrResolver implements Resolver {
         return bundles;
     }
 
+    private synchronized ResourceCache getResourceCache() {
+        if (cacheResources && resourceCache == null) {
+            File file = bundleContext != null ? bundleContext.getDataFile("resources.properties") : null;
+            resourceCache = new ResourceCache(file);
+        }
+        return cacheResources ? resourceCache : null;
+    }
+
     private boolean doResolve(org.apache.felix.bundlerepository.Resolver resolver) {
         if (resolveOptionalImports) {
             return resolver.resolve();
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.features.obr.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+
+import org.apache.felix.bundlerepository.DataModelHelper;
+import org.apache.felix.bundlerepository.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the OBR resource descriptors of bundles.
+ * <p>
+ * A descriptor only depends on the manifest of the bundle, so descriptors are keyed by
+ * url and checksum of the manifest: checking an entry only requires reading the manifest,
+ * which avoids analyzing the headers of bundles that did not change. When a file is given,
+ * the descriptors are persisted in it to be reused after a restart.
+ */
+class ResourceCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceCache.class);
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private static class CachedResource {
+        final String checksum;
+        final String xml;
+        Resource resource;
+
+        CachedResource(String checksum, String xml, Resource resource) {
+            this.checksum = checksum;
+            this.xml = xml;
+            this.resource = resource;
+        }
+    }
+
+    private final File file;
+    private final Map<String, CachedResource> entries = new LinkedHashMap<String, CachedResource>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResource> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private boolean loaded;
+    private boolean dirty;
+
+    /**
+     * @param file the file where descriptors are persisted, may be <code>null</code>
+     */
+    ResourceCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the descriptor of the bundle at the given url, creating it if needed.
+     */
+    Resource getResource(DataModelHelper helper, URL url) throws Exception {
+        String checksum;
+        try {
+            checksum = checksum(url);
+        } catch (IOException e) {
+            // let the helper report the problem
+            checksum = null;
+        }
+        if (checksum == null) {
+            return helper.createResource(url);
+        }
+        String key = url.toExternalForm();
+        synchronized (this) {
+            load();
+            CachedResource entry = entries.get(key);
+            if (entry != null && entry.checksum.equals(checksum)) {
+                if (entry.resource == null) {
+                    entry.resource = helper.readResource(entry.xml);
+                }
+                return entry.resource;
+            }
+        }
+        Resource resource = helper.createResource(url);
+        if (resource != null) {
+            synchronized (this) {
+                entries.put(key, new CachedResource(checksum, helper.writeResource(resource), resource));
+                dirty = true;
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * Write the descriptors to the cache file if they changed.
+     */
+    synchronized void save() {
+        if (file == null || !dirty) {
+            return;
+        }
+        Properties props = new Properties();
+        int i = 0;
+        for (Map.Entry<String, CachedResource> entry : entries.entrySet()) {
+            props.setProperty(i + ".url", entry.getKey());
+            props.setProperty(i + ".checksum", entry.getValue().checksum);
+            props.setProperty(i + ".resource", entry.getValue().xml);
+            i++;
+        }
+        try {
+            file.getParentFile().mkdirs();
+            OutputStream os = new FileOutputStream(file);
+            try {
+                props.store(os, "OBR resources cache");
+            } finally {
+                os.close();
+            }
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write OBR resources cache " + file, e);
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        Properties props = new Properties();
+        try {
+            InputStream is = new FileInputStream(file);
+            try {
+                props.load(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read OBR resources cache " + file, e);
+            return;
+        }
+        for (int i = 0; props.containsKey(i + ".url"); i++) {
+            String url = props.getProperty(i + ".url");
+            String checksum = props.getProperty(i + ".checksum");
+            String xml = props.getProperty(i + ".resource");
+            if (checksum != null && xml != null) {
+                entries.put(url, new CachedResource(checksum, xml, null));
+            }
+        }
+    }
+
+    /**
+     * Compute the checksum of the manifest of the bundle at the given url.
+     *
+     * @return the checksum, or <code>null</code> if the jar has no manifest
+     */
+    static String checksum(URL url) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        Manifest manifest;
+        JarInputStream jis = new JarInputStream(url.openStream());
+        try {
+            manifest = jis.getManifest();
+        } finally {
+            jis.close();
+        }
+        if (manifest == null) {
+            return null;
+        }
+        OutputStream os = new DigestOutputStream(new OutputStream() {
+            public void write(int b) {
+            }
+            public void write(byte[] b, int off, int len) {
+            }
+        }, digest);
+        manifest.write(os);
+        os.close();
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        }
+        if ("file".equals(url.getProtocol())) {
+            // the descriptor of a local file also contains its size
+            sb.append('-').append(new File(url.getPath()).length());
+        }
+        return sb.toString();
+    }
+
+}
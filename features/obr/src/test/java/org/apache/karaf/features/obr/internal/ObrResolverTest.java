@@ -23,10 +23,15 @@ import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 
 import org.apache.felix.bundlerepository.Reason;
 import org.apache.felix.bundlerepository.RepositoryAdmin;
@@ -134,6 +139,54 @@ public class ObrResolverTest {
         verify(admin, resolver, resource);
     }
     
+    @Test
+    public void testResourcesAreCached() throws Exception {
+        File jar = File.createTempFile("bundle", ".jar");
+        try {
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+            manifest.getMainAttributes().putValue("Bundle-ManifestVersion", "2");
+            manifest.getMainAttributes().putValue("Bundle-SymbolicName", "org.foo");
+            manifest.getMainAttributes().putValue("Bundle-Version", "1.0.0");
+            new JarOutputStream(new FileOutputStream(jar), manifest).close();
+
+            final org.apache.karaf.features.internal.model.Feature f = new org.apache.karaf.features.internal.model.Feature("f1", "1.0");
+            f.setResolver("obr");
+            f.getBundle().add(new Bundle(jar.toURI().toURL().toExternalForm()));
+            final RepositoryAdmin admin = createMock(RepositoryAdmin.class);
+            final Resolver resolver = createMock(Resolver.class);
+            final ObrResolver obrResolver = new ObrResolver();
+            obrResolver.setRepositoryAdmin(admin);
+
+            final List<URL> analyzed = new ArrayList<URL>();
+            expect(admin.getHelper()).andReturn(new DataModelHelperImpl() {
+                @Override
+                public Resource createResource(URL url) throws IOException {
+                    analyzed.add(url);
+                    return super.createResource(url);
+                }
+            }).anyTimes();
+            expect(admin.getSystemRepository()).andReturn(createMock(org.apache.felix.bundlerepository.Repository.class)).anyTimes();
+            expect(admin.getLocalRepository()).andReturn(createMock(org.apache.felix.bundlerepository.Repository.class)).anyTimes();
+            expect(admin.listRepositories()).andReturn(new org.apache.felix.bundlerepository.Repository[0]).anyTimes();
+            expect(admin.resolver(EasyMock.<org.apache.felix.bundlerepository.Repository[]>anyObject())).andReturn(resolver).anyTimes();
+            resolver.add(EasyMock.<Resource>anyObject());
+            EasyMock.expectLastCall().anyTimes();
+            expect(resolver.resolve(Resolver.NO_OPTIONAL_RESOURCES)).andReturn(true).anyTimes();
+            expect(resolver.getAddedResources()).andReturn(new Resource[] { }).anyTimes();
+            expect(resolver.getRequiredResources()).andReturn(new Resource[] { }).anyTimes();
+            replay(admin, resolver);
+
+            obrResolver.resolve(f);
+            obrResolver.resolve(f);
+            // the second resolution reuses the descriptor of the bundle
+            assertEquals(1, analyzed.size());
+            verify(admin, resolver);
+        } finally {
+            jar.delete();
+        }
+    }
+
     /**
      * Test resolving a mvn url when pax url is configured with a repo that contains no protocol like: "test"
      * We expect to get a MalFormedUrlException not a IllegalArgumentException as in the issue 
@@ -16,6 +16,8 @@
  */
 package org.apache.karaf.instance.core;
 
+import java.util.Map;
+
 public interface InstanceService {
 
     Instance createInstance(String name, InstanceSettings settings, boolean printOutput) throws Exception;
@@ -29,5 +31,11 @@ public interface InstanceService {
 
     Instance[] getInstances();
 
-    Instance getInstance(String name);    
+    Instance getInstance(String name);
+
+    /**
+     * Get the state of all instances at once, keyed by instance name.
+     * Instances are probed concurrently and the states may be cached for a short time.
+     */
+    Map<String, String> getInstanceStates();
 }
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.instance.core.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies an instance directory to a new location.
+ * <p>
+ * The source tree is walked once to create the target directories and to compute the
+ * amount of data to copy, then files are copied in parallel using
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * When linking is enabled, immutable content (the <code>system</code> repository and
+ * jar files) is hard linked instead of being copied, provided the JVM supports it and
+ * both locations are on the same file system. Files that can not be linked are copied.
+ */
+public class InstanceCopier {
+
+    public interface Listener {
+
+        /**
+         * Called from time to time while files are being copied, always from the
+         * thread calling {@link InstanceCopier#copy(File, File)}.
+         */
+        void progress(int files, int totalFiles, long bytes, long totalBytes);
+
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstanceCopier.class);
+
+    private static final int PROGRESS_STEPS = 10;
+
+    private static final Method CREATE_LINK;
+    private static final Method TO_PATH;
+
+    static {
+        Method createLink = null;
+        Method toPath = null;
+        try {
+            Class<?> path = Class.forName("java.nio.file.Path");
+            Class<?> files = Class.forName("java.nio.file.Files");
+            createLink = files.getMethod("createLink", path, path);
+            toPath = File.class.getMethod("toPath");
+        } catch (Exception e) {
+            // hard links are not supported before java 7
+        }
+        CREATE_LINK = createLink;
+        TO_PATH = toPath;
+    }
+
+    private static class Entry {
+        final File source;
+        final File target;
+        final boolean immutable;
+
+        Entry(File source, File target, boolean immutable) {
+            this.source = source;
+            this.target = target;
+            this.immutable = immutable;
+        }
+    }
+
+    private int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private boolean link;
+    private Listener listener;
+
+    private final AtomicInteger copiedFiles = new AtomicInteger();
+    private final AtomicInteger linkedFiles = new AtomicInteger();
+    private final AtomicLong copiedBytes = new AtomicLong();
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setLink(boolean link) {
+        this.link = link;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    public int getLinkedFiles() {
+        return linkedFiles.get();
+    }
+
+    public long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+
+    public static boolean isLinkSupported() {
+        return CREATE_LINK != null;
+    }
+
+    public void copy(File source, File destination) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        long totalBytes = walk(source, destination, 0, false, entries);
+        if (entries.isEmpty()) {
+            return;
+        }
+        int totalFiles = entries.size();
+        int reported = 0;
+        if (threads == 1 || totalFiles == 1) {
+            for (Entry entry : entries) {
+                copy(entry);
+                reported = progress(reported, totalFiles, totalBytes);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Karaf instance copier " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            // the workers only copy, the progress is reported from this thread as copies complete
+            CompletionService<Void> completion = new ExecutorCompletionService<Void>(executor);
+            for (final Entry entry : entries) {
+                completion.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        copy(entry);
+                        return null;
+                    }
+                });
+            }
+            for (int i = 0; i < totalFiles; i++) {
+                try {
+                    completion.take().get();
+                    reported = progress(reported, totalFiles, totalBytes);
+                } catch (InterruptedException e) {
+                    throw (IOException) new InterruptedIOException("Copy of " + source + " interrupted").initCause(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw (IOException) new IOException("Unable to copy " + source).initCause(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long walk(File source, File destination, int depth, boolean immutable, List<Entry> entries) throws IOException {
+        if (source.getName().equals("cache.lock") || source.getName().equals("lock")) {
+            // ignore lock files
+            return 0;
+        }
+        if (source.isDirectory()) {
+            if (!destination.exists() && !destination.mkdirs()) {
+                throw new IOException("Unable to create directory " + destination);
+            }
+            long bytes = 0;
+            String[] children = source.list();
+            if (children != null) {
+                for (String child : children) {
+                    if (!child.contains("instances") && !child.contains("lib")) {
+                        // the system repository of the instance only contains released artifacts
+                        boolean system = depth == 0 && child.equals("system");
+                        bytes += walk(new File(source, child), new File(destination, child),
+                                depth + 1, immutable || system, entries);
+                    }
+                }
+            }
+            return bytes;
+        } else {
+            entries.add(new Entry(source, destination, immutable || source.getName().endsWith(".jar")));
+            return source.length();
+        }
+    }
+
+    private void copy(Entry entry) throws IOException {
+        if (!(link && entry.immutable && createLink(entry))) {
+            copyFile(entry.source, entry.target);
+        }
+        copiedBytes.addAndGet(entry.source.length());
+        copiedFiles.incrementAndGet();
+    }
+
+    /**
+     * Notifies the listener when a new step has been reached since the last reported
+     * number of files, and returns the number of files reported.
+     */
+    private int progress(int reported, int totalFiles, long totalBytes) {
+        int files = copiedFiles.get();
+        int step = Math.max(1, totalFiles / PROGRESS_STEPS);
+        if (listener != null && files != reported && (files / step > reported / step || files == totalFiles)) {
+            listener.progress(files, totalFiles, copiedBytes.get(), totalBytes);
+            return files;
+        }
+        return reported;
+    }
+
+    private boolean createLink(Entry entry) {
+        if (CREATE_LINK == null) {
+            return false;
+        }
+        try {
+            if (entry.target.exists() && !entry.target.delete()) {
+                return false;
+            }
+            CREATE_LINK.invoke(null, TO_PATH.invoke(entry.target), TO_PATH.invoke(entry.source));
+            linkedFiles.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            // different file systems or links not supported, fall back to a plain copy
+            LOGGER.debug("Unable to link " + entry.target + " to " + entry.source, e);
+            return false;
+        }
+    }
+
+    static void copyFile(File source, File destination) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(destination);
+            try {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += inChannel.transferTo(position, size - position, outChannel);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        destination.setLastModified(source.lastModified());
+        if (source.canExecute()) {
+            destination.setExecutable(true);
+        }
+    }
+
+}
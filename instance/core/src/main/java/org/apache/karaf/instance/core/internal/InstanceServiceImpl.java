@@ -78,6 +78,12 @@ public class InstanceServiceImpl implements InstanceService {
 
     private long stopTimeout = 30000;
 
+    private final InstanceStatusProbe statusProbe = new InstanceStatusProbe();
+
+    private boolean cloneLink;
+
+    private int cloneThreads = 4;
+
     static class InstanceState {
         String name;
         String loc;
@@ -109,6 +115,42 @@ public class InstanceServiceImpl implements InstanceService {
         this.stopTimeout = stopTimeout;
     }
 
+    public long getStatusCacheTimeout() {
+        return statusProbe.getCacheTimeout();
+    }
+
+    public void setStatusCacheTimeout(long statusCacheTimeout) {
+        statusProbe.setCacheTimeout(statusCacheTimeout);
+    }
+
+    public long getStatusProbeTimeout() {
+        return statusProbe.getProbeTimeout();
+    }
+
+    public void setStatusProbeTimeout(long statusProbeTimeout) {
+        statusProbe.setProbeTimeout(statusProbeTimeout);
+    }
+
+    public boolean isCloneLink() {
+        return cloneLink;
+    }
+
+    public void setCloneLink(boolean cloneLink) {
+        this.cloneLink = cloneLink;
+    }
+
+    public int getCloneThreads() {
+        return cloneThreads;
+    }
+
+    public void setCloneThreads(int cloneThreads) {
+        this.cloneThreads = cloneThreads;
+    }
+
+    public void destroy() {
+        statusProbe.shutdown();
+    }
+
     private State loadData(org.apache.felix.utils.properties.Properties storage) {
         State state = new State();
         int count = getInt(storage, "count", 0);
@@ -431,6 +473,7 @@ public class InstanceServiceImpl implements InstanceService {
                 return null;
             }
         });
+        statusProbe.invalidate(name);
     }
 
     public void stopInstance(final String name) {
@@ -452,6 +495,7 @@ public class InstanceServiceImpl implements InstanceService {
                 return null;
             }
         });
+        statusProbe.invalidate(name);
     }
 
     public void destroyInstance(final String name) {
@@ -471,6 +515,7 @@ public class InstanceServiceImpl implements InstanceService {
                 return null;
             }
         });
+        statusProbe.invalidate(name);
     }
 
     public void renameInstance(final String oldName, final String newName, final boolean printOutput) throws Exception {
@@ -531,6 +576,8 @@ public class InstanceServiceImpl implements InstanceService {
                 return null;
             }
         });
+        statusProbe.invalidate(oldName);
+        statusProbe.invalidate(newName);
     }
 
     public synchronized Instance cloneInstance(final String name, final String cloneName, final InstanceSettings settings, final boolean printOutput) throws Exception {
@@ -557,7 +604,7 @@ public class InstanceServiceImpl implements InstanceService {
                 // copy instance directory
                 String locationPath = instance.loc;
                 File location = new File(locationPath);
-                copy(location, cloneLocation);
+                copyInstance(location, cloneLocation, printOutput);
                 // create the properties map including the instance name, location, ssh and rmi port numbers
                 // TODO: replacing stuff anywhere is not really good, we might end up replacing unwanted stuff
                 // TODO: if no ports are overriden, shouldn't we choose new ports ?
@@ -782,29 +829,63 @@ public class InstanceServiceImpl implements InstanceService {
     }
 
     String getInstanceState(final String name) {
-        return execute(new Task<String>() {
-            public String call(State state) throws IOException {
+        InstanceStatusProbe.Target target = execute(new Task<InstanceStatusProbe.Target>() {
+            public InstanceStatusProbe.Target call(State state) throws IOException {
                 InstanceState instance = state.instances.get(name);
                 if (instance == null) {
                     throw new IllegalArgumentException("Instance " + name + " not found");
                 }
-                int port = getKarafPort(state, name, "etc/org.apache.karaf.shell.cfg", "sshPort");
-                if (!new File(instance.loc).isDirectory() || port <= 0) {
-                    return Instance.ERROR;
+                return newStatusTarget(state, instance);
+            }
+        });
+        List<InstanceStatusProbe.Target> targets = Collections.singletonList(target);
+        Map<String, String> states = statusProbe.probe(targets);
+        clearStoppedPids(targets, states);
+        return states.get(name);
+    }
+
+    public Map<String, String> getInstanceStates() {
+        List<InstanceStatusProbe.Target> targets = execute(new Task<List<InstanceStatusProbe.Target>>() {
+            public List<InstanceStatusProbe.Target> call(State state) throws IOException {
+                List<InstanceStatusProbe.Target> targets = new ArrayList<InstanceStatusProbe.Target>();
+                for (InstanceState instance : state.instances.values()) {
+                    targets.add(newStatusTarget(state, instance));
                 }
-                checkPid(instance);
-                if (instance.pid == 0) {
-                    return Instance.STOPPED;
-                } else {
-                    try {
-                        Socket s = new Socket("localhost", port);
-                        s.close();
-                        return Instance.STARTED;
-                    } catch (Exception e) {
-                        // ignore
+                return targets;
+            }
+        });
+        Map<String, String> states = statusProbe.probe(targets);
+        clearStoppedPids(targets, states);
+        return states;
+    }
+
+    private InstanceStatusProbe.Target newStatusTarget(State state, InstanceState instance) {
+        int port = getKarafPort(state, instance.name, "etc/org.apache.karaf.shell.cfg", "sshPort");
+        return new InstanceStatusProbe.Target(instance.name, new File(instance.loc), port, instance.pid);
+    }
+
+    /**
+     * Processes are checked outside of the storage lock, so record the pids
+     * found dead afterwards, unless the instance has been restarted meanwhile.
+     */
+    private void clearStoppedPids(final List<InstanceStatusProbe.Target> targets, final Map<String, String> states) {
+        boolean stopped = false;
+        for (InstanceStatusProbe.Target target : targets) {
+            stopped |= target.pid != 0 && Instance.STOPPED.equals(states.get(target.name));
+        }
+        if (!stopped) {
+            return;
+        }
+        execute(new Task<Object>() {
+            public Object call(State state) throws IOException {
+                for (InstanceStatusProbe.Target target : targets) {
+                    InstanceState instance = state.instances.get(target.name);
+                    if (instance != null && target.pid != 0 && instance.pid == target.pid
+                            && Instance.STOPPED.equals(states.get(target.name))) {
+                        instance.pid = 0;
                     }
-                    return Instance.STARTING;
                 }
+                return null;
             }
         });
     }
@@ -1008,15 +1089,23 @@ public class InstanceServiceImpl implements InstanceService {
                     copy(new File(source, child), new File(destination, child));
             }
         } else {
-            InputStream in = new FileInputStream(source);
-            OutputStream out = new FileOutputStream(destination);
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = in.read(buffer)) > 0) {
-                out.write(buffer, 0, length);
+            InstanceCopier.copyFile(source, destination);
+        }
+    }
+
+    private void copyInstance(File source, File destination, final boolean printOutput) throws IOException {
+        InstanceCopier copier = new InstanceCopier();
+        copier.setThreads(cloneThreads);
+        copier.setLink(cloneLink);
+        copier.setListener(new InstanceCopier.Listener() {
+            public void progress(int files, int totalFiles, long bytes, long totalBytes) {
+                logInfo("Copied %d/%d files (%d/%d KB)", printOutput, files, totalFiles, bytes / 1024, totalBytes / 1024);
             }
-            in.close();
-            out.close();
+        });
+        logInfo("Copying instance from %s to %s", printOutput, source.getPath(), destination.getPath());
+        copier.copy(source, destination);
+        if (copier.getLinkedFiles() > 0) {
+            logInfo("Linked %d immutable files", printOutput, copier.getLinkedFiles());
         }
     }
 
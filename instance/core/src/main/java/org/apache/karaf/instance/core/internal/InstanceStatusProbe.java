@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.instance.core.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.karaf.instance.core.Instance;
+import org.apache.karaf.jpm.impl.ProcessBuilderFactoryImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes the state of several instances at once.
+ * <p>
+ * Process checks are run in parallel on a small pool of daemon threads and the SSH ports
+ * of running instances are probed with non blocking connects multiplexed on a single
+ * {@link Selector}, so a refresh costs roughly one probe timeout whatever the number of
+ * instances. Results are cached per instance for a configurable amount of time.
+ */
+public class InstanceStatusProbe {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstanceStatusProbe.class);
+
+    private static final int MAX_PROBE_THREADS = 8;
+
+    /**
+     * What needs to be known about an instance to compute its state.
+     */
+    static class Target {
+        final String name;
+        final File location;
+        final int port;
+        final int pid;
+
+        Target(String name, File location, int port, int pid) {
+            this.name = name;
+            this.location = location;
+            this.port = port;
+            this.pid = pid;
+        }
+    }
+
+    static class Status {
+        final String state;
+        final int port;
+        final int pid;
+        final long timestamp;
+
+        Status(String state, int port, int pid, long timestamp) {
+            this.state = state;
+            this.port = port;
+            this.pid = pid;
+            this.timestamp = timestamp;
+        }
+
+        boolean isValidFor(Target target, long now, long timeout) {
+            return port == target.port && pid == target.pid && now - timestamp < timeout;
+        }
+    }
+
+    private final ConcurrentMap<String, Status> cache = new ConcurrentHashMap<String, Status>();
+    private volatile long cacheTimeout = 2000;
+    private volatile long probeTimeout = 500;
+    private ThreadPoolExecutor executor;
+
+    public long getCacheTimeout() {
+        return cacheTimeout;
+    }
+
+    public void setCacheTimeout(long cacheTimeout) {
+        this.cacheTimeout = cacheTimeout;
+    }
+
+    public long getProbeTimeout() {
+        return probeTimeout;
+    }
+
+    public void setProbeTimeout(long probeTimeout) {
+        this.probeTimeout = probeTimeout;
+    }
+
+    /**
+     * Returns the state of each target, keyed by instance name and in the order of the given targets.
+     * Cached states are reused when still fresh, all the other targets are probed concurrently.
+     */
+    public Map<String, String> probe(Collection<Target> targets) {
+        long now = System.currentTimeMillis();
+        long timeout = cacheTimeout;
+        Map<String, String> states = new LinkedHashMap<String, String>();
+        List<Target> stale = new ArrayList<Target>();
+        for (Target target : targets) {
+            Status status = cache.get(target.name);
+            if (status != null && status.isValidFor(target, now, timeout)) {
+                states.put(target.name, status.state);
+            } else {
+                states.put(target.name, null);
+                stale.add(target);
+            }
+        }
+        if (!stale.isEmpty()) {
+            Map<String, String> probed = doProbe(stale);
+            long timestamp = System.currentTimeMillis();
+            for (Target target : stale) {
+                String state = probed.get(target.name);
+                states.put(target.name, state);
+                if (timeout > 0) {
+                    cache.put(target.name, new Status(state, target.port, target.pid, timestamp));
+                }
+            }
+        }
+        return states;
+    }
+
+    public void invalidate(String name) {
+        cache.remove(name);
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        cache.clear();
+    }
+
+    private Map<String, String> doProbe(List<Target> targets) {
+        Map<String, String> states = new HashMap<String, String>();
+        List<Target> processes = new ArrayList<Target>();
+        for (Target target : targets) {
+            if (!target.location.isDirectory() || target.port <= 0) {
+                states.put(target.name, Instance.ERROR);
+            } else if (target.pid == 0) {
+                states.put(target.name, Instance.STOPPED);
+            } else {
+                processes.add(target);
+            }
+        }
+        Map<String, Integer> ports = new HashMap<String, Integer>();
+        for (Map.Entry<Target, Boolean> entry : checkProcesses(processes).entrySet()) {
+            Target target = entry.getKey();
+            if (entry.getValue() == null) {
+                states.put(target.name, Instance.ERROR);
+            } else if (!entry.getValue()) {
+                states.put(target.name, Instance.STOPPED);
+            } else {
+                ports.put(target.name, target.port);
+            }
+        }
+        Set<String> reachable = probePorts(ports, probeTimeout);
+        for (String name : ports.keySet()) {
+            states.put(name, reachable.contains(name) ? Instance.STARTED : Instance.STARTING);
+        }
+        return states;
+    }
+
+    /**
+     * Checks whether the processes of the given targets are alive.
+     * The value is <code>null</code> when the check itself failed.
+     */
+    private Map<Target, Boolean> checkProcesses(List<Target> targets) {
+        Map<Target, Boolean> running = new HashMap<Target, Boolean>();
+        if (targets.isEmpty()) {
+            return running;
+        }
+        if (targets.size() == 1) {
+            running.put(targets.get(0), isRunning(targets.get(0)));
+            return running;
+        }
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        ThreadPoolExecutor executor = getExecutor();
+        for (final Target target : targets) {
+            futures.add(executor.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    return isRunning(target);
+                }
+            }));
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            Boolean result;
+            try {
+                result = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = null;
+            } catch (ExecutionException e) {
+                result = null;
+            }
+            running.put(targets.get(i), result);
+        }
+        return running;
+    }
+
+    private Boolean isRunning(Target target) {
+        try {
+            return new ProcessBuilderFactoryImpl().newBuilder().attach(target.pid).isRunning();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to check process " + target.pid + " of instance " + target.name, e);
+            return null;
+        }
+    }
+
+    /**
+     * Tries to connect to all the given local ports at once and returns the names of the
+     * entries that accepted a connection before the timeout expired.
+     */
+    static Set<String> probePorts(Map<String, Integer> ports, long timeout) {
+        Set<String> reachable = new HashSet<String>();
+        if (ports.isEmpty()) {
+            return reachable;
+        }
+        Selector selector = null;
+        try {
+            selector = Selector.open();
+            int pending = 0;
+            for (Map.Entry<String, Integer> entry : ports.entrySet()) {
+                SocketChannel channel = SocketChannel.open();
+                try {
+                    channel.configureBlocking(false);
+                    if (channel.connect(new InetSocketAddress("localhost", entry.getValue()))) {
+                        reachable.add(entry.getKey());
+                        closeQuietly(channel);
+                    } else {
+                        channel.register(selector, SelectionKey.OP_CONNECT, entry.getKey());
+                        pending++;
+                    }
+                } catch (IOException e) {
+                    // connection refused right away
+                    closeQuietly(channel);
+                }
+            }
+            long deadline = System.currentTimeMillis() + timeout;
+            while (pending > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                selector.select(remaining);
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    try {
+                        if (channel.finishConnect()) {
+                            reachable.add((String) key.attachment());
+                        }
+                    } catch (IOException e) {
+                        // connection refused
+                    } finally {
+                        pending--;
+                        key.cancel();
+                        closeQuietly(channel);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Unable to probe instance ports", e);
+        } finally {
+            if (selector != null) {
+                for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+                    closeQuietly((SocketChannel) key.channel());
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        return reachable;
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(MAX_PROBE_THREADS, MAX_PROBE_THREADS, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "Karaf instance status probe " + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.instance.core.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class InstanceCopierTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testCopy() throws Exception {
+        File source = tempFolder.newFolder("source");
+        write(new File(source, "etc/config.properties"), "karaf.name=root");
+        write(new File(source, "system/org/foo/1.0/foo-1.0.jar"), "jar");
+        write(new File(source, "data/cache/cache.lock"), "");
+        write(new File(source, "lock"), "");
+        File target = new File(tempFolder.getRoot(), "target");
+
+        InstanceCopier copier = new InstanceCopier();
+        copier.setLink(true);
+        copier.copy(source, target);
+
+        assertEquals("karaf.name=root", read(new File(target, "etc/config.properties")));
+        assertEquals("jar", read(new File(target, "system/org/foo/1.0/foo-1.0.jar")));
+        assertTrue(new File(target, "data/cache").isDirectory());
+        assertFalse(new File(target, "data/cache/cache.lock").exists());
+        assertFalse(new File(target, "lock").exists());
+        assertEquals(2, copier.getCopiedFiles());
+        if (InstanceCopier.isLinkSupported()) {
+            assertEquals(1, copier.getLinkedFiles());
+        }
+    }
+
+    @Test
+    public void testProgressFromCallingThread() throws Exception {
+        File source = tempFolder.newFolder("source");
+        for (int i = 0; i < 50; i++) {
+            write(new File(source, "etc/file" + i + ".cfg"), "value=" + i);
+        }
+        File target = new File(tempFolder.getRoot(), "target");
+
+        final Thread caller = Thread.currentThread();
+        final List<Integer> progress = new ArrayList<Integer>();
+        InstanceCopier copier = new InstanceCopier();
+        copier.setThreads(4);
+        copier.setListener(new InstanceCopier.Listener() {
+            public void progress(int files, int totalFiles, long bytes, long totalBytes) {
+                assertSame(caller, Thread.currentThread());
+                assertEquals(50, totalFiles);
+                progress.add(files);
+            }
+        });
+        copier.copy(source, target);
+
+        assertEquals(50, copier.getCopiedFiles());
+        assertFalse(progress.isEmpty());
+        assertTrue(progress.size() <= 11);
+        assertEquals(Integer.valueOf(50), progress.get(progress.size() - 1));
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) > progress.get(i - 1));
+        }
+    }
+
+    private void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    private String read(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[(int) file.length()];
+            int length = is.read(buffer);
+            return new String(buffer, 0, Math.max(length, 0), "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+}
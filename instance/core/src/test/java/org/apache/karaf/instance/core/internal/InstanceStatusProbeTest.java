@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.instance.core.internal;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.karaf.instance.core.Instance;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InstanceStatusProbeTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testProbePorts() throws Exception {
+        ServerSocket open = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+        ServerSocket closed = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+        int closedPort = closed.getLocalPort();
+        closed.close();
+        try {
+            Map<String, Integer> ports = new HashMap<String, Integer>();
+            ports.put("open", open.getLocalPort());
+            ports.put("closed", closedPort);
+            Set<String> reachable = InstanceStatusProbe.probePorts(ports, 1000);
+            assertTrue(reachable.contains("open"));
+            assertFalse(reachable.contains("closed"));
+        } finally {
+            open.close();
+        }
+    }
+
+    @Test
+    public void testProbeWithoutProcess() throws Exception {
+        File location = tempFolder.newFolder("instance");
+        InstanceStatusProbe probe = new InstanceStatusProbe();
+        try {
+            Map<String, String> states = probe.probe(Arrays.asList(
+                    new InstanceStatusProbe.Target("stopped", location, 8101, 0),
+                    new InstanceStatusProbe.Target("noport", location, 0, 0),
+                    new InstanceStatusProbe.Target("missing", new File(location, "missing"), 8101, 0)));
+            assertEquals(Instance.STOPPED, states.get("stopped"));
+            assertEquals(Instance.ERROR, states.get("noport"));
+            assertEquals(Instance.ERROR, states.get("missing"));
+        } finally {
+            probe.shutdown();
+        }
+    }
+
+    @Test
+    public void testCacheIsInvalidatedOnChange() throws Exception {
+        File location = tempFolder.newFolder("instance");
+        InstanceStatusProbe probe = new InstanceStatusProbe();
+        probe.setCacheTimeout(60000);
+        try {
+            InstanceStatusProbe.Target target = new InstanceStatusProbe.Target("root", location, 8101, 0);
+            assertEquals(Instance.STOPPED, probe.probe(Arrays.asList(target)).get("root"));
+            // a different port must not reuse the cached state
+            target = new InstanceStatusProbe.Target("root", location, 0, 0);
+            assertEquals(Instance.ERROR, probe.probe(Arrays.asList(target)).get("root"));
+        } finally {
+            probe.shutdown();
+        }
+    }
+
+}
@@ -16,17 +16,20 @@
  */
 package org.apache.karaf.jaas.config.impl;
 
-import java.util.List;
 import java.util.Map;
 import javax.security.auth.login.AppConfigurationEntry;
 import javax.security.auth.login.Configuration;
 
 import org.apache.karaf.jaas.config.JaasRealm;
-import org.apache.karaf.util.collections.CopyOnWriteArrayIdentityList;
+import org.apache.karaf.util.collections.RankedIdentityRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class OsgiConfiguration extends Configuration {
 
-    private final List<JaasRealm> realms = new CopyOnWriteArrayIdentityList<JaasRealm>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(OsgiConfiguration.class);
+
+    private final RankedIdentityRegistry<String, JaasRealm> realms = new RankedIdentityRegistry<String, JaasRealm>();
 
     public void init() {
         Configuration.setConfiguration(this);
@@ -39,7 +42,12 @@ public class OsgiConfiguration extends Configuration {
 
     public void register(JaasRealm realm, Map<String,?> properties) {
         if (realm != null) {
-            realms.add(realm);
+            if (realm.getName() == null) {
+                // can not be looked up
+                LOGGER.warn("Ignoring JAAS realm without name: " + realm);
+                return;
+            }
+            realms.add(realm.getName(), realm.getRank(), realm);
         }
     }
 
@@ -50,14 +58,7 @@ public class OsgiConfiguration extends Configuration {
     }
 
     public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
-        JaasRealm realm = null;
-        for (JaasRealm r : realms) {
-            if (r.getName().equals(name)) {
-                if (realm == null || r.getRank() > realm.getRank()) {
-                    realm = r;
-                }
-            }
-        }
+        JaasRealm realm = realms.get(name);
         if (realm != null) {
             return realm.getEntries();
         }
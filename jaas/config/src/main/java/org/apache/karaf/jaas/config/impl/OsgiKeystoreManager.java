@@ -18,7 +18,6 @@ package org.apache.karaf.jaas.config.impl;
 
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
-import java.util.List;
 import java.util.Map;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocketFactory;
@@ -27,7 +26,7 @@ import javax.net.ssl.SSLSocketFactory;
 import org.apache.karaf.jaas.config.KeystoreInstance;
 import org.apache.karaf.jaas.config.KeystoreIsLocked;
 import org.apache.karaf.jaas.config.KeystoreManager;
-import org.apache.karaf.util.collections.CopyOnWriteArrayIdentityList;
+import org.apache.karaf.util.collections.RankedIdentityRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,10 +37,18 @@ public class OsgiKeystoreManager implements KeystoreManager {
 
     private final static transient Logger logger = LoggerFactory.getLogger(OsgiKeystoreManager.class);
 
-    private List<KeystoreInstance> keystores = new CopyOnWriteArrayIdentityList<KeystoreInstance>();
+    private final RankedIdentityRegistry<String, KeystoreInstance> keystores = new RankedIdentityRegistry<String, KeystoreInstance>();
 
     public void register(KeystoreInstance keystore, Map<String, ?> properties) {
-        keystores.add(keystore);
+        if (keystore == null) {
+            return;
+        }
+        if (keystore.getName() == null) {
+            // can not be looked up
+            logger.warn("Ignoring keystore without name: " + keystore);
+            return;
+        }
+        keystores.add(keystore.getName(), keystore.getRank(), keystore);
     }
 
     public void unregister(KeystoreInstance keystore, Map<String, ?> properties) {
@@ -49,15 +56,7 @@ public class OsgiKeystoreManager implements KeystoreManager {
     }
 
     public KeystoreInstance getKeystore(String name) {
-        KeystoreInstance keystore = null;
-        for (KeystoreInstance ks : keystores) {
-            if (ks.getName().equals(name)) {
-                if (keystore == null || keystore.getRank() < ks.getRank()) {
-                    keystore = ks;
-                }
-            }
-        }
-        return keystore;
+        return keystores.get(name);
     }
 
     public SSLContext createSSLContext(String provider, String protocol, String algorithm, String keyStore, String keyAlias, String trustStore) throws GeneralSecurityException {
@@ -16,13 +16,15 @@
  */
 package org.apache.karaf.jdbc.command;
 
+import org.apache.karaf.jdbc.RowHandler;
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
 import org.apache.karaf.shell.table.Row;
 import org.apache.karaf.shell.table.ShellTable;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 @Command(scope = "jdbc", name = "query", description = "Execute a SQL query on a JDBC datasource")
 public class QueryCommand extends JdbcCommandSupport {
@@ -33,26 +35,76 @@ public class QueryCommand extends JdbcCommandSupport {
     @Argument(index = 1, name = "query", description = "The SQL query to execute", required = true, multiValued = false)
     String query;
 
+    @Option(name = "-f", aliases = { "--fetch-size" }, description = "The number of rows fetched from the database and displayed at a time", required = false, multiValued = false)
+    int fetchSize = 100;
+
+    @Option(name = "-l", aliases = { "--limit" }, description = "The maximum number of rows to display (0 for no limit)", required = false, multiValued = false)
+    int limit = 0;
+
+    @Option(name = "-o", aliases = { "--offset" }, description = "The number of rows to skip before the first displayed row", required = false, multiValued = false)
+    int offset = 0;
+
     public Object doExecute() throws Exception {
-        ShellTable table = new ShellTable();
+        TablePrinter printer = new TablePrinter(fetchSize > 0 ? fetchSize : 100);
+        boolean more = this.getJdbcService().query(datasource, query, offset, limit, fetchSize, printer);
+        printer.flush();
+        if (more) {
+            System.out.println("More rows available, use --offset " + (offset + printer.count) + " to display them");
+        }
+        return null;
+    }
+
+    /**
+     * Prints the rows by blocks as they are read, so that the whole result is never kept in memory.
+     * Each block is formatted on its own, only the first one displays the headers.
+     */
+    private static class TablePrinter implements RowHandler {
+
+        private final int blockSize;
+        private final List<String[]> rows = new ArrayList<String[]>();
+        private String[] columns;
+        private boolean headers = true;
+        private int count;
 
-        Map<String, List<String>> map = this.getJdbcService().query(datasource, query);
-        int rowCount = 0;
-        for (String column : map.keySet()) {
-            table.column(column);
-            rowCount = map.get(column).size();
+        TablePrinter(int blockSize) {
+            this.blockSize = blockSize;
         }
 
-        for (int i = 0; i < rowCount; i++) {
-            Row row = table.addRow();
-            for (String column : map.keySet()) {
-                row.addContent(map.get(column).get(i));
+        public void columns(String[] columns) {
+            this.columns = columns;
+        }
+
+        public boolean row(String[] values) {
+            rows.add(values);
+            count++;
+            if (rows.size() >= blockSize) {
+                flush();
             }
+            return true;
         }
 
-        table.print(System.out);
+        void flush() {
+            if (columns == null || (rows.isEmpty() && !headers)) {
+                return;
+            }
+            ShellTable table = new ShellTable();
+            if (!headers) {
+                table.noHeaders();
+            }
+            for (String column : columns) {
+                table.column(column);
+            }
+            for (String[] values : rows) {
+                Row row = table.addRow();
+                for (String value : values) {
+                    row.addContent(value);
+                }
+            }
+            table.print(System.out);
+            rows.clear();
+            headers = false;
+        }
 
-        return null;
     }
 
 }
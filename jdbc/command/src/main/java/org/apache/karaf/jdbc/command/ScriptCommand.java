@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.command;
+
+import org.apache.karaf.jdbc.ScriptResult;
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.shell.table.ShellTable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+
+@Command(scope = "jdbc", name = "script", description = "Execute a SQL script on a JDBC datasource, in a single transaction")
+public class ScriptCommand extends JdbcCommandSupport {
+
+    @Argument(index = 0, name = "datasource", description = "The JDBC datasource to use", required = true, multiValued = false)
+    String datasource;
+
+    @Argument(index = 1, name = "file", description = "The SQL script file, with statements separated by semicolons", required = true, multiValued = false)
+    String file;
+
+    @Option(name = "-b", aliases = { "--batch-size" }, description = "The maximum number of statements per JDBC batch (1 to execute the statements one by one)", required = false, multiValued = false)
+    int batchSize = 100;
+
+    public Object doExecute() throws Exception {
+        List<ScriptResult> results;
+        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(file)), "UTF-8"));
+        try {
+            results = this.getJdbcService().script(datasource, reader, batchSize);
+        } finally {
+            reader.close();
+        }
+
+        ShellTable table = new ShellTable();
+        table.column("Line").alignRight();
+        table.column("Batch").alignRight();
+        table.column("Updated").alignRight();
+        table.column("Time (ms)").alignRight();
+        table.column("Statement").maxSize(60);
+        ScriptResult failure = null;
+        for (ScriptResult result : results) {
+            table.addRow().addContent(result.getLine(), result.getBatch(),
+                    result.getUpdateCount() >= 0 ? result.getUpdateCount() : "",
+                    result.getTime(), result.getStatement().replaceAll("\\s+", " "));
+            if (result.getError() != null) {
+                failure = result;
+            }
+        }
+        table.print(System.out);
+
+        if (failure != null) {
+            System.err.println("Error at line " + failure.getLine() + ": " + failure.getError());
+            System.err.println("The transaction has been rolled back");
+        }
+        return null;
+    }
+
+}
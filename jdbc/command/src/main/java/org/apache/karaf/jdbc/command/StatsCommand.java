@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.command;
+
+import org.apache.karaf.jdbc.DataSourceStats;
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.shell.table.Row;
+import org.apache.karaf.shell.table.ShellTable;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@Command(scope = "jdbc", name = "stats", description = "Display the connections and statements statistics of the instrumented JDBC datasources")
+public class StatsCommand extends JdbcCommandSupport {
+
+    @Argument(index = 0, name = "datasource", description = "The JDBC datasource to display (all by default)", required = false, multiValued = false)
+    String datasource;
+
+    @Option(name = "-t", aliases = { "--times" }, description = "Display the distribution of the statements execution times", required = false, multiValued = false)
+    boolean times;
+
+    @Option(name = "-s", aliases = { "--slow-queries" }, description = "Display the most recent slow queries", required = false, multiValued = false)
+    boolean slowQueries;
+
+    @Option(name = "-r", aliases = { "--reset" }, description = "Reset the statistics after displaying them", required = false, multiValued = false)
+    boolean reset;
+
+    public Object doExecute() throws Exception {
+        List<DataSourceStats> stats = new ArrayList<DataSourceStats>();
+        for (DataSourceStats s : this.getJdbcService().stats()) {
+            if (datasource == null || datasource.equals(s.getName())) {
+                stats.add(s);
+            }
+        }
+        if (stats.isEmpty()) {
+            System.out.println("No statistics available, check that the instrumentation is enabled in the org.apache.karaf.jdbc configuration");
+            return null;
+        }
+
+        ShellTable table = new ShellTable();
+        table.column("Name");
+        table.column("Connections").alignRight();
+        table.column("Errors").alignRight();
+        table.column("Active").alignRight();
+        table.column("Pool Active").alignRight();
+        table.column("Pool Idle").alignRight();
+        table.column("Acquire Avg/Max (ms)").alignRight();
+        table.column("Statements").alignRight();
+        table.column("Errors").alignRight();
+        table.column("Exec Avg/Max (ms)").alignRight();
+        for (DataSourceStats s : stats) {
+            table.addRow().addContent(s.getName(), s.getConnections(), s.getConnectionErrors(), s.getActiveConnections(),
+                    s.getPoolActive() >= 0 ? s.getPoolActive() : "", s.getPoolIdle() >= 0 ? s.getPoolIdle() : "",
+                    format(s.getAverageAcquireTime(), s.getMaxAcquireTime()), s.getStatements(), s.getStatementErrors(),
+                    format(s.getAverageStatementTime(), s.getMaxStatementTime()));
+        }
+        table.print(System.out);
+
+        if (times) {
+            System.out.println();
+            ShellTable histogram = new ShellTable();
+            histogram.column("Name");
+            for (long bound : DataSourceStats.HISTOGRAM_BOUNDS) {
+                histogram.column("< " + bound + " ms").alignRight();
+            }
+            long[] bounds = DataSourceStats.HISTOGRAM_BOUNDS;
+            histogram.column(">= " + bounds[bounds.length - 1] + " ms").alignRight();
+            for (DataSourceStats s : stats) {
+                Row row = histogram.addRow();
+                row.addContent(s.getName());
+                for (long count : s.getHistogram()) {
+                    row.addContent(count);
+                }
+            }
+            histogram.print(System.out);
+        }
+
+        if (slowQueries) {
+            System.out.println();
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            ShellTable slow = new ShellTable();
+            slow.column("Name");
+            slow.column("Date");
+            slow.column("Time (ms)").alignRight();
+            slow.column("Statement").maxSize(80);
+            for (DataSourceStats s : stats) {
+                for (DataSourceStats.SlowQuery query : s.getSlowQueries()) {
+                    slow.addRow().addContent(s.getName(), dateFormat.format(new Date(query.getTimestamp())), query.getTime(),
+                            query.getStatement().replaceAll("\\s+", " "));
+                }
+            }
+            slow.emptyTableText("No slow query");
+            slow.print(System.out);
+        }
+
+        if (reset) {
+            this.getJdbcService().resetStats();
+        }
+        return null;
+    }
+
+    private static String format(double average, double max) {
+        return String.format("%.2f / %.2f", average, max);
+    }
+
+}
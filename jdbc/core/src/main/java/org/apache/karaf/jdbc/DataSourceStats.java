@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc;
+
+import java.util.List;
+
+/**
+ * Statistics about the use of an instrumented JDBC datasource.
+ * Times are in milliseconds.
+ */
+public interface DataSourceStats {
+
+    /**
+     * Upper bounds (exclusive, in milliseconds) of the statement execution time histogram buckets.
+     * The last bucket of the histogram contains the statements slower than the last bound.
+     */
+    long[] HISTOGRAM_BOUNDS = { 1, 10, 100, 1000, 10000 };
+
+    /**
+     * A statement slower than the configured threshold.
+     */
+    class SlowQuery {
+
+        private final String statement;
+        private final long time;
+        private final long timestamp;
+
+        public SlowQuery(String statement, long time, long timestamp) {
+            this.statement = statement;
+            this.time = time;
+            this.timestamp = timestamp;
+        }
+
+        public String getStatement() {
+            return statement;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+    }
+
+    /**
+     * @return the JDBC datasource name.
+     */
+    String getName();
+
+    /**
+     * @return the number of connections acquired.
+     */
+    long getConnections();
+
+    /**
+     * @return the number of failed connection acquisitions.
+     */
+    long getConnectionErrors();
+
+    /**
+     * @return the number of connections acquired and not closed yet.
+     */
+    int getActiveConnections();
+
+    /**
+     * @return the number of active connections reported by the connection pool, or -1 if unknown.
+     */
+    int getPoolActive();
+
+    /**
+     * @return the number of idle connections reported by the connection pool, or -1 if unknown.
+     */
+    int getPoolIdle();
+
+    double getAverageAcquireTime();
+
+    double getMaxAcquireTime();
+
+    /**
+     * @return the number of executed statements.
+     */
+    long getStatements();
+
+    /**
+     * @return the number of failed statements.
+     */
+    long getStatementErrors();
+
+    double getAverageStatementTime();
+
+    double getMaxStatementTime();
+
+    /**
+     * @return the number of statements per execution time bucket, see {@link #HISTOGRAM_BOUNDS}.
+     */
+    long[] getHistogram();
+
+    /**
+     * @return the most recent slow statements, most recent first.
+     */
+    List<SlowQuery> getSlowQueries();
+
+}
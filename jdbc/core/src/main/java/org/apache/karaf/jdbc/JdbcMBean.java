@@ -17,6 +17,7 @@
 package org.apache.karaf.jdbc;
 
 import javax.management.MBeanException;
+import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
 import java.util.Map;
 
@@ -33,6 +34,30 @@ public interface JdbcMBean {
      */
     TabularData getDatasources() throws MBeanException;
 
+    /**
+     * Get the statistics of the instrumented JDBC datasources.
+     *
+     * @return a tabular data containing the connections and statements statistics of each instrumented datasource.
+     * @throws MBeanException
+     */
+    TabularData getStats() throws MBeanException;
+
+    /**
+     * Reset the statistics of the instrumented JDBC datasources.
+     *
+     * @throws MBeanException
+     */
+    void resetStats() throws MBeanException;
+
+    /**
+     * Get the most recent slow queries of an instrumented JDBC datasource.
+     *
+     * @param datasource the JDBC datasource name.
+     * @return a tabular data containing the slow queries, with their execution time and date.
+     * @throws MBeanException
+     */
+    TabularData slowQueries(String datasource) throws MBeanException;
+
     /**
      * Create a JDBC datasource.
      *
@@ -83,6 +108,17 @@ public interface JdbcMBean {
      */
     void execute(String datasource, String command) throws MBeanException;
 
+    /**
+     * Execute a SQL script on a JDBC datasource, in JDBC batches and in a single transaction.
+     *
+     * @param datasource the JDBC datasource name.
+     * @param script the SQL script, with statements separated by semicolons.
+     * @param batchSize the maximum number of statements per JDBC batch.
+     * @return a tabular data with the line, update count, time and error of each executed statement.
+     * @throws MBeanException
+     */
+    TabularData script(String datasource, String script, int batchSize) throws MBeanException;
+
     /**
      * Execute a SQL query on a JDBC datasource.
      *
@@ -93,4 +129,18 @@ public interface JdbcMBean {
      */
     TabularData query(String datasource, String query) throws MBeanException;
 
+    /**
+     * Execute a SQL query on a JDBC datasource and return one page of the result.
+     * The query is executed again for each page and the page token is only an offset in the result, so the
+     * query must have an ORDER BY on a unique key to get stable pages.
+     *
+     * @param datasource the JDBC datasource name.
+     * @param query the SQL query to execute.
+     * @param page the token of the page to return (as provided by the previous page), or null for the first page.
+     * @param pageSize the maximum number of rows in the page.
+     * @return a composite data containing the "columns", the "rows" and the token of the "next" page (null on the last page).
+     * @throws MBeanException
+     */
+    CompositeData query(String datasource, String query, String page, int pageSize) throws MBeanException;
+
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.karaf.jdbc;
 
+import java.io.Reader;
 import java.util.List;
 import java.util.Map;
 
@@ -61,6 +62,20 @@ public interface JdbcService {
      */
     Map<String, List<String>> query(String datasource, String query) throws Exception;
 
+    /**
+     * Execute a SQL query on a given JDBC datasource, passing the rows to a handler as they are read.
+     * The result set is never materialized, so this method can be used on large results.
+     *
+     * @param datasource the JDBC datasource name.
+     * @param query the SQL query to execute.
+     * @param offset the number of rows to skip before the first row passed to the handler.
+     * @param limit the maximum number of rows passed to the handler (0 for no limit).
+     * @param fetchSize the number of rows fetched from the database at a time (0 for the driver default).
+     * @param handler the handler receiving the columns and the rows.
+     * @return true if the result contains more rows than the ones passed to the handler, false else.
+     */
+    boolean query(String datasource, String query, int offset, int limit, int fetchSize, RowHandler handler) throws Exception;
+
     /**
      * Execute a SQL command on a given JDBC datasource.
      *
@@ -69,6 +84,18 @@ public interface JdbcService {
      */
     void execute(String datasource, String command) throws Exception;
 
+    /**
+     * Execute a SQL script on a given JDBC datasource.
+     * The statements are executed in JDBC batches, on a single connection and in a single transaction.
+     * If a statement fails, the execution stops and the transaction is rolled back.
+     *
+     * @param datasource the JDBC datasource name.
+     * @param script the SQL script, with statements separated by semicolons.
+     * @param batchSize the maximum number of statements per JDBC batch (1 to execute the statements one by one).
+     * @return the results of the executed statements, the last one containing the error if a statement failed.
+     */
+    List<ScriptResult> script(String datasource, Reader script, int batchSize) throws Exception;
+
     /**
      * List the tables available on a given JDBC datasource.
      *
@@ -85,4 +112,16 @@ public interface JdbcService {
      */
     Map<String, String> info(String datasource) throws Exception;
 
+    /**
+     * Get the statistics of the instrumented JDBC datasources.
+     *
+     * @return the statistics of each instrumented datasource (empty if the instrumentation is disabled).
+     */
+    List<DataSourceStats> stats() throws Exception;
+
+    /**
+     * Reset the statistics of the instrumented JDBC datasources.
+     */
+    void resetStats() throws Exception;
+
 }
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc;
+
+/**
+ * Callback receiving the result of a SQL query row by row, as it is read from the database.
+ */
+public interface RowHandler {
+
+    /**
+     * Called once, before any row, with the labels of the result columns.
+     *
+     * @param columns the column labels.
+     */
+    void columns(String[] columns) throws Exception;
+
+    /**
+     * Called for each row of the result.
+     *
+     * @param values the row values, in the same order as the columns.
+     * @return true to get the next row, false to stop reading the result.
+     */
+    boolean row(String[] values) throws Exception;
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc;
+
+/**
+ * Result of the execution of one statement of a SQL script.
+ */
+public class ScriptResult {
+
+    private final int line;
+    private final String statement;
+    private final int batch;
+    private final int updateCount;
+    private final long time;
+    private final String error;
+
+    public ScriptResult(int line, String statement, int batch, int updateCount, long time, String error) {
+        this.line = line;
+        this.statement = statement;
+        this.batch = batch;
+        this.updateCount = updateCount;
+        this.time = time;
+        this.error = error;
+    }
+
+    /**
+     * @return the line of the script where the statement starts.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the SQL statement.
+     */
+    public String getStatement() {
+        return statement;
+    }
+
+    /**
+     * @return the number of the JDBC batch the statement has been executed in.
+     */
+    public int getBatch() {
+        return batch;
+    }
+
+    /**
+     * @return the number of rows updated by the statement, or a negative value if unknown.
+     */
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * @return the execution time of the batch containing the statement, in milliseconds.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the error message if the statement failed, null else.
+     */
+    public String getError() {
+        return error;
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.karaf.jdbc.DataSourceStats;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Registers an instrumented proxy for each datasource service, recording the connections and statements
+ * going through it.
+ * <p>
+ * The proxy is registered with the properties of the original service and a higher service ranking, so
+ * that it is preferred by the consumers looking up the datasource afterwards. When the instrumentation is
+ * disabled, nothing is registered and the datasources are used directly.
+ * <p>
+ * The proxies only implement {@link DataSource}, {@link java.sql.Connection} and the statement interfaces:
+ * consumers casting the datasource or its connections to a pool or vendor class get a
+ * {@link ClassCastException} once the instrumentation is enabled, and have to use <code>unwrap()</code> instead.
+ */
+public class DataSourceInstrumentation implements ServiceListener {
+
+    /**
+     * Service property set on the instrumented proxies.
+     */
+    public static final String INSTRUMENTED = "karaf.jdbc.instrumented";
+
+    static final String NOT_INSTRUMENTED = "(!(" + INSTRUMENTED + "=*))";
+
+    private static class Registration {
+        final DataSource proxy;
+        final DataSourceMetrics metrics;
+        ServiceRegistration registration;
+
+        Registration(DataSource proxy, DataSourceMetrics metrics) {
+            this.proxy = proxy;
+            this.metrics = metrics;
+        }
+    }
+
+    private BundleContext bundleContext;
+    private boolean enabled;
+    private long slowQueryThreshold = 1000;
+    private int slowQueries = 20;
+
+    private final Map<ServiceReference, Registration> registrations = new HashMap<ServiceReference, Registration>();
+
+    public void setBundleContext(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setSlowQueryThreshold(long slowQueryThreshold) {
+        this.slowQueryThreshold = slowQueryThreshold;
+    }
+
+    public void setSlowQueries(int slowQueries) {
+        this.slowQueries = slowQueries;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void start() throws InvalidSyntaxException {
+        if (!enabled) {
+            return;
+        }
+        bundleContext.addServiceListener(this, "(&(" + Constants.OBJECTCLASS + "=" + DataSource.class.getName() + ")" + NOT_INSTRUMENTED + ")");
+        ServiceReference[] references = bundleContext.getServiceReferences(DataSource.class.getName(), NOT_INSTRUMENTED);
+        if (references != null) {
+            for (ServiceReference reference : references) {
+                register(reference);
+            }
+        }
+    }
+
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+        bundleContext.removeServiceListener(this);
+        List<ServiceReference> references;
+        synchronized (registrations) {
+            references = new ArrayList<ServiceReference>(registrations.keySet());
+        }
+        for (ServiceReference reference : references) {
+            unregister(reference);
+        }
+    }
+
+    public void serviceChanged(ServiceEvent event) {
+        switch (event.getType()) {
+            case ServiceEvent.REGISTERED:
+                register(event.getServiceReference());
+                break;
+            case ServiceEvent.MODIFIED:
+                Registration registration;
+                synchronized (registrations) {
+                    registration = registrations.get(event.getServiceReference());
+                }
+                if (registration != null && registration.registration != null) {
+                    registration.registration.setProperties(getProperties(event.getServiceReference()));
+                }
+                break;
+            case ServiceEvent.UNREGISTERING:
+                unregister(event.getServiceReference());
+                break;
+        }
+    }
+
+    /**
+     * @return the instrumented proxy of the given datasource service, or the datasource itself if it is not instrumented.
+     */
+    public DataSource wrap(ServiceReference reference, DataSource dataSource) {
+        if (!enabled) {
+            return dataSource;
+        }
+        synchronized (registrations) {
+            Registration registration = registrations.get(reference);
+            return registration != null ? registration.proxy : dataSource;
+        }
+    }
+
+    public List<DataSourceStats> getStats() {
+        List<DataSourceStats> stats = new ArrayList<DataSourceStats>();
+        synchronized (registrations) {
+            for (Registration registration : registrations.values()) {
+                stats.add(registration.metrics);
+            }
+        }
+        return stats;
+    }
+
+    public void reset() {
+        synchronized (registrations) {
+            for (Registration registration : registrations.values()) {
+                registration.metrics.reset();
+            }
+        }
+    }
+
+    private void register(ServiceReference reference) {
+        DataSource dataSource = (DataSource) bundleContext.getService(reference);
+        if (dataSource == null) {
+            return;
+        }
+        DataSourceMetrics metrics = new DataSourceMetrics(JdbcServiceImpl.getName(reference), dataSource, slowQueryThreshold, slowQueries);
+        Registration registration = new Registration(InstrumentedDataSource.create(dataSource, metrics), metrics);
+        synchronized (registrations) {
+            if (registrations.containsKey(reference)) {
+                bundleContext.ungetService(reference);
+                return;
+            }
+            registrations.put(reference, registration);
+        }
+        // register outside of the lock, the service events are synchronous
+        ServiceRegistration serviceRegistration = bundleContext.registerService(DataSource.class.getName(), registration.proxy, getProperties(reference));
+        synchronized (registrations) {
+            if (registrations.get(reference) == registration) {
+                registration.registration = serviceRegistration;
+                return;
+            }
+        }
+        // unregistered in the meantime
+        serviceRegistration.unregister();
+    }
+
+    private void unregister(ServiceReference reference) {
+        Registration registration;
+        synchronized (registrations) {
+            registration = registrations.remove(reference);
+        }
+        if (registration == null) {
+            return;
+        }
+        if (registration.registration != null) {
+            try {
+                registration.registration.unregister();
+            } catch (IllegalStateException e) {
+                // already unregistered
+            }
+        }
+        bundleContext.ungetService(reference);
+    }
+
+    private Dictionary<String, Object> getProperties(ServiceReference reference) {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        for (String key : reference.getPropertyKeys()) {
+            if (!key.equals(Constants.OBJECTCLASS) && !key.equals(Constants.SERVICE_ID)
+                    && !key.equals(Constants.SERVICE_PID) && !key.equals(Constants.SERVICE_RANKING)) {
+                properties.put(key, reference.getProperty(key));
+            }
+        }
+        Object ranking = reference.getProperty(Constants.SERVICE_RANKING);
+        properties.put(Constants.SERVICE_RANKING, ranking instanceof Integer ? (Integer) ranking + 1 : 1);
+        properties.put(INSTRUMENTED, Boolean.TRUE);
+        return properties;
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.DataSource;
+
+import org.apache.karaf.jdbc.DataSourceStats;
+
+/**
+ * Live statistics of an instrumented datasource, updated without locking by the connections and statements.
+ */
+class DataSourceMetrics implements DataSourceStats {
+
+    private static final String[] POOL_ACTIVE_METHODS = { "getNumActive", "getActive", "getNumBusyConnections" };
+    private static final String[] POOL_IDLE_METHODS = { "getNumIdle", "getIdle", "getNumIdleConnections" };
+
+    private final String name;
+    private final DataSource dataSource;
+    private final long slowQueryThreshold;
+    private final int maxSlowQueries;
+    private final Method poolActive;
+    private final Method poolIdle;
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong connectionErrors = new AtomicLong();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicLong acquireTime = new AtomicLong();
+    private final AtomicLong maxAcquireTime = new AtomicLong();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong statementErrors = new AtomicLong();
+    private final AtomicLong statementTime = new AtomicLong();
+    private final AtomicLong maxStatementTime = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BOUNDS.length + 1);
+    private final LinkedList<SlowQuery> slowQueries = new LinkedList<SlowQuery>();
+
+    DataSourceMetrics(String name, DataSource dataSource, long slowQueryThreshold, int maxSlowQueries) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.slowQueryThreshold = slowQueryThreshold;
+        this.maxSlowQueries = maxSlowQueries;
+        // pools don't share any API to get their state, look for the common accessors
+        this.poolActive = findMethod(dataSource, POOL_ACTIVE_METHODS);
+        this.poolIdle = findMethod(dataSource, POOL_IDLE_METHODS);
+    }
+
+    void connectionAcquired(long nanos) {
+        connections.incrementAndGet();
+        activeConnections.incrementAndGet();
+        acquireTime.addAndGet(nanos);
+        updateMax(maxAcquireTime, nanos);
+    }
+
+    void connectionFailed() {
+        connectionErrors.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    void statementExecuted(String statement, long nanos, boolean failed) {
+        statements.incrementAndGet();
+        if (failed) {
+            statementErrors.incrementAndGet();
+        }
+        statementTime.addAndGet(nanos);
+        updateMax(maxStatementTime, nanos);
+        long millis = nanos / 1000000;
+        int bucket = 0;
+        while (bucket < HISTOGRAM_BOUNDS.length && millis >= HISTOGRAM_BOUNDS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+        if (slowQueryThreshold > 0 && millis >= slowQueryThreshold && maxSlowQueries > 0) {
+            synchronized (slowQueries) {
+                slowQueries.addFirst(new SlowQuery(statement, millis, System.currentTimeMillis()));
+                if (slowQueries.size() > maxSlowQueries) {
+                    slowQueries.removeLast();
+                }
+            }
+        }
+    }
+
+    void reset() {
+        connections.set(0);
+        connectionErrors.set(0);
+        acquireTime.set(0);
+        maxAcquireTime.set(0);
+        statements.set(0);
+        statementErrors.set(0);
+        statementTime.set(0);
+        maxStatementTime.set(0);
+        for (int i = 0; i < histogram.length(); i++) {
+            histogram.set(i, 0);
+        }
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getConnections() {
+        return connections.get();
+    }
+
+    public long getConnectionErrors() {
+        return connectionErrors.get();
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public int getPoolActive() {
+        return invoke(poolActive);
+    }
+
+    public int getPoolIdle() {
+        return invoke(poolIdle);
+    }
+
+    public double getAverageAcquireTime() {
+        return average(acquireTime.get(), connections.get());
+    }
+
+    public double getMaxAcquireTime() {
+        return maxAcquireTime.get() / 1000000.0;
+    }
+
+    public long getStatements() {
+        return statements.get();
+    }
+
+    public long getStatementErrors() {
+        return statementErrors.get();
+    }
+
+    public double getAverageStatementTime() {
+        return average(statementTime.get(), statements.get());
+    }
+
+    public double getMaxStatementTime() {
+        return maxStatementTime.get() / 1000000.0;
+    }
+
+    public long[] getHistogram() {
+        long[] values = new long[histogram.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = histogram.get(i);
+        }
+        return values;
+    }
+
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<SlowQuery>(slowQueries);
+        }
+    }
+
+    private static double average(long nanos, long count) {
+        return count > 0 ? nanos / 1000000.0 / count : 0;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private static Method findMethod(Object target, String[] names) {
+        for (String name : names) {
+            try {
+                Method method = target.getClass().getMethod(name);
+                Class<?> type = method.getReturnType();
+                if (type == int.class || type == long.class) {
+                    return method;
+                }
+            } catch (Exception e) {
+                // not available on this pool
+            }
+        }
+        return null;
+    }
+
+    private int invoke(Method method) {
+        if (method != null) {
+            try {
+                return ((Number) method.invoke(dataSource)).intValue();
+            } catch (Exception e) {
+                // the pool may not be usable anymore
+            }
+        }
+        return -1;
+    }
+
+}
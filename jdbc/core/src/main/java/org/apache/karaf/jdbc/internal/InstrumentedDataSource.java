@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+/**
+ * Dynamic proxies recording the connections and statements of a datasource in a {@link DataSourceMetrics}.
+ */
+class InstrumentedDataSource {
+
+    static DataSource create(DataSource target, DataSourceMetrics metrics) {
+        return (DataSource) proxy(DataSource.class, new DataSourceHandler(target, metrics));
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class[]{ type }, handler);
+    }
+
+    private abstract static class Handler implements InvocationHandler {
+
+        final Object target;
+        final DataSourceMetrics metrics;
+
+        Handler(Object target, DataSourceMetrics metrics) {
+            this.target = target;
+            this.metrics = metrics;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals") && args != null && args.length == 1) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode") && args == null) {
+                return System.identityHashCode(proxy);
+            }
+            return handle(proxy, method, args);
+        }
+
+        abstract Object handle(Object proxy, Method method, Object[] args) throws Throwable;
+
+        Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+    }
+
+    private static class DataSourceHandler extends Handler {
+
+        DataSourceHandler(DataSource target, DataSourceMetrics metrics) {
+            super(target, metrics);
+        }
+
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().equals("getConnection")) {
+                return call(method, args);
+            }
+            long start = System.nanoTime();
+            Connection connection;
+            try {
+                connection = (Connection) call(method, args);
+            } catch (Throwable t) {
+                metrics.connectionFailed();
+                throw t;
+            }
+            metrics.connectionAcquired(System.nanoTime() - start);
+            return proxy(Connection.class, new ConnectionHandler(connection, metrics));
+        }
+
+    }
+
+    private static class ConnectionHandler extends Handler {
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        ConnectionHandler(Connection target, DataSourceMetrics metrics) {
+            super(target, metrics);
+        }
+
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (closed.compareAndSet(false, true)) {
+                    metrics.connectionClosed();
+                }
+                return call(method, args);
+            }
+            Object result = call(method, args);
+            if (name.equals("createStatement")) {
+                return proxy(Statement.class, new StatementHandler(result, (Connection) proxy, null, metrics));
+            } else if (name.equals("prepareStatement")) {
+                return proxy(PreparedStatement.class, new StatementHandler(result, (Connection) proxy, (String) args[0], metrics));
+            } else if (name.equals("prepareCall")) {
+                return proxy(CallableStatement.class, new StatementHandler(result, (Connection) proxy, (String) args[0], metrics));
+            }
+            return result;
+        }
+
+    }
+
+    private static class StatementHandler extends Handler {
+
+        private final Connection connection;
+        private final String sql;
+
+        StatementHandler(Object target, Connection connection, String sql, DataSourceMetrics metrics) {
+            super(target, metrics);
+            this.connection = connection;
+            this.sql = sql;
+        }
+
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getConnection")) {
+                return connection;
+            }
+            if (!name.startsWith("execute")) {
+                return call(method, args);
+            }
+            String statement = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            if (statement == null) {
+                statement = name;
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = call(method, args);
+                failed = false;
+                return result;
+            } finally {
+                metrics.statementExecuted(statement, System.nanoTime() - start, failed);
+            }
+        }
+
+    }
+
+}
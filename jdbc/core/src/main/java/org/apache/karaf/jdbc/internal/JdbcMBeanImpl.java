@@ -16,11 +16,16 @@
  */
 package org.apache.karaf.jdbc.internal;
 
+import org.apache.karaf.jdbc.DataSourceStats;
 import org.apache.karaf.jdbc.JdbcMBean;
 import org.apache.karaf.jdbc.JdbcService;
+import org.apache.karaf.jdbc.RowHandler;
+import org.apache.karaf.jdbc.ScriptResult;
 
 import javax.management.MBeanException;
 import javax.management.openmbean.*;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +34,17 @@ import java.util.Map;
  */
 public class JdbcMBeanImpl implements JdbcMBean {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final CompositeType PAGE = createPageType();
+    private static final CompositeType STATS = createStatsType();
+    private static final TabularType STATS_TABLE = createStatsTableType();
+    private static final CompositeType SLOW_QUERY = createSlowQueryType();
+    private static final TabularType SLOW_QUERIES_TABLE = createSlowQueriesTableType();
+    private static final CompositeType SCRIPT_RESULT = createScriptResultType();
+    private static final TabularType SCRIPT_RESULTS = createScriptResultsType();
+
     private JdbcService jdbcService;
 
     @Override
@@ -56,6 +72,56 @@ public class JdbcMBeanImpl implements JdbcMBean {
         }
     }
 
+    @Override
+    public TabularData getStats() throws MBeanException {
+        try {
+            TabularData table = new TabularDataSupport(STATS_TABLE);
+            for (DataSourceStats stats : jdbcService.stats()) {
+                table.put(new CompositeDataSupport(STATS,
+                        new String[]{ "name", "connections", "connectionErrors", "activeConnections", "poolActive", "poolIdle",
+                                "averageAcquireTime", "maxAcquireTime", "statements", "statementErrors",
+                                "averageStatementTime", "maxStatementTime", "histogram" },
+                        new Object[]{ stats.getName(), stats.getConnections(), stats.getConnectionErrors(),
+                                stats.getActiveConnections(), stats.getPoolActive(), stats.getPoolIdle(),
+                                stats.getAverageAcquireTime(), stats.getMaxAcquireTime(), stats.getStatements(),
+                                stats.getStatementErrors(), stats.getAverageStatementTime(), stats.getMaxStatementTime(),
+                                stats.getHistogram() }));
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    @Override
+    public void resetStats() throws MBeanException {
+        try {
+            jdbcService.resetStats();
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    @Override
+    public TabularData slowQueries(String datasource) throws MBeanException {
+        try {
+            TabularData table = new TabularDataSupport(SLOW_QUERIES_TABLE);
+            for (DataSourceStats stats : jdbcService.stats()) {
+                if (stats.getName().equals(datasource)) {
+                    int index = 0;
+                    for (DataSourceStats.SlowQuery query : stats.getSlowQueries()) {
+                        table.put(new CompositeDataSupport(SLOW_QUERY,
+                                new String[]{ "index", "statement", "time", "timestamp" },
+                                new Object[]{ index++, query.getStatement(), query.getTime(), query.getTimestamp() }));
+                    }
+                }
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
     @Override
     public void create(String name, String type, String driver, String version, String url, String user, String password, boolean installBundles) throws MBeanException {
         try {
@@ -125,6 +191,24 @@ public class JdbcMBeanImpl implements JdbcMBean {
         }
     }
 
+    @Override
+    public TabularData script(String datasource, String script, int batchSize) throws MBeanException {
+        try {
+            List<ScriptResult> results = jdbcService.script(datasource, new StringReader(script), batchSize);
+            TabularData table = new TabularDataSupport(SCRIPT_RESULTS);
+            int index = 0;
+            for (ScriptResult result : results) {
+                table.put(new CompositeDataSupport(SCRIPT_RESULT,
+                        new String[]{ "index", "line", "statement", "batch", "updateCount", "time", "error" },
+                        new Object[]{ index++, result.getLine(), result.getStatement(), result.getBatch(),
+                                result.getUpdateCount(), result.getTime(), result.getError() }));
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
     @Override
     public TabularData query(String datasource, String query) throws MBeanException {
         try {
@@ -157,6 +241,137 @@ public class JdbcMBeanImpl implements JdbcMBean {
         }
     }
 
+    @Override
+    public CompositeData query(String datasource, String query, String page, int pageSize) throws MBeanException {
+        try {
+            int offset = parsePage(query, page);
+            int limit = pageSize > 0 ? Math.min(pageSize, MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+            final List<String[]> rows = new ArrayList<String[]>();
+            final String[][] columns = new String[1][];
+            boolean more = jdbcService.query(datasource, query, offset, limit, limit, new RowHandler() {
+                public void columns(String[] labels) {
+                    columns[0] = labels;
+                }
+                public boolean row(String[] values) {
+                    rows.add(values);
+                    return true;
+                }
+            });
+            String next = more ? createPage(query, offset + rows.size()) : null;
+            return new CompositeDataSupport(PAGE,
+                    new String[]{ "columns", "rows", "next" },
+                    new Object[]{ columns[0], rows.toArray(new String[rows.size()][]), next });
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    /**
+     * Page tokens are the offset of the first row of the page, bound to the query they have been created for.
+     * The query is executed again for each page, so the pages are only consistent if the query has an ORDER BY
+     * on a unique key: without it, the database is free to return the rows in a different order every time.
+     */
+    private static String createPage(String query, int offset) {
+        return Integer.toHexString(query.hashCode()) + ":" + offset;
+    }
+
+    private static int parsePage(String query, String page) {
+        if (page == null || page.length() == 0) {
+            return 0;
+        }
+        int index = page.indexOf(':');
+        if (index > 0 && page.substring(0, index).equals(Integer.toHexString(query.hashCode()))) {
+            try {
+                int offset = Integer.parseInt(page.substring(index + 1));
+                if (offset >= 0) {
+                    return offset;
+                }
+            } catch (NumberFormatException e) {
+                // invalid token
+            }
+        }
+        throw new IllegalArgumentException("Invalid page " + page + " for query " + query);
+    }
+
+    private static CompositeType createStatsType() {
+        try {
+            return new CompositeType("DataSourceStats", "JDBC DataSource statistics",
+                    new String[]{ "name", "connections", "connectionErrors", "activeConnections", "poolActive", "poolIdle",
+                            "averageAcquireTime", "maxAcquireTime", "statements", "statementErrors",
+                            "averageStatementTime", "maxStatementTime", "histogram" },
+                    new String[]{ "JDBC DataSource Name", "Acquired connections", "Failed connection acquisitions",
+                            "Connections not closed yet", "Active connections of the pool (-1 if unknown)",
+                            "Idle connections of the pool (-1 if unknown)", "Average acquire time (ms)",
+                            "Maximum acquire time (ms)", "Executed statements", "Failed statements",
+                            "Average statement execution time (ms)", "Maximum statement execution time (ms)",
+                            "Statements per execution time bucket (< 1, 10, 100, 1000, 10000 ms and more)" },
+                    new OpenType[]{ SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.INTEGER,
+                            SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.LONG,
+                            SimpleType.LONG, SimpleType.DOUBLE, SimpleType.DOUBLE, new ArrayType(SimpleType.LONG, true) });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build datasource stats type", e);
+        }
+    }
+
+    private static TabularType createStatsTableType() {
+        try {
+            return new TabularType("DataSourcesStats", "Statistics of the JDBC DataSources", STATS, new String[]{ "name" });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build datasources stats type", e);
+        }
+    }
+
+    private static CompositeType createSlowQueryType() {
+        try {
+            return new CompositeType("SlowQuery", "Slow SQL statement",
+                    new String[]{ "index", "statement", "time", "timestamp" },
+                    new String[]{ "Index of the query, most recent first", "SQL statement", "Execution time (ms)", "Execution date" },
+                    new OpenType[]{ SimpleType.INTEGER, SimpleType.STRING, SimpleType.LONG, SimpleType.LONG });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build slow query type", e);
+        }
+    }
+
+    private static TabularType createSlowQueriesTableType() {
+        try {
+            return new TabularType("SlowQueries", "Slow SQL statements", SLOW_QUERY, new String[]{ "index" });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build slow queries type", e);
+        }
+    }
+
+    private static CompositeType createScriptResultType() {
+        try {
+            return new CompositeType("ScriptResult", "Result of a SQL script statement",
+                    new String[]{ "index", "line", "statement", "batch", "updateCount", "time", "error" },
+                    new String[]{ "Index of the statement", "Line of the statement in the script", "SQL statement",
+                            "JDBC batch number", "Number of updated rows", "Execution time of the batch (ms)", "Error message" },
+                    new OpenType[]{ SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.STRING, SimpleType.INTEGER,
+                            SimpleType.INTEGER, SimpleType.LONG, SimpleType.STRING });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build script result type", e);
+        }
+    }
+
+    private static TabularType createScriptResultsType() {
+        try {
+            return new TabularType("ScriptResults", "Results of a SQL script", SCRIPT_RESULT, new String[]{ "index" });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build script results type", e);
+        }
+    }
+
+    private static CompositeType createPageType() {
+        try {
+            return new CompositeType("QueryPage", "Page of a SQL query result",
+                    new String[]{ "columns", "rows", "next" },
+                    new String[]{ "Column labels", "Rows of the page", "Token of the next page" },
+                    new OpenType[]{ new ArrayType(1, SimpleType.STRING), new ArrayType(2, SimpleType.STRING), SimpleType.STRING });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build query page type", e);
+        }
+    }
+
     public JdbcService getJdbcService() {
         return jdbcService;
     }
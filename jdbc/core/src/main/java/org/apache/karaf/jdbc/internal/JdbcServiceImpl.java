@@ -16,7 +16,10 @@
  */
 package org.apache.karaf.jdbc.internal;
 
+import org.apache.karaf.jdbc.DataSourceStats;
 import org.apache.karaf.jdbc.JdbcService;
+import org.apache.karaf.jdbc.RowHandler;
+import org.apache.karaf.jdbc.ScriptResult;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
@@ -120,6 +123,7 @@ public class JdbcServiceImpl implements JdbcService {
     }
 
     private BundleContext bundleContext;
+    private DataSourceInstrumentation instrumentation;
 
     @Override
     public void create(String name, String type, String driverClassName, String version, String url, String user, String password, boolean tryToInstallBundles) throws Exception {
@@ -155,140 +159,257 @@ public class JdbcServiceImpl implements JdbcService {
     @Override
     public List<String> datasources() throws Exception {
         List<String> datasources = new ArrayList<String>();
-        ServiceReference[] references = bundleContext.getServiceReferences(DataSource.class.getName(), null);
+        ServiceReference[] references = bundleContext.getServiceReferences(DataSource.class.getName(), DataSourceInstrumentation.NOT_INSTRUMENTED);
         if (references != null) {
             for (ServiceReference reference : references) {
-                if (reference.getProperty("osgi.jndi.service.name") != null) {
-                    datasources.add((String) reference.getProperty("osgi.jndi.service.name"));
-                } else if (reference.getProperty("datasource") != null) {
-                    datasources.add((String) reference.getProperty("datasource"));
-                } else if (reference.getProperty("name") != null) {
-                    datasources.add((String) reference.getProperty("name"));
-                } else {
-                    datasources.add(reference.getProperty(Constants.SERVICE_ID).toString());
-                }
+                datasources.add(getName(reference));
             }
         }
         return datasources;
     }
 
+    static String getName(ServiceReference reference) {
+        if (reference.getProperty("osgi.jndi.service.name") != null) {
+            return (String) reference.getProperty("osgi.jndi.service.name");
+        } else if (reference.getProperty("datasource") != null) {
+            return (String) reference.getProperty("datasource");
+        } else if (reference.getProperty("name") != null) {
+            return (String) reference.getProperty("name");
+        } else {
+            return reference.getProperty(Constants.SERVICE_ID).toString();
+        }
+    }
+
     @Override
     public Map<String, List<String>> query(String datasource, String query) throws Exception {
-        Map<String, List<String>> map = new HashMap<String, List<String>>();
-        ServiceReference reference = this.lookupDataSource(datasource);
-        Connection connection = null;
-        Statement statement = null;
-        try {
-            DataSource ds = (DataSource) bundleContext.getService(reference);
-            connection = ds.getConnection();
-            statement = connection.createStatement();
-            ResultSet resultSet = statement.executeQuery(query);
-            ResultSetMetaData metaData = resultSet.getMetaData();
-            for (int c = 1; c <= metaData.getColumnCount(); c++) {
-                map.put(metaData.getColumnLabel(c), new ArrayList<String>());
-            }
-            while (resultSet.next()) {
-                for (int c = 1; c <= metaData.getColumnCount(); c++) {
-                    map.get(metaData.getColumnLabel(c)).add(resultSet.getString(c));
+        final Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+        query(datasource, query, 0, 0, 0, new RowHandler() {
+            private List<List<String>> columns;
+            public void columns(String[] labels) {
+                columns = new ArrayList<List<String>>(labels.length);
+                for (String label : labels) {
+                    List<String> values = map.get(label);
+                    if (values == null) {
+                        values = new ArrayList<String>();
+                        map.put(label, values);
+                    }
+                    columns.add(values);
                 }
             }
-            resultSet.close();
-        } finally {
-            if (statement != null) {
-                statement.close();
-            }
-            if (connection != null) {
-                connection.close();
-            }
-            if (reference != null) {
-                bundleContext.ungetService(reference);
+            public boolean row(String[] values) {
+                for (int c = 0; c < values.length; c++) {
+                    columns.get(c).add(values[c]);
+                }
+                return true;
             }
-        }
+        });
         return map;
     }
 
     @Override
-    public void execute(String datasource, String command) throws Exception {
-        ServiceReference reference = this.lookupDataSource(datasource);
-        Connection connection = null;
-        Statement statement = null;
-        try {
-            DataSource ds = (DataSource) bundleContext.getService(reference);
-            connection = ds.getConnection();
-            statement = connection.createStatement();
-            statement.execute(command);
-        } finally {
-            if (statement != null) {
-                statement.close();
+    public boolean query(String datasource, final String query, final int offset, final int limit, final int fetchSize, final RowHandler handler) throws Exception {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset " + offset);
+        }
+        return withConnection(datasource, new ConnectionCallback<Boolean>() {
+            public Boolean execute(Connection connection) throws Exception {
+                boolean restoreAutoCommit = false;
+                if (fetchSize > 0 && connection.getAutoCommit()) {
+                    // some drivers (PostgreSQL for instance) only use a cursor outside of auto-commit mode
+                    connection.setAutoCommit(false);
+                    restoreAutoCommit = true;
+                }
+                try {
+                    Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    try {
+                        if (fetchSize > 0) {
+                            statement.setFetchSize(fetchSize);
+                        }
+                        if (limit > 0 && (long) offset + limit < Integer.MAX_VALUE) {
+                            // one more row to know if the result goes beyond the limit
+                            statement.setMaxRows(offset + limit + 1);
+                        }
+                        ResultSet resultSet = statement.executeQuery(query);
+                        try {
+                            return read(resultSet, offset, limit, handler);
+                        } finally {
+                            resultSet.close();
+                        }
+                    } finally {
+                        statement.close();
+                    }
+                } finally {
+                    if (restoreAutoCommit) {
+                        try {
+                            // the transaction was only opened to read, never commit what the query may have changed
+                            connection.rollback();
+                        } finally {
+                            connection.setAutoCommit(true);
+                        }
+                    }
+                }
             }
-            if (connection != null) {
-                connection.close();
+        });
+    }
+
+    private boolean read(ResultSet resultSet, int offset, int limit, RowHandler handler) throws Exception {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] columns = new String[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            columns[c] = metaData.getColumnLabel(c + 1);
+        }
+        handler.columns(columns);
+        boolean more = resultSet.next();
+        for (int i = 0; i < offset && more; i++) {
+            more = resultSet.next();
+        }
+        int rows = 0;
+        while (more && (limit <= 0 || rows < limit)) {
+            String[] values = new String[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                values[c] = resultSet.getString(c + 1);
             }
-            if (reference != null) {
-                bundleContext.ungetService(reference);
+            rows++;
+            if (!handler.row(values)) {
+                return resultSet.next();
             }
+            more = resultSet.next();
         }
+        return more;
     }
 
     @Override
-    public Map<String, List<String>> tables(String datasource) throws Exception {
-        Map<String, List<String>> map = new HashMap<String, List<String>>();
-        ServiceReference reference = this.lookupDataSource(datasource);
-        Connection connection = null;
-        try {
-            DataSource ds = (DataSource) bundleContext.getService(reference);
-            connection = ds.getConnection();
-            DatabaseMetaData dbMetaData = connection.getMetaData();
-            ResultSet resultSet = dbMetaData.getTables(null, null, null, null);
-            ResultSetMetaData metaData = resultSet.getMetaData();
-            for (int c = 1; c <= metaData.getColumnCount(); c++) {
-                map.put(metaData.getColumnLabel(c), new ArrayList<String>());
-            }
-            while (resultSet.next()) {
-                for (int c = 1; c <= metaData.getColumnCount(); c++) {
-                    map.get(metaData.getColumnLabel(c)).add(resultSet.getString(c));
+    public void execute(String datasource, final String command) throws Exception {
+        withConnection(datasource, new ConnectionCallback<Void>() {
+            public Void execute(Connection connection) throws Exception {
+                Statement statement = connection.createStatement();
+                try {
+                    statement.execute(command);
+                } finally {
+                    statement.close();
                 }
+                return null;
             }
-            resultSet.close();
-        } finally {
-            if (connection != null) {
-                connection.close();
+        });
+    }
+
+    @Override
+    public List<ScriptResult> script(String datasource, Reader script, final int batchSize) throws Exception {
+        final List<SqlScript.Entry> entries = SqlScript.parse(script);
+        return withConnection(datasource, new ConnectionCallback<List<ScriptResult>>() {
+            public List<ScriptResult> execute(Connection connection) throws Exception {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try {
+                    List<ScriptResult> results = new ScriptRunner(connection, Math.max(1, batchSize)).run(entries);
+                    if (!results.isEmpty() && results.get(results.size() - 1).getError() != null) {
+                        connection.rollback();
+                    } else {
+                        connection.commit();
+                    }
+                    return results;
+                } catch (Exception e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
             }
-            if (reference != null) {
-                bundleContext.ungetService(reference);
+        });
+    }
+
+    @Override
+    public Map<String, List<String>> tables(String datasource) throws Exception {
+        final Map<String, List<String>> map = new HashMap<String, List<String>>();
+        withConnection(datasource, new ConnectionCallback<Void>() {
+            public Void execute(Connection connection) throws Exception {
+                DatabaseMetaData dbMetaData = connection.getMetaData();
+                ResultSet resultSet = dbMetaData.getTables(null, null, null, null);
+                try {
+                    ResultSetMetaData metaData = resultSet.getMetaData();
+                    for (int c = 1; c <= metaData.getColumnCount(); c++) {
+                        map.put(metaData.getColumnLabel(c), new ArrayList<String>());
+                    }
+                    while (resultSet.next()) {
+                        for (int c = 1; c <= metaData.getColumnCount(); c++) {
+                            map.get(metaData.getColumnLabel(c)).add(resultSet.getString(c));
+                        }
+                    }
+                } finally {
+                    resultSet.close();
+                }
+                return null;
             }
-        }
+        });
         return map;
     }
 
     @Override
     public Map<String, String> info(String datasource) throws Exception {
-        Map<String, String> map = new HashMap<String, String>();
+        final Map<String, String> map = new HashMap<String, String>();
+        withConnection(datasource, new ConnectionCallback<Void>() {
+            public Void execute(Connection connection) throws Exception {
+                DatabaseMetaData dbMetaData = connection.getMetaData();
+                map.put("db.product", dbMetaData.getDatabaseProductName());
+                map.put("db.version", dbMetaData.getDatabaseProductVersion());
+                map.put("url", dbMetaData.getURL());
+                map.put("username", dbMetaData.getUserName());
+                map.put("driver.name", dbMetaData.getDriverName());
+                map.put("driver.version", dbMetaData.getDriverVersion());
+                return null;
+            }
+        });
+        return map;
+    }
+
+    @Override
+    public List<DataSourceStats> stats() throws Exception {
+        if (instrumentation == null) {
+            return Collections.emptyList();
+        }
+        return instrumentation.getStats();
+    }
+
+    @Override
+    public void resetStats() throws Exception {
+        if (instrumentation != null) {
+            instrumentation.reset();
+        }
+    }
+
+    private interface ConnectionCallback<T> {
+        T execute(Connection connection) throws Exception;
+    }
+
+    /**
+     * Look up a datasource, get a connection and pass it to the callback, then release the connection
+     * and the datasource service.
+     */
+    private <T> T withConnection(String datasource, ConnectionCallback<T> callback) throws Exception {
         ServiceReference reference = this.lookupDataSource(datasource);
-        Connection connection = null;
         try {
             DataSource ds = (DataSource) bundleContext.getService(reference);
-            connection = ds.getConnection();
-            DatabaseMetaData dbMetaData = connection.getMetaData();
-            map.put("db.product", dbMetaData.getDatabaseProductName());
-            map.put("db.version", dbMetaData.getDatabaseProductVersion());
-            map.put("url", dbMetaData.getURL());
-            map.put("username", dbMetaData.getUserName());
-            map.put("driver.name", dbMetaData.getDriverName());
-            map.put("driver.version", dbMetaData.getDriverVersion());
-        } finally {
-            if (connection != null) {
-                connection.close();
+            if (ds == null) {
+                throw new IllegalArgumentException("JDBC datasource " + datasource + " is not available");
             }
-            if (reference != null) {
-                bundleContext.ungetService(reference);
+            if (instrumentation != null) {
+                ds = instrumentation.wrap(reference, ds);
+            }
+            Connection connection = ds.getConnection();
+            try {
+                return callback.execute(connection);
+            } finally {
+                connection.close();
             }
+        } finally {
+            bundleContext.ungetService(reference);
         }
-        return map;
     }
 
     private ServiceReference lookupDataSource(String name) throws Exception {
-        ServiceReference[] references = bundleContext.getServiceReferences(DataSource.class.getName(), "(|(osgi.jndi.service.name=" + name + ")(datasource=" + name + ")(name=" + name + ")(service.id=" + name + "))");
+        ServiceReference[] references = bundleContext.getServiceReferences(DataSource.class.getName(), "(&(|(osgi.jndi.service.name=" + name + ")(datasource=" + name + ")(name=" + name + ")(service.id=" + name + "))"
+                + DataSourceInstrumentation.NOT_INSTRUMENTED + ")");
         if (references == null || references.length == 0) {
             throw new IllegalArgumentException("No JDBC datasource found for " + name);
         }
@@ -306,4 +427,8 @@ public class JdbcServiceImpl implements JdbcService {
         this.bundleContext = bundleContext;
     }
 
+    public void setInstrumentation(DataSourceInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
 }
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.karaf.jdbc.ScriptResult;
+
+/**
+ * Executes the statements of a SQL script on a connection, grouping the updates in JDBC batches.
+ * <p>
+ * Statements which may return a result set are executed on their own, as they can not be part
+ * of a batch. The execution stops at the first failing statement, the caller is responsible for
+ * the transaction.
+ */
+class ScriptRunner {
+
+    private static final Pattern QUERY = Pattern.compile("^(select|with|values|call|show|explain)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Connection connection;
+    private final int batchSize;
+    private final List<ScriptResult> results = new ArrayList<ScriptResult>();
+    private final List<SqlScript.Entry> pending = new ArrayList<SqlScript.Entry>();
+    private int batch;
+
+    ScriptRunner(Connection connection, int batchSize) {
+        this.connection = connection;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the results of the executed statements, the last one contains the error if a statement failed.
+     */
+    List<ScriptResult> run(List<SqlScript.Entry> entries) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            for (SqlScript.Entry entry : entries) {
+                if (batchSize > 1 && !QUERY.matcher(entry.sql).find()) {
+                    statement.addBatch(entry.sql);
+                    pending.add(entry);
+                    if (pending.size() >= batchSize && !executeBatch(statement)) {
+                        return results;
+                    }
+                } else if (!executeBatch(statement) || !execute(statement, entry)) {
+                    return results;
+                }
+            }
+            executeBatch(statement);
+            return results;
+        } finally {
+            statement.close();
+        }
+    }
+
+    private boolean execute(Statement statement, SqlScript.Entry entry) {
+        batch++;
+        long start = System.currentTimeMillis();
+        try {
+            int updateCount = statement.execute(entry.sql) ? -1 : statement.getUpdateCount();
+            results.add(new ScriptResult(entry.line, entry.sql, batch, updateCount, System.currentTimeMillis() - start, null));
+            return true;
+        } catch (SQLException e) {
+            results.add(new ScriptResult(entry.line, entry.sql, batch, -1, System.currentTimeMillis() - start, e.getMessage()));
+            return false;
+        }
+    }
+
+    private boolean executeBatch(Statement statement) throws SQLException {
+        if (pending.isEmpty()) {
+            return true;
+        }
+        batch++;
+        long start = System.currentTimeMillis();
+        try {
+            int[] counts = statement.executeBatch();
+            long time = System.currentTimeMillis() - start;
+            for (int i = 0; i < pending.size(); i++) {
+                SqlScript.Entry entry = pending.get(i);
+                results.add(new ScriptResult(entry.line, entry.sql, batch, i < counts.length ? counts[i] : -1, time, null));
+            }
+            return true;
+        } catch (SQLException e) {
+            long time = System.currentTimeMillis() - start;
+            // drivers either stop at the failing statement or mark it as failed and go on
+            int[] counts = e instanceof BatchUpdateException ? ((BatchUpdateException) e).getUpdateCounts() : null;
+            int failed = 0;
+            if (counts != null) {
+                while (failed < counts.length && counts[failed] != Statement.EXECUTE_FAILED) {
+                    failed++;
+                }
+                failed = Math.min(failed, pending.size() - 1);
+            }
+            for (int i = 0; i < failed; i++) {
+                SqlScript.Entry entry = pending.get(i);
+                results.add(new ScriptResult(entry.line, entry.sql, batch, counts[i], time, null));
+            }
+            SqlScript.Entry entry = pending.get(failed);
+            results.add(new ScriptResult(entry.line, entry.sql, batch, -1, time, e.getMessage()));
+            statement.clearBatch();
+            return false;
+        } finally {
+            pending.clear();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a SQL script into statements.
+ * <p>
+ * Statements are separated by semicolons. Semicolons in quoted strings or identifiers are kept,
+ * <code>--</code> and <code>/* *&#47;</code> comments are removed.
+ */
+class SqlScript {
+
+    static class Entry {
+        final int line;
+        final String sql;
+
+        Entry(int line, String sql) {
+            this.line = line;
+            this.sql = sql;
+        }
+    }
+
+    private static final int NORMAL = 0;
+    private static final int QUOTED = 1;
+    private static final int LINE_COMMENT = 2;
+    private static final int BLOCK_COMMENT = 3;
+
+    static List<Entry> parse(Reader reader) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        StringBuilder sql = new StringBuilder();
+        int state = NORMAL;
+        char quote = 0;
+        int line = 1;
+        int start = 0;
+        int c = reader.read();
+        while (c >= 0) {
+            int next = reader.read();
+            switch (state) {
+                case NORMAL:
+                    if (c == '-' && next == '-') {
+                        state = LINE_COMMENT;
+                        next = reader.read();
+                    } else if (c == '/' && next == '*') {
+                        state = BLOCK_COMMENT;
+                        next = reader.read();
+                    } else if (c == ';') {
+                        add(entries, start, sql);
+                        start = 0;
+                    } else {
+                        if (c == '\'' || c == '"') {
+                            state = QUOTED;
+                            quote = (char) c;
+                        }
+                        if (start == 0 && !Character.isWhitespace(c)) {
+                            start = line;
+                        }
+                        if (start != 0) {
+                            sql.append((char) c);
+                        }
+                    }
+                    break;
+                case QUOTED:
+                    if (c == quote) {
+                        state = NORMAL;
+                    }
+                    sql.append((char) c);
+                    break;
+                case LINE_COMMENT:
+                    if (c == '\n') {
+                        state = NORMAL;
+                        if (start != 0) {
+                            sql.append('\n');
+                        }
+                    }
+                    break;
+                case BLOCK_COMMENT:
+                    if (c == '*' && next == '/') {
+                        state = NORMAL;
+                        next = reader.read();
+                        if (start != 0) {
+                            sql.append(' ');
+                        }
+                    }
+                    break;
+            }
+            if (c == '\n') {
+                line++;
+            }
+            c = next;
+        }
+        add(entries, start, sql);
+        return entries;
+    }
+
+    private static void add(List<Entry> entries, int line, StringBuilder sql) {
+        String statement = sql.toString().trim();
+        if (statement.length() > 0) {
+            entries.add(new Entry(line, statement));
+        }
+        sql.setLength(0);
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.derby.jdbc.EmbeddedDataSource40;
+import org.apache.karaf.jdbc.DataSourceStats;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+public class DataSourceInstrumentationTest {
+
+    private static int databases;
+
+    private EmbeddedDataSource40 dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new EmbeddedDataSource40();
+        dataSource.setDatabaseName("memory:instrumentation" + databases++);
+        dataSource.setCreateDatabase("create");
+    }
+
+    @Test
+    public void testRegistration() throws Exception {
+        ServiceReference reference = createReference(5);
+        Capture<Object> service = new Capture<Object>();
+        Capture<Dictionary> properties = new Capture<Dictionary>();
+        BundleContext bundleContext = createMock(BundleContext.class);
+        bundleContext.addServiceListener(EasyMock.<ServiceListener>anyObject(), EasyMock.<String>anyObject());
+        expect(bundleContext.getServiceReferences(DataSource.class.getName(), DataSourceInstrumentation.NOT_INSTRUMENTED))
+                .andReturn(new ServiceReference[] { reference });
+        expect(bundleContext.getService(reference)).andReturn(dataSource);
+        expect(bundleContext.registerService(EasyMock.eq(DataSource.class.getName()), capture(service), capture(properties)))
+                .andReturn(null);
+        replay(bundleContext);
+
+        DataSourceInstrumentation instrumentation = createInstrumentation(bundleContext);
+        instrumentation.start();
+
+        DataSource proxy = (DataSource) service.getValue();
+        assertNotSame(dataSource, proxy);
+        assertSame(proxy, instrumentation.wrap(reference, dataSource));
+        assertFalse(proxy instanceof EmbeddedDataSource40);
+        assertSame(dataSource, proxy.unwrap(EmbeddedDataSource40.class));
+
+        Dictionary registered = properties.getValue();
+        assertEquals(6, registered.get(Constants.SERVICE_RANKING));
+        assertEquals(Boolean.TRUE, registered.get(DataSourceInstrumentation.INSTRUMENTED));
+        assertEquals("jdbc/test", registered.get("osgi.jndi.service.name"));
+        assertNull(registered.get(Constants.OBJECTCLASS));
+        assertNull(registered.get(Constants.SERVICE_ID));
+
+        List<DataSourceStats> stats = instrumentation.getStats();
+        assertEquals(1, stats.size());
+        assertEquals("jdbc/test", stats.get(0).getName());
+        verify(bundleContext);
+    }
+
+    @Test
+    public void testRankingWithoutRanking() throws Exception {
+        ServiceReference reference = createReference(null);
+        Capture<Dictionary> properties = new Capture<Dictionary>();
+        ServiceRegistration registration = createMock(ServiceRegistration.class);
+        registration.unregister();
+        replay(registration);
+        BundleContext bundleContext = createMock(BundleContext.class);
+        expect(bundleContext.getService(reference)).andReturn(dataSource);
+        expect(bundleContext.registerService(EasyMock.eq(DataSource.class.getName()), EasyMock.anyObject(), capture(properties)))
+                .andReturn(registration);
+        expect(bundleContext.ungetService(reference)).andReturn(true);
+        replay(bundleContext);
+
+        DataSourceInstrumentation instrumentation = createInstrumentation(bundleContext);
+        instrumentation.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, reference));
+        assertEquals(1, properties.getValue().get(Constants.SERVICE_RANKING));
+        assertEquals(1, instrumentation.getStats().size());
+
+        instrumentation.serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, reference));
+        assertEquals(0, instrumentation.getStats().size());
+        assertSame(dataSource, instrumentation.wrap(reference, dataSource));
+        verify(bundleContext, registration);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        BundleContext bundleContext = createMock(BundleContext.class);
+        replay(bundleContext);
+        DataSourceInstrumentation instrumentation = new DataSourceInstrumentation();
+        instrumentation.setBundleContext(bundleContext);
+        instrumentation.start();
+        assertSame(dataSource, instrumentation.wrap(createReference(0), dataSource));
+        assertTrue(instrumentation.getStats().isEmpty());
+        instrumentation.stop();
+    }
+
+    @Test
+    public void testConnections() throws Exception {
+        DataSourceMetrics metrics = new DataSourceMetrics("test", dataSource, 1000, 20);
+        DataSource proxy = InstrumentedDataSource.create(dataSource, metrics);
+
+        Connection connection1 = proxy.getConnection();
+        Connection connection2 = proxy.getConnection();
+        assertEquals(2, metrics.getConnections());
+        assertEquals(2, metrics.getActiveConnections());
+
+        connection1.close();
+        connection1.close();
+        assertEquals(1, metrics.getActiveConnections());
+        connection2.close();
+        assertEquals(0, metrics.getActiveConnections());
+        assertEquals(2, metrics.getConnections());
+        assertEquals(0, metrics.getConnectionErrors());
+        assertTrue(metrics.getMaxAcquireTime() >= metrics.getAverageAcquireTime());
+        // not a pool
+        assertEquals(-1, metrics.getPoolActive());
+        assertEquals(-1, metrics.getPoolIdle());
+
+        EmbeddedDataSource40 missing = new EmbeddedDataSource40();
+        missing.setDatabaseName("memory:missing");
+        DataSourceMetrics failures = new DataSourceMetrics("missing", missing, 1000, 20);
+        try {
+            InstrumentedDataSource.create(missing, failures).getConnection();
+            fail("Expected SQLException");
+        } catch (SQLException e) {
+            // expected, the database does not exist
+        }
+        assertEquals(0, failures.getConnections());
+        assertEquals(1, failures.getConnectionErrors());
+        assertEquals(0, failures.getActiveConnections());
+    }
+
+    @Test
+    public void testStatements() throws Exception {
+        DataSourceMetrics metrics = new DataSourceMetrics("test", dataSource, 1000, 20);
+        DataSource proxy = InstrumentedDataSource.create(dataSource, metrics);
+
+        Connection connection = proxy.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("CREATE TABLE PERSON (ID INT, NAME VARCHAR(20))");
+            assertSame(connection, statement.getConnection());
+            statement.close();
+            PreparedStatement insert = connection.prepareStatement("INSERT INTO PERSON VALUES (?, ?)");
+            for (int i = 0; i < 3; i++) {
+                insert.setInt(1, i);
+                insert.setString(2, "name" + i);
+                insert.executeUpdate();
+            }
+            insert.close();
+            statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM PERSON");
+            assertTrue(resultSet.next());
+            assertEquals(3, resultSet.getInt(1));
+            resultSet.close();
+            try {
+                statement.executeQuery("SELECT * FROM MISSING");
+                fail("Expected SQLException");
+            } catch (SQLException e) {
+                // expected
+            }
+            statement.close();
+        } finally {
+            connection.close();
+        }
+
+        assertEquals(6, metrics.getStatements());
+        assertEquals(1, metrics.getStatementErrors());
+        long total = 0;
+        for (long count : metrics.getHistogram()) {
+            total += count;
+        }
+        assertEquals(6, total);
+        assertTrue(metrics.getMaxStatementTime() >= metrics.getAverageStatementTime());
+    }
+
+    @Test
+    public void testHistogram() {
+        DataSourceMetrics metrics = new DataSourceMetrics("test", dataSource, 0, 20);
+        long[] millis = { 0, 1, 9, 10, 99, 100, 999, 1000, 9999, 10000, 60000 };
+        for (long time : millis) {
+            metrics.statementExecuted("SELECT 1", time * 1000000, false);
+        }
+        assertEquals(DataSourceStats.HISTOGRAM_BOUNDS.length + 1, metrics.getHistogram().length);
+        assertArrayEquals(new long[] { 1, 2, 2, 2, 2, 2 }, metrics.getHistogram());
+        assertEquals(60000.0, metrics.getMaxStatementTime(), 0.001);
+        // no threshold, no slow query
+        assertTrue(metrics.getSlowQueries().isEmpty());
+    }
+
+    @Test
+    public void testSlowQueries() {
+        DataSourceMetrics metrics = new DataSourceMetrics("test", dataSource, 100, 2);
+        metrics.statementExecuted("SELECT 1", 150 * 1000000L, false);
+        metrics.statementExecuted("SELECT 2", 50 * 1000000L, false);
+        metrics.statementExecuted("SELECT 3", 100 * 1000000L, true);
+        metrics.statementExecuted("SELECT 4", 2000 * 1000000L, false);
+
+        List<DataSourceStats.SlowQuery> slowQueries = metrics.getSlowQueries();
+        assertEquals(2, slowQueries.size());
+        assertEquals("SELECT 4", slowQueries.get(0).getStatement());
+        assertEquals(2000, slowQueries.get(0).getTime());
+        assertEquals("SELECT 3", slowQueries.get(1).getStatement());
+        assertEquals(100, slowQueries.get(1).getTime());
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        DataSourceMetrics metrics = new DataSourceMetrics("test", dataSource, 100, 20);
+        DataSource proxy = InstrumentedDataSource.create(dataSource, metrics);
+        Connection connection = proxy.getConnection();
+        metrics.statementExecuted("SELECT 1", 500 * 1000000L, true);
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getConnections());
+        assertEquals(0, metrics.getStatements());
+        assertEquals(0, metrics.getStatementErrors());
+        assertEquals(0.0, metrics.getMaxAcquireTime(), 0.0);
+        assertEquals(0.0, metrics.getMaxStatementTime(), 0.0);
+        assertArrayEquals(new long[DataSourceStats.HISTOGRAM_BOUNDS.length + 1], metrics.getHistogram());
+        assertTrue(metrics.getSlowQueries().isEmpty());
+        // the connections still open are not forgotten
+        assertEquals(1, metrics.getActiveConnections());
+        connection.close();
+        assertEquals(0, metrics.getActiveConnections());
+    }
+
+    @Test
+    public void testPoolState() {
+        DataSourceMetrics metrics = new DataSourceMetrics("pool", new PoolDataSource(), 1000, 20);
+        assertEquals(3, metrics.getPoolActive());
+        assertEquals(7, metrics.getPoolIdle());
+    }
+
+    public static class PoolDataSource extends EmbeddedDataSource40 {
+
+        public int getNumActive() {
+            return 3;
+        }
+
+        public long getNumIdle() {
+            return 7;
+        }
+
+    }
+
+    private DataSourceInstrumentation createInstrumentation(BundleContext bundleContext) {
+        DataSourceInstrumentation instrumentation = new DataSourceInstrumentation();
+        instrumentation.setBundleContext(bundleContext);
+        instrumentation.setEnabled(true);
+        return instrumentation;
+    }
+
+    private ServiceReference createReference(Integer ranking) {
+        ServiceReference reference = createMock(ServiceReference.class);
+        List<String> keys = new ArrayList<String>();
+        keys.add(Constants.OBJECTCLASS);
+        keys.add(Constants.SERVICE_ID);
+        keys.add("osgi.jndi.service.name");
+        expect(reference.getProperty(Constants.OBJECTCLASS)).andReturn(new String[] { DataSource.class.getName() }).anyTimes();
+        expect(reference.getProperty(Constants.SERVICE_ID)).andReturn(12L).anyTimes();
+        expect(reference.getProperty("osgi.jndi.service.name")).andReturn("jdbc/test").anyTimes();
+        if (ranking != null) {
+            keys.add(Constants.SERVICE_RANKING);
+        }
+        expect(reference.getProperty(Constants.SERVICE_RANKING)).andReturn(ranking).anyTimes();
+        expect(reference.getPropertyKeys()).andReturn(keys.toArray(new String[keys.size()])).anyTimes();
+        replay(reference);
+        return reference;
+    }
+
+}
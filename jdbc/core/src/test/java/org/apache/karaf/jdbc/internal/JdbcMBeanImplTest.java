@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import javax.management.MBeanException;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.derby.jdbc.EmbeddedDataSource40;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdbcMBeanImplTest {
+
+    private static final String QUERY = "select id, name from items order by id";
+
+    private static int databases;
+
+    private JdbcMBeanImpl mbean;
+
+    @Before
+    public void setUp() throws Exception {
+        EmbeddedDataSource40 dataSource = new EmbeddedDataSource40();
+        dataSource.setDatabaseName("memory:mbean" + databases++);
+        dataSource.setCreateDatabase("create");
+        JdbcServiceImplTest.createTable(dataSource, 5);
+        mbean = new JdbcMBeanImpl();
+        mbean.setJdbcService(JdbcServiceImplTest.createService(dataSource));
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        CompositeData page = mbean.query("jdbc/test", QUERY, null, 2);
+        assertArrayEquals(new String[]{ "ID", "NAME" }, (String[]) page.get("columns"));
+        String[][] rows = (String[][]) page.get("rows");
+        assertEquals(2, rows.length);
+        assertArrayEquals(new String[]{ "0", "item0" }, rows[0]);
+        String next = (String) page.get("next");
+        assertNotNull(next);
+
+        page = mbean.query("jdbc/test", QUERY, next, 2);
+        rows = (String[][]) page.get("rows");
+        assertEquals(2, rows.length);
+        assertEquals("2", rows[0][0]);
+        assertEquals("3", rows[1][0]);
+        next = (String) page.get("next");
+        assertNotNull(next);
+
+        page = mbean.query("jdbc/test", QUERY, next, 2);
+        rows = (String[][]) page.get("rows");
+        assertEquals(1, rows.length);
+        assertEquals("4", rows[0][0]);
+        assertNull(page.get("next"));
+    }
+
+    @Test
+    public void testLastFullPage() throws Exception {
+        CompositeData page = mbean.query("jdbc/test", QUERY, "", 5);
+        assertEquals(5, ((String[][]) page.get("rows")).length);
+        assertNull(page.get("next"));
+    }
+
+    @Test
+    public void testDefaultPageSize() throws Exception {
+        CompositeData page = mbean.query("jdbc/test", QUERY, null, 0);
+        assertEquals(5, ((String[][]) page.get("rows")).length);
+        assertNull(page.get("next"));
+    }
+
+    @Test
+    public void testPageOfAnotherQuery() throws Exception {
+        String next = (String) mbean.query("jdbc/test", QUERY, null, 2).get("next");
+        assertInvalidPage("select id from items order by id", next);
+    }
+
+    @Test
+    public void testInvalidPages() throws Exception {
+        String next = (String) mbean.query("jdbc/test", QUERY, null, 2).get("next");
+        String hash = next.substring(0, next.indexOf(':'));
+        assertInvalidPage(QUERY, "2");
+        assertInvalidPage(QUERY, ":2");
+        assertInvalidPage(QUERY, hash + ":two");
+        assertInvalidPage(QUERY, hash + ":-2");
+    }
+
+    private void assertInvalidPage(String query, String page) {
+        try {
+            mbean.query("jdbc/test", query, page, 2);
+            fail("Expected an MBeanException for page " + page);
+        } catch (MBeanException e) {
+            assertEquals("Invalid page " + page + " for query " + query, e.getMessage());
+        }
+    }
+
+}
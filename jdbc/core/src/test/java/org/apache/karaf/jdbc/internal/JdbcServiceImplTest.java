@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.derby.jdbc.EmbeddedDataSource40;
+import org.apache.karaf.jdbc.RowHandler;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+public class JdbcServiceImplTest {
+
+    private static int databases;
+
+    private EmbeddedDataSource40 dataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new EmbeddedDataSource40();
+        dataSource.setDatabaseName("memory:service" + databases++);
+        dataSource.setCreateDatabase("create");
+        createTable(dataSource, 10);
+    }
+
+    @Test
+    public void testQueryAll() throws Exception {
+        JdbcServiceImpl service = createService(dataSource);
+        Rows rows = new Rows(-1);
+        assertFalse(service.query("jdbc/test", "select id, name from items order by id", 0, 0, 0, rows));
+        assertArrayEquals(new String[]{ "ID", "NAME" }, rows.columns);
+        assertEquals(10, rows.values.size());
+        assertArrayEquals(new String[]{ "0", "item0" }, rows.values.get(0));
+        assertArrayEquals(new String[]{ "9", "item9" }, rows.values.get(9));
+    }
+
+    @Test
+    public void testQueryOffsetAndLimit() throws Exception {
+        JdbcServiceImpl service = createService(dataSource);
+        Rows rows = new Rows(-1);
+        assertTrue(service.query("jdbc/test", "select id from items order by id", 3, 4, 2, rows));
+        assertEquals(4, rows.values.size());
+        assertEquals("3", rows.values.get(0)[0]);
+        assertEquals("6", rows.values.get(3)[0]);
+
+        rows = new Rows(-1);
+        assertFalse(service.query("jdbc/test", "select id from items order by id", 6, 4, 2, rows));
+        assertEquals(4, rows.values.size());
+        assertEquals("9", rows.values.get(3)[0]);
+
+        rows = new Rows(-1);
+        assertFalse(service.query("jdbc/test", "select id from items order by id", 20, 4, 2, rows));
+        assertEquals(0, rows.values.size());
+    }
+
+    @Test
+    public void testQueryMaxRows() throws Exception {
+        List<String> calls = new ArrayList<String>();
+        JdbcServiceImpl service = createService(record(dataSource, calls));
+        assertTrue(service.query("jdbc/test", "select id from items order by id", 2, 3, 0, new Rows(-1)));
+        assertTrue(calls.contains("setMaxRows(6)"));
+
+        calls.clear();
+        assertFalse(service.query("jdbc/test", "select id from items order by id", 2, Integer.MAX_VALUE, 0, new Rows(-1)));
+        assertFalse(calls.toString().contains("setMaxRows"));
+    }
+
+    @Test
+    public void testQueryStopped() throws Exception {
+        JdbcServiceImpl service = createService(dataSource);
+        Rows rows = new Rows(2);
+        assertTrue(service.query("jdbc/test", "select id from items order by id", 0, 0, 0, rows));
+        assertEquals(2, rows.values.size());
+
+        rows = new Rows(10);
+        assertFalse(service.query("jdbc/test", "select id from items order by id", 0, 0, 0, rows));
+        assertEquals(10, rows.values.size());
+    }
+
+    @Test
+    public void testQueryFetchSizeRestoresAutoCommit() throws Exception {
+        List<String> calls = new ArrayList<String>();
+        JdbcServiceImpl service = createService(record(dataSource, calls));
+        service.query("jdbc/test", "select id from items order by id", 0, 5, 5, new Rows(-1));
+        assertTrue(calls.contains("setFetchSize(5)"));
+        int disabled = calls.indexOf("setAutoCommit(false)");
+        int rollback = calls.indexOf("rollback()");
+        int restored = calls.indexOf("setAutoCommit(true)");
+        assertTrue(disabled >= 0);
+        assertTrue(disabled < calls.indexOf("executeQuery(select id from items order by id)"));
+        assertTrue(rollback > disabled);
+        assertTrue(restored > rollback);
+        assertTrue(restored < calls.lastIndexOf("close()"));
+    }
+
+    @Test
+    public void testQueryFailureRestoresAutoCommit() throws Exception {
+        List<String> calls = new ArrayList<String>();
+        JdbcServiceImpl service = createService(record(dataSource, calls));
+        try {
+            service.query("jdbc/test", "select id from missing", 0, 5, 5, new Rows(-1));
+            fail("Expected a SQLException");
+        } catch (java.sql.SQLException e) {
+            // expected
+        }
+        assertTrue(calls.contains("rollback()"));
+        assertTrue(calls.contains("setAutoCommit(true)"));
+    }
+
+    @Test
+    public void testQueryWithoutFetchSizeKeepsAutoCommit() throws Exception {
+        List<String> calls = new ArrayList<String>();
+        JdbcServiceImpl service = createService(record(dataSource, calls));
+        service.query("jdbc/test", "select id from items order by id", 0, 5, 0, new Rows(-1));
+        assertFalse(calls.contains("setAutoCommit(false)"));
+        assertFalse(calls.contains("rollback()"));
+    }
+
+    @Test
+    public void testQueryNegativeOffset() throws Exception {
+        JdbcServiceImpl service = new JdbcServiceImpl();
+        try {
+            service.query("jdbc/test", "select id from items", -1, 5, 0, new Rows(-1));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid offset -1", e.getMessage());
+        }
+    }
+
+    static void createTable(DataSource dataSource, int rows) throws Exception {
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("create table items (id int primary key, name varchar(20))");
+            for (int i = 0; i < rows; i++) {
+                statement.execute("insert into items values (" + i + ", 'item" + i + "')");
+            }
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Create a service looking up the given datasource as "jdbc/test".
+     */
+    static JdbcServiceImpl createService(DataSource dataSource) throws Exception {
+        ServiceReference reference = createMock(ServiceReference.class);
+        BundleContext bundleContext = createMock(BundleContext.class);
+        expect(bundleContext.getServiceReferences(EasyMock.eq(DataSource.class.getName()), EasyMock.contains("jdbc/test")))
+                .andReturn(new ServiceReference[]{ reference }).anyTimes();
+        expect(bundleContext.getService(reference)).andReturn(dataSource).anyTimes();
+        expect(bundleContext.ungetService(reference)).andReturn(true).anyTimes();
+        replay(reference, bundleContext);
+        JdbcServiceImpl service = new JdbcServiceImpl();
+        service.setBundleContext(bundleContext);
+        return service;
+    }
+
+    /**
+     * Wrap a datasource to record the calls made on its connections and statements.
+     */
+    private static DataSource record(final DataSource dataSource, final List<String> calls) {
+        return (DataSource) Proxy.newProxyInstance(JdbcServiceImplTest.class.getClassLoader(), new Class[]{ DataSource.class },
+                new Recorder(dataSource, calls));
+    }
+
+    private static class Recorder implements InvocationHandler {
+
+        private final Object target;
+        private final List<String> calls;
+
+        Recorder(Object target, List<String> calls) {
+            this.target = target;
+            this.calls = calls;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            StringBuilder call = new StringBuilder(method.getName()).append('(');
+            for (int i = 0; args != null && i < args.length; i++) {
+                call.append(i > 0 ? ", " : "").append(args[i]);
+            }
+            calls.add(call.append(')').toString());
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            Class<?> type = method.getReturnType();
+            if (result != null && (type == Connection.class || type == Statement.class)) {
+                return Proxy.newProxyInstance(JdbcServiceImplTest.class.getClassLoader(), new Class[]{ type },
+                        new Recorder(result, calls));
+            }
+            return result;
+        }
+    }
+
+    private static class Rows implements RowHandler {
+
+        private final int max;
+        private String[] columns;
+        private final List<String[]> values = new ArrayList<String[]>();
+
+        Rows(int max) {
+            this.max = max;
+        }
+
+        public void columns(String[] columns) {
+            this.columns = columns;
+        }
+
+        public boolean row(String[] values) {
+            this.values.add(values);
+            return max < 0 || this.values.size() < max;
+        }
+    }
+
+}
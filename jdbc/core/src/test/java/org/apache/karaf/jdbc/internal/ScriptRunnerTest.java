@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.karaf.jdbc.ScriptResult;
+import org.junit.Test;
+
+public class ScriptRunnerTest {
+
+    @Test
+    public void testBatches() throws SQLException {
+        Statement statement = createMock(Statement.class);
+        statement.addBatch("insert 1");
+        statement.addBatch("insert 2");
+        expect(statement.executeBatch()).andReturn(new int[] { 1, 1 });
+        statement.addBatch("insert 3");
+        expect(statement.executeBatch()).andReturn(new int[] { 2 });
+        // queries are not batched
+        expect(statement.execute("select 1")).andReturn(true);
+        statement.addBatch("update 4");
+        expect(statement.executeBatch()).andReturn(new int[] { 0 });
+        statement.close();
+
+        List<ScriptResult> results = run(statement, 2, "insert 1", "insert 2", "insert 3", "select 1", "update 4");
+
+        assertEquals(5, results.size());
+        assertResult(results.get(0), 1, "insert 1", 1, 1);
+        assertResult(results.get(1), 2, "insert 2", 1, 1);
+        assertResult(results.get(2), 3, "insert 3", 2, 2);
+        assertResult(results.get(3), 4, "select 1", 3, -1);
+        assertResult(results.get(4), 5, "update 4", 4, 0);
+        for (ScriptResult result : results) {
+            assertNull(result.getError());
+        }
+        verify(statement);
+    }
+
+    @Test
+    public void testWithoutBatches() throws SQLException {
+        Statement statement = createMock(Statement.class);
+        expect(statement.execute("insert 1")).andReturn(false);
+        expect(statement.getUpdateCount()).andReturn(3);
+        expect(statement.execute("insert 2")).andThrow(new SQLException("duplicate key"));
+        statement.close();
+
+        List<ScriptResult> results = run(statement, 1, "insert 1", "insert 2", "insert 3");
+
+        assertEquals(2, results.size());
+        assertResult(results.get(0), 1, "insert 1", 1, 3);
+        assertResult(results.get(1), 2, "insert 2", 2, -1);
+        assertEquals("duplicate key", results.get(1).getError());
+        verify(statement);
+    }
+
+    @Test
+    public void testBatchFailureStoppingAtFailedStatement() throws SQLException {
+        // the driver stops at the failing statement and returns the counts of the previous ones
+        Statement statement = createMock(Statement.class);
+        statement.addBatch("insert 1");
+        statement.addBatch("insert 2");
+        statement.addBatch("insert 3");
+        expect(statement.executeBatch()).andThrow(new BatchUpdateException("duplicate key", new int[] { 1 }));
+        statement.clearBatch();
+        statement.close();
+
+        List<ScriptResult> results = run(statement, 10, "insert 1", "insert 2", "insert 3", "select 1");
+
+        assertEquals(2, results.size());
+        assertResult(results.get(0), 1, "insert 1", 1, 1);
+        assertNull(results.get(0).getError());
+        assertResult(results.get(1), 2, "insert 2", 1, -1);
+        assertEquals("duplicate key", results.get(1).getError());
+        verify(statement);
+    }
+
+    @Test
+    public void testBatchFailureContinuingAfterFailedStatement() throws SQLException {
+        // the driver executes all the statements and marks the failing one
+        Statement statement = createMock(Statement.class);
+        statement.addBatch("insert 1");
+        statement.addBatch("insert 2");
+        statement.addBatch("insert 3");
+        expect(statement.executeBatch()).andThrow(new BatchUpdateException("duplicate key",
+                new int[] { 1, Statement.EXECUTE_FAILED, 1 }));
+        statement.clearBatch();
+        statement.close();
+
+        List<ScriptResult> results = run(statement, 10, "insert 1", "insert 2", "insert 3", "select 1");
+
+        // the script stops at the first failure, the transaction being rolled back by the caller
+        assertEquals(2, results.size());
+        assertResult(results.get(0), 1, "insert 1", 1, 1);
+        assertNull(results.get(0).getError());
+        assertResult(results.get(1), 2, "insert 2", 1, -1);
+        assertEquals("duplicate key", results.get(1).getError());
+        verify(statement);
+    }
+
+    @Test
+    public void testBatchFailureWithoutUpdateCounts() throws SQLException {
+        Statement statement = createMock(Statement.class);
+        statement.addBatch("insert 1");
+        statement.addBatch("insert 2");
+        expect(statement.executeBatch()).andThrow(new SQLException("connection lost"));
+        statement.clearBatch();
+        statement.close();
+
+        List<ScriptResult> results = run(statement, 10, "insert 1", "insert 2");
+
+        // the failing statement is unknown, the batch is reported on its first one
+        assertEquals(1, results.size());
+        assertResult(results.get(0), 1, "insert 1", 1, -1);
+        assertEquals("connection lost", results.get(0).getError());
+        verify(statement);
+    }
+
+    private static List<ScriptResult> run(Statement statement, int batchSize, String... statements) throws SQLException {
+        Connection connection = createMock(Connection.class);
+        expect(connection.createStatement()).andReturn(statement);
+        replay(connection, statement);
+        List<SqlScript.Entry> entries = new ArrayList<SqlScript.Entry>();
+        for (int i = 0; i < statements.length; i++) {
+            entries.add(new SqlScript.Entry(i + 1, statements[i]));
+        }
+        return new ScriptRunner(connection, batchSize).run(entries);
+    }
+
+    private static void assertResult(ScriptResult result, int line, String sql, int batch, int updateCount) {
+        assertEquals(line, result.getLine());
+        assertEquals(sql, result.getStatement());
+        assertEquals(batch, result.getBatch());
+        assertEquals(updateCount, result.getUpdateCount());
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jdbc.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SqlScriptTest {
+
+    @Test
+    public void testStatements() throws IOException {
+        List<SqlScript.Entry> entries = parse("create table t (a int);\n"
+                + "insert into t values (1);\n"
+                + "\n"
+                + "  select * from t;\n");
+        assertEquals(3, entries.size());
+        assertEntry(entries.get(0), 1, "create table t (a int)");
+        assertEntry(entries.get(1), 2, "insert into t values (1)");
+        assertEntry(entries.get(2), 4, "select * from t");
+    }
+
+    @Test
+    public void testMissingTrailingSemicolon() throws IOException {
+        List<SqlScript.Entry> entries = parse("insert into t values (1);\ninsert into t values (2)\n");
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(1), 2, "insert into t values (2)");
+
+        entries = parse("select 1");
+        assertEquals(1, entries.size());
+        assertEntry(entries.get(0), 1, "select 1");
+    }
+
+    @Test
+    public void testEmptyStatements() throws IOException {
+        assertEquals(0, parse("").size());
+        assertEquals(0, parse(" ;\n;  \n").size());
+        assertEquals(0, parse("-- only a comment").size());
+        assertEquals(1, parse(";;select 1;;").size());
+    }
+
+    @Test
+    public void testQuotes() throws IOException {
+        List<SqlScript.Entry> entries = parse("insert into t values ('a;b', \"c;d\");select 1;");
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(0), 1, "insert into t values ('a;b', \"c;d\")");
+
+        // comments are kept in quotes
+        entries = parse("insert into t values ('-- not a comment /* either */');");
+        assertEntry(entries.get(0), 1, "insert into t values ('-- not a comment /* either */')");
+    }
+
+    @Test
+    public void testDoubledQuotes() throws IOException {
+        List<SqlScript.Entry> entries = parse("insert into t values ('it''s; fine');\n"
+                + "insert into \"my \"\"table\"\";\" values ('');\n"
+                + "select 1;");
+        assertEquals(3, entries.size());
+        assertEntry(entries.get(0), 1, "insert into t values ('it''s; fine')");
+        assertEntry(entries.get(1), 2, "insert into \"my \"\"table\"\";\" values ('')");
+        assertEntry(entries.get(2), 3, "select 1");
+    }
+
+    @Test
+    public void testLineComments() throws IOException {
+        List<SqlScript.Entry> entries = parse("-- header; with a semicolon\n"
+                + "insert into t -- trailing; comment\n"
+                + "values (1); -- after\n"
+                + "select 2 - 1;\n");
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(0), 2, "insert into t \nvalues (1)");
+        assertEntry(entries.get(1), 4, "select 2 - 1");
+    }
+
+    @Test
+    public void testBlockComments() throws IOException {
+        List<SqlScript.Entry> entries = parse("/* header;\n"
+                + " spanning lines */\n"
+                + "insert into t/* inline; */values (1);\n"
+                + "select /**/ 2 / 1;\n"
+                + "/* unterminated");
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(0), 3, "insert into t values (1)");
+        assertEntry(entries.get(1), 4, "select   2 / 1");
+    }
+
+    @Test
+    public void testLineNumbers() throws IOException {
+        List<SqlScript.Entry> entries = parse("\n\ninsert into t\nvalues ('multi\nline');\r\n"
+                + "/* one\ntwo */ select 1;\n"
+                + "-- comment\n"
+                + "\n"
+                + "select 2;");
+        assertEquals(3, entries.size());
+        assertEquals(3, entries.get(0).line);
+        assertEquals(7, entries.get(1).line);
+        assertEquals(10, entries.get(2).line);
+    }
+
+    private static List<SqlScript.Entry> parse(String script) throws IOException {
+        return SqlScript.parse(new StringReader(script));
+    }
+
+    private static void assertEntry(SqlScript.Entry entry, int line, String sql) {
+        assertEquals(sql, entry.sql);
+        assertEquals(line, entry.line);
+    }
+
+}
@@ -17,9 +17,13 @@
 package org.apache.karaf.kar.internal;
 
 import java.io.File;
+import java.io.InputStream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,10 +40,14 @@ class FeatureDetector {
     private static final Logger LOGGER = LoggerFactory.getLogger(FeatureDetector.class);
     
     private DocumentBuilderFactory dbf;
+    private XMLInputFactory xif;
 
     FeatureDetector() {
         dbf = DocumentBuilderFactory.newInstance();
         dbf.setNamespaceAware(true);
+        xif = XMLInputFactory.newInstance();
+        xif.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xif.setProperty(XMLInputFactory.SUPPORT_DTD, false);
     }
     /**
      * Check if a file is a features XML.
@@ -51,11 +59,7 @@ class FeatureDetector {
         try {
             if (artifact.isFile() && artifact.getName().endsWith(".xml")) {
                 Document doc = parse(artifact);
-                String name = doc.getDocumentElement().getLocalName();
-                String uri  = doc.getDocumentElement().getNamespaceURI();
-                if ("features".equals(name) && (uri == null || "".equals(uri) || uri.startsWith("http://karaf.apache.org/xmlns/features/v"))) {
-                    return true;
-                }
+                return isFeaturesElement(doc.getDocumentElement().getLocalName(), doc.getDocumentElement().getNamespaceURI());
             }
         } catch (Exception e) {
             LOGGER.debug("File '{}' is not a features file.", artifact.getName(), e);
@@ -63,6 +67,42 @@ class FeatureDetector {
         return false;
     }
     
+    /**
+     * Check if a stream contains a features XML.
+     * Only the beginning of the document is read, up to its root element.
+     *
+     * @param is the stream to check, which is not closed.
+     * @return true if the stream contains a features XML, false else.
+     */
+    boolean isFeaturesRepository(InputStream is) {
+        XMLStreamReader reader = null;
+        try {
+            synchronized (xif) {
+                reader = xif.createXMLStreamReader(is);
+            }
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return isFeaturesElement(reader.getLocalName(), reader.getNamespaceURI());
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Stream is not a features file.", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Exception e) {
+                    // ignore
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFeaturesElement(String name, String uri) {
+        return "features".equals(name) && (uri == null || "".equals(uri) || uri.startsWith("http://karaf.apache.org/xmlns/features/v"));
+    }
+
     /**
      * Parse a features XML.
      *
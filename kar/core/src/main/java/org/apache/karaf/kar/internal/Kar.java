@@ -16,6 +16,7 @@
  */
 package org.apache.karaf.kar.internal;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -23,9 +24,20 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
@@ -59,7 +71,13 @@ public class Kar {
     public static final Logger LOGGER = LoggerFactory.getLogger(KarServiceImpl.class);
     public static final String MANIFEST_ATTR_KARAF_FEATURE_START = "Karaf-Feature-Start";
     public static final String MANIFEST_ATTR_KARAF_FEATURE_REPOS = "Karaf-Feature-Repos";
+    /**
+     * Amount of data read from XML entries to detect features repositories.
+     */
+    private static final int SNIFF_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
     private final URI karUri;
+    private int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
     private boolean shouldInstallFeatures;
     private List<URI> featureRepos;
 
@@ -75,14 +93,10 @@ public class Kar {
      * @param resourceDir directory to write the resource contents of the kar to
      */
     public void extract(File repoDir, File resourceDir) {
-        InputStream is = null;
-        JarInputStream zipIs = null;
-        FeatureDetector featureDetector = new FeatureDetector();
         this.featureRepos = new ArrayList<URI>();
         this.shouldInstallFeatures = true;
 
         try {
-            is = karUri.toURL().openStream();
             repoDir.mkdirs();
 
             if (!repoDir.isDirectory()) {
@@ -90,71 +104,222 @@ public class Kar {
             }
 
             LOGGER.debug("Uncompress the KAR file {} into directory {}", karUri, repoDir);
-            zipIs = new JarInputStream(is);
-            boolean scanForRepos = true;
-
-            Manifest manifest = zipIs.getManifest();
-            if (manifest != null) {
-                Attributes attr = manifest.getMainAttributes();
-                String featureStartSt = (String)attr
-                    .get(new Attributes.Name(MANIFEST_ATTR_KARAF_FEATURE_START));
-                if ("false".equals(featureStartSt)) {
-                    shouldInstallFeatures = false;
+            File file = getKarFile();
+            if (file != null) {
+                extractFile(file, repoDir, resourceDir);
+            } else {
+                extractStream(repoDir, resourceDir);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error extracting kar file " + karUri + " into dir " + repoDir + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Set the number of threads used to extract the entries of a local KAR file.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return the KAR as a local file, or <code>null</code> if it is not a local file
+     */
+    private File getKarFile() {
+        if (!"file".equals(karUri.getScheme())) {
+            return null;
+        }
+        try {
+            File file = new File(karUri);
+            return file.isFile() ? file : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Extract a local KAR file, using random access to extract its entries in parallel.
+     */
+    private void extractFile(File file, File repoDir, File resourceDir) throws Exception {
+        final JarFile jar = new JarFile(file);
+        ExecutorService executor = null;
+        try {
+            final boolean scanForRepos = readManifest(jar.getManifest());
+            final FeatureDetector featureDetector = new FeatureDetector();
+            List<Callable<URI>> tasks = new ArrayList<Callable<URI>>();
+            for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements();) {
+                final JarEntry entry = e.nextElement();
+                final File destFile = getDestination(entry.getName(), repoDir, resourceDir);
+                if (destFile == null) {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    LOGGER.debug("Creating directory {}", destFile.getName());
+                    destFile.mkdirs();
+                    continue;
+                }
+                final boolean detect = scanForRepos && entry.getName().startsWith("repository");
+                tasks.add(new Callable<URI>() {
+                    public URI call() throws Exception {
+                        InputStream is = jar.getInputStream(entry);
+                        try {
+                            return extract(is, destFile, detect ? featureDetector : null) ? destFile.toURI() : null;
+                        } finally {
+                            is.close();
+                        }
+                    }
+                });
+            }
+            if (threads == 1 || tasks.size() < 2) {
+                for (Callable<URI> task : tasks) {
+                    addFeatureRepo(task.call());
                 }
-                String featureReposAttr = (String)attr
-                    .get(new Attributes.Name(MANIFEST_ATTR_KARAF_FEATURE_REPOS));
-                if (featureReposAttr != null) {
-                    featureRepos.add(new URI(featureReposAttr));
-                    scanForRepos = false;
+                return;
+            }
+            executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "KAR extractor " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            // the results are collected in the entries order, so that repositories are added in the same order
+            for (Future<URI> future : executor.invokeAll(tasks)) {
+                try {
+                    addFeatureRepo(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
                 }
             }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            jar.close();
+        }
+    }
+
+    /**
+     * Extract a remote KAR, reading it sequentially.
+     */
+    private void extractStream(File repoDir, File resourceDir) throws Exception {
+        InputStream is = null;
+        JarInputStream zipIs = null;
+        try {
+            is = karUri.toURL().openStream();
+            zipIs = new JarInputStream(is);
+            boolean scanForRepos = readManifest(zipIs.getManifest());
+            FeatureDetector featureDetector = new FeatureDetector();
 
             ZipEntry entry = zipIs.getNextEntry();
             while (entry != null) {
-                if (entry.getName().startsWith("repository")) {
-                    String path = entry.getName().substring("repository/".length());
-                    File destFile = new File(repoDir, path);
-                    extract(zipIs, entry, destFile);
-                    if (scanForRepos && featureDetector.isFeaturesRepository(destFile)) {
-                        featureRepos.add(destFile.toURI());
+                File destFile = getDestination(entry.getName(), repoDir, resourceDir);
+                if (destFile != null) {
+                    if (entry.isDirectory()) {
+                        LOGGER.debug("Creating directory {}", destFile.getName());
+                        destFile.mkdirs();
+                    } else {
+                        boolean detect = scanForRepos && entry.getName().startsWith("repository");
+                        if (extract(zipIs, destFile, detect ? featureDetector : null)) {
+                            addFeatureRepo(destFile.toURI());
+                        }
                     }
                 }
-
-                if (entry.getName().startsWith("resource")) {
-                    String path = entry.getName().substring("resource/".length());
-                    File destFile = new File(resourceDir, path);
-                    extract(zipIs, entry, destFile);
-                }
                 entry = zipIs.getNextEntry();
             }
-        } catch (Exception e) {
-            throw new RuntimeException("Error extracting kar file " + karUri + " into dir " + repoDir + ": " + e.getMessage(), e);
         } finally {
             closeStream(zipIs);
             closeStream(is);
         }
     }
 
+    /**
+     * Read the KAR manifest.
+     *
+     * @return true if the repository entries must be scanned for features repositories
+     */
+    private boolean readManifest(Manifest manifest) throws URISyntaxException {
+        if (manifest == null) {
+            return true;
+        }
+        Attributes attr = manifest.getMainAttributes();
+        String featureStartSt = (String)attr
+            .get(new Attributes.Name(MANIFEST_ATTR_KARAF_FEATURE_START));
+        if ("false".equals(featureStartSt)) {
+            shouldInstallFeatures = false;
+        }
+        String featureReposAttr = (String)attr
+            .get(new Attributes.Name(MANIFEST_ATTR_KARAF_FEATURE_REPOS));
+        if (featureReposAttr != null) {
+            featureRepos.add(new URI(featureReposAttr));
+            return false;
+        }
+        return true;
+    }
+
+    private static File getDestination(String name, File repoDir, File resourceDir) {
+        if (name.startsWith("repository")) {
+            return new File(repoDir, name.substring("repository/".length()));
+        }
+        if (name.startsWith("resource")) {
+            return new File(resourceDir, name.substring("resource/".length()));
+        }
+        return null;
+    }
+
+    private void addFeatureRepo(URI uri) {
+        if (uri != null) {
+            featureRepos.add(uri);
+        }
+    }
+
     /**
      * Extract an entry from a KAR file
-     * 
-     * @param is
-     * @param zipEntry
-     * @param dest
-     * @return
+     *
+     * @param is the entry content, which is not closed
+     * @param dest the file to write
+     * @param featureDetector if not null, used to check whether the entry is a features repository
+     * @return true if the entry is a features repository
      * @throws Exception
      */
-    private static File extract(InputStream is, ZipEntry zipEntry, File dest) throws Exception {
-        if (zipEntry.isDirectory()) {
-            LOGGER.debug("Creating directory {}", dest.getName());
-            dest.mkdirs();
-        } else {
-            dest.getParentFile().mkdirs();
-            FileOutputStream out = new FileOutputStream(dest);
+    private static boolean extract(InputStream is, File dest, FeatureDetector featureDetector) throws Exception {
+        dest.getParentFile().mkdirs();
+        boolean features = false;
+        byte[] header = null;
+        if (featureDetector != null && dest.getName().endsWith(".xml")) {
+            // detect features repositories from the beginning of the content instead of parsing the written file
+            header = readHeader(is, SNIFF_SIZE);
+            features = featureDetector.isFeaturesRepository(new ByteArrayInputStream(header));
+        }
+        FileOutputStream out = new FileOutputStream(dest);
+        try {
+            if (header != null) {
+                out.write(header);
+            }
             copyStream(is, out);
+        } finally {
             out.close();
         }
-        return dest;
+        return features;
+    }
+
+    private static byte[] readHeader(InputStream is, int size) throws IOException {
+        byte[] buffer = new byte[size];
+        int length = 0;
+        int n;
+        while (length < size && (n = is.read(buffer, length, size - length)) != -1) {
+            length += n;
+        }
+        if (length == size) {
+            return buffer;
+        }
+        byte[] header = new byte[length];
+        System.arraycopy(buffer, 0, header, 0, length);
+        return header;
     }
 
     private static void closeStream(InputStream is) {
@@ -168,7 +333,7 @@ public class Kar {
     }
 
     static long copyStream(InputStream input, OutputStream output) throws IOException {
-        byte[] buffer = new byte[10000];
+        byte[] buffer = new byte[BUFFER_SIZE];
         long count = 0;
         int n = 0;
         while (-1 != (n = input.read(buffer))) {
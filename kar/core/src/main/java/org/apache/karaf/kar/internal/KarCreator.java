@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.kar.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.ops4j.pax.url.mvn.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a KAR file from a list of artifact locations.
+ * <p>
+ * Artifacts are fetched concurrently into temporary files next to the KAR, a bounded number of
+ * them ahead of the one being written, while the KAR is written sequentially in the order of the locations.
+ * Fetching an artifact computes its checksums, so that artifacts which are already compressed
+ * are stored without being compressed again, and that locations resolving to the same
+ * repository path are only written once.
+ */
+class KarCreator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KarCreator.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PROGRESS_STEPS = 10;
+    private static final long SHUTDOWN_TIMEOUT = 10000;
+
+    private static class Artifact {
+        final URI location;
+        String path;
+        File file;
+        long size;
+        long crc;
+        String digest;
+        Exception error;
+
+        Artifact(URI location) {
+            this.location = location;
+        }
+    }
+
+    private final int threads;
+    private final PrintStream console;
+
+    KarCreator(int threads, PrintStream console) {
+        this.threads = Math.max(1, threads);
+        this.console = console;
+    }
+
+    /**
+     * Create the KAR.
+     *
+     * @param karFile the KAR file to write
+     * @param manifest the manifest of the KAR
+     * @param locations the locations of the artifacts to add to the repository of the KAR
+     */
+    void create(File karFile, Manifest manifest, List<URI> locations) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "KAR creator " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        LinkedList<Future<Artifact>> pending = new LinkedList<Future<Artifact>>();
+        JarOutputStream jos = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(karFile), BUFFER_SIZE), manifest);
+        try {
+            Map<String, String> digests = new HashMap<String, String>();
+            int next = 0;
+            int written = 0;
+            long bytes = 0;
+            int step = Math.max(1, locations.size() / PROGRESS_STEPS);
+            while (next < locations.size() || !pending.isEmpty()) {
+                // keep fetching ahead while the previous artifacts are written
+                while (next < locations.size() && pending.size() < threads * 2) {
+                    pending.add(executor.submit(fetch(locations.get(next++), karFile.getParentFile())));
+                }
+                Artifact artifact = get(pending.removeFirst());
+                try {
+                    if (artifact.error != null) {
+                        LOGGER.error("Error adding " + artifact.location, artifact.error);
+                        continue;
+                    }
+                    String digest = digests.get(artifact.path);
+                    if (digest != null) {
+                        if (!digest.equals(artifact.digest)) {
+                            LOGGER.warn("Ignoring {} as a different artifact has already been added to {}", artifact.location, artifact.path);
+                        }
+                        continue;
+                    }
+                    digests.put(artifact.path, artifact.digest);
+                    write(jos, artifact);
+                    bytes += artifact.size;
+                } finally {
+                    if (artifact.file != null) {
+                        artifact.file.delete();
+                    }
+                }
+                written++;
+                if (console != null && written % step == 0) {
+                    console.println("Added " + written + " artifacts (" + bytes / 1024 + " kB)");
+                }
+            }
+            if (console != null && written % step != 0) {
+                console.println("Added " + written + " artifacts (" + bytes / 1024 + " kB)");
+            }
+        } finally {
+            for (Future<Artifact> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+            try {
+                discard(executor, pending);
+            } finally {
+                jos.close();
+            }
+        }
+    }
+
+    /**
+     * Delete the temporary files of the artifacts fetched ahead but not written, after a failure.
+     */
+    private static void discard(ExecutorService executor, List<Future<Artifact>> pending) {
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Artifacts still being fetched after {} ms, their temporary files may be left", SHUTDOWN_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Future<Artifact> future : pending) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    File file = future.get().file;
+                    if (file != null) {
+                        file.delete();
+                    }
+                } catch (Exception e) {
+                    // the fetch task has failed, it has already deleted its file
+                }
+            }
+        }
+    }
+
+    private Artifact get(Future<Artifact> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw (IOException) new IOException("KAR creation interrupted").initCause(e);
+        } catch (ExecutionException e) {
+            // fetch tasks report their own failures
+            throw (IOException) new IOException(e.getCause().getMessage()).initCause(e.getCause());
+        }
+    }
+
+    private Callable<Artifact> fetch(final URI location, final File directory) {
+        return new Callable<Artifact>() {
+            public Artifact call() {
+                Artifact artifact = new Artifact(location);
+                try {
+                    String noPrefixLocation = location.toString().substring(location.toString().lastIndexOf(":") + 1);
+                    Parser parser = new Parser(noPrefixLocation);
+                    artifact.path = "repository/" + parser.getArtifactPath();
+                    artifact.file = File.createTempFile("kar", ".tmp", directory);
+                    download(artifact);
+                    if (Thread.currentThread().isInterrupted()) {
+                        // cancelled while downloading, nobody will get the file
+                        throw new InterruptedException();
+                    }
+                } catch (Exception e) {
+                    artifact.error = e;
+                    if (artifact.file != null) {
+                        artifact.file.delete();
+                        artifact.file = null;
+                    }
+                }
+                return artifact;
+            }
+        };
+    }
+
+    private static void download(Artifact artifact) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        CRC32 crc = new CRC32();
+        InputStream is = artifact.location.toURL().openStream();
+        try {
+            OutputStream os = new FileOutputStream(artifact.file);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = is.read(buffer)) != -1) {
+                    os.write(buffer, 0, n);
+                    md.update(buffer, 0, n);
+                    crc.update(buffer, 0, n);
+                    artifact.size += n;
+                }
+            } finally {
+                os.close();
+            }
+        } finally {
+            is.close();
+        }
+        artifact.crc = crc.getValue();
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        }
+        artifact.digest = sb.toString();
+    }
+
+    private static void write(JarOutputStream jos, Artifact artifact) throws IOException {
+        JarEntry entry = new JarEntry(artifact.path);
+        if (isCompressed(artifact.path)) {
+            // compressing a compressed archive again only costs time
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(artifact.size);
+            entry.setCompressedSize(artifact.size);
+            entry.setCrc(artifact.crc);
+        }
+        jos.putNextEntry(entry);
+        InputStream is = new FileInputStream(artifact.file);
+        try {
+            Kar.copyStream(is, jos);
+        } finally {
+            is.close();
+        }
+        jos.closeEntry();
+    }
+
+    private static boolean isCompressed(String path) {
+        String name = path.toLowerCase();
+        return name.endsWith(".jar") || name.endsWith(".war") || name.endsWith(".zip")
+                || name.endsWith(".kar") || name.endsWith(".gz");
+    }
+
+}
@@ -18,7 +18,6 @@
  */
 package org.apache.karaf.kar.internal;
 
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -35,11 +34,10 @@ import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 
 import org.apache.karaf.features.BundleInfo;
@@ -49,7 +47,6 @@ import org.apache.karaf.features.Feature;
 import org.apache.karaf.features.FeaturesService;
 import org.apache.karaf.features.Repository;
 import org.apache.karaf.kar.KarService;
-import org.ops4j.pax.url.mvn.Parser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,6 +62,8 @@ public class KarServiceImpl implements KarService {
     private FeaturesService featuresService;
     
     private boolean noAutoRefreshBundles;
+    private int extractThreads = 4;
+    private int createThreads = 4;
 
     public KarServiceImpl(String karafBase, FeaturesService featuresService) {
         this.base = new File(karafBase);
@@ -87,6 +86,7 @@ public class KarServiceImpl implements KarService {
     @Override
     public void install(URI karUri, File repoDir, File resourceDir) throws Exception {
         Kar kar = new Kar(karUri);
+        kar.setThreads(extractThreads);
         kar.extract(repoDir, resourceDir);
         writeToFile(kar.getFeatureRepos(), new File(repoDir, FEATURE_CONFIG_FILE));
         for (URI uri : kar.getFeatureRepos()) {
@@ -228,8 +228,6 @@ public class KarServiceImpl implements KarService {
     
     @Override
     public void create(String repoName, List<String> features, PrintStream console) {
-        FileOutputStream fos = null;
-        JarOutputStream jos = null;
         try {
             Repository repo = featuresService.getRepository(repoName);
             if (repo == null) {
@@ -238,12 +236,10 @@ public class KarServiceImpl implements KarService {
             String karPath = storage + File.separator + repoName + ".kar";
             File karFile = new File(karPath);
             karFile.getParentFile().mkdirs();
-            fos = new FileOutputStream(karFile);
             Manifest manifest = createNonAutoStartManifest(repo.getURI());
-            jos = new JarOutputStream(new BufferedOutputStream(fos, 100000), manifest);
-            
-            Map<URI, Integer> locationMap = new HashMap<URI, Integer>();
-            copyResourceToJar(jos, repo.getURI(), locationMap);
+
+            Set<URI> locations = new LinkedHashSet<URI>();
+            locations.add(repo.getURI());
         
             Map<String, Feature> featureMap = new HashMap<String, Feature>();
             for (Feature feature : repo.getFeatures()) {
@@ -255,16 +251,15 @@ public class KarServiceImpl implements KarService {
             for (Feature feature : featuresToCopy) {
                 if (console != null)
                     console.println("Adding feature " + feature.getName());
-                copyFeatureToJar(jos, feature, locationMap);
+                addFeatureLocations(feature, locations);
             }
 
+            new KarCreator(createThreads, console).create(karFile, manifest, new ArrayList<URI>(locations));
+
             if (console != null)
                 console.println("Kar file created : " + karPath);
         } catch (Exception e) {
             throw new RuntimeException("Error creating kar: " + e.getMessage(), e);
-        } finally {
-            closeStream(jos);
-            closeStream(fos);
         }
         
     }
@@ -316,33 +311,12 @@ public class KarServiceImpl implements KarService {
         }
     }
 
-    private void copyFeatureToJar(JarOutputStream jos, Feature feature, Map<URI, Integer> locationMap)
-        throws URISyntaxException {
+    private void addFeatureLocations(Feature feature, Set<URI> locations) throws URISyntaxException {
         for (BundleInfo bundleInfo : feature.getBundles()) {
-            URI location = new URI(bundleInfo.getLocation());
-            copyResourceToJar(jos, location, locationMap);
+            locations.add(new URI(bundleInfo.getLocation()));
         }
         for (ConfigFileInfo configFileInfo : feature.getConfigurationFiles()) {
-            URI location = new URI(configFileInfo.getLocation());
-            copyResourceToJar(jos, location, locationMap);
-        }
-    }
-
-    private void copyResourceToJar(JarOutputStream jos, URI location, Map<URI, Integer> locationMap) {
-        if (locationMap.containsKey(location)) {
-            return;
-        }
-        try {
-            String noPrefixLocation = location.toString().substring(location.toString().lastIndexOf(":") + 1);
-            Parser parser = new Parser(noPrefixLocation);
-            InputStream is = location.toURL().openStream();
-            String path = "repository/" + parser.getArtifactPath();
-            jos.putNextEntry(new JarEntry(path));
-            Kar.copyStream(is, jos);
-            is.close();
-            locationMap.put(location, 1);
-        } catch (Exception e) {
-            LOGGER.error("Error adding " + location, e);
+            locations.add(new URI(configFileInfo.getLocation()));
         }
     }
 
@@ -379,4 +353,20 @@ public class KarServiceImpl implements KarService {
         this.noAutoRefreshBundles = noAutoRefreshBundles;
     }
 
+    public int getExtractThreads() {
+        return extractThreads;
+    }
+
+    public void setExtractThreads(int extractThreads) {
+        this.extractThreads = extractThreads;
+    }
+
+    public int getCreateThreads() {
+        return createThreads;
+    }
+
+    public void setCreateThreads(int createThreads) {
+        this.createThreads = createThreads;
+    }
+
 }
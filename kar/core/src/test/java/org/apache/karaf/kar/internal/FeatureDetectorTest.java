@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.kar.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class FeatureDetectorTest {
+
+    private final FeatureDetector detector = new FeatureDetector();
+
+    @Test
+    public void testFeaturesRepository() throws Exception {
+        assertTrue(isFeaturesRepository("<features xmlns=\"http://karaf.apache.org/xmlns/features/v1.0.0\"/>"));
+        assertTrue(isFeaturesRepository("<?xml version=\"1.0\"?>\n<!-- comment -->\n"
+                + "<features name=\"test\" xmlns=\"http://karaf.apache.org/xmlns/features/v1.2.0\"><feature name=\"f\"/></features>"));
+        // features without namespace
+        assertTrue(isFeaturesRepository("<features><feature name=\"f\"/></features>"));
+    }
+
+    @Test
+    public void testNotFeaturesRepository() throws Exception {
+        assertFalse(isFeaturesRepository("<blueprint xmlns=\"http://www.osgi.org/xmlns/blueprint/v1.0.0\"/>"));
+        assertFalse(isFeaturesRepository("<features xmlns=\"http://www.example.org/features\"/>"));
+        assertFalse(isFeaturesRepository("not xml"));
+        assertFalse(isFeaturesRepository(""));
+    }
+
+    @Test
+    public void testTruncatedContent() throws Exception {
+        // only the beginning of the document is needed
+        assertTrue(isFeaturesRepository("<features xmlns=\"http://karaf.apache.org/xmlns/features/v1.0.0\"><feature name="));
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        File file = File.createTempFile("features", ".xml");
+        File other = File.createTempFile("features", ".txt");
+        try {
+            write(file, "<features xmlns=\"http://karaf.apache.org/xmlns/features/v1.0.0\"><feature name=\"f\"/></features>");
+            assertTrue(detector.isFeaturesRepository(file));
+            write(other, "<features xmlns=\"http://karaf.apache.org/xmlns/features/v1.0.0\"><feature name=\"f\"/></features>");
+            assertFalse(detector.isFeaturesRepository(other));
+            write(file, "<features>");
+            assertFalse(detector.isFeaturesRepository(file));
+        } finally {
+            file.delete();
+            other.delete();
+        }
+    }
+
+    private boolean isFeaturesRepository(String content) throws IOException {
+        return detector.isFeaturesRepository(new ByteArrayInputStream(content.getBytes("UTF-8")));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+}
@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.kar.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.URLStreamHandlerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class KarTest {
+
+    /**
+     * Contents of the artifacts served by the mvn: test handler.
+     */
+    private static final Map<String, byte[]> ARTIFACTS = new ConcurrentHashMap<String, byte[]>();
+
+    private static final String FEATURES = "mvn:org.foo/bar/1.0/xml/features";
+    private static final String FEATURES_PATH = "org/foo/bar/1.0/bar-1.0-features.xml";
+    private static final String BUNDLE = "mvn:org.foo/bundle/1.0";
+    private static final String BUNDLE_PATH = "org/foo/bundle/1.0/bundle-1.0.jar";
+    private static final String CONFIG = "mvn:org.foo/config/1.0/xml";
+    private static final String CONFIG_PATH = "org/foo/config/1.0/config-1.0.xml";
+
+    private File dir;
+
+    @BeforeClass
+    public static void registerMvnHandler() {
+        try {
+            URL.setURLStreamHandlerFactory(new URLStreamHandlerFactory() {
+                public URLStreamHandler createURLStreamHandler(String protocol) {
+                    return "mvn".equals(protocol) ? new MvnHandler() : null;
+                }
+            });
+        } catch (Error e) {
+            // already registered
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("kar", null);
+        dir.delete();
+        dir.mkdirs();
+        ARTIFACTS.clear();
+        // larger than the amount of data read to detect features repositories
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            padding.append("<!-- padding -->\n");
+        }
+        ARTIFACTS.put(FEATURES, ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<features name=\"bar\" xmlns=\"http://karaf.apache.org/xmlns/features/v1.0.0\">\n"
+                + padding
+                + "  <feature name=\"bar\"><bundle>" + BUNDLE + "</bundle></feature>\n"
+                + "</features>\n").getBytes("UTF-8"));
+        ARTIFACTS.put(BUNDLE, createJar());
+        ARTIFACTS.put(CONFIG, "<config><features/></config>".getBytes("UTF-8"));
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void testCreate() throws Exception {
+        File karFile = new File(dir, "bar.kar");
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        ARTIFACTS.put("mvn:org.foo/bundle/1.0/jar", ARTIFACTS.get(BUNDLE));
+        List<URI> locations = Arrays.asList(URI.create(FEATURES), URI.create(BUNDLE),
+                URI.create("mvn:org.foo/missing/1.0"), URI.create(CONFIG),
+                // resolves to the same repository path as the bundle
+                URI.create("mvn:org.foo/bundle/1.0/jar"));
+        new KarCreator(2, new PrintStream(console)).create(karFile, createManifest(null), locations);
+
+        JarFile jar = new JarFile(karFile);
+        try {
+            assertEquals("false", jar.getManifest().getMainAttributes().getValue(Kar.MANIFEST_ATTR_KARAF_FEATURE_START));
+            List<String> names = new ArrayList<String>();
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                names.add(entry.getName());
+            }
+            // the artifacts are written in the order of the locations, the missing one is skipped
+            assertEquals(Arrays.asList("META-INF/MANIFEST.MF", "repository/" + FEATURES_PATH,
+                    "repository/" + BUNDLE_PATH, "repository/" + CONFIG_PATH), names);
+
+            JarEntry bundle = jar.getJarEntry("repository/" + BUNDLE_PATH);
+            assertEquals(ZipEntry.STORED, bundle.getMethod());
+            assertArrayEquals(ARTIFACTS.get(BUNDLE), read(jar.getInputStream(bundle)));
+            JarEntry features = jar.getJarEntry("repository/" + FEATURES_PATH);
+            assertEquals(ZipEntry.DEFLATED, features.getMethod());
+            assertArrayEquals(ARTIFACTS.get(FEATURES), read(jar.getInputStream(features)));
+            assertArrayEquals(ARTIFACTS.get(CONFIG), read(jar.getInputStream(jar.getJarEntry("repository/" + CONFIG_PATH))));
+        } finally {
+            jar.close();
+        }
+        assertTrue(console.toString().contains("Added 3 artifacts"));
+        // the artifacts are spooled next to the KAR, and deleted once written
+        assertEquals(Arrays.asList("bar.kar"), Arrays.asList(dir.list()));
+    }
+
+    @Test
+    public void testCreateInterrupted() throws Exception {
+        File karFile = new File(dir, "bar.kar");
+        List<URI> locations = new ArrayList<URI>();
+        for (int i = 0; i < 4; i++) {
+            locations.add(URI.create(FEATURES));
+            locations.add(URI.create(BUNDLE));
+            locations.add(URI.create(CONFIG));
+        }
+        Thread.currentThread().interrupt();
+        try {
+            new KarCreator(2, null).create(karFile, createManifest(null), locations);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("KAR creation interrupted", e.getMessage());
+        } finally {
+            Thread.interrupted();
+        }
+        // the artifacts fetched ahead are deleted
+        assertEquals(Arrays.asList("bar.kar"), Arrays.asList(dir.list()));
+    }
+
+    @Test
+    public void testExtractFile() throws Exception {
+        File karFile = createKar();
+        Kar kar = new Kar(karFile.toURI());
+        kar.setThreads(4);
+        assertEquals("bar", kar.getKarName());
+        checkExtract(kar);
+    }
+
+    @Test
+    public void testExtractFileSequentially() throws Exception {
+        Kar kar = new Kar(createKar().toURI());
+        kar.setThreads(1);
+        checkExtract(kar);
+    }
+
+    @Test
+    public void testExtractStream() throws Exception {
+        // not a local file, so the KAR is read sequentially
+        ARTIFACTS.put("mvn:org.foo/bar/1.0/kar", read(new FileInputStream(createKar())));
+        checkExtract(new Kar(URI.create("mvn:org.foo/bar/1.0/kar")));
+    }
+
+    @Test
+    public void testFeatureReposFromManifest() throws Exception {
+        File karFile = new File(dir, "bar.kar");
+        new KarCreator(2, null).create(karFile, createManifest(FEATURES), Arrays.asList(URI.create(FEATURES)));
+
+        Kar kar = new Kar(karFile.toURI());
+        kar.extract(new File(dir, "repository"), new File(dir, "resource"));
+
+        // the repository entries are not scanned when the features repositories are listed
+        assertEquals(Arrays.asList(URI.create(FEATURES)), kar.getFeatureRepos());
+        assertFalse(kar.isShouldInstallFeatures());
+        assertTrue(new File(dir, "repository/" + FEATURES_PATH).isFile());
+    }
+
+    @Test
+    public void testResources() throws Exception {
+        File karFile = new File(dir, "resources.kar");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(karFile));
+        try {
+            zos.putNextEntry(new ZipEntry("resource/etc/"));
+            zos.putNextEntry(new ZipEntry("resource/etc/org.foo.cfg"));
+            zos.write("foo = bar\n".getBytes("UTF-8"));
+            zos.putNextEntry(new ZipEntry("repository/" + FEATURES_PATH));
+            zos.write(ARTIFACTS.get(FEATURES));
+            zos.putNextEntry(new ZipEntry("other/ignored.txt"));
+            zos.write("ignored".getBytes("UTF-8"));
+        } finally {
+            zos.close();
+        }
+
+        File repoDir = new File(dir, "repository");
+        File resourceDir = new File(dir, "resource");
+        Kar kar = new Kar(karFile.toURI());
+        kar.extract(repoDir, resourceDir);
+
+        // without manifest, the features are installed and the repository is scanned
+        assertTrue(kar.isShouldInstallFeatures());
+        assertEquals(Arrays.asList(new File(repoDir, FEATURES_PATH).toURI()), kar.getFeatureRepos());
+        assertEquals("foo = bar\n", new String(read(new FileInputStream(new File(resourceDir, "etc/org.foo.cfg"))), "UTF-8"));
+        assertFalse(new File(repoDir, "other").exists());
+        assertFalse(new File(resourceDir, "other").exists());
+    }
+
+    private void checkExtract(Kar kar) throws Exception {
+        File repoDir = new File(dir, "repository");
+        File resourceDir = new File(dir, "resource");
+        kar.extract(repoDir, resourceDir);
+
+        File features = new File(repoDir, FEATURES_PATH);
+        assertArrayEquals(ARTIFACTS.get(FEATURES), read(new FileInputStream(features)));
+        assertArrayEquals(ARTIFACTS.get(BUNDLE), read(new FileInputStream(new File(repoDir, BUNDLE_PATH))));
+        assertArrayEquals(ARTIFACTS.get(CONFIG), read(new FileInputStream(new File(repoDir, CONFIG_PATH))));
+        // only the features XML is detected as a features repository
+        assertEquals(Arrays.asList(features.toURI()), kar.getFeatureRepos());
+        assertTrue(kar.isShouldInstallFeatures());
+    }
+
+    private File createKar() throws Exception {
+        File karFile = new File(dir, "bar.kar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        new KarCreator(2, null).create(karFile, manifest,
+                Arrays.asList(URI.create(FEATURES), URI.create(BUNDLE), URI.create(CONFIG)));
+        return karFile;
+    }
+
+    private static Manifest createManifest(String featuresRepo) {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue(Kar.MANIFEST_ATTR_KARAF_FEATURE_START, "false");
+        if (featuresRepo != null) {
+            attributes.putValue(Kar.MANIFEST_ATTR_KARAF_FEATURE_REPOS, featuresRepo);
+        }
+        return manifest;
+    }
+
+    private static byte[] createJar() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        JarOutputStream jos = new JarOutputStream(baos);
+        jos.putNextEntry(new JarEntry("org/foo/Foo.class"));
+        for (int i = 0; i < 1000; i++) {
+            jos.write(i);
+        }
+        jos.close();
+        return baos.toByteArray();
+    }
+
+    private static byte[] read(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            Kar.copyStream(is, baos);
+            return baos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Serves the test artifacts, standing for the pax url mvn handler.
+     */
+    private static class MvnHandler extends URLStreamHandler {
+        protected URLConnection openConnection(final URL url) {
+            return new URLConnection(url) {
+                public void connect() {
+                }
+
+                public InputStream getInputStream() throws IOException {
+                    byte[] content = ARTIFACTS.get(url.toString());
+                    if (content == null) {
+                        throw new FileNotFoundException(url.toString());
+                    }
+                    return new ByteArrayInputStream(content);
+                }
+            };
+        }
+    }
+
+}
@@ -16,11 +16,8 @@
  */
 package org.apache.karaf.packages.command;
 
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
-import java.util.TreeMap;
 
 import org.apache.karaf.packages.core.PackageService;
 import org.apache.karaf.packages.core.PackageVersion;
@@ -30,9 +27,6 @@ import org.apache.karaf.shell.console.OsgiCommandSupport;
 import org.apache.karaf.shell.table.Col;
 import org.apache.karaf.shell.table.ShellTable;
 import org.osgi.framework.Bundle;
-import org.osgi.framework.Version;
-import org.osgi.framework.wiring.BundleCapability;
-import org.osgi.framework.wiring.BundleRevision;
 
 @Command(scope = "package", name = "exports", description = "Lists exported packages and the bundles that export them")
 public class Exports extends OsgiCommandSupport {
@@ -77,8 +71,7 @@ public class Exports extends OsgiCommandSupport {
 	}
     
     private void checkDuplicateExports() {
-        Bundle[] bundles = bundleContext.getBundles();
-        SortedMap<String, PackageVersion> packageVersionMap = getDuplicatePackages(bundles);
+        SortedMap<String, PackageVersion> packageVersionMap = packageService.getExports();
         ShellTable table = new ShellTable();
         table.column(new Col("Package Name"));
         table.column(new Col("Version"));
@@ -101,28 +94,4 @@ public class Exports extends OsgiCommandSupport {
         }
 		return st.toString();
 	}
-
-	private SortedMap<String, PackageVersion> getDuplicatePackages(
-			Bundle[] bundles) {
-		SortedMap<String, PackageVersion> packageVersionMap = new TreeMap<String, PackageVersion>();
-        for (Bundle bundle : bundles) {
-            BundleRevision rev = bundle.adapt(BundleRevision.class);
-            if (rev!=null) {
-                List<BundleCapability> caps = rev.getDeclaredCapabilities(BundleRevision.PACKAGE_NAMESPACE);
-                for (BundleCapability cap : caps) {
-                    Map<String, Object> attr = cap.getAttributes();
-                    String packageName = (String)attr.get(BundleRevision.PACKAGE_NAMESPACE);
-                    Version version = (Version)attr.get("version");
-                    String key = packageName + ":" + version.toString();
-                    PackageVersion pVer = packageVersionMap.get(key);
-                    if (pVer == null) {
-                        pVer = new PackageVersion(packageName, version);
-                        packageVersionMap.put(key, pVer);
-                    }
-                    pVer.addBundle(bundle);
-                }
-            }
-        }
-		return packageVersionMap;
-	}
 }
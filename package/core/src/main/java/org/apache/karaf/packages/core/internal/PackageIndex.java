@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.packages.core.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.karaf.packages.core.PackageRequirement;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+
+/**
+ * Index of the packages declared by the installed bundles.
+ * <p>
+ * The package capabilities and requirements of a bundle are read once, when the bundle is
+ * installed or updated, and capabilities are indexed by package name, so that finding the
+ * exporters of a package does not require walking all the bundles. The framework is never
+ * called while holding the lock of the index.
+ */
+class PackageIndex implements SynchronousBundleListener {
+
+    /**
+     * The packages declared by the current revision of a bundle.
+     */
+    static class BundlePackages {
+        final Bundle bundle;
+        final List<BundleCapability> capabilities;
+        final List<BundleRequirement> requirements;
+
+        BundlePackages(Bundle bundle, List<BundleCapability> capabilities, List<BundleRequirement> requirements) {
+            this.bundle = bundle;
+            this.capabilities = capabilities;
+            this.requirements = requirements;
+        }
+    }
+
+    private final BundleContext bundleContext;
+
+    /**
+     * Guarded by this.
+     */
+    private final Map<Long, BundlePackages> bundles = new TreeMap<Long, BundlePackages>();
+
+    /**
+     * Package capabilities by package name, the lists are never modified once in the map.
+     * Guarded by this.
+     */
+    private final Map<String, List<BundleCapability>> capabilities = new HashMap<String, List<BundleCapability>>();
+
+    private boolean started;
+
+    PackageIndex(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
+    void start() {
+        synchronized (this) {
+            if (started) {
+                return;
+            }
+            started = true;
+        }
+        // register first so that no change is missed while the bundles are read
+        bundleContext.addBundleListener(this);
+        for (Bundle bundle : bundleContext.getBundles()) {
+            BundlePackages packages = read(bundle);
+            synchronized (this) {
+                // a bundle event may already have indexed a newer revision
+                if (started && !bundles.containsKey(bundle.getBundleId()) && bundle.getState() != Bundle.UNINSTALLED) {
+                    put(packages);
+                }
+            }
+        }
+    }
+
+    void stop() {
+        bundleContext.removeBundleListener(this);
+        synchronized (this) {
+            started = false;
+            bundles.clear();
+            capabilities.clear();
+        }
+    }
+
+    public void bundleChanged(BundleEvent event) {
+        Bundle bundle = event.getBundle();
+        switch (event.getType()) {
+            case BundleEvent.INSTALLED:
+            case BundleEvent.UPDATED:
+                BundlePackages packages = read(bundle);
+                synchronized (this) {
+                    if (started) {
+                        remove(bundle.getBundleId());
+                        put(packages);
+                    }
+                }
+                break;
+            case BundleEvent.UNINSTALLED:
+                synchronized (this) {
+                    remove(bundle.getBundleId());
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return the packages of all the bundles, ordered by bundle id
+     */
+    synchronized List<BundlePackages> getBundles() {
+        return new ArrayList<BundlePackages>(bundles.values());
+    }
+
+    /**
+     * @return the packages of the given bundle, or <code>null</code> if it is not installed
+     */
+    synchronized BundlePackages getBundle(long bundleId) {
+        return bundles.get(bundleId);
+    }
+
+    /**
+     * @return the capabilities exporting the given package
+     */
+    synchronized List<BundleCapability> getCapabilities(String packageName) {
+        List<BundleCapability> caps = capabilities.get(packageName);
+        return caps != null ? caps : Collections.<BundleCapability>emptyList();
+    }
+
+    /**
+     * Check if a requirement is matched by the capability of an installed bundle.
+     */
+    boolean isResolvable(BundleRequirement req) {
+        String filter = req.getDirectives().get("filter");
+        String packageName = filter != null ? getPackageName(filter) : null;
+        if (packageName != null && packageName.indexOf('*') < 0) {
+            for (BundleCapability cap : getCapabilities(packageName)) {
+                if (req.matches(cap)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        // dynamic imports may use wildcards, check all the packages
+        for (BundlePackages packages : getBundles()) {
+            for (BundleCapability cap : packages.capabilities) {
+                if (req.matches(cap)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static String getPackageName(BundleCapability cap) {
+        return (String) cap.getAttributes().get(BundleRevision.PACKAGE_NAMESPACE);
+    }
+
+    static String getPackageName(String filter) {
+        try {
+            return PackageRequirement.getPackageName(filter);
+        } catch (IllegalStateException e) {
+            // not a simple package filter
+            return null;
+        }
+    }
+
+    private BundlePackages read(Bundle bundle) {
+        BundleRevision rev = bundle.adapt(BundleRevision.class);
+        if (rev == null) {
+            List<BundleCapability> caps = Collections.emptyList();
+            List<BundleRequirement> reqs = Collections.emptyList();
+            return new BundlePackages(bundle, caps, reqs);
+        }
+        return new BundlePackages(bundle,
+                rev.getDeclaredCapabilities(BundleRevision.PACKAGE_NAMESPACE),
+                rev.getDeclaredRequirements(BundleRevision.PACKAGE_NAMESPACE));
+    }
+
+    private void put(BundlePackages packages) {
+        bundles.put(packages.bundle.getBundleId(), packages);
+        for (BundleCapability cap : packages.capabilities) {
+            String name = getPackageName(cap);
+            List<BundleCapability> old = capabilities.get(name);
+            List<BundleCapability> caps = old != null
+                    ? new ArrayList<BundleCapability>(old) : new ArrayList<BundleCapability>(1);
+            caps.add(cap);
+            capabilities.put(name, caps);
+        }
+    }
+
+    private void remove(long bundleId) {
+        BundlePackages packages = bundles.remove(bundleId);
+        if (packages == null) {
+            return;
+        }
+        for (BundleCapability cap : packages.capabilities) {
+            String name = getPackageName(cap);
+            List<BundleCapability> caps = new ArrayList<BundleCapability>(capabilities.get(name));
+            caps.remove(cap);
+            if (caps.isEmpty()) {
+                capabilities.remove(name);
+            } else {
+                capabilities.put(name, caps);
+            }
+        }
+    }
+
+}
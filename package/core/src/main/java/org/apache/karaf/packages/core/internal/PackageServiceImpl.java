@@ -17,6 +17,7 @@
 package org.apache.karaf.packages.core.internal;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
@@ -25,40 +26,43 @@ import java.util.TreeMap;
 import org.apache.karaf.packages.core.PackageRequirement;
 import org.apache.karaf.packages.core.PackageService;
 import org.apache.karaf.packages.core.PackageVersion;
-import org.osgi.framework.Bundle;
+import org.apache.karaf.packages.core.internal.PackageIndex.BundlePackages;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Version;
 import org.osgi.framework.wiring.BundleCapability;
 import org.osgi.framework.wiring.BundleRequirement;
-import org.osgi.framework.wiring.BundleRevision;
 
 public class PackageServiceImpl implements PackageService {
 
-    private final BundleContext bundleContext;
+    private final PackageIndex index;
 
     public PackageServiceImpl(BundleContext bundleContext) {
-        this.bundleContext = bundleContext;
+        this.index = new PackageIndex(bundleContext);
+    }
+
+    public void start() {
+        index.start();
+    }
+
+    public void stop() {
+        index.stop();
     }
 
     public SortedMap<String, PackageVersion> getExports() {
-        Bundle[] bundles = bundleContext.getBundles();
+        index.start();
         SortedMap<String, PackageVersion> packageVersionMap = new TreeMap<String, PackageVersion>();
-        for (Bundle bundle : bundles) {
-            BundleRevision rev = bundle.adapt(BundleRevision.class);
-            if (rev != null) {
-                List<BundleCapability> caps = rev.getDeclaredCapabilities(BundleRevision.PACKAGE_NAMESPACE);
-                for (BundleCapability cap : caps) {
-                    Map<String, Object> attr = cap.getAttributes();
-                    String packageName = (String)attr.get(BundleRevision.PACKAGE_NAMESPACE);
-                    Version version = (Version)attr.get("version");
-                    String key = packageName + ":" + version.toString();
-                    PackageVersion pVer = packageVersionMap.get(key);
-                    if (pVer == null) {
-                        pVer = new PackageVersion(packageName, version);
-                        packageVersionMap.put(key, pVer);
-                    }
-                    pVer.addBundle(bundle);
+        for (BundlePackages packages : index.getBundles()) {
+            for (BundleCapability cap : packages.capabilities) {
+                Map<String, Object> attr = cap.getAttributes();
+                String packageName = PackageIndex.getPackageName(cap);
+                Version version = (Version)attr.get("version");
+                String key = packageName + ":" + version.toString();
+                PackageVersion pVer = packageVersionMap.get(key);
+                if (pVer == null) {
+                    pVer = new PackageVersion(packageName, version);
+                    packageVersionMap.put(key, pVer);
                 }
+                pVer.addBundle(packages.bundle);
             }
         }
         return packageVersionMap;
@@ -66,63 +70,45 @@ public class PackageServiceImpl implements PackageService {
 
     @Override
     public SortedMap<String, PackageRequirement> getImports() {
-        Bundle[] bundles = bundleContext.getBundles();
+        index.start();
         SortedMap<String, PackageRequirement> filterMap = new TreeMap<String, PackageRequirement>();
-        for (Bundle bundle : bundles) {
-            BundleRevision rev = bundle.adapt(BundleRevision.class);
-            if (rev != null) {
-                List<BundleRequirement> reqs = rev.getDeclaredRequirements(BundleRevision.PACKAGE_NAMESPACE);
-                for (BundleRequirement req : reqs) {
-                    Map<String, String> attr = req.getDirectives();
-                    String filter = attr.get("filter");
-                    String resolution = attr.get("resolution");
-                    boolean optional = "optional".equals(resolution);
-                    boolean resolveable = checkResolveAble(req);
-                    PackageRequirement preq = new PackageRequirement(filter, optional, bundle, resolveable);
-                    filterMap.put(filter, preq);
-                }
+        for (BundlePackages packages : index.getBundles()) {
+            for (BundleRequirement req : packages.requirements) {
+                Map<String, String> attr = req.getDirectives();
+                String filter = attr.get("filter");
+                String resolution = attr.get("resolution");
+                boolean optional = "optional".equals(resolution);
+                boolean resolveable = index.isResolvable(req);
+                PackageRequirement preq = new PackageRequirement(filter, optional, packages.bundle, resolveable);
+                filterMap.put(filter, preq);
             }
         }
         return filterMap;
     }
 
-    private boolean checkResolveAble(BundleRequirement req) {
-        Bundle[] bundles = bundleContext.getBundles();
-        for (Bundle bundle : bundles) {
-            BundleRevision rev = bundle.adapt(BundleRevision.class);
-            if (rev != null) {
-                List<BundleCapability> caps = rev.getDeclaredCapabilities(BundleRevision.PACKAGE_NAMESPACE);
-                for (BundleCapability cap : caps) {
-                    if (req.matches(cap)) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
-    }
-
 	@Override
 	public List<String> getExports(long bundleId) {
-		Bundle bundle = bundleContext.getBundle(bundleId);
-        BundleRevision rev = bundle.adapt(BundleRevision.class);
-        List<BundleCapability> caps = rev.getDeclaredCapabilities(BundleRevision.PACKAGE_NAMESPACE);
+        index.start();
+        BundlePackages packages = index.getBundle(bundleId);
+        if (packages == null) {
+            return Collections.emptyList();
+        }
         List<String> exports = new ArrayList<String>();
-        for (BundleCapability cap : caps) {
-            Map<String, Object> attr = cap.getAttributes();
-            String packageName = (String)attr.get(BundleRevision.PACKAGE_NAMESPACE);
-            exports.add(packageName);
+        for (BundleCapability cap : packages.capabilities) {
+            exports.add(PackageIndex.getPackageName(cap));
         }
 		return exports ;
 	}
 
 	@Override
 	public List<String> getImports(long bundleId) {
-		Bundle bundle = bundleContext.getBundle(bundleId);
-        BundleRevision rev = bundle.adapt(BundleRevision.class);
-        List<BundleRequirement> reqs = rev.getDeclaredRequirements(BundleRevision.PACKAGE_NAMESPACE);
+        index.start();
+        BundlePackages packages = index.getBundle(bundleId);
+        if (packages == null) {
+            return Collections.emptyList();
+        }
         List<String> imports = new ArrayList<String>();
-        for (BundleRequirement req : reqs) {
+        for (BundleRequirement req : packages.requirements) {
             Map<String, String> attr = req.getDirectives();
             String filter = attr.get("filter");
             String name = PackageRequirement.getPackageName(filter);
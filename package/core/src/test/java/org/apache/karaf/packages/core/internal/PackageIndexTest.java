@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.packages.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+
+public class PackageIndexTest {
+
+    @Test
+    public void testStartIndexesInstalledBundles() {
+        BundleCapability a1 = capability("org.a");
+        BundleCapability a2 = capability("org.a");
+        BundleCapability b = capability("org.b");
+        Bundle bundle2 = bundle(2, a2, b);
+        Bundle bundle1 = bundle(1, a1);
+        BundleContext context = createMock(BundleContext.class);
+        PackageIndex index = new PackageIndex(context);
+        context.addBundleListener(index);
+        expect(context.getBundles()).andReturn(new Bundle[] { bundle1, bundle2 });
+        replay(context);
+
+        index.start();
+
+        assertEquals(Arrays.asList(a1, a2), index.getCapabilities("org.a"));
+        assertEquals(Arrays.asList(b), index.getCapabilities("org.b"));
+        assertTrue(index.getCapabilities("org.c").isEmpty());
+        List<PackageIndex.BundlePackages> bundles = index.getBundles();
+        assertEquals(2, bundles.size());
+        assertSame(bundle1, bundles.get(0).bundle);
+        assertSame(bundle2, bundles.get(1).bundle);
+        assertEquals(Arrays.asList(a2, b), index.getBundle(2).capabilities);
+        verify(context);
+    }
+
+    @Test
+    public void testInstallUpdateUninstall() {
+        PackageIndex index = startedIndex();
+        BundleCapability a = capability("org.a");
+        Bundle installed = bundle(5, a);
+        index.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, installed));
+        assertEquals(Arrays.asList(a), index.getCapabilities("org.a"));
+        assertSame(installed, index.getBundle(5).bundle);
+
+        // the new revision no longer exports org.a
+        BundleCapability b = capability("org.b");
+        Bundle updated = bundle(5, b);
+        index.bundleChanged(new BundleEvent(BundleEvent.UPDATED, updated));
+        assertTrue(index.getCapabilities("org.a").isEmpty());
+        assertEquals(Arrays.asList(b), index.getCapabilities("org.b"));
+        assertEquals(1, index.getBundles().size());
+        assertSame(updated, index.getBundle(5).bundle);
+
+        index.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, updated));
+        assertTrue(index.getCapabilities("org.b").isEmpty());
+        assertNull(index.getBundle(5));
+        assertTrue(index.getBundles().isEmpty());
+    }
+
+    @Test
+    public void testUninstallKeepsOtherExporters() {
+        PackageIndex index = startedIndex();
+        BundleCapability a1 = capability("org.a");
+        BundleCapability a2 = capability("org.a");
+        Bundle bundle1 = bundle(1, a1);
+        index.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle1));
+        index.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle(2, a2)));
+
+        List<BundleCapability> before = index.getCapabilities("org.a");
+        index.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, bundle1));
+
+        assertEquals(Arrays.asList(a2), index.getCapabilities("org.a"));
+        // lists already returned are not modified
+        assertEquals(Arrays.asList(a1, a2), before);
+    }
+
+    @Test
+    public void testOtherEventsAndEventsAfterStopIgnored() {
+        BundleContext context = createNiceMock(BundleContext.class);
+        expect(context.getBundles()).andReturn(new Bundle[0]);
+        replay(context);
+        PackageIndex index = new PackageIndex(context);
+        index.start();
+        Bundle bundle = bundle(1, capability("org.a"));
+        index.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundle));
+        assertTrue(index.getBundles().isEmpty());
+
+        index.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle));
+        index.stop();
+        assertTrue(index.getBundles().isEmpty());
+        index.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle));
+        assertTrue(index.getCapabilities("org.a").isEmpty());
+    }
+
+    @Test
+    public void testIsResolvable() {
+        PackageIndex index = startedIndex();
+        BundleCapability a = capability("org.a");
+        BundleCapability b = capability("org.b");
+        index.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle(1, a, b)));
+
+        // only the exporters of the package are checked
+        BundleRequirement importA = requirement("(&(osgi.wiring.package=org.a)(version>=1.0.0))", a);
+        assertTrue(index.isResolvable(importA));
+        verify(importA);
+
+        BundleRequirement importC = requirement("(osgi.wiring.package=org.c)");
+        assertFalse(index.isResolvable(importC));
+        verify(importC);
+    }
+
+    @Test
+    public void testIsResolvableDynamicImport() {
+        PackageIndex index = startedIndex();
+        BundleCapability a = capability("org.a");
+        BundleCapability b = capability("org.foo.b");
+        index.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle(1, a)));
+        index.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle(2, b)));
+
+        // wildcards are matched against all the packages
+        BundleRequirement wildcard = requirement("(osgi.wiring.package=org.foo.*)", b);
+        assertTrue(index.isResolvable(wildcard));
+        verify(wildcard);
+
+        BundleRequirement any = requirement("(osgi.wiring.package=*)", a);
+        assertTrue(index.isResolvable(any));
+
+        BundleRequirement none = requirement("(osgi.wiring.package=org.bar.*)");
+        assertFalse(index.isResolvable(none));
+
+        // not a simple package filter
+        BundleRequirement noFilter = requirement(null, b);
+        assertTrue(index.isResolvable(noFilter));
+    }
+
+    private static PackageIndex startedIndex() {
+        BundleContext context = createNiceMock(BundleContext.class);
+        expect(context.getBundles()).andReturn(new Bundle[0]);
+        replay(context);
+        PackageIndex index = new PackageIndex(context);
+        index.start();
+        return index;
+    }
+
+    private static Bundle bundle(long id, BundleCapability... capabilities) {
+        BundleRevision revision = createMock(BundleRevision.class);
+        expect(revision.getDeclaredCapabilities(BundleRevision.PACKAGE_NAMESPACE))
+                .andReturn(Arrays.asList(capabilities)).anyTimes();
+        expect(revision.getDeclaredRequirements(BundleRevision.PACKAGE_NAMESPACE))
+                .andReturn(Collections.<BundleRequirement>emptyList()).anyTimes();
+        Bundle bundle = createMock(Bundle.class);
+        expect(bundle.getBundleId()).andReturn(id).anyTimes();
+        expect(bundle.getState()).andReturn(Bundle.INSTALLED).anyTimes();
+        expect(bundle.adapt(BundleRevision.class)).andReturn(revision).anyTimes();
+        replay(revision, bundle);
+        return bundle;
+    }
+
+    private static BundleCapability capability(String packageName) {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put(BundleRevision.PACKAGE_NAMESPACE, packageName);
+        BundleCapability capability = createMock(BundleCapability.class);
+        expect(capability.getAttributes()).andReturn(attributes).anyTimes();
+        replay(capability);
+        return capability;
+    }
+
+    /**
+     * @return a requirement matched only by the given capability
+     */
+    private static BundleRequirement requirement(String filter, BundleCapability... matching) {
+        Map<String, String> directives = new HashMap<String, String>();
+        if (filter != null) {
+            directives.put("filter", filter);
+        }
+        BundleRequirement requirement = createNiceMock(BundleRequirement.class);
+        expect(requirement.getDirectives()).andReturn(directives).anyTimes();
+        for (BundleCapability capability : matching) {
+            expect(requirement.matches(capability)).andReturn(true);
+        }
+        replay(requirement);
+        return requirement;
+    }
+
+}
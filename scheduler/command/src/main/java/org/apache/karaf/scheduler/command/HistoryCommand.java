@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.command;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.karaf.scheduler.core.TaskExecution;
+import org.apache.karaf.scheduler.core.TaskScheduler;
+import org.apache.karaf.scheduler.core.TaskStatistics;
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.table.ShellTable;
+
+@Command(scope = "scheduler", name = "history", description = "Display the last executions of a scheduled task")
+public class HistoryCommand extends SchedulerCommandSupport {
+
+    @Argument(index = 0, name = "id", description = "The task id", required = true, multiValued = false)
+    String id;
+
+    protected void doExecute(TaskScheduler scheduler) throws Exception {
+        TaskStatistics statistics = scheduler.getStatistics(id);
+        if (statistics == null) {
+            System.err.println("Task " + id + " does not exist");
+            return;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        ShellTable table = new ShellTable();
+        table.column("Start");
+        table.column("Duration (ms)").alignRight();
+        table.column("Late (ms)").alignRight();
+        table.column("Trigger");
+        table.column("Failure");
+        List<TaskExecution> history = statistics.getHistory();
+        for (TaskExecution execution : history) {
+            table.addRow().addContent(format.format(new Date(execution.getStartTime())),
+                    execution.getDuration(), execution.isManual() ? "" : execution.getLateness(),
+                    execution.isManual() ? "manual" : "scheduled",
+                    execution.getFailure() != null ? execution.getFailure() : "");
+        }
+        table.print(System.out);
+
+        long[] histogram = statistics.getDurationHistogram();
+        StringBuilder sb = new StringBuilder("Durations:");
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] > 0) {
+                sb.append(i < histogram.length - 1 ? " <" + (1L << i) : " >=" + (1L << (i - 1))).append("ms=").append(histogram[i]);
+            }
+        }
+        System.out.println(sb);
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.command;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.karaf.scheduler.core.KarafTimerTask;
+import org.apache.karaf.scheduler.core.TaskExecution;
+import org.apache.karaf.scheduler.core.TaskScheduler;
+import org.apache.karaf.scheduler.core.TaskStatistics;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.shell.table.ShellTable;
+
+@Command(scope = "scheduler", name = "list", description = "List the scheduled tasks and their execution statistics")
+public class ListCommand extends SchedulerCommandSupport {
+
+    @Option(name = "-v", aliases = {"--verbose"}, description = "Also display the lateness of the executions and the last failure", required = false, multiValued = false)
+    boolean verbose;
+
+    protected void doExecute(TaskScheduler scheduler) throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        ShellTable table = new ShellTable();
+        table.column("Id");
+        table.column("Schedule");
+        table.column("Runs").alignRight();
+        table.column("Failures").alignRight();
+        table.column("Skipped").alignRight();
+        table.column("Last run");
+        table.column("Avg (ms)").alignRight();
+        table.column("Max (ms)").alignRight();
+        table.column("Next run");
+        if (verbose) {
+            table.column("Misfires").alignRight();
+            table.column("Avg late (ms)").alignRight();
+            table.column("Max late (ms)").alignRight();
+            table.column("Last failure");
+        }
+
+        List<KarafTimerTask> tasks = new ArrayList<KarafTimerTask>(scheduler.getTasks());
+        Collections.sort(tasks, new Comparator<KarafTimerTask>() {
+            public int compare(KarafTimerTask t1, KarafTimerTask t2) {
+                return String.valueOf(t1.getId()).compareTo(String.valueOf(t2.getId()));
+            }
+        });
+        for (KarafTimerTask task : tasks) {
+            TaskStatistics statistics = scheduler.getStatistics(task.getId());
+            if (statistics == null) {
+                continue;
+            }
+            TaskExecution last = statistics.getLastExecution();
+            long next = scheduler.getNextFireTime(task.getId());
+            String lastRun = statistics.getRunning() > 0 ? "running"
+                    : last != null ? format.format(new Date(last.getStartTime())) : "";
+            List<Object> row = new ArrayList<Object>();
+            Collections.addAll(row, task.getId(), task.getSchedule(),
+                    statistics.getExecutions(), statistics.getFailures(), statistics.getSkipped(),
+                    lastRun, statistics.getAverageDuration(), statistics.getMaxDuration(),
+                    next >= 0 ? format.format(new Date(next)) : "");
+            if (verbose) {
+                TaskExecution failure = statistics.getLastFailure();
+                Collections.addAll(row, statistics.getMisfires(),
+                        statistics.getAverageLateness(), statistics.getMaxLateness(),
+                        failure != null ? failure.getFailure() : "");
+            }
+            table.addRow().addContent(row.toArray());
+        }
+        table.print(System.out);
+    }
+
+}
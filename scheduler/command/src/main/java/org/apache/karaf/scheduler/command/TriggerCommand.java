@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.command;
+
+import org.apache.karaf.scheduler.core.TaskScheduler;
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+
+@Command(scope = "scheduler", name = "trigger", description = "Execute a scheduled task now")
+public class TriggerCommand extends SchedulerCommandSupport {
+
+    @Argument(index = 0, name = "id", description = "The task id", required = true, multiValued = false)
+    String id;
+
+    protected void doExecute(TaskScheduler scheduler) throws Exception {
+        if (scheduler.getStatistics(id) == null) {
+            System.err.println("Task " + id + " does not exist");
+        } else if (!scheduler.trigger(id)) {
+            System.err.println("Task " + id + " is already running");
+        }
+    }
+
+}
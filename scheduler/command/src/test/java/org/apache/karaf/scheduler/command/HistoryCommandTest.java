@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.command;
+
+import static org.apache.karaf.scheduler.command.ListCommandTest.columns;
+import static org.apache.karaf.scheduler.command.ListCommandTest.task;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.karaf.scheduler.core.TaskScheduler;
+import org.apache.karaf.scheduler.core.TaskStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HistoryCommandTest {
+
+    private TaskScheduler scheduler;
+    private PrintStream out;
+    private PrintStream err;
+    private ByteArrayOutputStream output;
+    private ByteArrayOutputStream error;
+
+    @Before
+    public void setUp() {
+        scheduler = new TaskScheduler(1);
+        out = System.out;
+        err = System.err;
+        output = new ByteArrayOutputStream();
+        error = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+        System.setErr(new PrintStream(error));
+    }
+
+    @After
+    public void tearDown() {
+        System.setOut(out);
+        System.setErr(err);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testHistory() throws Exception {
+        final AtomicInteger executions = new AtomicInteger();
+        scheduler.schedule(task("task", new Runnable() {
+            public void run() {
+                if (executions.incrementAndGet() == 2) {
+                    throw new IllegalStateException("failure");
+                }
+            }
+        }));
+        TaskStatistics statistics = scheduler.getStatistics("task");
+        scheduler.trigger("task");
+        waitForExecutions(statistics, 1);
+        scheduler.trigger("task");
+        waitForExecutions(statistics, 2);
+
+        HistoryCommand command = new HistoryCommand();
+        command.id = "task";
+        command.doExecute(scheduler);
+
+        String[] lines = output.toString().split("\\r?\\n");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].startsWith("Start"));
+        // most recent first
+        String[] last = columns(lines[2]);
+        assertEquals("", last[2]);
+        assertEquals("manual", last[3]);
+        assertEquals("java.lang.IllegalStateException: failure", last[4]);
+        String[] first = columns(lines[3]);
+        assertEquals("manual", first[3]);
+        assertEquals("", first[4]);
+        assertTrue(lines[4].matches("Durations:( <\\d+ms=\\d+)+"));
+    }
+
+    @Test
+    public void testUnknownTask() throws Exception {
+        HistoryCommand command = new HistoryCommand();
+        command.id = "unknown";
+        command.doExecute(scheduler);
+
+        assertEquals("", output.toString());
+        assertEquals("Task unknown does not exist", error.toString().trim());
+    }
+
+    private static void waitForExecutions(TaskStatistics statistics, long executions) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (statistics.getExecutions() < executions || statistics.getRunning() > 0) {
+            if (System.currentTimeMillis() > timeout) {
+                throw new AssertionError("Task not executed within 5 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.apache.karaf.scheduler.core.KarafTimerTask;
+import org.apache.karaf.scheduler.core.TaskScheduler;
+import org.apache.karaf.scheduler.core.TaskStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ListCommandTest {
+
+    private TaskScheduler scheduler;
+    private PrintStream out;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void setUp() {
+        scheduler = new TaskScheduler(1);
+        out = System.out;
+        output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+    }
+
+    @After
+    public void tearDown() {
+        System.setOut(out);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testList() throws Exception {
+        scheduler.schedule(task("b", new Runnable() {
+            public void run() {
+                throw new IllegalStateException("failure");
+            }
+        }));
+        scheduler.schedule(task("a", new Runnable() {
+            public void run() {
+            }
+        }));
+        scheduler.trigger("b");
+        waitForExecution(scheduler.getStatistics("b"));
+
+        new ListCommand().doExecute(scheduler);
+
+        String[] lines = output.toString().split("\\r?\\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("Id"));
+        assertFalse(lines[0].contains("Last failure"));
+        String[] a = columns(lines[2]);
+        assertEquals("a", a[0]);
+        assertEquals("every 3600000 ms", a[1]);
+        assertEquals("0", a[2]);
+        assertEquals("", a[5]);
+        String[] b = columns(lines[3]);
+        assertEquals("b", b[0]);
+        assertEquals("1", b[2]);
+        assertEquals("1", b[3]);
+        assertFalse(b[5].length() == 0);
+        assertEquals(9, b.length);
+    }
+
+    @Test
+    public void testListVerbose() throws Exception {
+        scheduler.schedule(task("b", new Runnable() {
+            public void run() {
+                throw new IllegalStateException("failure");
+            }
+        }));
+        scheduler.trigger("b");
+        waitForExecution(scheduler.getStatistics("b"));
+
+        ListCommand command = new ListCommand();
+        command.verbose = true;
+        command.doExecute(scheduler);
+
+        String[] lines = output.toString().split("\\r?\\n");
+        assertTrue(lines[0].contains("Last failure"));
+        String[] b = columns(lines[2]);
+        assertEquals(13, b.length);
+        assertEquals("0", b[9]);
+        assertEquals("java.lang.IllegalStateException: failure", b[12]);
+    }
+
+    @Test
+    public void testInjectedScheduler() throws Exception {
+        ListCommand command = new ListCommand();
+        command.setScheduler(scheduler);
+        command.doExecute();
+
+        assertTrue(output.toString().startsWith("Id"));
+    }
+
+    static KarafTimerTask<Runnable> task(String id, Runnable runnable) {
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>(id, runnable, 3600000L);
+        task.setDelay(3600000);
+        return task;
+    }
+
+    static void waitForExecution(TaskStatistics statistics) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (statistics.getExecutions() == 0 || statistics.getRunning() > 0) {
+            if (System.currentTimeMillis() > timeout) {
+                throw new AssertionError("Task not executed within 5 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    static String[] columns(String line) {
+        String[] columns = line.split("\\|", -1);
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = columns[i].trim();
+        }
+        return columns;
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.command;
+
+import static org.apache.karaf.scheduler.command.ListCommandTest.task;
+import static org.apache.karaf.scheduler.command.ListCommandTest.waitForExecution;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.scheduler.core.TaskScheduler;
+import org.apache.karaf.scheduler.core.TaskStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TriggerCommandTest {
+
+    private TaskScheduler scheduler;
+    private PrintStream err;
+    private ByteArrayOutputStream error;
+
+    @Before
+    public void setUp() {
+        scheduler = new TaskScheduler(2);
+        err = System.err;
+        error = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(error));
+    }
+
+    @After
+    public void tearDown() {
+        System.setErr(err);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testTrigger() throws Exception {
+        scheduler.schedule(task("task", new Runnable() {
+            public void run() {
+            }
+        }));
+        TaskStatistics statistics = scheduler.getStatistics("task");
+
+        TriggerCommand command = new TriggerCommand();
+        command.id = "task";
+        command.doExecute(scheduler);
+
+        waitForExecution(statistics);
+        assertEquals(1, statistics.getExecutions());
+        assertTrue(statistics.getLastExecution().isManual());
+        assertEquals("", error.toString());
+    }
+
+    @Test
+    public void testTriggerRunningTask() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        scheduler.schedule(task("task", new Runnable() {
+            public void run() {
+                running.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // stop waiting
+                }
+            }
+        }));
+        TriggerCommand command = new TriggerCommand();
+        command.id = "task";
+        command.doExecute(scheduler);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        command.doExecute(scheduler);
+        release.countDown();
+
+        assertEquals("Task task is already running", error.toString().trim());
+        assertEquals(1, scheduler.getStatistics("task").getSkipped());
+    }
+
+    @Test
+    public void testUnknownTask() throws Exception {
+        TriggerCommand command = new TriggerCommand();
+        command.id = "unknown";
+        command.doExecute(scheduler);
+
+        assertEquals("Task unknown does not exist", error.toString().trim());
+    }
+
+}
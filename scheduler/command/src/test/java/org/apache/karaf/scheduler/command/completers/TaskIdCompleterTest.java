@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.command.completers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.karaf.scheduler.core.KarafTimerTask;
+import org.apache.karaf.scheduler.core.TaskScheduler;
+import org.junit.Test;
+
+public class TaskIdCompleterTest {
+
+    @Test
+    public void testComplete() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(1);
+        try {
+            for (String id : new String[] { "backup", "cleanup", "clean-logs" }) {
+                KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>(id, new Runnable() {
+                    public void run() {
+                    }
+                }, 3600000L);
+                task.setDelay(3600000);
+                scheduler.schedule(task);
+            }
+            TaskIdCompleter completer = new TaskIdCompleter();
+            completer.setScheduler(scheduler);
+            List<String> candidates = new ArrayList<String>();
+            assertEquals(0, completer.complete("clean", 5, candidates));
+            assertEquals(Arrays.asList("clean-logs", "cleanup"), candidates);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testNoTask() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(1);
+        try {
+            TaskIdCompleter completer = new TaskIdCompleter();
+            completer.setScheduler(scheduler);
+            List<String> candidates = new ArrayList<String>();
+            assertEquals(-1, completer.complete("", 0, candidates));
+            assertEquals(0, candidates.size());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+}
@@ -17,6 +17,8 @@
 
 package org.apache.karaf.scheduler.core;
 
+import org.apache.karaf.scheduler.core.management.SchedulerMBean;
+import org.apache.karaf.scheduler.core.management.internal.SchedulerMBeanImpl;
 import org.osgi.framework.*;
 
 import java.util.Dictionary;
@@ -24,26 +26,47 @@ import java.util.Properties;
 
 public class Activator implements BundleActivator {
 
-    private TaskScheduler scheduler = new TaskScheduler();
+    public static final String THREADS_PROPERTY = "org.apache.karaf.scheduler.threads";
+
+    private TaskScheduler scheduler;
     private RunnableServiceListener listener;
 
-    private static final String filter = "(&(objectclass=%s)(&(%s >= 0)(%s >= 0)))";
+    private static final String filter = "(&(objectclass=%s)(%s=*)(|(%s=*)(%s=*)(%s=*)))";
 
     @Override
     public void start(BundleContext context) throws Exception {
+        int threads = TaskScheduler.DEFAULT_THREADS;
+        String threadsValue = context.getProperty(THREADS_PROPERTY);
+        if (threadsValue != null) {
+            threads = Integer.parseInt(threadsValue.trim());
+        }
+        scheduler = new TaskScheduler(threads);
         listener = new RunnableServiceListener(context, scheduler);
 
         //register scheduler service
         context.registerService(scheduler.getClass().getName(), scheduler, (Dictionary) new Properties());
 
+        //register scheduler mbean
+        Properties mbeanProperties = new Properties();
+        mbeanProperties.put("jmx.objectname", "org.apache.karaf:type=scheduler,name=" + context.getProperty("karaf.name"));
+        context.registerService(SchedulerMBean.class.getName(), new SchedulerMBeanImpl(scheduler), (Dictionary) mbeanProperties);
+
         //register service listener
-        context.addServiceListener(listener, String.format(filter, Runnable.class.getName(), KarafTimerTask.ID_PROPERTY, KarafTimerTask.PERIOD_PROPERTY));
+        context.addServiceListener(listener, String.format(filter, Runnable.class.getName(), KarafTimerTask.ID_PROPERTY,
+                KarafTimerTask.PERIOD_PROPERTY, KarafTimerTask.CRON_PROPERTY, KarafTimerTask.DELAY_PROPERTY));
 
     }
 
     @Override
     public void stop(BundleContext context) throws Exception {
-
+        if (listener != null) {
+            context.removeServiceListener(listener);
+            listener = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
     }
 
 }
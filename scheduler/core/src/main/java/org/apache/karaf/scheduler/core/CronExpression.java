@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A cron expression, made of five fields (<code>minute hour day-of-month month day-of-week</code>)
+ * or six fields when seconds are specified first.
+ * <p>
+ * Each field accepts <code>*</code>, single values, ranges (<code>1-5</code>), steps
+ * (<code>*&#47;15</code>, <code>10-30/5</code>) and comma separated lists of those.
+ * Months and days of week may be given by their three letter english names, and both
+ * <code>0</code> and <code>7</code> stand for sunday. As with the unix cron, when both the
+ * day of month and the day of week are restricted, a day matching either of them matches.
+ * <code>?</code> is accepted as a synonym of <code>*</code>, as are the <code>@yearly</code>,
+ * <code>@monthly</code>, <code>@weekly</code>, <code>@daily</code> and <code>@hourly</code> shortcuts.
+ * <p>
+ * The day of month also accepts <code>L</code> for the last day of the month, <code>15W</code> for
+ * the weekday nearest to the 15th in the same month, and <code>LW</code> for the last weekday of the
+ * month. The day of week accepts <code>5L</code> (or <code>FRIL</code>) for the last friday of the
+ * month and <code>MON#2</code> for the second monday of the month.
+ * <p>
+ * When daylight saving time starts, the times skipped by the clocks do not fire. When it ends, the
+ * repeated times fire only once, unless the hours are not restricted.
+ */
+public class CronExpression {
+
+    private static final String[] MONTHS = {
+            "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"
+    };
+    private static final String[] DAYS = {
+            "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"
+    };
+
+    /**
+     * Fire times are not searched further than this number of years.
+     */
+    private static final int MAX_YEARS = 5;
+
+    private final String expression;
+    private final TimeZone timeZone;
+    private final BitSet seconds;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean daysOfMonthRestricted;
+    private final boolean daysOfWeekRestricted;
+    private final boolean hoursRestricted;
+    // day of month: L, LW and nW
+    private boolean lastDayOfMonth;
+    private boolean lastWeekdayOfMonth;
+    private final BitSet nearestWeekdays = new BitSet(32);
+    // day of week: nL and n#k, indexed by day * 8 + k
+    private final BitSet lastDaysOfWeek = new BitSet(7);
+    private final BitSet nthDaysOfWeek = new BitSet(7 * 8);
+
+    public CronExpression(String expression) {
+        this(expression, TimeZone.getDefault());
+    }
+
+    public CronExpression(String expression, TimeZone timeZone) {
+        if (expression == null) {
+            throw new IllegalArgumentException("Cron expression is null");
+        }
+        this.expression = expression;
+        this.timeZone = timeZone;
+        String[] fields = expand(expression.trim()).split("\\s+");
+        if (fields.length != 5 && fields.length != 6) {
+            throw new IllegalArgumentException("Invalid cron expression '" + expression + "': 5 or 6 fields expected");
+        }
+        int i = 0;
+        seconds = fields.length == 6 ? parse(fields[i++], 0, 59, null) : parse("0", 0, 59, null);
+        minutes = parse(fields[i++], 0, 59, null);
+        hoursRestricted = isRestricted(fields[i]);
+        hours = parse(fields[i++], 0, 23, null);
+        daysOfMonthRestricted = isRestricted(fields[i]);
+        daysOfMonth = parse(parseDaysOfMonth(fields[i++]), 1, 31, null);
+        months = parse(fields[i++], 1, 12, MONTHS);
+        daysOfWeekRestricted = isRestricted(fields[i]);
+        daysOfWeek = parse(parseDaysOfWeek(fields[i]), 0, 7, DAYS);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+    }
+
+    /**
+     * Returns the first fire time strictly after the given time,
+     * or <code>-1</code> if the expression never fires again.
+     */
+    public long getNextFireTime(long after) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(after);
+        // within a day, only move by adding time: setting the fields of a time repeated when
+        // daylight saving time ends would resolve it to the second occurrence
+        calendar.add(Calendar.MILLISECOND, 1000 - calendar.get(Calendar.MILLISECOND));
+        // wall clock time of the given time, to not fire twice when the clocks go back
+        long afterWallClock = hoursRestricted ? wallClock(after) : Long.MIN_VALUE;
+        int maxYear = calendar.get(Calendar.YEAR) + MAX_YEARS;
+        while (calendar.get(Calendar.YEAR) <= maxYear) {
+            if (!months.get(calendar.get(Calendar.MONTH) + 1)) {
+                calendar.set(Calendar.DAY_OF_MONTH, 1);
+                startOfDay(calendar);
+                calendar.add(Calendar.MONTH, 1);
+            } else if (!matchesDay(calendar)) {
+                startOfDay(calendar);
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+            } else if (!hours.get(calendar.get(Calendar.HOUR_OF_DAY))) {
+                calendar.add(Calendar.SECOND, 3600 - calendar.get(Calendar.MINUTE) * 60 - calendar.get(Calendar.SECOND));
+            } else if (!minutes.get(calendar.get(Calendar.MINUTE))) {
+                calendar.add(Calendar.SECOND, 60 - calendar.get(Calendar.SECOND));
+            } else if (!seconds.get(calendar.get(Calendar.SECOND))) {
+                int second = calendar.get(Calendar.SECOND);
+                int next = seconds.nextSetBit(second);
+                calendar.add(Calendar.SECOND, next < 0 ? 60 - second : next - second);
+            } else if (wallClock(calendar.getTimeInMillis()) <= afterWallClock) {
+                // a time repeated when daylight saving time ended
+                calendar.add(Calendar.SECOND, 1);
+            } else {
+                return calendar.getTimeInMillis();
+            }
+        }
+        return -1;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private boolean matchesDay(Calendar calendar) {
+        int day = calendar.get(Calendar.DAY_OF_MONTH);
+        int weekDay = calendar.get(Calendar.DAY_OF_WEEK) - 1;
+        int lastDay = calendar.getActualMaximum(Calendar.DAY_OF_MONTH);
+        boolean dayOfMonth = daysOfMonth.get(day)
+                || lastDayOfMonth && day == lastDay
+                || lastWeekdayOfMonth && day == nearestWeekday(lastDay, day, weekDay, lastDay)
+                || matchesNearestWeekday(day, weekDay, lastDay);
+        boolean dayOfWeek = daysOfWeek.get(weekDay)
+                || lastDaysOfWeek.get(weekDay) && day + 7 > lastDay
+                || nthDaysOfWeek.get(weekDay * 8 + (day - 1) / 7 + 1);
+        if (daysOfMonthRestricted && daysOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+
+    private boolean matchesNearestWeekday(int day, int weekDay, int lastDay) {
+        // the nearest weekday is at most two days away
+        for (int target = Math.max(1, day - 2); target <= Math.min(lastDay, day + 2); target++) {
+            if (nearestWeekdays.get(target) && nearestWeekday(target, day, weekDay, lastDay) == day) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the weekday nearest to the given target day without leaving the month.
+     *
+     * @param target  the target day of month
+     * @param day     a day of the same month
+     * @param weekDay the day of week of <code>day</code>, sunday being 0
+     * @param lastDay the last day of the month
+     */
+    private static int nearestWeekday(int target, int day, int weekDay, int lastDay) {
+        int targetWeekDay = ((weekDay + target - day) % 7 + 7) % 7;
+        if (targetWeekDay == 6) {
+            return target == 1 ? target + 2 : target - 1;
+        } else if (targetWeekDay == 0) {
+            return target == lastDay ? target - 2 : target + 1;
+        }
+        return target;
+    }
+
+    private long wallClock(long time) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(time);
+        return time + calendar.get(Calendar.ZONE_OFFSET) + calendar.get(Calendar.DST_OFFSET);
+    }
+
+    private static void startOfDay(Calendar calendar) {
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+    }
+
+    private static String expand(String expression) {
+        if (expression.equals("@yearly") || expression.equals("@annually")) {
+            return "0 0 1 1 *";
+        } else if (expression.equals("@monthly")) {
+            return "0 0 1 * *";
+        } else if (expression.equals("@weekly")) {
+            return "0 0 * * 0";
+        } else if (expression.equals("@daily") || expression.equals("@midnight")) {
+            return "0 0 * * *";
+        } else if (expression.equals("@hourly")) {
+            return "0 * * * *";
+        }
+        return expression;
+    }
+
+    /**
+     * Records the <code>L</code>, <code>LW</code> and <code>nW</code> days of month, and returns the other ones.
+     */
+    private String parseDaysOfMonth(String field) {
+        StringBuilder others = new StringBuilder();
+        for (String part : field.split(",")) {
+            String upper = part.toUpperCase(Locale.ENGLISH);
+            if (upper.equals("L")) {
+                lastDayOfMonth = true;
+            } else if (upper.equals("LW")) {
+                lastWeekdayOfMonth = true;
+            } else if (upper.endsWith("W")) {
+                nearestWeekdays.set(parseValue(part.substring(0, part.length() - 1), 1, 31, null));
+            } else {
+                append(others, part);
+            }
+        }
+        return others.toString();
+    }
+
+    /**
+     * Records the <code>nL</code> and <code>n#k</code> days of week, and returns the other ones.
+     */
+    private String parseDaysOfWeek(String field) {
+        StringBuilder others = new StringBuilder();
+        for (String part : field.split(",")) {
+            int hash = part.indexOf('#');
+            if (hash > 0) {
+                int nth = parseValue(part.substring(hash + 1), 1, 5, null);
+                nthDaysOfWeek.set(parseValue(part.substring(0, hash), 0, 7, DAYS) % 7 * 8 + nth);
+            } else if (part.length() > 1 && Character.toUpperCase(part.charAt(part.length() - 1)) == 'L') {
+                lastDaysOfWeek.set(parseValue(part.substring(0, part.length() - 1), 0, 7, DAYS) % 7);
+            } else {
+                append(others, part);
+            }
+        }
+        return others.toString();
+    }
+
+    private static void append(StringBuilder list, String part) {
+        if (list.length() > 0) {
+            list.append(',');
+        }
+        list.append(part);
+    }
+
+    private static boolean isRestricted(String field) {
+        return !field.equals("*") && !field.equals("?");
+    }
+
+    private BitSet parse(String field, int min, int max, String[] names) {
+        BitSet bits = new BitSet(max + 1);
+        if (field.length() == 0) {
+            // only special days
+            return bits;
+        }
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                // a larger step would only match the first value, and would overflow when added to it
+                step = parseValue(part.substring(slash + 1), 1, max - min + 1, null);
+                part = part.substring(0, slash);
+            }
+            int from;
+            int to;
+            if (part.equals("*") || part.equals("?")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                if (dash > 0) {
+                    from = parseValue(part.substring(0, dash), min, max, names);
+                    to = parseValue(part.substring(dash + 1), min, max, names);
+                } else {
+                    from = parseValue(part, min, max, names);
+                    to = slash >= 0 ? max : from;
+                }
+                if (from > to) {
+                    throw invalid("invalid range " + part);
+                }
+            }
+            for (int value = from; value <= to; value += step) {
+                bits.set(value);
+            }
+        }
+        return bits;
+    }
+
+    private int parseValue(String value, int min, int max, String[] names) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(value)) {
+                    return min + i;
+                }
+            }
+        }
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw invalid("invalid value " + value);
+        }
+        if (result < min || result > max) {
+            throw invalid("value " + value + " out of range [" + min + "-" + max + "]");
+        }
+        return result;
+    }
+
+    private IllegalArgumentException invalid(String message) {
+        return new IllegalArgumentException("Invalid cron expression '" + expression + "': " + message);
+    }
+
+}
@@ -23,10 +23,20 @@ public class KarafTimerTask<R extends Runnable> extends TimerTask {
 
     public static final String ID_PROPERTY = "org.apache.karaf.scheduler.task.id";
     public static final String PERIOD_PROPERTY = "org.apache.karaf.scheduler.task.period";
+    public static final String CRON_PROPERTY = "org.apache.karaf.scheduler.task.cron";
+    public static final String DELAY_PROPERTY = "org.apache.karaf.scheduler.task.delay";
+    public static final String FIXED_RATE_PROPERTY = "org.apache.karaf.scheduler.task.fixedRate";
+    public static final String CONCURRENCY_PROPERTY = "org.apache.karaf.scheduler.task.concurrency";
+    public static final String MISFIRE_PROPERTY = "org.apache.karaf.scheduler.task.misfire";
 
     protected String id;
     protected R task;
     protected Long schedulePeriod = 0L;
+    protected CronExpression cron;
+    protected long delay;
+    protected boolean fixedRate;
+    protected ConcurrencyPolicy concurrencyPolicy = ConcurrencyPolicy.SKIP;
+    protected MisfirePolicy misfirePolicy = MisfirePolicy.FIRE;
 
     /**
      * Constructor
@@ -79,4 +89,69 @@ public class KarafTimerTask<R extends Runnable> extends TimerTask {
         this.schedulePeriod = schedulePeriod;
     }
 
+    /**
+     * @return the cron expression giving the execution times of the task, if any.
+     *         When set, it takes precedence over the schedule period.
+     */
+    public CronExpression getCron() {
+        return cron;
+    }
+
+    public void setCron(CronExpression cron) {
+        this.cron = cron;
+    }
+
+    /**
+     * @return the delay in milliseconds before the first execution of the task.
+     *         A task without period nor cron expression is executed only once after this delay.
+     */
+    public long getDelay() {
+        return delay;
+    }
+
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * @return a human readable description of the schedule of the task
+     */
+    public String getSchedule() {
+        if (cron != null) {
+            return "cron " + cron;
+        } else if (schedulePeriod != null && schedulePeriod > 0) {
+            return "every " + schedulePeriod + " ms" + (fixedRate ? " (fixed rate)" : "");
+        } else {
+            return "once";
+        }
+    }
+
+    /**
+     * @return <code>true</code> if executions are triggered at a fixed rate,
+     *         <code>false</code> if the period is counted from the end of the previous execution
+     */
+    public boolean isFixedRate() {
+        return fixedRate;
+    }
+
+    public void setFixedRate(boolean fixedRate) {
+        this.fixedRate = fixedRate;
+    }
+
+    public ConcurrencyPolicy getConcurrencyPolicy() {
+        return concurrencyPolicy;
+    }
+
+    public void setConcurrencyPolicy(ConcurrencyPolicy concurrencyPolicy) {
+        this.concurrencyPolicy = concurrencyPolicy;
+    }
+
+    public MisfirePolicy getMisfirePolicy() {
+        return misfirePolicy;
+    }
+
+    public void setMisfirePolicy(MisfirePolicy misfirePolicy) {
+        this.misfirePolicy = misfirePolicy;
+    }
+
 }
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+/**
+ * What to do with an execution which could not start on time, because all the
+ * scheduler threads were busy or because it has been queued behind a running one.
+ * An execution misfires when it starts more than one period after its scheduled time.
+ */
+public enum MisfirePolicy {
+
+    /**
+     * Run the execution anyway, as soon as possible.
+     */
+    FIRE,
+
+    /**
+     * Drop the execution and wait for the next one.
+     */
+    SKIP
+
+}
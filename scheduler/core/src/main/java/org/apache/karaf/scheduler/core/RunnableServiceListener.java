@@ -17,13 +17,19 @@
 
 package org.apache.karaf.scheduler.core;
 
+import java.util.Locale;
+
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class RunnableServiceListener implements ServiceListener {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(RunnableServiceListener.class);
+
     private final BundleContext bundleContext;
     private final TaskScheduler scheduler;
 
@@ -62,15 +68,62 @@ public class RunnableServiceListener implements ServiceListener {
         ServiceReference reference = event.getServiceReference();
         Runnable service = (Runnable) bundleContext.getService(reference);
         String id = (String) reference.getProperty(KarafTimerTask.ID_PROPERTY);
-        String periodValue = (String) reference.getProperty(KarafTimerTask.PERIOD_PROPERTY);
+        Object periodValue = reference.getProperty(KarafTimerTask.PERIOD_PROPERTY);
+        Object cronValue = reference.getProperty(KarafTimerTask.CRON_PROPERTY);
+        Object delayValue = reference.getProperty(KarafTimerTask.DELAY_PROPERTY);
 
-        if (periodValue != null) {
-            Long period = Long.parseLong(periodValue);
-            KarafTimerTask task = new KarafTimerTask(id, service, period);
+        if (periodValue != null || cronValue != null || delayValue != null) {
+            KarafTimerTask task;
+            try {
+                Long period = periodValue != null ? Long.parseLong(String.valueOf(periodValue).trim()) : 0L;
+                task = new KarafTimerTask(id, service, period);
+                if (cronValue != null) {
+                    task.setCron(new CronExpression(String.valueOf(cronValue)));
+                }
+                if (delayValue != null) {
+                    task.setDelay(Long.parseLong(String.valueOf(delayValue).trim()));
+                }
+            } catch (IllegalArgumentException e) {
+                // never throw to the framework, the other listeners would not be notified
+                LOGGER.error("Invalid schedule for task " + id + ", the task is not scheduled: " + e.getMessage());
+                bundleContext.ungetService(reference);
+                return;
+            }
+            Object fixedRate = reference.getProperty(KarafTimerTask.FIXED_RATE_PROPERTY);
+            if (fixedRate != null) {
+                task.setFixedRate(Boolean.parseBoolean(String.valueOf(fixedRate)));
+            }
+            ConcurrencyPolicy concurrency = getPolicy(reference, KarafTimerTask.CONCURRENCY_PROPERTY, ConcurrencyPolicy.class);
+            if (concurrency != null) {
+                task.setConcurrencyPolicy(concurrency);
+            }
+            MisfirePolicy misfire = getPolicy(reference, KarafTimerTask.MISFIRE_PROPERTY, MisfirePolicy.class);
+            if (misfire != null) {
+                task.setMisfirePolicy(misfire);
+            }
             scheduler.schedule(task);
         }
     }
 
+    /**
+     * Reads a policy property, case insensitively.
+     *
+     * @return the policy, or <code>null</code> to keep the default one if the property is missing or invalid
+     */
+    private static <T extends Enum<T>> T getPolicy(ServiceReference reference, String property, Class<T> type) {
+        Object value = reference.getProperty(property);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, String.valueOf(value).trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid " + property + " value '" + value + "' for task "
+                    + reference.getProperty(KarafTimerTask.ID_PROPERTY) + ", using the default policy");
+            return null;
+        }
+    }
+
     /**
      * Unschedules the execution of the Runnable Service of the {@link ServiceEvent}.
      *
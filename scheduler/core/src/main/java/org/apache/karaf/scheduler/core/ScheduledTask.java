@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The scheduling state of a {@link KarafTimerTask}.
+ * Triggers are fired from the scheduler timer thread and executions are run on the worker pool.
+ */
+class ScheduledTask {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduledTask.class);
+
+    private final TaskScheduler scheduler;
+    private final KarafTimerTask<?> task;
+    private final long period;
+    private final CronExpression cron;
+
+    /**
+     * Set while an execution is submitted or running, for the skip and queue policies.
+     */
+    private final AtomicBoolean busy = new AtomicBoolean();
+    /**
+     * The trigger waiting for the running execution to complete, for the queue policy.
+     */
+    private final AtomicReference<Trigger> pending = new AtomicReference<Trigger>();
+    private final TaskStatistics statistics = new TaskStatistics();
+    private volatile boolean cancelled;
+    private volatile TimingWheel.Timeout trigger;
+    private volatile long nextFireTime = -1;
+
+    private static class Trigger {
+        final long scheduledTime;
+        // the time after which the execution is considered misfired
+        final long window;
+        final boolean manual;
+
+        Trigger(long scheduledTime, long window, boolean manual) {
+            this.scheduledTime = scheduledTime;
+            this.window = window;
+            this.manual = manual;
+        }
+    }
+
+    ScheduledTask(TaskScheduler scheduler, KarafTimerTask<?> task) {
+        this.scheduler = scheduler;
+        this.task = task;
+        this.period = task.getSchedulePeriod() != null ? task.getSchedulePeriod() : 0L;
+        this.cron = task.getCron();
+    }
+
+    KarafTimerTask<?> getTask() {
+        return task;
+    }
+
+    TaskStatistics getStatistics() {
+        return statistics;
+    }
+
+    long getNextFireTime() {
+        return nextFireTime;
+    }
+
+    void start() {
+        long start = System.currentTimeMillis() + Math.max(0, task.getDelay());
+        if (cron != null) {
+            // the first cron execution happens at the first fire time after the initial delay
+            scheduleAt(cron.getNextFireTime(start - 1));
+        } else {
+            scheduleAt(start);
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+        TimingWheel.Timeout trigger = this.trigger;
+        if (trigger != null) {
+            trigger.cancel();
+        }
+        task.cancel();
+    }
+
+    /**
+     * With a cron expression or a fixed rate, the next trigger is scheduled when the previous one fires.
+     * Otherwise it is scheduled once the previous execution completed.
+     */
+    private boolean isTriggerDriven() {
+        return cron != null || (task.isFixedRate() && period > 0);
+    }
+
+    private void scheduleAt(final long time) {
+        if (cancelled) {
+            return;
+        }
+        if (time < 0) {
+            LOGGER.debug("Task {} will not fire anymore", task.getId());
+            scheduler.completed(this);
+            return;
+        }
+        nextFireTime = time;
+        try {
+            trigger = scheduler.getTimer().schedule(new Runnable() {
+                public void run() {
+                    fire(time);
+                }
+            }, time);
+        } catch (RejectedExecutionException e) {
+            // the scheduler has been shut down
+        }
+    }
+
+    private void fire(long scheduledTime) {
+        if (cancelled) {
+            return;
+        }
+        nextFireTime = -1;
+        long window = period;
+        if (cron != null) {
+            long next = cron.getNextFireTime(scheduledTime);
+            window = next > 0 ? next - scheduledTime : 0;
+            scheduleAt(next);
+        } else if (isTriggerDriven()) {
+            scheduleAt(scheduledTime + period);
+        }
+        dispatch(new Trigger(scheduledTime, window, false));
+    }
+
+    /**
+     * Execute the task now, out of its schedule.
+     *
+     * @return <code>false</code> if the execution has been dropped because the task is already running
+     */
+    boolean trigger() {
+        if (cancelled) {
+            return false;
+        }
+        return dispatch(new Trigger(System.currentTimeMillis(), 0, true));
+    }
+
+    private boolean dispatch(Trigger trigger) {
+        switch (task.getConcurrencyPolicy()) {
+            case ALLOW:
+                submit(trigger);
+                return true;
+            case QUEUE:
+                if (busy.compareAndSet(false, true)) {
+                    submit(trigger);
+                } else {
+                    queue(trigger);
+                }
+                return true;
+            case SKIP:
+            default:
+                if (busy.compareAndSet(false, true)) {
+                    submit(trigger);
+                    return true;
+                }
+                LOGGER.debug("Skipping execution of task {} as it is still running", task.getId());
+                statistics.skipped();
+                if (!trigger.manual && !isTriggerDriven()) {
+                    continueSchedule();
+                }
+                return false;
+        }
+    }
+
+    /**
+     * Triggers received while the task is running are coalesced, scheduled ones prevailing over manual ones.
+     */
+    private void queue(Trigger trigger) {
+        Trigger current;
+        do {
+            current = pending.get();
+            if (current != null && (trigger.manual || !current.manual)) {
+                statistics.skipped();
+                return;
+            }
+        } while (!pending.compareAndSet(current, trigger));
+        if (current != null) {
+            statistics.skipped();
+        }
+        // the running execution may have completed before the trigger was queued
+        drain();
+    }
+
+    private void drain() {
+        while (pending.get() != null && busy.compareAndSet(false, true)) {
+            Trigger next = pending.getAndSet(null);
+            if (next != null) {
+                submit(next);
+                return;
+            }
+            busy.set(false);
+        }
+    }
+
+    private void submit(final Trigger trigger) {
+        try {
+            scheduler.getWorkers().execute(new Runnable() {
+                public void run() {
+                    execute(trigger);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the scheduler has been shut down
+            busy.set(false);
+        }
+    }
+
+    private void execute(Trigger trigger) {
+        try {
+            if (cancelled) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            long lateness = start - trigger.scheduledTime;
+            if (trigger.window > 0 && lateness > trigger.window && task.getMisfirePolicy() == MisfirePolicy.SKIP) {
+                LOGGER.debug("Skipping execution of task {} started {} ms late", task.getId(), lateness);
+                statistics.misfired();
+                return;
+            }
+            statistics.started();
+            long time = System.nanoTime();
+            String failure = null;
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failure = t.toString();
+                LOGGER.warn("Error executing task " + task.getId(), t);
+            }
+            long duration = (System.nanoTime() - time) / 1000000L;
+            statistics.completed(new TaskExecution(trigger.scheduledTime, start, duration, trigger.manual, failure));
+        } finally {
+            completed(trigger);
+        }
+    }
+
+    private void completed(Trigger trigger) {
+        if (!trigger.manual && !isTriggerDriven()) {
+            continueSchedule();
+        }
+        if (task.getConcurrencyPolicy() == ConcurrencyPolicy.ALLOW) {
+            return;
+        }
+        Trigger next = pending.getAndSet(null);
+        if (next != null) {
+            submit(next);
+            return;
+        }
+        busy.set(false);
+        drain();
+    }
+
+    /**
+     * Schedule the next execution of a task with a fixed delay, or forget a one-shot task.
+     */
+    private void continueSchedule() {
+        if (period > 0) {
+            scheduleAt(System.currentTimeMillis() + period);
+        } else {
+            scheduler.completed(this);
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+/**
+ * A completed execution of a scheduled task.
+ */
+public class TaskExecution {
+
+    private final long scheduledTime;
+    private final long startTime;
+    private final long duration;
+    private final boolean manual;
+    private final String failure;
+
+    public TaskExecution(long scheduledTime, long startTime, long duration, boolean manual, String failure) {
+        this.scheduledTime = scheduledTime;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.manual = manual;
+        this.failure = failure;
+    }
+
+    /**
+     * @return the time at which the execution was due
+     */
+    public long getScheduledTime() {
+        return scheduledTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the duration of the execution in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return the delay in milliseconds between the time the execution was due and its actual start
+     */
+    public long getLateness() {
+        return Math.max(0, startTime - scheduledTime);
+    }
+
+    /**
+     * @return <code>true</code> if the execution has been triggered manually
+     */
+    public boolean isManual() {
+        return manual;
+    }
+
+    /**
+     * @return the error thrown by the task, or <code>null</code> if it completed normally
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+}
@@ -17,23 +17,62 @@
 
 package org.apache.karaf.scheduler.core;
 
-import java.util.Map;
-import java.util.Timer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Schedules {@link KarafTimerTask}s.
+ * A single timer thread fires the triggers and the executions are run on a pool of worker threads,
+ * so that a long running task does not delay the other ones. Triggers are kept in a {@link TimingWheel},
+ * so that scheduling and cancelling tasks does not depend on the number of scheduled tasks.
+ */
 public class TaskScheduler {
 
-    private final Timer timer = new Timer();
-    private final Map<String,KarafTimerTask> tasks = new ConcurrentHashMap<String, KarafTimerTask>();
+    public static final int DEFAULT_THREADS = 4;
+
+    /**
+     * The resolution of the scheduler in milliseconds.
+     */
+    public static final long TICK = 10;
+
+    private final TimingWheel timer;
+    private final ThreadPoolExecutor workers;
+    private final ConcurrentMap<String, ScheduledTask> tasks = new ConcurrentHashMap<String, ScheduledTask>();
+
+    public TaskScheduler() {
+        this(DEFAULT_THREADS);
+    }
 
     /**
-     * Schedule a {@link KarafTimerTask}
+     * @param threads the number of worker threads executing the tasks
+     */
+    public TaskScheduler(int threads) {
+        threads = Math.max(1, threads);
+        timer = new TimingWheel(TICK, new SchedulerThreadFactory("Karaf scheduler timer"));
+        workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new SchedulerThreadFactory("Karaf scheduler worker"));
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedule a {@link KarafTimerTask}, replacing any task scheduled with the same id.
      * @param task
      */
     public void schedule(KarafTimerTask task) {
         if(task != null) {
-            tasks.put(task.getId(),task);
-            timer.schedule(task,0,task.getSchedulePeriod());
+            ScheduledTask scheduled = new ScheduledTask(this, task);
+            ScheduledTask old = tasks.put(task.getId(), scheduled);
+            if (old != null) {
+                old.cancel();
+            }
+            scheduled.start();
         }
 
     }
@@ -44,11 +83,98 @@ public class TaskScheduler {
      */
     public void unschedule(String id) {
         if(id != null) {
-            KarafTimerTask task = tasks.remove(id);
+            ScheduledTask task = tasks.remove(id);
             if(task != null) {
                 task.cancel();
             }
         }
     }
 
+    /**
+     * @return the scheduled tasks
+     */
+    public List<KarafTimerTask> getTasks() {
+        List<KarafTimerTask> result = new ArrayList<KarafTimerTask>();
+        for (ScheduledTask task : tasks.values()) {
+            result.add(task.getTask());
+        }
+        return result;
+    }
+
+    /**
+     * @return the statistics of the task with the given id, or <code>null</code> if there is no such task
+     */
+    public TaskStatistics getStatistics(String id) {
+        ScheduledTask task = id != null ? tasks.get(id) : null;
+        return task != null ? task.getStatistics() : null;
+    }
+
+    /**
+     * @return the next time the task with the given id will be triggered,
+     *         or <code>-1</code> if it is not known yet or there is no such task
+     */
+    public long getNextFireTime(String id) {
+        ScheduledTask task = id != null ? tasks.get(id) : null;
+        return task != null ? task.getNextFireTime() : -1;
+    }
+
+    /**
+     * Execute a task now, whatever its schedule.
+     * The concurrency policy of the task applies as for scheduled executions.
+     *
+     * @param id The id of the task to execute.
+     * @return <code>false</code> if the execution has been dropped because the task is already running
+     * @throws IllegalArgumentException if there is no such task
+     */
+    public boolean trigger(String id) {
+        ScheduledTask task = id != null ? tasks.get(id) : null;
+        if (task == null) {
+            throw new IllegalArgumentException("Task " + id + " does not exist");
+        }
+        return task.trigger();
+    }
+
+    /**
+     * Cancel all the tasks and stop the scheduler threads.
+     * Running executions are allowed to complete.
+     */
+    public void shutdown() {
+        for (ScheduledTask task : tasks.values()) {
+            task.cancel();
+        }
+        tasks.clear();
+        timer.stop();
+        workers.shutdown();
+    }
+
+    /**
+     * Forget a task which will not be executed anymore.
+     */
+    void completed(ScheduledTask task) {
+        tasks.remove(task.getTask().getId(), task);
+    }
+
+    TimingWheel getTimer() {
+        return timer;
+    }
+
+    ThreadPoolExecutor getWorkers() {
+        return workers;
+    }
+
+    private static class SchedulerThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        SchedulerThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Execution statistics of a scheduled task.
+ * <p>
+ * Statistics are updated with atomic counters only, so that collecting them does not add any
+ * contention between the executions. Durations are kept in a histogram with power of two buckets,
+ * and the last executions are kept in a fixed size ring.
+ */
+public class TaskStatistics {
+
+    /**
+     * The number of duration histogram buckets: bucket <code>i</code> counts the executions which took
+     * less than <code>2^i</code> milliseconds, the last one counts all the longer executions.
+     */
+    public static final int BUCKETS = 16;
+
+    public static final int HISTORY_SIZE = 16;
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong misfires = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong totalDuration = new AtomicLong();
+    private final AtomicLong maxDuration = new AtomicLong();
+    private final AtomicLong scheduledExecutions = new AtomicLong();
+    private final AtomicLong totalLateness = new AtomicLong();
+    private final AtomicLong maxLateness = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final AtomicReferenceArray<TaskExecution> history = new AtomicReferenceArray<TaskExecution>(HISTORY_SIZE);
+    private final AtomicLong historyIndex = new AtomicLong();
+    private volatile TaskExecution lastExecution;
+    private volatile TaskExecution lastFailure;
+
+    void started() {
+        running.incrementAndGet();
+    }
+
+    void completed(TaskExecution execution) {
+        running.decrementAndGet();
+        executions.incrementAndGet();
+        if (execution.getFailure() != null) {
+            failures.incrementAndGet();
+            lastFailure = execution;
+        }
+        long duration = execution.getDuration();
+        totalDuration.addAndGet(duration);
+        max(maxDuration, duration);
+        histogram.incrementAndGet(bucket(duration));
+        if (!execution.isManual()) {
+            long lateness = execution.getLateness();
+            scheduledExecutions.incrementAndGet();
+            totalLateness.addAndGet(lateness);
+            max(maxLateness, lateness);
+        }
+        history.set((int) (historyIndex.getAndIncrement() % HISTORY_SIZE), execution);
+        lastExecution = execution;
+    }
+
+    /**
+     * An execution has been dropped because the previous one was still running.
+     */
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    /**
+     * An execution has been dropped because it started too late.
+     */
+    void misfired() {
+        misfires.incrementAndGet();
+    }
+
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getMisfires() {
+        return misfires.get();
+    }
+
+    /**
+     * @return the number of executions currently running
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    public long getAverageDuration() {
+        long count = executions.get();
+        return count > 0 ? totalDuration.get() / count : 0;
+    }
+
+    public long getMaxDuration() {
+        return maxDuration.get();
+    }
+
+    /**
+     * @return the average lateness of the scheduled executions, manual executions excluded
+     */
+    public long getAverageLateness() {
+        long count = scheduledExecutions.get();
+        return count > 0 ? totalLateness.get() / count : 0;
+    }
+
+    public long getMaxLateness() {
+        return maxLateness.get();
+    }
+
+    /**
+     * @return the counts of the duration histogram buckets
+     */
+    public long[] getDurationHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * @return an upper bound of the given percentile of the durations, in milliseconds,
+     *         <code>0</code> if there is no execution yet,
+     *         or <code>-1</code> if it is above the histogram range
+     */
+    public long getDurationPercentile(double percentile) {
+        long[] counts = getDurationHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long count = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            count += counts[i];
+            if (count >= threshold) {
+                return 1L << i;
+            }
+        }
+        return -1;
+    }
+
+    public TaskExecution getLastExecution() {
+        return lastExecution;
+    }
+
+    public TaskExecution getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * @return the last executions, most recent first
+     */
+    public List<TaskExecution> getHistory() {
+        List<TaskExecution> executions = new ArrayList<TaskExecution>(HISTORY_SIZE);
+        long index = historyIndex.get();
+        for (int i = 1; i <= HISTORY_SIZE && index - i >= 0; i++) {
+            TaskExecution execution = history.get((int) ((index - i) % HISTORY_SIZE));
+            if (execution != null) {
+                executions.add(execution);
+            }
+        }
+        return executions;
+    }
+
+    private static int bucket(long duration) {
+        int bucket = 64 - Long.numberOfLeadingZeros(duration);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    private static void max(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+}
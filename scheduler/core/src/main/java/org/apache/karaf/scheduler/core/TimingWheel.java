@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hierarchical timing wheel.
+ * <p>
+ * Time is divided in ticks. Timeouts expiring within the next {@link #SLOTS} ticks are kept in the
+ * slots of the first wheel, one slot per tick; the following wheels cover {@link #SLOTS} times more
+ * ticks per slot than the previous one, and their slots are cascaded down to the lower wheels as time
+ * passes. Adding or cancelling a timeout and processing a tick are therefore constant time operations,
+ * whatever the number of pending timeouts.
+ * <p>
+ * All the wheel operations are done by a single thread, which also runs the expired timeouts:
+ * those must be short and hand off any real work to another thread. The thread only wakes up for
+ * the ticks which have timeouts to expire or to cascade, not for every tick.
+ */
+class TimingWheel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    private static final int WAITING = 0;
+    private static final int EXPIRED = 1;
+    private static final int CANCELLED = 2;
+
+    /**
+     * A pending timeout, linked in the slot it belongs to.
+     */
+    class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        // guarded by the wheel thread
+        private long expires;
+        private Slot slot;
+        private Timeout prev;
+        private Timeout next;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * @return <code>false</code> if the timeout has already expired or been cancelled
+         */
+        boolean cancel() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                changes.add(this);
+                return true;
+            }
+            return false;
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+    }
+
+    private static class Slot {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.slot = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.slot = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        Timeout clear() {
+            Timeout timeouts = head;
+            head = null;
+            tail = null;
+            return timeouts;
+        }
+    }
+
+    private final long tickMillis;
+    private final Slot[][] wheels = new Slot[LEVELS][SLOTS];
+    /**
+     * Timeouts added or cancelled since the last tick, applied by the wheel thread.
+     */
+    private final BlockingQueue<Timeout> changes = new LinkedBlockingQueue<Timeout>();
+    private final Thread thread;
+    private final long startTime;
+    private volatile boolean stopped;
+    // guarded by the wheel thread
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long tickMillis, ThreadFactory threadFactory) {
+        this.tickMillis = Math.max(1, tickMillis);
+        for (Slot[] wheel : wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                wheel[i] = new Slot();
+            }
+        }
+        this.startTime = System.currentTimeMillis();
+        this.thread = threadFactory.newThread(new Runnable() {
+            public void run() {
+                TimingWheel.this.run();
+            }
+        });
+        this.thread.start();
+    }
+
+    /**
+     * Schedule a task to be run by the wheel thread at the given time, rounded up to the next tick.
+     */
+    Timeout schedule(Runnable task, long deadline) {
+        if (stopped) {
+            throw new RejectedExecutionException("Timing wheel is stopped");
+        }
+        Timeout timeout = new Timeout(task, deadline);
+        changes.add(timeout);
+        return timeout;
+    }
+
+    void stop() {
+        stopped = true;
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (!stopped) {
+            try {
+                // sleep until a tick with expiring timeouts or cascading the higher wheels
+                long wait = startTime + nextTick() * tickMillis - System.currentTimeMillis();
+                Timeout change = size == 0 && changes.isEmpty()
+                        ? changes.take()
+                        : changes.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                if (change != null) {
+                    if (size == 0) {
+                        // nothing to process while the wheel was empty, skip the elapsed ticks
+                        currentTick = Math.max(currentTick, (System.currentTimeMillis() - startTime) / tickMillis);
+                    }
+                    apply(change);
+                    while ((change = changes.poll()) != null) {
+                        apply(change);
+                    }
+                }
+                long now = System.currentTimeMillis();
+                while (now >= startTime + currentTick * tickMillis && !stopped) {
+                    tick();
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+    }
+
+    /**
+     * @return the next tick which has timeouts to expire or timeouts to cascade from the higher wheels
+     */
+    private long nextTick() {
+        for (long tick = currentTick; ; tick++) {
+            if ((tick & SLOT_MASK) == 0 || wheels[0][(int) (tick & SLOT_MASK)].head != null) {
+                return tick;
+            }
+        }
+    }
+
+    private void apply(Timeout timeout) {
+        if (timeout.slot != null) {
+            // cancelled while waiting in a slot
+            timeout.slot.remove(timeout);
+            size--;
+        } else if (timeout.state.get() == WAITING) {
+            timeout.expires = (timeout.deadline - startTime + tickMillis - 1) / tickMillis;
+            add(timeout);
+            size++;
+        }
+    }
+
+    private void add(Timeout timeout) {
+        long expires = Math.max(timeout.expires, currentTick);
+        long delta = expires - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && (delta >>> (SLOT_BITS * (level + 1))) != 0) {
+            level++;
+        }
+        if (level == LEVELS - 1 && (delta >>> (SLOT_BITS * LEVELS)) != 0) {
+            // beyond the range of the wheels, will be cascaded again
+            expires = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+        }
+        wheels[level][(int) ((expires >>> (SLOT_BITS * level)) & SLOT_MASK)].add(timeout);
+    }
+
+    private void tick() {
+        int index = (int) (currentTick & SLOT_MASK);
+        if (index == 0) {
+            // move the timeouts of the higher wheels closer
+            for (int level = 1; level < LEVELS; level++) {
+                int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                cascade(wheels[level][slot]);
+                if (slot != 0) {
+                    break;
+                }
+            }
+        }
+        Timeout timeout = wheels[0][index].clear();
+        currentTick++;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.slot = null;
+            timeout.prev = null;
+            timeout.next = null;
+            size--;
+            if (timeout.state.compareAndSet(WAITING, EXPIRED)) {
+                try {
+                    timeout.task.run();
+                } catch (Throwable t) {
+                    LOGGER.warn("Error running timeout", t);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private void cascade(Slot slot) {
+        Timeout timeout = slot.clear();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            add(timeout);
+            timeout = next;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core.management;
+
+import javax.management.MBeanException;
+import javax.management.openmbean.TabularData;
+
+/**
+ * Scheduler MBean.
+ */
+public interface SchedulerMBean {
+
+    /**
+     * Get the scheduled tasks and their execution statistics.
+     * Durations and lateness are given in milliseconds, times in milliseconds since the epoch.
+     *
+     * @return a tabular data containing the scheduled tasks.
+     * @throws MBeanException
+     */
+    TabularData getTasks() throws MBeanException;
+
+    /**
+     * Get the last executions of a task.
+     *
+     * @param id the task id.
+     * @return a tabular data containing the last executions, most recent first.
+     * @throws MBeanException
+     */
+    TabularData getHistory(String id) throws MBeanException;
+
+    /**
+     * Execute a task now, whatever its schedule.
+     *
+     * @param id the task id.
+     * @throws MBeanException if the task does not exist or is already running and does not allow concurrent executions.
+     */
+    void trigger(String id) throws MBeanException;
+
+}
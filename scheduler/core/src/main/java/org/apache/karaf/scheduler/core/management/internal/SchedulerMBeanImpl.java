@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core.management.internal;
+
+import java.util.List;
+
+import javax.management.MBeanException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.karaf.scheduler.core.KarafTimerTask;
+import org.apache.karaf.scheduler.core.TaskExecution;
+import org.apache.karaf.scheduler.core.TaskScheduler;
+import org.apache.karaf.scheduler.core.TaskStatistics;
+import org.apache.karaf.scheduler.core.management.SchedulerMBean;
+
+/**
+ * Implementation of the Scheduler MBean.
+ */
+public class SchedulerMBeanImpl extends StandardMBean implements SchedulerMBean {
+
+    private static final String[] TASK_ITEMS = {
+            "Id", "Schedule", "Running", "Executions", "Failures", "Skipped", "Misfires",
+            "LastRun", "LastDuration", "AverageDuration", "MaxDuration", "AverageLateness", "MaxLateness",
+            "NextRun", "LastFailure"
+    };
+
+    private static final String[] EXECUTION_ITEMS = {
+            "Index", "ScheduledTime", "StartTime", "Duration", "Lateness", "Manual", "Failure"
+    };
+
+    private final TaskScheduler scheduler;
+
+    public SchedulerMBeanImpl(TaskScheduler scheduler) throws NotCompliantMBeanException {
+        super(SchedulerMBean.class);
+        this.scheduler = scheduler;
+    }
+
+    public TabularData getTasks() throws MBeanException {
+        try {
+            CompositeType taskType = new CompositeType("Task", "Scheduled task", TASK_ITEMS,
+                    new String[]{"Id of the task", "Schedule of the task", "Number of running executions",
+                            "Number of completed executions", "Number of failed executions",
+                            "Number of executions skipped because the task was running",
+                            "Number of executions skipped because they started too late",
+                            "Start time of the last execution", "Duration of the last execution",
+                            "Average duration of the executions", "Maximum duration of the executions",
+                            "Average lateness of the scheduled executions", "Maximum lateness of the scheduled executions",
+                            "Next time the task is triggered", "Error of the last failed execution"},
+                    new OpenType[]{SimpleType.STRING, SimpleType.STRING, SimpleType.INTEGER,
+                            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.STRING});
+            TabularType tableType = new TabularType("Tasks", "Table of the scheduled tasks", taskType, new String[]{"Id"});
+            TabularData table = new TabularDataSupport(tableType);
+            for (KarafTimerTask task : scheduler.getTasks()) {
+                TaskStatistics statistics = scheduler.getStatistics(task.getId());
+                if (statistics == null) {
+                    // unscheduled meanwhile
+                    continue;
+                }
+                TaskExecution last = statistics.getLastExecution();
+                TaskExecution failure = statistics.getLastFailure();
+                table.put(new CompositeDataSupport(taskType, TASK_ITEMS, new Object[]{
+                        task.getId(), task.getSchedule(), statistics.getRunning(),
+                        statistics.getExecutions(), statistics.getFailures(), statistics.getSkipped(), statistics.getMisfires(),
+                        last != null ? last.getStartTime() : -1L, last != null ? last.getDuration() : -1L,
+                        statistics.getAverageDuration(), statistics.getMaxDuration(),
+                        statistics.getAverageLateness(), statistics.getMaxLateness(),
+                        scheduler.getNextFireTime(task.getId()), failure != null ? failure.getFailure() : null}));
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    public TabularData getHistory(String id) throws MBeanException {
+        TaskStatistics statistics = scheduler.getStatistics(id);
+        if (statistics == null) {
+            throw new MBeanException(null, "Task " + id + " does not exist");
+        }
+        try {
+            CompositeType executionType = new CompositeType("Execution", "Task execution", EXECUTION_ITEMS,
+                    new String[]{"Index of the execution, 0 being the most recent", "Time at which the execution was due",
+                            "Start time of the execution", "Duration of the execution",
+                            "Delay between the scheduled time and the start of the execution",
+                            "Whether the execution has been triggered manually", "Error thrown by the execution"},
+                    new OpenType[]{SimpleType.INTEGER, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                            SimpleType.LONG, SimpleType.BOOLEAN, SimpleType.STRING});
+            TabularType tableType = new TabularType("Executions", "Table of the last executions", executionType, new String[]{"Index"});
+            TabularData table = new TabularDataSupport(tableType);
+            List<TaskExecution> history = statistics.getHistory();
+            for (int i = 0; i < history.size(); i++) {
+                TaskExecution execution = history.get(i);
+                CompositeData data = new CompositeDataSupport(executionType, EXECUTION_ITEMS, new Object[]{
+                        i, execution.getScheduledTime(), execution.getStartTime(), execution.getDuration(),
+                        execution.getLateness(), execution.isManual(), execution.getFailure()});
+                table.put(data);
+            }
+            return table;
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+    }
+
+    public void trigger(String id) throws MBeanException {
+        boolean triggered;
+        try {
+            triggered = scheduler.trigger(id);
+        } catch (Exception e) {
+            throw new MBeanException(null, e.getMessage());
+        }
+        if (!triggered) {
+            throw new MBeanException(null, "Task " + id + " is already running");
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class CronExpressionTest {
+
+    private static final TimeZone PARIS = TimeZone.getTimeZone("Europe/Paris");
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void testDaily() {
+        assertNext("0 12 * * *", time(2013, 1, 1, 13, 0, 0), time(2013, 1, 2, 12, 0, 0));
+        assertNext("0 12 * * *", time(2013, 1, 1, 11, 59, 59), time(2013, 1, 1, 12, 0, 0));
+        // strictly after
+        assertNext("0 12 * * *", time(2013, 1, 1, 12, 0, 0), time(2013, 1, 2, 12, 0, 0));
+        assertNext("@daily", time(2013, 12, 31, 1, 0, 0), time(2014, 1, 1, 0, 0, 0));
+    }
+
+    @Test
+    public void testSeconds() {
+        assertNext("30 * * * * *", time(2013, 1, 1, 10, 0, 30), time(2013, 1, 1, 10, 1, 30));
+        assertNext("*/20 * * * * *", time(2013, 1, 1, 10, 0, 41), time(2013, 1, 1, 10, 1, 0));
+    }
+
+    @Test
+    public void testRangesAndSteps() {
+        // friday evening to monday morning
+        assertNext("*/15 9-17 * * MON-FRI", time(2013, 1, 4, 17, 50, 0), time(2013, 1, 7, 9, 0, 0));
+        assertNext("*/15 9-17 * * MON-FRI", time(2013, 1, 7, 9, 0, 0), time(2013, 1, 7, 9, 15, 0));
+        assertNext("10-30/10 * * * *", time(2013, 1, 1, 10, 25, 0), time(2013, 1, 1, 10, 30, 0));
+        assertNext("10-30/10 * * * *", time(2013, 1, 1, 10, 30, 0), time(2013, 1, 1, 11, 10, 0));
+        assertNext("0 0 1 JAN,jul *", time(2013, 2, 1, 0, 0, 0), time(2013, 7, 1, 0, 0, 0));
+        // sunday as 0 and 7
+        assertNext("0 0 * * 7", time(2013, 1, 1, 0, 0, 0), time(2013, 1, 6, 0, 0, 0));
+        assertNext("0 0 * * 0", time(2013, 1, 1, 0, 0, 0), time(2013, 1, 6, 0, 0, 0));
+    }
+
+    @Test
+    public void testDayOfMonthOrDayOfWeek() {
+        // friday the 6th comes before the 13th
+        assertNext("0 0 13 * FRI", time(2013, 9, 1, 0, 0, 0), time(2013, 9, 6, 0, 0, 0));
+        assertNext("0 0 13 * ?", time(2013, 9, 1, 0, 0, 0), time(2013, 9, 13, 0, 0, 0));
+    }
+
+    @Test
+    public void testLastDayOfMonth() {
+        assertNext("0 0 L * *", time(2013, 2, 1, 0, 0, 0), time(2013, 2, 28, 0, 0, 0));
+        assertNext("0 0 L * *", time(2012, 2, 1, 0, 0, 0), time(2012, 2, 29, 0, 0, 0));
+        assertNext("0 0 L * *", time(2013, 4, 30, 0, 0, 0), time(2013, 5, 31, 0, 0, 0));
+        assertNext("0 0 1,L * *", time(2013, 4, 2, 0, 0, 0), time(2013, 4, 30, 0, 0, 0));
+    }
+
+    @Test
+    public void testWeekdays() {
+        // march 31st 2013 is a sunday
+        assertNext("0 0 LW * *", time(2013, 3, 1, 0, 0, 0), time(2013, 3, 29, 0, 0, 0));
+        assertNext("0 0 LW * *", time(2013, 4, 1, 0, 0, 0), time(2013, 4, 30, 0, 0, 0));
+        // june 15th 2013 is a saturday, september 15th a sunday
+        assertNext("0 0 15W * *", time(2013, 6, 1, 0, 0, 0), time(2013, 6, 14, 0, 0, 0));
+        assertNext("0 0 15W * *", time(2013, 9, 1, 0, 0, 0), time(2013, 9, 16, 0, 0, 0));
+        assertNext("0 0 15W * *", time(2013, 10, 1, 0, 0, 0), time(2013, 10, 15, 0, 0, 0));
+        // june 1st 2013 is a saturday, the nearest weekday in the month is monday 3rd
+        assertNext("0 0 1W * *", time(2013, 5, 31, 12, 0, 0), time(2013, 6, 3, 0, 0, 0));
+        // march 31st 2013 is a sunday, the nearest weekday in the month is friday 29th
+        assertNext("0 0 31W * *", time(2013, 3, 1, 0, 0, 0), time(2013, 3, 29, 0, 0, 0));
+        // no 31st in april
+        assertNext("0 0 31W * *", time(2013, 4, 1, 0, 0, 0), time(2013, 5, 31, 0, 0, 0));
+    }
+
+    @Test
+    public void testLastDayOfWeek() {
+        assertNext("0 0 * * 5L", time(2013, 1, 1, 0, 0, 0), time(2013, 1, 25, 0, 0, 0));
+        assertNext("0 0 * * FRIL", time(2013, 1, 25, 0, 0, 0), time(2013, 2, 22, 0, 0, 0));
+        assertNext("0 0 * * 0L", time(2013, 3, 1, 0, 0, 0), time(2013, 3, 31, 0, 0, 0));
+    }
+
+    @Test
+    public void testNthDayOfWeek() {
+        assertNext("0 0 * * MON#2", time(2013, 1, 1, 0, 0, 0), time(2013, 1, 14, 0, 0, 0));
+        assertNext("0 0 * * 1#1", time(2013, 1, 14, 0, 0, 0), time(2013, 2, 4, 0, 0, 0));
+        // no fifth monday in february and march 2013
+        assertNext("0 0 * * 1#5", time(2013, 2, 1, 0, 0, 0), time(2013, 4, 29, 0, 0, 0));
+        assertNext("0 0 * * 7#1", time(2013, 1, 1, 0, 0, 0), time(2013, 1, 6, 0, 0, 0));
+    }
+
+    @Test
+    public void testDaylightSavingTimeStart() {
+        // clocks go from 2:00 to 3:00 on march 31st 2013, 2:30 does not exist that day
+        assertNext("30 2 * * *", time(2013, 3, 30, 3, 0, 0), time(2013, 4, 1, 2, 30, 0));
+        assertNext("30 2 * * *", time(2013, 3, 31, 1, 0, 0), time(2013, 4, 1, 2, 30, 0));
+        assertNext("0 * * * *", time(2013, 3, 31, 1, 30, 0), time(2013, 3, 31, 3, 0, 0));
+    }
+
+    @Test
+    public void testDaylightSavingTimeEnd() {
+        // clocks go from 3:00 back to 2:00 on october 27th 2013, 2:30 happens twice
+        long first = utc(2013, 10, 27, 0, 30, 0);
+        assertNext("30 2 * * *", utc(2013, 10, 26, 23, 0, 0), first);
+        assertNext("30 2 * * *", first, time(2013, 10, 28, 2, 30, 0));
+        // the hours are not restricted, fire every hour
+        assertNext("0 * * * *", utc(2013, 10, 27, 0, 0, 0), utc(2013, 10, 27, 1, 0, 0));
+        assertNext("0 * * * *", utc(2013, 10, 27, 1, 0, 0), utc(2013, 10, 27, 2, 0, 0));
+    }
+
+    @Test
+    public void testNeverFires() {
+        assertEquals(-1, new CronExpression("0 0 30 2 *", PARIS).getNextFireTime(time(2013, 1, 1, 0, 0, 0)));
+    }
+
+    @Test
+    public void testInvalid() {
+        String[] invalid = { "0 0 * *", "0 0 32 * *", "60 * * * *", "0 0 * * MON#6", "0 0 * * FOO",
+                "0 0 5-1 * *", "0 0 LX * *", "0 0 0W * *", "0 0 * * 8L", "* * * * * * *",
+                "*/61 * * * * *", "0 0 1/2147483647 * *" };
+        for (String expression : invalid) {
+            try {
+                new CronExpression(expression, PARIS);
+                fail("Expected IllegalArgumentException for " + expression);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static void assertNext(String expression, long after, long expected) {
+        long next = new CronExpression(expression, PARIS).getNextFireTime(after);
+        assertEquals(expression + " after " + format(after), format(expected), format(next));
+    }
+
+    private static String format(long time) {
+        Calendar calendar = Calendar.getInstance(PARIS);
+        calendar.setTimeInMillis(time);
+        return String.format("%tF %<tT %<tZ", calendar);
+    }
+
+    private static long time(int year, int month, int day, int hour, int minute, int second) {
+        return time(PARIS, year, month, day, hour, minute, second);
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute, int second) {
+        return time(UTC, year, month, day, hour, minute, second);
+    }
+
+    private static long time(TimeZone timeZone, int year, int month, int day, int hour, int minute, int second) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+
+public class RunnableServiceListenerTest {
+
+    private TaskScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new TaskScheduler(1);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testSchedule() {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(KarafTimerTask.PERIOD_PROPERTY, " 3600000 ");
+        properties.put(KarafTimerTask.DELAY_PROPERTY, "3600000");
+        properties.put(KarafTimerTask.FIXED_RATE_PROPERTY, "true");
+        KarafTimerTask<?> task = register("task", properties);
+
+        assertEquals("task", task.getId());
+        assertEquals(Long.valueOf(3600000), task.getSchedulePeriod());
+        assertEquals(3600000, task.getDelay());
+        assertTrue(task.isFixedRate());
+        assertEquals(ConcurrencyPolicy.SKIP, task.getConcurrencyPolicy());
+        assertEquals(MisfirePolicy.FIRE, task.getMisfirePolicy());
+    }
+
+    @Test
+    public void testNotScheduledWithoutSchedule() {
+        register("task", new HashMap<String, Object>());
+        assertTrue(scheduler.getTasks().isEmpty());
+    }
+
+    @Test
+    public void testPolicies() {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(KarafTimerTask.PERIOD_PROPERTY, 3600000L);
+        properties.put(KarafTimerTask.DELAY_PROPERTY, 3600000L);
+        properties.put(KarafTimerTask.CONCURRENCY_PROPERTY, "queue");
+        properties.put(KarafTimerTask.MISFIRE_PROPERTY, " Skip ");
+        KarafTimerTask<?> task = register("task", properties);
+
+        assertEquals(ConcurrencyPolicy.QUEUE, task.getConcurrencyPolicy());
+        assertEquals(MisfirePolicy.SKIP, task.getMisfirePolicy());
+    }
+
+    @Test
+    public void testPoliciesDoNotDependOnDefaultLocale() {
+        Locale locale = Locale.getDefault();
+        // the upper case of "i" is a dotted capital I in Turkish
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put(KarafTimerTask.PERIOD_PROPERTY, 3600000L);
+            properties.put(KarafTimerTask.DELAY_PROPERTY, 3600000L);
+            properties.put(KarafTimerTask.CONCURRENCY_PROPERTY, "skip");
+            properties.put(KarafTimerTask.MISFIRE_PROPERTY, "fire");
+            KarafTimerTask<?> task = register("task", properties);
+
+            assertEquals(ConcurrencyPolicy.SKIP, task.getConcurrencyPolicy());
+            assertEquals(MisfirePolicy.FIRE, task.getMisfirePolicy());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void testInvalidPoliciesUseDefaults() {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(KarafTimerTask.PERIOD_PROPERTY, 3600000L);
+        properties.put(KarafTimerTask.DELAY_PROPERTY, 3600000L);
+        properties.put(KarafTimerTask.CONCURRENCY_PROPERTY, "sometimes");
+        properties.put(KarafTimerTask.MISFIRE_PROPERTY, "");
+        KarafTimerTask<?> task = register("task", properties);
+
+        // the task is still scheduled
+        assertEquals(1, scheduler.getTasks().size());
+        assertEquals(ConcurrencyPolicy.SKIP, task.getConcurrencyPolicy());
+        assertEquals(MisfirePolicy.FIRE, task.getMisfirePolicy());
+    }
+
+    @Test
+    public void testInvalidScheduleNotScheduled() {
+        String[][] invalid = { { KarafTimerTask.CRON_PROPERTY, "0 0 32 * *" },
+                { KarafTimerTask.PERIOD_PROPERTY, "hourly" }, { KarafTimerTask.DELAY_PROPERTY, "1h" } };
+        for (String[] property : invalid) {
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put(property[0], property[1]);
+            assertNull(register("task", properties));
+        }
+    }
+
+    @Test
+    public void testUnregistering() {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(KarafTimerTask.PERIOD_PROPERTY, 3600000L);
+        properties.put(KarafTimerTask.DELAY_PROPERTY, 3600000L);
+        register("task", properties);
+        assertFalse(scheduler.getTasks().isEmpty());
+
+        ServiceReference reference = reference("task", properties);
+        new RunnableServiceListener(createMock(BundleContext.class), scheduler)
+                .serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, reference));
+        assertTrue(scheduler.getTasks().isEmpty());
+    }
+
+    private KarafTimerTask<?> register(String id, Map<String, Object> properties) {
+        ServiceReference reference = reference(id, properties);
+        BundleContext bundleContext = createMock(BundleContext.class);
+        expect(bundleContext.getService(reference)).andReturn(new Runnable() {
+            public void run() {
+            }
+        });
+        expect(bundleContext.ungetService(reference)).andReturn(true).anyTimes();
+        replay(bundleContext);
+        new RunnableServiceListener(bundleContext, scheduler)
+                .serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, reference));
+        List<KarafTimerTask> tasks = scheduler.getTasks();
+        return tasks.isEmpty() ? null : tasks.get(0);
+    }
+
+    private static ServiceReference reference(String id, Map<String, Object> properties) {
+        ServiceReference reference = createNiceMock(ServiceReference.class);
+        expect(reference.getProperty(KarafTimerTask.ID_PROPERTY)).andReturn(id).anyTimes();
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            expect(reference.getProperty(property.getKey())).andReturn(property.getValue()).anyTimes();
+        }
+        replay(reference);
+        return reference;
+    }
+
+}
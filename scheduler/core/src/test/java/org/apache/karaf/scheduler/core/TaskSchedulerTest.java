@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TaskSchedulerTest {
+
+    private TaskScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testOneShotTask() throws Exception {
+        scheduler = new TaskScheduler(2);
+        final CountDownLatch latch = new CountDownLatch(1);
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("once", new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        });
+        task.setDelay(20);
+        scheduler.schedule(task);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        waitFor(new Condition() {
+            public boolean isTrue() {
+                return scheduler.getTasks().isEmpty();
+            }
+        });
+        assertNull(scheduler.getStatistics("once"));
+    }
+
+    @Test
+    public void testSkipPolicy() throws Exception {
+        scheduler = new TaskScheduler(4);
+        ConcurrencyCounter counter = new ConcurrencyCounter(100);
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("skip", counter, 10L);
+        task.setFixedRate(true);
+        task.setConcurrencyPolicy(ConcurrencyPolicy.SKIP);
+        scheduler.schedule(task);
+        final TaskStatistics statistics = scheduler.getStatistics("skip");
+        waitFor(new Condition() {
+            public boolean isTrue() {
+                return statistics.getExecutions() >= 2 && statistics.getSkipped() >= 5;
+            }
+        });
+        assertEquals(1, counter.max.get());
+    }
+
+    @Test
+    public void testAllowPolicy() throws Exception {
+        scheduler = new TaskScheduler(4);
+        final ConcurrencyCounter counter = new ConcurrencyCounter(100);
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("allow", counter, 10L);
+        task.setFixedRate(true);
+        task.setConcurrencyPolicy(ConcurrencyPolicy.ALLOW);
+        scheduler.schedule(task);
+        waitFor(new Condition() {
+            public boolean isTrue() {
+                return counter.max.get() > 1;
+            }
+        });
+        assertEquals(0, scheduler.getStatistics("allow").getSkipped());
+    }
+
+    @Test
+    public void testQueuePolicyCoalescesTriggers() throws Exception {
+        scheduler = new TaskScheduler(4);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("queue", new Runnable() {
+            public void run() {
+                if (executions.incrementAndGet() == 1) {
+                    running.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // stop waiting
+                    }
+                }
+            }
+        }, 3600000L);
+        task.setDelay(3600000);
+        task.setConcurrencyPolicy(ConcurrencyPolicy.QUEUE);
+        scheduler.schedule(task);
+
+        assertTrue(scheduler.trigger("queue"));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(scheduler.trigger("queue"));
+        assertTrue(scheduler.trigger("queue"));
+        assertTrue(scheduler.trigger("queue"));
+        release.countDown();
+
+        final TaskStatistics statistics = scheduler.getStatistics("queue");
+        waitFor(new Condition() {
+            public boolean isTrue() {
+                return statistics.getExecutions() == 2 && statistics.getRunning() == 0;
+            }
+        });
+        Thread.sleep(100);
+        assertEquals(2, executions.get());
+        assertEquals(2, statistics.getSkipped());
+    }
+
+    @Test
+    public void testManualTriggerSkippedWhileRunning() throws Exception {
+        scheduler = new TaskScheduler(2);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("manual", new Runnable() {
+            public void run() {
+                running.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // stop waiting
+                }
+            }
+        }, 3600000L);
+        task.setDelay(3600000);
+        scheduler.schedule(task);
+
+        assertTrue(scheduler.trigger("manual"));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertFalse(scheduler.trigger("manual"));
+        release.countDown();
+        assertEquals(1, scheduler.getStatistics("manual").getSkipped());
+    }
+
+    @Test
+    public void testMisfireSkip() throws Exception {
+        // a single worker kept busy makes the executions of the other task start late
+        scheduler = new TaskScheduler(1);
+        KarafTimerTask<Runnable> blocker = new KarafTimerTask<Runnable>("blocker", new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    // stop waiting
+                }
+            }
+        });
+        scheduler.schedule(blocker);
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("late", new ConcurrencyCounter(0), 20L);
+        task.setFixedRate(true);
+        task.setConcurrencyPolicy(ConcurrencyPolicy.ALLOW);
+        task.setMisfirePolicy(MisfirePolicy.SKIP);
+        scheduler.schedule(task);
+
+        final TaskStatistics statistics = scheduler.getStatistics("late");
+        waitFor(new Condition() {
+            public boolean isTrue() {
+                return statistics.getMisfires() > 0 && statistics.getExecutions() > 0;
+            }
+        });
+    }
+
+    @Test
+    public void testFailuresDoNotStopTheTask() throws Exception {
+        scheduler = new TaskScheduler(1);
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("failing", new Runnable() {
+            public void run() {
+                throw new IllegalStateException("failure");
+            }
+        }, 10L);
+        scheduler.schedule(task);
+        final TaskStatistics statistics = scheduler.getStatistics("failing");
+        waitFor(new Condition() {
+            public boolean isTrue() {
+                return statistics.getFailures() >= 3;
+            }
+        });
+        assertEquals("java.lang.IllegalStateException: failure", statistics.getLastFailure().getFailure());
+    }
+
+    @Test
+    public void testUnschedule() throws Exception {
+        scheduler = new TaskScheduler(1);
+        final AtomicInteger executions = new AtomicInteger();
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("task", new Runnable() {
+            public void run() {
+                executions.incrementAndGet();
+            }
+        }, 10L);
+        scheduler.schedule(task);
+        waitFor(new Condition() {
+            public boolean isTrue() {
+                return executions.get() > 0;
+            }
+        });
+        scheduler.unschedule("task");
+        assertTrue(scheduler.getTasks().isEmpty());
+        Thread.sleep(50);
+        int count = executions.get();
+        Thread.sleep(100);
+        assertEquals(count, executions.get());
+    }
+
+    private interface Condition {
+        boolean isTrue();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!condition.isTrue()) {
+            if (System.currentTimeMillis() > timeout) {
+                throw new AssertionError("Condition not met within 5 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Records the maximum number of concurrent executions.
+     */
+    private static class ConcurrencyCounter implements Runnable {
+        final AtomicInteger current = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final long duration;
+
+        ConcurrencyCounter(long duration) {
+            this.duration = duration;
+        }
+
+        public void run() {
+            int count = current.incrementAndGet();
+            int old;
+            while ((old = max.get()) < count && !max.compareAndSet(old, count)) {
+                // retry
+            }
+            try {
+                Thread.sleep(duration);
+            } catch (InterruptedException e) {
+                // stop waiting
+            } finally {
+                current.decrementAndGet();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TaskStatisticsTest {
+
+    @Test
+    public void testNoExecution() {
+        TaskStatistics statistics = new TaskStatistics();
+        assertEquals(0, statistics.getExecutions());
+        assertEquals(0, statistics.getAverageDuration());
+        assertEquals(0, statistics.getAverageLateness());
+        assertEquals(0, statistics.getDurationPercentile(50));
+        assertEquals(0, statistics.getDurationPercentile(99));
+        assertNull(statistics.getLastExecution());
+        assertNull(statistics.getLastFailure());
+        assertTrue(statistics.getHistory().isEmpty());
+    }
+
+    @Test
+    public void testCounters() {
+        TaskStatistics statistics = new TaskStatistics();
+        statistics.started();
+        assertEquals(1, statistics.getRunning());
+        TaskExecution first = new TaskExecution(1000, 1010, 30, false, null);
+        statistics.completed(first);
+        statistics.started();
+        TaskExecution second = new TaskExecution(2000, 2100, 10, false, "java.lang.IllegalStateException");
+        statistics.completed(second);
+        statistics.started();
+        // manual executions are not late
+        statistics.completed(new TaskExecution(0, 5000, 20, true, null));
+        statistics.skipped();
+        statistics.misfired();
+
+        assertEquals(0, statistics.getRunning());
+        assertEquals(3, statistics.getExecutions());
+        assertEquals(1, statistics.getFailures());
+        assertEquals(1, statistics.getSkipped());
+        assertEquals(1, statistics.getMisfires());
+        assertEquals(20, statistics.getAverageDuration());
+        assertEquals(30, statistics.getMaxDuration());
+        assertEquals(55, statistics.getAverageLateness());
+        assertEquals(100, statistics.getMaxLateness());
+        assertSame(second, statistics.getLastFailure());
+        assertTrue(statistics.getLastExecution().isManual());
+    }
+
+    @Test
+    public void testDurationHistogram() {
+        TaskStatistics statistics = new TaskStatistics();
+        long[] durations = { 0, 1, 3, 4, 7, 100, 1L << 20 };
+        for (long duration : durations) {
+            statistics.completed(new TaskExecution(0, 0, duration, false, null));
+        }
+        long[] expected = new long[TaskStatistics.BUCKETS];
+        expected[0] = 1;
+        expected[1] = 1;
+        expected[2] = 1;
+        expected[3] = 2;
+        expected[7] = 1;
+        expected[TaskStatistics.BUCKETS - 1] = 1;
+        assertArrayEquals(expected, statistics.getDurationHistogram());
+
+        assertEquals(1, statistics.getDurationPercentile(1));
+        assertEquals(4, statistics.getDurationPercentile(40));
+        assertEquals(8, statistics.getDurationPercentile(70));
+        assertEquals(128, statistics.getDurationPercentile(80));
+        assertEquals(-1, statistics.getDurationPercentile(100));
+    }
+
+    @Test
+    public void testHistory() {
+        TaskStatistics statistics = new TaskStatistics();
+        int count = TaskStatistics.HISTORY_SIZE + 5;
+        for (int i = 0; i < count; i++) {
+            statistics.completed(new TaskExecution(i, i, 0, false, null));
+        }
+        List<TaskExecution> history = statistics.getHistory();
+        assertEquals(TaskStatistics.HISTORY_SIZE, history.size());
+        for (int i = 0; i < history.size(); i++) {
+            assertEquals(count - 1 - i, history.get(i).getStartTime());
+        }
+    }
+
+}
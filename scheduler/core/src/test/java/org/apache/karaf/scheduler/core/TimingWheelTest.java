@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    private TimingWheel wheel;
+
+    @Before
+    public void setUp() {
+        wheel = new TimingWheel(1, Executors.defaultThreadFactory());
+    }
+
+    @After
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    public void testExpiresInOrderAndNotEarly() throws Exception {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Long> early = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch latch = new CountDownLatch(3);
+        long now = System.currentTimeMillis();
+        int[] delays = { 60, 20, 40 };
+        for (final int delay : delays) {
+            final long deadline = now + delay;
+            wheel.schedule(new Runnable() {
+                public void run() {
+                    long late = System.currentTimeMillis() - deadline;
+                    if (late < 0) {
+                        early.add(late);
+                    }
+                    order.add(delay);
+                    latch.countDown();
+                }
+            }, deadline);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.<Long>emptyList(), early);
+        assertEquals(Arrays.asList(20, 40, 60), order);
+    }
+
+    @Test
+    public void testCascading() throws Exception {
+        // beyond the first wheel and the second wheel, timeouts have to be cascaded down
+        final CountDownLatch latch = new CountDownLatch(2);
+        final List<Long> early = Collections.synchronizedList(new ArrayList<Long>());
+        long now = System.currentTimeMillis();
+        long[] deadlines = { now + TimingWheel.SLOTS * 3 + 7, now + TimingWheel.SLOTS * TimingWheel.SLOTS / 8 };
+        for (final long deadline : deadlines) {
+            wheel.schedule(new Runnable() {
+                public void run() {
+                    if (System.currentTimeMillis() < deadline) {
+                        early.add(deadline);
+                    }
+                    latch.countDown();
+                }
+            }, deadline);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.<Long>emptyList(), early);
+    }
+
+    @Test
+    public void testPastDeadline() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        wheel.schedule(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, System.currentTimeMillis() - 1000);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final CountDownLatch cancelledRun = new CountDownLatch(1);
+        final CountDownLatch run = new CountDownLatch(1);
+        long now = System.currentTimeMillis();
+        TimingWheel.Timeout cancelled = wheel.schedule(new Runnable() {
+            public void run() {
+                cancelledRun.countDown();
+            }
+        }, now + 100);
+        TimingWheel.Timeout expired = wheel.schedule(new Runnable() {
+            public void run() {
+                run.countDown();
+            }
+        }, now + 20);
+        // let the wheel thread link the timeouts in their slots before cancelling
+        Thread.sleep(10);
+        assertTrue(cancelled.cancel());
+        assertTrue(cancelled.isCancelled());
+        assertFalse(cancelled.cancel());
+
+        assertTrue(run.await(5, TimeUnit.SECONDS));
+        assertFalse(expired.cancel());
+        assertFalse(expired.isCancelled());
+        assertFalse(cancelledRun.await(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testCancelImmediately() throws Exception {
+        final CountDownLatch run = new CountDownLatch(1);
+        // cancelled whether or not the wheel thread has already linked it in its slot
+        TimingWheel.Timeout timeout = wheel.schedule(new Runnable() {
+            public void run() {
+                run.countDown();
+            }
+        }, System.currentTimeMillis() + 50);
+        assertTrue(timeout.cancel());
+        assertFalse(run.await(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testScheduleAfterStop() {
+        wheel.stop();
+        try {
+            wheel.schedule(new Runnable() {
+                public void run() {
+                }
+            }, System.currentTimeMillis());
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+}
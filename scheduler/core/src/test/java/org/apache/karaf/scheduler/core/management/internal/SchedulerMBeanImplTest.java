@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.scheduler.core.management.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.management.MBeanException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.karaf.scheduler.core.KarafTimerTask;
+import org.apache.karaf.scheduler.core.TaskScheduler;
+import org.apache.karaf.scheduler.core.TaskStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchedulerMBeanImplTest {
+
+    private TaskScheduler scheduler;
+    private SchedulerMBeanImpl mbean;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TaskScheduler(2);
+        mbean = new SchedulerMBeanImpl(scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testTasks() throws Exception {
+        assertTrue(mbean.getTasks().isEmpty());
+
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("task", new Runnable() {
+            public void run() {
+            }
+        }, 3600000L);
+        task.setDelay(3600000);
+        scheduler.schedule(task);
+
+        TabularData tasks = mbean.getTasks();
+        assertEquals(1, tasks.size());
+        CompositeData data = tasks.get(new Object[] { "task" });
+        assertEquals("every 3600000 ms", data.get("Schedule"));
+        assertEquals(0L, data.get("Executions"));
+        assertEquals(-1L, data.get("LastRun"));
+        assertEquals(-1L, data.get("LastDuration"));
+        assertTrue((Long) data.get("NextRun") > System.currentTimeMillis());
+        assertNull(data.get("LastFailure"));
+    }
+
+    @Test
+    public void testTriggerAndHistory() throws Exception {
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("failing", new Runnable() {
+            public void run() {
+                throw new IllegalStateException("failure");
+            }
+        }, 3600000L);
+        task.setDelay(3600000);
+        scheduler.schedule(task);
+
+        mbean.trigger("failing");
+        waitForExecutions(1);
+        mbean.trigger("failing");
+        waitForExecutions(2);
+
+        CompositeData data = mbean.getTasks().get(new Object[] { "failing" });
+        assertEquals(2L, data.get("Executions"));
+        assertEquals(2L, data.get("Failures"));
+        assertEquals("java.lang.IllegalStateException: failure", data.get("LastFailure"));
+
+        TabularData history = mbean.getHistory("failing");
+        assertEquals(2, history.size());
+        CompositeData last = history.get(new Object[] { 0 });
+        assertEquals(Boolean.TRUE, last.get("Manual"));
+        assertEquals("java.lang.IllegalStateException: failure", last.get("Failure"));
+        assertTrue((Long) last.get("StartTime") >= (Long) history.get(new Object[] { 1 }).get("StartTime"));
+    }
+
+    @Test
+    public void testUnknownTask() throws Exception {
+        try {
+            mbean.getHistory("unknown");
+            fail("MBeanException expected");
+        } catch (MBeanException e) {
+            assertEquals("Task unknown does not exist", e.getMessage());
+        }
+        try {
+            mbean.trigger("unknown");
+            fail("MBeanException expected");
+        } catch (MBeanException e) {
+            assertEquals("Task unknown does not exist", e.getMessage());
+        }
+    }
+
+    private void waitForExecutions(long executions) throws InterruptedException {
+        TaskStatistics statistics = scheduler.getStatistics("failing");
+        long timeout = System.currentTimeMillis() + 5000;
+        while (statistics.getExecutions() < executions || statistics.getRunning() > 0) {
+            if (System.currentTimeMillis() > timeout) {
+                throw new AssertionError("Task not executed within 5 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+}
@@ -16,9 +16,21 @@
  */
 package org.apache.karaf.util;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 /**
  * Contain various methods that are useful for deploying artifacts.
  */
@@ -32,6 +44,35 @@ public final class DeployerUtils {
     private static final Pattern ARTIFACT_MATCHER = Pattern.compile("(.+)(?:-(\\d+)(?:\\.(\\d+)(?:\\.(\\d+))?)?(?:[^a-zA-Z0-9](.*))?)(?:\\.([^\\.]+))", Pattern.DOTALL);
     private static final Pattern FUZZY_MODIFIDER = Pattern.compile("(?:\\d+[.-])*(.*)", Pattern.DOTALL);
 
+    private static final int ROOT_ELEMENT_CACHE_SIZE = 256;
+
+    private static XMLInputFactory xmlInputFactory;
+
+    /**
+     * Root elements of the files already sniffed, keyed by path.
+     * Guarded by itself.
+     */
+    private static final Map<String, RootElement> ROOT_ELEMENTS = new LinkedHashMap<String, RootElement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RootElement> eldest) {
+            return size() > ROOT_ELEMENT_CACHE_SIZE;
+        }
+    };
+
+    private static class RootElement {
+        final long lastModified;
+        final long length;
+        final QName name;
+        final Exception error;
+
+        RootElement(long lastModified, long length, QName name, Exception error) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.name = name;
+            this.error = error;
+        }
+    }
+
     /**
      * Heuristic to compute the name and version of a file given it's name on disk
      *
@@ -76,6 +117,76 @@ public final class DeployerUtils {
         }
     }
 
+    /**
+     * Get the name of the root element of an xml file.
+     * Only the beginning of the file is parsed, up to the root element, and the result is
+     * cached until the modification time or the size of the file change.
+     *
+     * @param file the xml file
+     * @return the qualified name of the root element, or <code>null</code> if the file has none
+     * @throws IOException if the file can not be read
+     * @throws XMLStreamException if the file is not well formed before its root element
+     */
+    public static QName getRootElement(File file) throws IOException, XMLStreamException {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        RootElement root;
+        synchronized (ROOT_ELEMENTS) {
+            root = ROOT_ELEMENTS.get(path);
+        }
+        if (root == null || root.lastModified != lastModified || root.length != length) {
+            QName name = null;
+            Exception error = null;
+            try {
+                name = readRootElement(file);
+            } catch (IOException e) {
+                error = e;
+            } catch (XMLStreamException e) {
+                error = e;
+            }
+            root = new RootElement(lastModified, length, name, error);
+            synchronized (ROOT_ELEMENTS) {
+                ROOT_ELEMENTS.put(path, root);
+            }
+        }
+        if (root.error instanceof IOException) {
+            throw (IOException) root.error;
+        } else if (root.error instanceof XMLStreamException) {
+            throw (XMLStreamException) root.error;
+        }
+        return root.name;
+    }
+
+    private static QName readRootElement(File file) throws IOException, XMLStreamException {
+        InputStream is = new FileInputStream(file);
+        try {
+            XMLStreamReader reader = createXMLStreamReader(is);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                        return reader.getName();
+                    }
+                }
+                return null;
+            } finally {
+                reader.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private static synchronized XMLStreamReader createXMLStreamReader(InputStream is) throws XMLStreamException {
+        if (xmlInputFactory == null) {
+            xmlInputFactory = XMLInputFactory.newInstance();
+            xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            // no need to load external DTDs to find the root element
+            xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        }
+        return xmlInputFactory.createXMLStreamReader(is);
+    }
+
     private static void cleanupModifier(StringBuffer result, String modifier) {
         Matcher m = FUZZY_MODIFIDER.matcher(modifier);
         if (m.matches()) {
@@ -16,8 +16,14 @@
  */
 package org.apache.karaf.util;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.osgi.framework.BundleContext;
 
@@ -79,9 +85,271 @@ public class InterpolationHelper {
      * @param properties the property set to perform substitution on
      */
     public static void performSubstitution(Map<String, String> properties, SubstitutionCallback callback) {
+        Evaluation evaluation = new Evaluation(properties, callback);
         for (String name : properties.keySet()) {
             String value = properties.get(name);
-            properties.put(name, substVars(value, name, null, properties, callback));
+            properties.put(name, evaluation.evaluate(name, value));
+        }
+    }
+
+    /**
+     * Parse the given value into a template which can then be evaluated
+     * several times against different properties and callbacks.
+     *
+     * @param value the value to parse
+     * @return the compiled template
+     */
+    public static Template compile(String value) {
+        return new Parser(value).parse();
+    }
+
+    /**
+     * A value parsed into literal text and variable references.
+     * Variable names can themselves contain references, as in <tt>${foo.${bar}}</tt>.
+     */
+    public static final class Template {
+
+        private final String source;
+        private final Object[] segments;
+        private final boolean escaped;
+
+        private Template(String source, List<Object> segments) {
+            this.source = source;
+            this.segments = segments.toArray();
+            this.escaped = source.indexOf(ESCAPE_CHAR) >= 0;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * @return <code>true</code> if the template does not contain any variable reference
+         */
+        public boolean isConstant() {
+            for (Object segment : segments) {
+                if (segment instanceof Template) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the names of the variables directly referenced by this template,
+         *         excluding the ones whose name depends on another variable
+         */
+        public Set<String> getReferences() {
+            Set<String> references = new LinkedHashSet<String>();
+            for (Object segment : segments) {
+                if (segment instanceof Template && ((Template) segment).isConstant()) {
+                    references.add(((Template) segment).source);
+                }
+            }
+            return Collections.unmodifiableSet(references);
+        }
+
+        /**
+         * Evaluate this template, with the same semantic as {@link InterpolationHelper#substVars}.
+         *
+         * @param configProps Set of configuration properties.
+         * @param callback    the callback to obtain substitution values
+         * @return the substituted value
+         * @throws IllegalArgumentException on a recursive variable reference
+         */
+        public String evaluate(Map<String, String> configProps, SubstitutionCallback callback) {
+            return new Evaluation(configProps, callback).evaluate(null, this);
+        }
+
+        public String toString() {
+            return source;
+        }
+    }
+
+    /**
+     * Parses a value the same way {@link #substVars} scans it: a start delimiter
+     * without a matching stop delimiter is kept as literal text.
+     */
+    private static class Parser {
+
+        private final String value;
+        private int pos;
+
+        Parser(String value) {
+            this.value = value;
+        }
+
+        Template parse() {
+            List<Object> segments = new ArrayList<Object>();
+            parse(segments, false);
+            return new Template(value, segments);
+        }
+
+        /**
+         * @return <code>true</code> if the stop delimiter has been found
+         */
+        private boolean parse(List<Object> segments, boolean reference) {
+            StringBuilder literal = new StringBuilder();
+            while (pos < value.length()) {
+                if (value.startsWith(DELIM_START, pos)) {
+                    flush(literal, segments);
+                    pos += DELIM_START.length();
+                    int nameStart = pos;
+                    List<Object> name = new ArrayList<Object>();
+                    if (parse(name, true)) {
+                        segments.add(new Template(value.substring(nameStart, pos - DELIM_STOP.length()), name));
+                    } else {
+                        segments.add(DELIM_START);
+                        segments.addAll(name);
+                    }
+                } else if (reference && value.startsWith(DELIM_STOP, pos)) {
+                    flush(literal, segments);
+                    pos += DELIM_STOP.length();
+                    return true;
+                } else {
+                    literal.append(value.charAt(pos++));
+                }
+            }
+            flush(literal, segments);
+            return false;
+        }
+
+        private void flush(StringBuilder literal, List<Object> segments) {
+            if (literal.length() > 0) {
+                segments.add(literal.toString());
+                literal.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Thrown when a value can not be handled by a compiled template,
+     * in which case the evaluation falls back to {@link #substVars}.
+     */
+    private static class UnsupportedTemplateException extends RuntimeException {
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final UnsupportedTemplateException UNSUPPORTED = new UnsupportedTemplateException();
+
+    /**
+     * Evaluates templates against a set of properties, resolving each referenced
+     * property at most once and detecting reference cycles.
+     */
+    private static class Evaluation {
+
+        private final Map<String, String> configProps;
+        private final SubstitutionCallback callback;
+        private final Map<String, String> resolved = new HashMap<String, String>();
+        private final Set<String> resolving = new HashSet<String>();
+
+        Evaluation(Map<String, String> configProps, SubstitutionCallback callback) {
+            this.configProps = configProps;
+            this.callback = callback;
+        }
+
+        String evaluate(String key, String value) {
+            String result = resolved.get(key);
+            if (result == null) {
+                if (value.indexOf(DELIM_START) < 0) {
+                    result = unescape(value);
+                } else {
+                    result = evaluate(key, compile(value));
+                }
+                resolved.put(key, result);
+            }
+            return result;
+        }
+
+        String evaluate(String key, Template template) {
+            try {
+                if (key != null) {
+                    resolving.add(key);
+                }
+                String result = evaluate(template);
+                if (result.indexOf(DELIM_START) >= 0) {
+                    // unmatched delimiters may combine with substituted values
+                    throw UNSUPPORTED;
+                }
+                return result;
+            } catch (UnsupportedTemplateException e) {
+                return substVars(template.source, key, null, configProps, callback);
+            } finally {
+                resolving.remove(key);
+            }
+        }
+
+        private String evaluate(Template template) {
+            return evaluate(template, false);
+        }
+
+        private String evaluate(Template template, boolean name) {
+            if (template.escaped) {
+                // escaping rules depend on the whole substituted string
+                throw UNSUPPORTED;
+            }
+            if (template.segments.length == 1 && template.segments[0] instanceof String) {
+                return (String) template.segments[0];
+            }
+            StringBuilder sb = new StringBuilder();
+            for (Object segment : template.segments) {
+                if (segment instanceof Template) {
+                    String value = resolve(evaluate((Template) segment, true));
+                    if (value.indexOf(ESCAPE_CHAR) >= 0 || value.indexOf(DELIM_START) >= 0
+                            || name && value.indexOf(DELIM_STOP) >= 0) {
+                        // substituted text which would be rescanned differently than it has been parsed
+                        throw UNSUPPORTED;
+                    }
+                    sb.append(value);
+                } else {
+                    sb.append((String) segment);
+                }
+            }
+            return sb.toString();
+        }
+
+        private String resolve(String variable) {
+            if (resolving.contains(variable)) {
+                throw new IllegalArgumentException("recursive variable reference: " + variable);
+            }
+            String value = resolved.get(variable);
+            if (value != null) {
+                return value;
+            }
+            boolean property = false;
+            if (configProps != null) {
+                value = configProps.get(variable);
+                property = value != null;
+            }
+            if (value == null) {
+                if (variable.length() <= 0) {
+                    return "";
+                }
+                if (callback != null) {
+                    value = callback.getValue(variable);
+                }
+                if (value == null) {
+                    value = System.getProperty(variable, "");
+                }
+            }
+            if (value.indexOf(ESCAPE_CHAR) >= 0) {
+                // not cached, as it still needs to be unescaped
+                throw UNSUPPORTED;
+            }
+            if (value.indexOf(DELIM_START) >= 0) {
+                resolving.add(variable);
+                try {
+                    value = evaluate(compile(value));
+                } finally {
+                    resolving.remove(variable);
+                }
+            }
+            if (property) {
+                resolved.put(variable, value);
+            }
+            return value;
         }
     }
 
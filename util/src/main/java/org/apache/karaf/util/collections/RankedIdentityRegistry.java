@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.apache.karaf.util.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe registry of elements indexed by name and ordered by rank.
+ *
+ * Lookups never lock: each name maps to an immutable array of the elements
+ * registered under that name, sorted by decreasing rank, so retrieving the
+ * best ranked element is a single hash lookup. Elements with the same rank
+ * are kept in registration order. Write operations are serialized and only
+ * copy the array of the name being modified.
+ *
+ * As with {@link CopyOnWriteArrayIdentityList}, elements are compared based
+ * on reference equality instead of object equality.
+ *
+ * @param <K> the name type
+ * @param <E> the element type
+ */
+public class RankedIdentityRegistry<K, E> {
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private static class Registration<K> {
+        final K name;
+        final int rank;
+
+        Registration(K name, int rank) {
+            this.name = name;
+            this.rank = rank;
+        }
+    }
+
+    private final ConcurrentMap<K, Object[]> index = new ConcurrentHashMap<K, Object[]>();
+
+    /**
+     * Registrations of the elements, used to find them back on removal.
+     * Guarded by {@link #lock}.
+     */
+    private final Map<E, Registration<K>> registrations = new IdentityHashMap<E, Registration<K>>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Registers an element.
+     *
+     * @param name    the name under which the element can be looked up
+     * @param rank    the rank of the element, higher ranks are returned first
+     * @param element the element to register
+     * @return <code>false</code> if the exact same element was already registered
+     * @throws NullPointerException if the name or the element is <code>null</code>
+     */
+    public boolean add(K name, int rank, E element) {
+        if (name == null) {
+            throw new NullPointerException("Name of " + element + " is null");
+        }
+        if (element == null) {
+            throw new NullPointerException("Element registered as " + name + " is null");
+        }
+        lock.lock();
+        try {
+            if (registrations.containsKey(element)) {
+                return false;
+            }
+            registrations.put(element, new Registration<K>(name, rank));
+            Object[] old = index.get(name);
+            if (old == null) {
+                old = EMPTY;
+            }
+            int pos = 0;
+            while (pos < old.length && rankOf(old[pos]) >= rank) {
+                pos++;
+            }
+            Object[] data = new Object[old.length + 1];
+            System.arraycopy(old, 0, data, 0, pos);
+            data[pos] = element;
+            System.arraycopy(old, pos, data, pos + 1, old.length - pos);
+            index.put(name, data);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unregisters an element.
+     *
+     * @return <code>false</code> if the element was not registered
+     */
+    public boolean remove(E element) {
+        lock.lock();
+        try {
+            Registration<K> registration = registrations.remove(element);
+            if (registration == null) {
+                return false;
+            }
+            Object[] old = index.get(registration.name);
+            int pos = 0;
+            while (old[pos] != element) {
+                pos++;
+            }
+            if (old.length == 1) {
+                index.remove(registration.name);
+            } else {
+                Object[] data = new Object[old.length - 1];
+                System.arraycopy(old, 0, data, 0, pos);
+                System.arraycopy(old, pos + 1, data, pos, old.length - pos - 1);
+                index.put(registration.name, data);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the element with the highest rank registered under the given name,
+     * or <code>null</code> if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public E get(K name) {
+        Object[] data = name != null ? index.get(name) : null;
+        return data != null ? (E) data[0] : null;
+    }
+
+    /**
+     * Returns all the elements registered under the given name, by decreasing rank.
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> getAll(K name) {
+        Object[] data = name != null ? index.get(name) : null;
+        if (data == null) {
+            return Collections.emptyList();
+        }
+        return (List<E>) Collections.unmodifiableList(Arrays.asList(data));
+    }
+
+    /**
+     * Returns a snapshot of all the registered elements.
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> values() {
+        List<E> values = new ArrayList<E>();
+        for (Object[] data : index.values()) {
+            for (Object element : data) {
+                values.add((E) element);
+            }
+        }
+        return values;
+    }
+
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            registrations.clear();
+            index.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int rankOf(Object element) {
+        return registrations.get(element).rank;
+    }
+
+}
@@ -25,6 +25,9 @@ import java.io.IOException;
 
 /**
  * Copies standard output and error of children streams to standard output and error of the parent.
+ * <p>
+ * The streams of all the handlers are pumped by a single shared thread polling them, instead of
+ * one thread blocked on each stream.
  */
 public class PumpStreamHandler
 {
@@ -42,10 +45,6 @@ public class PumpStreamHandler
 
     private StreamPumper inputPump;
 
-    //
-    // NOTE: May want to use a ThreadPool here, 3 threads per/pair seems kinda expensive :-(
-    //
-
     public PumpStreamHandler(final InputStream in, final OutputStream out, final OutputStream err, String name) {
         assert in != null;
         assert out != null;
@@ -123,24 +122,15 @@ public class PumpStreamHandler
      */
     public void start() {
         if (outputPump != null) {
-            Thread thread = new Thread(outputPump);
-            thread.setDaemon(true);
-            thread.setName("Output pump for " + this.name);
-            thread.start();
+            StreamPoller.INSTANCE.add(outputPump);
         }
 
         if (errorPump != null) {
-            Thread thread = new Thread(errorPump);
-            thread.setDaemon(true);
-            thread.setName("Error pump for " + this.name);
-            thread.start();
+            StreamPoller.INSTANCE.add(errorPump);
         }
 
         if (inputPump != null) {
-            Thread thread = new Thread(inputPump);
-            thread.setDaemon(true);
-            thread.setName("Input pump for " + this.name);
-            thread.start();
+            StreamPoller.INSTANCE.add(inputPump);
         }
     }
 
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.karaf.util.process;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single thread driving any number of stream pumpers, by copying the data available on each of
+ * them without blocking, and pausing while none of them has data.
+ * <p>
+ * The thread is started when the first pumper is added and ends when no pumper is left, so that
+ * there is no thread at all while no child process is attached. A pumper which takes more than
+ * {@link #STALL_TIMEOUT} ms to be pumped (because its output stream is slow or blocked) keeps the
+ * current thread for itself, and a new thread is started to drive the other pumpers.
+ */
+class StreamPoller implements Runnable
+{
+    static final StreamPoller INSTANCE = new StreamPoller("Stream pump");
+
+    /**
+     * Time after which a pumper still being pumped is considered as stalling the other pumpers.
+     */
+    static final long STALL_TIMEOUT = 100;
+
+    private final String name;
+
+    private final List<StreamPumper> pumpers = new ArrayList<StreamPumper>();
+
+    private Thread thread;
+
+    private boolean wakeUp;
+
+    /**
+     * The pumper being pumped by the polling thread, and since when.
+     */
+    private StreamPumper pumping;
+
+    private long pumpingSince;
+
+    StreamPoller(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Start driving the given pumper until it is stopped.
+     */
+    void add(StreamPumper pumper) {
+        // never call the pumper while holding the poller lock, the pumper calls wakeUp() while holding its own
+        pumper.start(this);
+        synchronized (this) {
+            pumpers.add(pumper);
+            if (thread == null) {
+                startThread();
+            } else {
+                detachStalled();
+                wakeUp = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Interrupt the current pause, after data has been added or a pumper has been stopped.
+     */
+    synchronized void wakeUp() {
+        detachStalled();
+        wakeUp = true;
+        notifyAll();
+    }
+
+    synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    /**
+     * Leave the pumper stalling the polling thread to that thread and start a new one for the other pumpers.
+     *
+     * @return true if the stalled pumper has been detached
+     */
+    private boolean detachStalled() {
+        if (thread == null || pumping == null || System.currentTimeMillis() - pumpingSince <= STALL_TIMEOUT) {
+            return false;
+        }
+        pumpers.remove(pumping);
+        pumping = null;
+        if (pumpers.isEmpty()) {
+            thread = null;
+        } else {
+            startThread();
+        }
+        return true;
+    }
+
+    private void startThread() {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void run() {
+        Thread self = Thread.currentThread();
+        long pause = StreamPumper.MIN_IDLE_PAUSE;
+        List<StreamPumper> current = new ArrayList<StreamPumper>();
+        while (true) {
+            synchronized (this) {
+                if (thread != self) {
+                    return;
+                }
+                if (pumpers.isEmpty()) {
+                    thread = null;
+                    return;
+                }
+                current.clear();
+                current.addAll(pumpers);
+            }
+            boolean read = false;
+            for (StreamPumper pumper : current) {
+                synchronized (this) {
+                    if (thread != self) {
+                        return;
+                    }
+                    pumping = pumper;
+                    pumpingSince = System.currentTimeMillis();
+                }
+                read |= pumper.pumpAvailable();
+                boolean finished = pumper.isFinished();
+                boolean detached;
+                synchronized (this) {
+                    if (finished) {
+                        pumpers.remove(pumper);
+                    }
+                    // either another thread has taken over the other pumpers while this pumper was stalled,
+                    // or it has just been too slow: keep this thread for it
+                    detached = thread != self || !finished && detachStalled();
+                    pumping = null;
+                }
+                if (detached) {
+                    pumpAlone(pumper);
+                    return;
+                }
+            }
+            if (read) {
+                pause = StreamPumper.MIN_IDLE_PAUSE;
+            } else {
+                synchronized (this) {
+                    if (!wakeUp) {
+                        try {
+                            wait(pause);
+                        } catch (InterruptedException e) {
+                            // keep pumping, the pumpers are only finished by being stopped
+                        }
+                    }
+                    if (wakeUp) {
+                        pause = StreamPumper.MIN_IDLE_PAUSE;
+                    } else {
+                        pause = Math.min(pause * 2, StreamPumper.MAX_IDLE_PAUSE);
+                    }
+                    wakeUp = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drive a slow pumper with the current thread until it is finished.
+     */
+    private static void pumpAlone(StreamPumper pumper) {
+        long pause = StreamPumper.MIN_IDLE_PAUSE;
+        while (!pumper.isFinished()) {
+            if (pumper.pumpAvailable()) {
+                pause = StreamPumper.MIN_IDLE_PAUSE;
+            } else {
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException e) {
+                    // keep pumping, the pumper is only finished by being stopped
+                }
+                pause = Math.min(pause * 2, StreamPumper.MAX_IDLE_PAUSE);
+            }
+        }
+    }
+}
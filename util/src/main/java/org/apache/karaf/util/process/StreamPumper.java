@@ -44,12 +44,28 @@ public class StreamPumper implements Runnable
 
     private Throwable exception;
 
-    private int bufferSize = 128;
+    private int bufferSize = 8192;
+
+    /**
+     * Bounds of the pause used in non blocking mode when no data is available.
+     * The pause starts short so that interactive input is forwarded quickly and
+     * grows while the input stays idle.
+     */
+    static final long MIN_IDLE_PAUSE = 1;
+
+    static final long MAX_IDLE_PAUSE = 50;
 
     private boolean started;
 
     private Thread thread;
 
+    /**
+     * The shared thread driving this pumper, if it is not run by its own thread.
+     */
+    private StreamPoller poller;
+
+    private byte[] buffer;
+
     /**
      * Create a new stream pumper.
      *
@@ -118,21 +134,17 @@ public class StreamPumper implements Runnable
         final byte[] buf = new byte[bufferSize];
 
         int length;
+        long pause = MIN_IDLE_PAUSE;
         try {
             while (true) {
                 if (nonBlocking) {
-                    while (in.available() > 0) {
-                        length = in.read(buf);
-                        if (length > 0) {
-                            out.write(buf, 0, length);
-                            if (autoflush) {
-                                out.flush();
-                            }
-                        } else {
-                            break;
-                        }
+                    if (copyAvailable(buf)) {
+                        pause = MIN_IDLE_PAUSE;
+                    } else {
+                        // Pause to avoid tight loop if external proc is too slow
+                        Thread.sleep(pause);
+                        pause = Math.min(pause * 2, MAX_IDLE_PAUSE);
                     }
-                    Thread.sleep(50); // Pause to avoid tight loop if external proc is too slow
                 } else {
                     do {
                         length = in.read(buf);
@@ -159,19 +171,81 @@ public class StreamPumper implements Runnable
             }
         }
         finally {
-            try {
-                out.flush();
-            } catch (IOException e) { }
-            if (closeWhenExhausted) {
-                try {
-                    out.close();
-                } catch (IOException e) { }
-            }
+            done();
+        }
+    }
+
+    /**
+     * Attach this pumper to the shared thread which will drive it by calling {@link #pumpAvailable()}.
+     */
+    synchronized void start(StreamPoller poller) {
+        started = true;
+        finished = false;
+        finish = false;
+        this.poller = poller;
+    }
+
+    /**
+     * Copies the data available without blocking, and finishes the pumper once it has been
+     * stopped and the remaining data has been copied.
+     *
+     * @return true if some data has been copied
+     */
+    boolean pumpAvailable() {
+        boolean finish;
+        synchronized (this) {
+            finish = this.finish;
+        }
+        if (buffer == null) {
+            buffer = new byte[bufferSize];
+        }
+        boolean read = false;
+        try {
+            read = copyAvailable(buffer);
+        }
+        catch (Throwable t) {
             synchronized (this) {
-                finished = true;
-                notifyAll();
+                exception = t;
+            }
+            finish = true;
+        }
+        if (finish) {
+            done();
+        }
+        return read;
+    }
+
+    private boolean copyAvailable(byte[] buf) throws IOException {
+        boolean read = false;
+        int available;
+        while ((available = in.available()) > 0) {
+            int length = in.read(buf, 0, Math.min(available, buf.length));
+            if (length > 0) {
+                out.write(buf, 0, length);
+                read = true;
+            } else {
+                break;
             }
         }
+        if (read && autoflush) {
+            out.flush();
+        }
+        return read;
+    }
+
+    private void done() {
+        try {
+            out.flush();
+        } catch (IOException e) { }
+        if (closeWhenExhausted) {
+            try {
+                out.close();
+            } catch (IOException e) { }
+        }
+        synchronized (this) {
+            finished = true;
+            notifyAll();
+        }
     }
 
     /**
@@ -233,12 +307,20 @@ public class StreamPumper implements Runnable
      * but it will really stop the thread as soon as it gets EOF
      * or any byte, and it will be marked as finished.
      */
-    public synchronized void stop() {
-        finish = true;
-        if (nonBlocking && thread != null && !finished) {
-            thread.interrupt();
+    public void stop() {
+        StreamPoller poller;
+        synchronized (this) {
+            finish = true;
+            if (nonBlocking && thread != null && !finished) {
+                thread.interrupt();
+            }
+            poller = this.poller;
+            notifyAll();
+        }
+        // outside of the lock, the poller calls this pumper while holding its own lock
+        if (poller != null) {
+            poller.wakeUp();
         }
-        notifyAll();
     }
     
     public InputStream getInputStream() {
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeployerUtilsTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("deployer", ".xml");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRootElement() throws Exception {
+        write("<?xml version=\"1.0\"?>\n<!-- comment -->\n"
+                + "<blueprint xmlns=\"http://www.osgi.org/xmlns/blueprint/v1.0.0\"><bean id=\"a\"/></blueprint>");
+        assertEquals(new QName("http://www.osgi.org/xmlns/blueprint/v1.0.0", "blueprint"), DeployerUtils.getRootElement(file));
+    }
+
+    @Test
+    public void testRootElementWithoutNamespace() throws Exception {
+        write("<features name=\"test\"><feature name=\"f\"/></features>");
+        QName root = DeployerUtils.getRootElement(file);
+        assertEquals("", root.getNamespaceURI());
+        assertEquals("features", root.getLocalPart());
+    }
+
+    @Test
+    public void testDoctypeIsNotLoaded() throws Exception {
+        // the DTD does not exist, loading it would fail
+        File dtd = new File(file.getParentFile(), "missing-" + System.nanoTime() + ".dtd");
+        write("<?xml version=\"1.0\"?>\n<!DOCTYPE beans PUBLIC \"-//SPRING//DTD BEAN//EN\" \"" + dtd.toURI() + "\">\n"
+                + "<beans><bean id=\"a\"/></beans>");
+        assertEquals(new QName("beans"), DeployerUtils.getRootElement(file));
+    }
+
+    @Test
+    public void testCacheInvalidation() throws Exception {
+        write("<features/>");
+        assertEquals(new QName("features"), DeployerUtils.getRootElement(file));
+
+        // a different length
+        write("<blueprint/>");
+        assertEquals(new QName("blueprint"), DeployerUtils.getRootElement(file));
+
+        // the same length, but a different modification time
+        long lastModified = file.lastModified();
+        write("<blueprinx/>");
+        assertTrue(file.setLastModified(lastModified - 10000));
+        assertEquals(new QName("blueprinx"), DeployerUtils.getRootElement(file));
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        write("<?xml version=\"1.0\"?>\n<features");
+        assertMalformed();
+        // the failure is cached as well
+        assertMalformed();
+
+        write("<features/>");
+        assertEquals(new QName("features"), DeployerUtils.getRootElement(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingFile() throws Exception {
+        file.delete();
+        DeployerUtils.getRootElement(file);
+    }
+
+    private void assertMalformed() throws IOException {
+        try {
+            DeployerUtils.getRootElement(file);
+            fail("Expected an XMLStreamException");
+        } catch (XMLStreamException e) {
+            // expected
+        }
+    }
+
+    private void write(String content) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class InterpolationHelperTest {
+
+    private static final InterpolationHelper.SubstitutionCallback CALLBACK = new InterpolationHelper.SubstitutionCallback() {
+        public String getValue(String key) {
+            return key.startsWith("cb.") ? "<" + key + ">" : null;
+        }
+    };
+
+    @Test
+    public void testBasicSubstitution() {
+        Map<String, String> props = check("a", "x", "b", "${a}y", "c", "${b}${a}", "d", "plain");
+        assertEquals("xy", props.get("b"));
+        assertEquals("xyx", props.get("c"));
+        assertEquals("plain", props.get("d"));
+    }
+
+    @Test
+    public void testNestedNames() {
+        Map<String, String> props = check("env", "prod", "url.prod", "http://prod", "url", "${url.${env}}",
+                "deep", "${url.${e${n}}}", "e", "en", "n", "v", "env2", "${e}");
+        assertEquals("http://prod", props.get("url"));
+        assertEquals("", props.get("deep"));
+    }
+
+    @Test
+    public void testEscapes() {
+        Map<String, String> props = check("a", "x", "b", "$\\{a\\}", "c", "${b}", "d", "\\\\${a}", "e", "a\\}b\\{c",
+                "f", "${a}\\}", "g", "\\${a}");
+        assertEquals("${a}", props.get("b"));
+        assertEquals("\\x", props.get("g"));
+        assertEquals("a}b{c", props.get("e"));
+    }
+
+    @Test
+    public void testUndefinedKeys() {
+        Map<String, String> props = check("a", "${missing}", "b", "[${cb.value}]", "c", "${}", "d", "${java.version}");
+        assertEquals("", props.get("a"));
+        assertEquals("[<cb.value>]", props.get("b"));
+        assertEquals("", props.get("c"));
+        assertEquals(System.getProperty("java.version"), props.get("d"));
+    }
+
+    @Test
+    public void testUnbalancedDelimiters() {
+        check("a", "${", "b", "${a}c}", "c", "x}y", "d", "${${a}}", "e", "${a", "f", "${b");
+    }
+
+    @Test
+    public void testFallbackOnSubstitutedDelimiters() {
+        // substituted values which rescanned by substVars produce new references
+        Map<String, String> props = check("open", "${", "name", "a", "a", "found", "x", "${open}${name}}", "y", "${name}}");
+        assertEquals("found", props.get("x"));
+        check("close", "}", "a", "found", "x", "${a${close}", "y", "\\", "z", "${y}${a}");
+    }
+
+    @Test
+    public void testCycles() {
+        checkCycle("a", "${b}", "b", "${a}");
+        checkCycle("a", "${a}");
+        checkCycle("a", "x${b}", "b", "${c}", "c", "${a}");
+        checkCycle("a", "${b.${c}}", "c", "x", "b.x", "${a}");
+    }
+
+    @Test
+    public void testTemplate() {
+        InterpolationHelper.Template template = InterpolationHelper.compile("${a}-${b.${c}}-${a}");
+        assertFalse(template.isConstant());
+        assertEquals(new HashSet<String>(Arrays.asList("a")), template.getReferences());
+        assertEquals("${a}-${b.${c}}-${a}", template.getSource());
+        assertTrue(InterpolationHelper.compile("plain ${ text").isConstant());
+
+        Map<String, String> props = map("a", "1", "c", "2", "b.2", "3");
+        assertEquals("1-3-1", template.evaluate(props, null));
+        props.put("c", "4");
+        assertEquals("1--1", template.evaluate(props, null));
+        assertEquals(InterpolationHelper.substVars("${a}\\}", null, null, props, null),
+                InterpolationHelper.compile("${a}\\}").evaluate(props, null));
+    }
+
+    @Test
+    public void testRandomized() {
+        Random random = new Random(42);
+        String[] keys = { "a", "b", "c", "d", "cb.x", "" };
+        String[] tokens = { "${", "}", "\\", "a", "b", "c", "d", "cb.x", "x", ".", "${a}", "${b}" };
+        for (int i = 0; i < 20000; i++) {
+            Map<String, String> props = new LinkedHashMap<String, String>();
+            int count = 1 + random.nextInt(4);
+            for (int j = 0; j < count; j++) {
+                StringBuilder value = new StringBuilder();
+                int length = random.nextInt(6);
+                for (int k = 0; k < length; k++) {
+                    value.append(tokens[random.nextInt(tokens.length)]);
+                }
+                props.put(keys[random.nextInt(keys.length - 1)], value.toString());
+            }
+            String expected;
+            try {
+                expected = legacy(props);
+            } catch (IllegalArgumentException e) {
+                expected = "error";
+            } catch (RuntimeException e) {
+                // substVars fails on some unbalanced delimiters
+                continue;
+            } catch (StackOverflowError e) {
+                // some cycles through nested names are not detected by substVars
+                continue;
+            }
+            assertEquals("Properties " + props, expected, substitute(props));
+        }
+    }
+
+    /**
+     * Checks that {@link InterpolationHelper#performSubstitution} gives the same result as the
+     * property by property {@link InterpolationHelper#substVars} loop, and returns that result.
+     */
+    private static Map<String, String> check(String... keyValues) {
+        Map<String, String> props = map(keyValues);
+        assertEquals(legacy(props), substitute(props));
+        InterpolationHelper.performSubstitution(props, CALLBACK);
+        return props;
+    }
+
+    private static void checkCycle(String... keyValues) {
+        Map<String, String> props = map(keyValues);
+        try {
+            legacy(props);
+            fail("substVars should detect the cycle in " + props);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            InterpolationHelper.performSubstitution(map(keyValues), CALLBACK);
+            fail("performSubstitution should detect the cycle in " + props);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("recursive variable reference"));
+        }
+    }
+
+    /**
+     * @return the properties substituted by the {@link InterpolationHelper#substVars} loop
+     */
+    private static String legacy(Map<String, String> props) {
+        Map<String, String> copy = new LinkedHashMap<String, String>(props);
+        for (String name : copy.keySet()) {
+            copy.put(name, InterpolationHelper.substVars(copy.get(name), name, null, copy, CALLBACK));
+        }
+        return copy.toString();
+    }
+
+    /**
+     * @return the properties substituted by {@link InterpolationHelper#performSubstitution}, or "error" on a cycle
+     */
+    private static String substitute(Map<String, String> props) {
+        Map<String, String> copy = new LinkedHashMap<String, String>(props);
+        try {
+            InterpolationHelper.performSubstitution(copy, CALLBACK);
+        } catch (IllegalArgumentException e) {
+            return "error";
+        }
+        return copy.toString();
+    }
+
+    private static Map<String, String> map(String... keyValues) {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put(keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.karaf.util.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class RankedIdentityRegistryTest {
+
+    @Test
+    public void testRanking() {
+        RankedIdentityRegistry<String, String> registry = new RankedIdentityRegistry<String, String>();
+        String low = new String("low");
+        String high = new String("high");
+        String middle = new String("middle");
+        assertTrue(registry.add("realm", 0, low));
+        assertTrue(registry.add("realm", 10, high));
+        assertTrue(registry.add("realm", 5, middle));
+
+        assertSame(high, registry.get("realm"));
+        assertEquals(Arrays.asList(high, middle, low), registry.getAll("realm"));
+        assertNull(registry.get("other"));
+        assertTrue(registry.getAll("other").isEmpty());
+        assertNull(registry.get(null));
+    }
+
+    @Test
+    public void testSameRankKeepsRegistrationOrder() {
+        RankedIdentityRegistry<String, String> registry = new RankedIdentityRegistry<String, String>();
+        String first = new String("first");
+        String second = new String("second");
+        String third = new String("third");
+        registry.add("realm", 1, first);
+        registry.add("realm", 1, second);
+        registry.add("realm", 2, third);
+        assertEquals(Arrays.asList(third, first, second), registry.getAll("realm"));
+
+        registry.remove(third);
+        assertSame(first, registry.get("realm"));
+    }
+
+    @Test
+    public void testIdentity() {
+        RankedIdentityRegistry<String, String> registry = new RankedIdentityRegistry<String, String>();
+        String a = new String("same");
+        String b = new String("same");
+        assertTrue(registry.add("realm", 0, a));
+        assertFalse(registry.add("realm", 1, a));
+        // equal but not the same element
+        assertTrue(registry.add("realm", 1, b));
+        assertEquals(2, registry.getAll("realm").size());
+
+        assertTrue(registry.remove(b));
+        assertFalse(registry.remove(b));
+        assertSame(a, registry.get("realm"));
+        assertFalse(registry.remove(new String("same")));
+        assertSame(a, registry.get("realm"));
+    }
+
+    @Test
+    public void testRemove() {
+        RankedIdentityRegistry<String, String> registry = new RankedIdentityRegistry<String, String>();
+        String a1 = new String("a1");
+        String a2 = new String("a2");
+        String b = new String("b");
+        registry.add("a", 2, a1);
+        registry.add("a", 1, a2);
+        registry.add("b", 0, b);
+        List<String> snapshot = registry.getAll("a");
+
+        assertTrue(registry.remove(a1));
+        assertEquals(Arrays.asList(a2), registry.getAll("a"));
+        // lists returned earlier are not modified
+        assertEquals(Arrays.asList(a1, a2), snapshot);
+        assertTrue(registry.remove(a2));
+        assertNull(registry.get("a"));
+        assertSame(b, registry.get("b"));
+        assertFalse(registry.isEmpty());
+
+        assertTrue(registry.remove(b));
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    public void testValuesAndClear() {
+        RankedIdentityRegistry<String, String> registry = new RankedIdentityRegistry<String, String>();
+        registry.add("a", 0, "x");
+        registry.add("b", 0, "y");
+        registry.add("b", 1, "z");
+        assertEquals(new HashSet<String>(Arrays.asList("x", "y", "z")), new HashSet<String>(registry.values()));
+
+        registry.clear();
+        assertTrue(registry.isEmpty());
+        assertTrue(registry.values().isEmpty());
+        // elements can be registered again after a clear
+        assertTrue(registry.add("a", 0, "x"));
+    }
+
+    @Test
+    public void testGetAllIsUnmodifiable() {
+        RankedIdentityRegistry<String, String> registry = new RankedIdentityRegistry<String, String>();
+        registry.add("a", 0, "x");
+        try {
+            registry.getAll("a").set(0, "y");
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(Collections.singletonList("x"), registry.getAll("a"));
+    }
+
+    @Test
+    public void testNulls() {
+        RankedIdentityRegistry<String, String> registry = new RankedIdentityRegistry<String, String>();
+        try {
+            registry.add(null, 0, "x");
+            fail("Expected NullPointerException");
+        } catch (NullPointerException e) {
+            assertEquals("Name of x is null", e.getMessage());
+        }
+        try {
+            registry.add("a", 0, null);
+            fail("Expected NullPointerException");
+        } catch (NullPointerException e) {
+            assertEquals("Element registered as a is null", e.getMessage());
+        }
+        assertTrue(registry.isEmpty());
+        assertFalse(registry.remove(null));
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        final RankedIdentityRegistry<String, Integer> registry = new RankedIdentityRegistry<String, Integer>();
+        final Integer base = new Integer(-1);
+        registry.add("realm", -1, base);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread reader = new Thread() {
+            public void run() {
+                while (done.getCount() > 0) {
+                    Integer best = registry.get("realm");
+                    List<Integer> all = registry.getAll("realm");
+                    if (best == null || all.isEmpty()) {
+                        failure.set("base element missing");
+                    }
+                    for (int i = 1; i < all.size(); i++) {
+                        if (all.get(i - 1) < all.get(i)) {
+                            failure.set("not sorted: " + all);
+                        }
+                    }
+                }
+            }
+        };
+        reader.start();
+        try {
+            for (int i = 0; i < 10000; i++) {
+                Integer element = new Integer(i % 100);
+                registry.add("realm", element, element);
+                if (i % 3 != 0) {
+                    registry.remove(element);
+                }
+            }
+        } finally {
+            done.countDown();
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertSame(base, registry.getAll("realm").get(registry.getAll("realm").size() - 1));
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.util.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class PumpStreamHandlerTest {
+
+    @Test
+    public void testManyHandlersShareOneThread() throws Exception {
+        int count = 20;
+        Random random = new Random(42);
+        byte[][] outputs = new byte[count][];
+        byte[][] errors = new byte[count][];
+        ByteArrayOutputStream[] outs = new ByteArrayOutputStream[count];
+        ByteArrayOutputStream[] errs = new ByteArrayOutputStream[count];
+        PumpStreamHandler[] handlers = new PumpStreamHandler[count];
+        int threads = pumpThreads();
+        for (int i = 0; i < count; i++) {
+            outputs[i] = new byte[random.nextInt(100000)];
+            random.nextBytes(outputs[i]);
+            errors[i] = new byte[random.nextInt(1000)];
+            random.nextBytes(errors[i]);
+            outs[i] = new ByteArrayOutputStream();
+            errs[i] = new ByteArrayOutputStream();
+            handlers[i] = new PumpStreamHandler(new ByteArrayInputStream(new byte[0]), outs[i], errs[i]);
+            handlers[i].setChildOutputStream(new ByteArrayInputStream(outputs[i]));
+            handlers[i].setChildErrorStream(new ByteArrayInputStream(errors[i]));
+            handlers[i].start();
+        }
+        assertTrue(pumpThreads() - threads <= 1);
+        for (int i = 0; i < count; i++) {
+            handlers[i].stop();
+            assertArrayEquals(outputs[i], outs[i].toByteArray());
+            assertArrayEquals(errors[i], errs[i].toByteArray());
+        }
+    }
+
+    @Test
+    public void testPumpsBeforeStop() throws Exception {
+        PipedOutputStream child = new PipedOutputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PumpStreamHandler handler = new PumpStreamHandler(new ByteArrayInputStream(new byte[0]), out, new ByteArrayOutputStream());
+        handler.setChildOutputStream(new PipedInputStream(child));
+        handler.start();
+        try {
+            child.write("hello".getBytes());
+            child.flush();
+            long timeout = System.currentTimeMillis() + 5000;
+            while (out.size() < 5 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertEquals("hello", out.toString());
+            assertFalse(handler.getOutputPump().isFinished());
+        } finally {
+            handler.stop();
+        }
+        assertTrue(handler.getOutputPump().isFinished());
+    }
+
+    @Test
+    public void testInputPump() throws Exception {
+        byte[] input = "some input".getBytes();
+        PipedInputStream child = new PipedInputStream();
+        PumpStreamHandler handler = new PumpStreamHandler(new ByteArrayInputStream(input),
+                new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        handler.setChildInputStream(new PipedOutputStream(child));
+        handler.start();
+        byte[] read = new byte[input.length];
+        int length = 0;
+        while (length < read.length) {
+            length += child.read(read, length, read.length - length);
+        }
+        handler.stop();
+        assertArrayEquals(input, read);
+    }
+
+    @Test
+    public void testThreadEndsWhenIdle() throws Exception {
+        StreamPoller poller = new StreamPoller("Test pump");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamPumper pumper = new StreamPumper(new ByteArrayInputStream("data".getBytes()), out);
+        poller.add(pumper);
+        assertTrue(poller.isRunning());
+        pumper.stop();
+        pumper.waitFor();
+        assertEquals("data", out.toString());
+        long timeout = System.currentTimeMillis() + 5000;
+        while (poller.isRunning() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertFalse(poller.isRunning());
+
+        // and is started again for new pumpers
+        out.reset();
+        pumper = new StreamPumper(new ByteArrayInputStream("more".getBytes()), out);
+        poller.add(pumper);
+        pumper.stop();
+        pumper.waitFor();
+        assertEquals("more", out.toString());
+    }
+
+    @Test
+    public void testBlockedOutputDoesNotStallOthers() throws Exception {
+        StreamPoller poller = new StreamPoller("Test pump");
+        final CountDownLatch written = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        StreamPumper blocked = new StreamPumper(new ByteArrayInputStream("blocked".getBytes()), new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{ (byte) b }, 0, 1);
+            }
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                written.countDown();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e.toString());
+                }
+            }
+        });
+        poller.add(blocked);
+        written.await();
+        Thread.sleep(StreamPoller.STALL_TIMEOUT * 2);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamPumper pumper = new StreamPumper(new ByteArrayInputStream("data".getBytes()), out);
+        poller.add(pumper);
+        pumper.stop();
+        pumper.waitFor();
+        assertEquals("data", out.toString());
+        assertFalse(blocked.isFinished());
+
+        blocked.stop();
+        unblock.countDown();
+        blocked.waitFor();
+    }
+
+    private static int pumpThreads() {
+        Thread[] threads = new Thread[Thread.activeCount() * 2 + 10];
+        int count = Thread.enumerate(threads);
+        int pumps = 0;
+        for (int i = 0; i < count; i++) {
+            if (threads[i].getName().startsWith("Stream pump")) {
+                pumps++;
+            }
+        }
+        return pumps;
+    }
+
+}
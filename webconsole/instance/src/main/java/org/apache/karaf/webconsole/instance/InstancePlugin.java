@@ -22,6 +22,7 @@ import java.io.PrintWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -213,14 +214,15 @@ public class InstancePlugin extends AbstractWebConsolePlugin {
     private void writeJSON(final PrintWriter pw) {
         final JSONWriter jw = new JSONWriter(pw);
         final Instance[] instances = instanceService.getInstances();
+        final Map<String, String> states = instanceService.getInstanceStates();
         try {
             jw.object();
             jw.key("status");
-            jw.value(getStatusLine());
+            jw.value(getStatusLine(instances, states));
             jw.key("instances");
             jw.array();
             for (Instance i : instances) {
-                instanceInfo(jw, i);
+                instanceInfo(jw, i, getState(i, states));
             }
             jw.endArray();
             jw.endObject();
@@ -231,7 +233,12 @@ public class InstancePlugin extends AbstractWebConsolePlugin {
         }
     }
 
-    private void instanceInfo(JSONWriter jw, Instance instance) throws JSONException, Exception {
+    private String getState(Instance instance, Map<String, String> states) throws Exception {
+        String state = states.get(instance.getName());
+        return state != null ? state : instance.getState();
+    }
+
+    private void instanceInfo(JSONWriter jw, Instance instance, String state) throws JSONException, Exception {
         jw.object();
         jw.key("pid");
         jw.value(instance.getPid());
@@ -244,7 +251,7 @@ public class InstancePlugin extends AbstractWebConsolePlugin {
         jw.key("rmiServerPort");
         jw.value(instance.getRmiServerPort());
         jw.key("state");
-        jw.value(instance.getState());
+        jw.value(state);
         jw.key("location");
         jw.value(instance.getJavaOpts() != null ? instance.getJavaOpts() : "");
         jw.key("javaopts");
@@ -252,11 +259,11 @@ public class InstancePlugin extends AbstractWebConsolePlugin {
         jw.key("actions");
         jw.array();
         action(jw, "destroy", "Destroy", "delete");
-        if (instance.getState().equals(Instance.STARTED)) {
+        if (state.equals(Instance.STARTED)) {
             action(jw, "stop", "Stop", "stop");
-        } else if (instance.getState().equals(Instance.STARTING)) {
+        } else if (state.equals(Instance.STARTING)) {
             action(jw, "stop", "Stop", "stop");
-        } else if (instance.getState().equals(Instance.STOPPED)) {
+        } else if (state.equals(Instance.STOPPED)) {
             action(jw, "start", "Start", "start");
         }
         jw.endArray();
@@ -271,16 +278,16 @@ public class InstancePlugin extends AbstractWebConsolePlugin {
         jw.endObject();
     }
 
-    private String getStatusLine() {
-        final Instance[] instances = instanceService.getInstances();
+    private String getStatusLine(Instance[] instances, Map<String, String> states) {
         int started = 0, starting = 0, stopped = 0;
         for (Instance instance : instances) {
             try {
-                if (instance.getState().equals(Instance.STARTED)) {
+                String state = getState(instance, states);
+                if (state.equals(Instance.STARTED)) {
                     started++;
-                } else if (instance.getState().equals(Instance.STARTING)) {
+                } else if (state.equals(Instance.STARTING)) {
                     starting++;
-                } else if (instance.getState().equals(Instance.STOPPED)) {
+                } else if (state.equals(Instance.STOPPED)) {
                     stopped++;
                 }
             } catch (Exception ex) {
@@ -58,6 +58,7 @@ public class InstancePluginTest extends TestCase {
         InstanceService instanceService = EasyMock.createMock(InstanceService.class);
         EasyMock.expect(instanceService.createInstance("instance1", instanceSettings, false)).andReturn(null);
         EasyMock.expect(instanceService.getInstances()).andReturn(new Instance[]{}).anyTimes();
+        EasyMock.expect(instanceService.getInstanceStates()).andReturn(Collections.<String, String>emptyMap()).anyTimes();
         EasyMock.replay(instanceService);
         
         InstancePlugin ap = new InstancePlugin();